@@ -188,6 +188,19 @@ public class CriteriaBuilder extends GroovyObjectSupport {
        return projectionList;
     }
 
+    /**
+     * Counts the distinct values of a property
+     *
+     * @param name The name of the property
+     * @return The projection list
+     */
+    public Query.ProjectionList countDistinct(String name) {
+        if (projectionList != null) {
+            projectionList.countDistinct(name);
+        }
+        return projectionList;
+    }
+
     private boolean isCriteriaConstructionMethod(String name, Object[] args) {
         return (name.equals(LIST_CALL) && args.length == 2 && args[0] instanceof Map && args[1] instanceof Closure) ||
                   (name.equals(ROOT_CALL) ||
@@ -577,6 +590,15 @@ public class CriteriaBuilder extends GroovyObjectSupport {
         return o;
     }
 
+    /**
+     * Whether the results of the query should be cached
+     *
+     * @param shouldCache True if the results should be cached
+     */
+    public void cache(boolean shouldCache) {
+        query.cache(shouldCache);
+    }
+
     protected void validatePropertyName(String propertyName, String methodName) {
         if (propertyName == null) {
             throw new IllegalArgumentException("Cannot use ["+methodName+"] restriction with null property name");
@@ -252,6 +252,34 @@ class GormStaticApi extends AbstractGormApi {
         q.list()
     }
 
+    /**
+     * Creates a token for the position of the given instance in the results of {@link #list(Map)} with the given
+     * sort and order, which can be passed as the 'after' argument to list the instances that follow it.
+     * eg. Book.list(sort:'title', max:10, after:Book.continuationToken(books[-1], [sort:'title']))
+     *
+     * @param lastResult The last instance of a page
+     * @param params The sort and order the page was listed with
+     * @return The continuation token
+     */
+    String continuationToken(Object lastResult, Map params) {
+        Query q = datastore.currentSession.createQuery(persistentClass)
+        def args = new HashMap(params)
+        args.remove(DynamicFinder.ARGUMENT_AFTER)
+        DynamicFinder.populateArgumentsForCriteria(persistentClass, q, args)
+        q.getContinuationToken(lastResult)
+    }
+
+    /**
+     * Creates a token for the position of the given instance in the results of {@link #list(Map)} ordered by
+     * identifier
+     *
+     * @param lastResult The last instance of a page
+     * @return The continuation token
+     */
+    String continuationToken(Object lastResult) {
+        continuationToken(lastResult, Collections.emptyMap())
+    }
+
     /**
      * List all entities
      *
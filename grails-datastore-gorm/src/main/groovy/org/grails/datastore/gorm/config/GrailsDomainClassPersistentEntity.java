@@ -34,6 +34,7 @@ import org.springframework.datastore.mapping.model.types.ManyToMany;
 import org.springframework.datastore.mapping.model.types.ManyToOne;
 import org.springframework.datastore.mapping.model.types.OneToMany;
 import org.springframework.datastore.mapping.model.types.OneToOne;
+import org.springframework.datastore.mapping.reflect.EntityReflector;
 
 /**
  * Bridges the {@link GrailsDomainClass} interface into the {@link PersistentEntity} interface
@@ -50,6 +51,7 @@ public class GrailsDomainClassPersistentEntity implements PersistentEntity, Init
     private Map<String, PersistentProperty> propertiesByName = new HashMap<String, PersistentProperty>();
     private List<PersistentProperty> properties = new ArrayList<PersistentProperty>();
     private List<Association> associations = new ArrayList<Association>();
+    private EntityReflector reflector;
 
     public GrailsDomainClassPersistentEntity(GrailsDomainClass domainClass,
             GrailsDomainClassMappingContext mappingContext) {
@@ -101,6 +103,12 @@ public class GrailsDomainClassPersistentEntity implements PersistentEntity, Init
             propertiesByName.put(grailsDomainClassProperty.getName(), persistentProperty);
             properties.add(persistentProperty);
         }
+
+        reflector = mappingContext.getEntityReflectorFactory().getReflector(this);
+    }
+
+    public EntityReflector getReflector() {
+        return reflector;
     }
 
     public String getName() {
@@ -61,6 +61,7 @@ public abstract class DynamicFinder implements FinderMethod, QueryBuildingFinder
     public static final String ARGUMENT_IGNORE_CASE = "ignoreCase";
     public static final String ARGUMENT_CACHE = "cache";
     public static final String ARGUMENT_LOCK = "lock";
+    public static final String ARGUMENT_AFTER = "after";
 
     protected Pattern pattern;
     private Pattern[] operatorPatterns;
@@ -311,6 +312,14 @@ public abstract class DynamicFinder implements FinderMethod, QueryBuildingFinder
                     q.order(Query.Order.asc(sort));
                 }
             }
+            final Object after = argMap.get(ARGUMENT_AFTER);
+            if (after != null) {
+                q.after(after.toString());
+            }
+            if (argMap.containsKey(ARGUMENT_CACHE)) {
+                final Boolean cache = conversionService.convert(argMap.get(ARGUMENT_CACHE), Boolean.class);
+                q.cache(cache != null && cache);
+            }
         }
     }
 
@@ -0,0 +1,122 @@
+/* Copyright (C) 2010 SpringSource
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.datastore.mapping.cache;
+
+import java.util.Map;
+
+/**
+ * Configures second level caching for an entity. Specified in the mapping block of an entity, either as
+ * <code>cache true</code> or with settings such as <code>cache maxSize:1000, timeToLive:60000, eviction:"lfu"</code>.
+ *
+ * @author Graeme Rocher
+ * @since 1.0
+ */
+public class CacheSettings {
+
+    /**
+     * How entries are chosen for eviction once a region is full
+     */
+    public static enum EvictionPolicy {
+        /** Evicts the least recently used entry */
+        LRU,
+        /** Evicts the least frequently used entry */
+        LFU
+    }
+
+    public static final int DEFAULT_MAX_SIZE = 10000;
+
+    private boolean enabled = true;
+    private int maxSize = DEFAULT_MAX_SIZE;
+    private long maxWeight = 0;
+    private long timeToLive = 0;
+    private EvictionPolicy eviction = EvictionPolicy.LRU;
+
+    /**
+     * Creates settings from a mapping value
+     *
+     * @param value Either a Boolean, a Map of settings or a CacheSettings instance
+     * @return The settings or null if the value does not enable caching
+     */
+    @SuppressWarnings("rawtypes")
+    public static CacheSettings valueOf(Object value) {
+        if (value instanceof CacheSettings) {
+            return (CacheSettings) value;
+        }
+        if (value instanceof Boolean) {
+            return (Boolean) value ? new CacheSettings() : null;
+        }
+        if (value instanceof Map) {
+            Map map = (Map) value;
+            CacheSettings settings = new CacheSettings();
+            if (map.get("enabled") != null) settings.setEnabled(Boolean.valueOf(map.get("enabled").toString()));
+            if (map.get("maxSize") != null) settings.setMaxSize(Integer.parseInt(map.get("maxSize").toString()));
+            if (map.get("maxWeight") != null) settings.setMaxWeight(Long.parseLong(map.get("maxWeight").toString()));
+            if (map.get("timeToLive") != null) settings.setTimeToLive(Long.parseLong(map.get("timeToLive").toString()));
+            if (map.get("eviction") != null) settings.setEviction(EvictionPolicy.valueOf(map.get("eviction").toString().toUpperCase()));
+            return settings.isEnabled() ? settings : null;
+        }
+        return null;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * @return The maximum number of entries in the region, 0 or less for no limit
+     */
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public void setMaxSize(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * @return The maximum total weight of the entries in the region, 0 or less for no limit
+     * @see EntryWeigher
+     */
+    public long getMaxWeight() {
+        return maxWeight;
+    }
+
+    public void setMaxWeight(long maxWeight) {
+        this.maxWeight = maxWeight;
+    }
+
+    /**
+     * @return The time in milliseconds after which an entry expires, 0 or less for entries that never expire
+     */
+    public long getTimeToLive() {
+        return timeToLive;
+    }
+
+    public void setTimeToLive(long timeToLive) {
+        this.timeToLive = timeToLive;
+    }
+
+    public EvictionPolicy getEviction() {
+        return eviction;
+    }
+
+    public void setEviction(EvictionPolicy eviction) {
+        this.eviction = eviction;
+    }
+}
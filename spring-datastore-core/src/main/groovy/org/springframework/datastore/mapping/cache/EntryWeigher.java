@@ -0,0 +1,30 @@
+/* Copyright (C) 2010 SpringSource
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.datastore.mapping.cache;
+
+/**
+ * Calculates the weight of a cached entry, used to bound regions configured with a maximum weight
+ *
+ * @author Graeme Rocher
+ * @since 1.0
+ */
+public interface EntryWeigher {
+
+    /**
+     * @param entry The native entry
+     * @return The weight, at least 1
+     */
+    int weigh(Object entry);
+}
@@ -0,0 +1,184 @@
+/* Copyright (C) 2010 SpringSource
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.datastore.mapping.cache;
+
+import java.io.Serializable;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A {@link SecondLevelCache} held in the memory of the local JVM. Each family is stored in its own
+ * region that is bounded by the size, weight and time to live of the {@link CacheSettings} it was created with.
+ *
+ * @author Graeme Rocher
+ * @since 1.0
+ */
+public class LocalSecondLevelCache implements SecondLevelCache {
+
+    private static final EntryWeigher DEFAULT_WEIGHER = new EntryWeigher() {
+        @SuppressWarnings("rawtypes")
+        public int weigh(Object entry) {
+            return entry instanceof Map ? ((Map) entry).size() + 1 : 1;
+        }
+    };
+
+    private Map<String, Region> regions = new ConcurrentHashMap<String, Region>();
+    private EntryWeigher weigher = DEFAULT_WEIGHER;
+
+    /**
+     * The weigher used for regions with a maximum weight. The default weighs native entries that are maps by their number of properties.
+     *
+     * @param weigher The weigher
+     */
+    public void setWeigher(EntryWeigher weigher) {
+        this.weigher = weigher != null ? weigher : DEFAULT_WEIGHER;
+    }
+
+    public Object get(String family, Serializable key) {
+        final Region region = regions.get(family);
+        return region != null ? region.get(key) : null;
+    }
+
+    public void put(String family, Serializable key, Object entry, CacheSettings settings) {
+        if (key == null || entry == null || settings == null) return;
+
+        Region region = regions.get(family);
+        if (region == null) {
+            synchronized (regions) {
+                region = regions.get(family);
+                if (region == null) {
+                    region = new Region(settings);
+                    regions.put(family, region);
+                }
+            }
+        }
+        region.put(key, entry);
+    }
+
+    public void evict(String family, Serializable key) {
+        final Region region = regions.get(family);
+        if (region != null) {
+            region.remove(key);
+        }
+    }
+
+    public void clear(String family) {
+        regions.remove(family);
+    }
+
+    public void clear() {
+        regions.clear();
+    }
+
+    /**
+     * @param family The family
+     * @return The number of entries currently cached for the family
+     */
+    public int size(String family) {
+        final Region region = regions.get(family);
+        return region != null ? region.size() : 0;
+    }
+
+    private static class CachedEntry {
+        final Object value;
+        final int weight;
+        final long expires;
+        int hits;
+
+        CachedEntry(Object value, int weight, long expires) {
+            this.value = value;
+            this.weight = weight;
+            this.expires = expires;
+        }
+    }
+
+    private class Region {
+        private final CacheSettings settings;
+        // access order gives LRU iteration, for LFU the hit counts decide
+        private final LinkedHashMap<Serializable, CachedEntry> entries;
+        private long weight;
+
+        Region(CacheSettings settings) {
+            this.settings = settings;
+            this.entries = new LinkedHashMap<Serializable, CachedEntry>(16, 0.75f,
+                    settings.getEviction() == CacheSettings.EvictionPolicy.LRU);
+        }
+
+        synchronized Object get(Serializable key) {
+            final CachedEntry entry = entries.get(key);
+            if (entry == null) return null;
+
+            if (entry.expires > 0 && entry.expires < System.currentTimeMillis()) {
+                remove(key);
+                return null;
+            }
+            entry.hits++;
+            return entry.value;
+        }
+
+        synchronized void put(Serializable key, Object value) {
+            final long ttl = settings.getTimeToLive();
+            final CachedEntry entry = new CachedEntry(value, Math.max(1, weigher.weigh(value)),
+                    ttl > 0 ? System.currentTimeMillis() + ttl : 0);
+            final CachedEntry previous = entries.put(key, entry);
+            if (previous != null) {
+                weight -= previous.weight;
+            }
+            weight += entry.weight;
+            evictIfNecessary(key);
+        }
+
+        synchronized void remove(Serializable key) {
+            final CachedEntry previous = entries.remove(key);
+            if (previous != null) {
+                weight -= previous.weight;
+            }
+        }
+
+        synchronized int size() {
+            return entries.size();
+        }
+
+        private boolean isFull() {
+            return (settings.getMaxSize() > 0 && entries.size() > settings.getMaxSize()) ||
+                   (settings.getMaxWeight() > 0 && weight > settings.getMaxWeight());
+        }
+
+        private void evictIfNecessary(Serializable added) {
+            while (isFull() && entries.size() > 1) {
+                if (settings.getEviction() == CacheSettings.EvictionPolicy.LFU) {
+                    // the entry just added has no hits yet and must not be its own victim
+                    Serializable victim = null;
+                    int fewest = Integer.MAX_VALUE;
+                    for (Map.Entry<Serializable, CachedEntry> e : entries.entrySet()) {
+                        if (e.getValue().hits < fewest && !e.getKey().equals(added)) {
+                            fewest = e.getValue().hits;
+                            victim = e.getKey();
+                        }
+                    }
+                    remove(victim);
+                }
+                else {
+                    final Iterator<Map.Entry<Serializable, CachedEntry>> i = entries.entrySet().iterator();
+                    final CachedEntry eldest = i.next().getValue();
+                    i.remove();
+                    weight -= eldest.weight;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,67 @@
+/* Copyright (C) 2010 SpringSource
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.datastore.mapping.cache;
+
+import java.io.Serializable;
+
+/**
+ * A cache of native entries shared by all sessions of a datastore. Entries are grouped into regions by entity
+ * family and keyed by identifier. Implementations must be thread safe and must never hand out
+ * live objects, callers are responsible for copying entries on the way in and out.
+ *
+ * @author Graeme Rocher
+ * @since 1.0
+ */
+public interface SecondLevelCache {
+
+    /**
+     * Obtains a cached entry
+     *
+     * @param family The entity family
+     * @param key The identifier
+     * @return The entry or null if it is not cached or has expired
+     */
+    Object get(String family, Serializable key);
+
+    /**
+     * Caches an entry
+     *
+     * @param family The entity family
+     * @param key The identifier
+     * @param entry The native entry
+     * @param settings The settings of the entity, used when the region for the family is created
+     */
+    void put(String family, Serializable key, Object entry, CacheSettings settings);
+
+    /**
+     * Removes a single entry
+     *
+     * @param family The entity family
+     * @param key The identifier
+     */
+    void evict(String family, Serializable key);
+
+    /**
+     * Removes all entries of a family
+     *
+     * @param family The entity family
+     */
+    void clear(String family);
+
+    /**
+     * Removes all entries
+     */
+    void clear();
+}
@@ -0,0 +1,115 @@
+/* Copyright (C) 2010 SpringSource
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.datastore.mapping.collection;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.datastore.mapping.core.AbstractSession;
+import org.springframework.datastore.mapping.core.Session;
+import org.springframework.datastore.mapping.engine.AssociationIndexer;
+import org.springframework.datastore.mapping.engine.BatchAssociationIndexer;
+import org.springframework.datastore.mapping.engine.BatchFetchQueue;
+import org.springframework.datastore.mapping.model.types.Association;
+
+/**
+ * Initializes lazy collections. The pending collections of the same association are initialized together
+ * with a collection, see {@link BatchFetchQueue}. Their foreign keys are queried with a single call if the
+ * indexer supports it and their elements are retrieved with a single call.
+ *
+ * @author Graeme Rocher
+ * @since 1.0
+ */
+final class LazyCollectionLoader {
+
+    /**
+     * A collection initialized by the loader
+     */
+    interface LazyCollection {
+
+        boolean isInitialized();
+
+        AssociationIndexer getIndexer();
+
+        /**
+         * Initializes the collection with the given elements, skipping those that no longer exist
+         * @param elements The elements
+         */
+        void initialize(List elements);
+    }
+
+    private LazyCollectionLoader() {
+    }
+
+    static void register(Association association, Serializable associationKey, Session session, LazyCollection collection) {
+        final BatchFetchQueue queue = getBatchFetchQueue(association, session);
+        if (queue != null) {
+            queue.add(association, associationKey, collection);
+        }
+    }
+
+    static void initialize(Association association, Serializable associationKey, Session session, LazyCollection collection) {
+        final BatchFetchQueue queue = getBatchFetchQueue(association, session);
+        final Map<Serializable, Object> batch = queue == null ?
+                Collections.<Serializable, Object>singletonMap(associationKey, collection) :
+                queue.next(association, associationKey, collection);
+
+        Map<Serializable, LazyCollection> collections = new LinkedHashMap<Serializable, LazyCollection>();
+        for (Map.Entry<Serializable, Object> entry : batch.entrySet()) {
+            final LazyCollection other = (LazyCollection) entry.getValue();
+            if (other == collection || !other.isInitialized()) {
+                collections.put(entry.getKey(), other);
+            }
+        }
+
+        final AssociationIndexer indexer = collection.getIndexer();
+        Map<Serializable, List> foreignKeys;
+        if (collections.size() > 1 && indexer instanceof BatchAssociationIndexer) {
+            foreignKeys = ((BatchAssociationIndexer) indexer).queryAll(collections.keySet());
+        }
+        else {
+            foreignKeys = new HashMap<Serializable, List>();
+            for (Map.Entry<Serializable, LazyCollection> entry : collections.entrySet()) {
+                foreignKeys.put(entry.getKey(), entry.getValue().getIndexer().query(entry.getKey()));
+            }
+        }
+
+        List<Object> keys = new ArrayList<Object>();
+        for (Serializable owner : collections.keySet()) {
+            final List ownerKeys = foreignKeys.get(owner);
+            if (ownerKeys != null) keys.addAll(ownerKeys);
+        }
+        final List elements = keys.isEmpty() ? Collections.emptyList() :
+                session.retrieveAll(indexer.getIndexedEntity().getJavaClass(), keys);
+
+        int index = 0;
+        for (Map.Entry<Serializable, LazyCollection> entry : collections.entrySet()) {
+            final List ownerKeys = foreignKeys.get(entry.getKey());
+            final int size = ownerKeys == null ? 0 : ownerKeys.size();
+            entry.getValue().initialize(elements.subList(index, index + size));
+            index += size;
+        }
+    }
+
+    private static BatchFetchQueue getBatchFetchQueue(Association association, Session session) {
+        if (association == null || !(session instanceof AbstractSession)) return null;
+        return ((AbstractSession) session).getBatchFetchQueue();
+    }
+}
@@ -24,6 +24,7 @@ import java.util.ListIterator;
 
 import org.springframework.datastore.mapping.core.Session;
 import org.springframework.datastore.mapping.engine.AssociationIndexer;
+import org.springframework.datastore.mapping.model.types.Association;
 
 /**
  * A lazy loaded list
@@ -31,17 +32,33 @@ import org.springframework.datastore.mapping.engine.AssociationIndexer;
  * @author Graeme Rocher
  * @since 1.0
  */
-public class PersistentList extends ArrayList implements PersistentCollection{
+public class PersistentList extends ArrayList implements PersistentCollection, LazyCollectionLoader.LazyCollection {
 
     private boolean initialized;
     private Serializable associationKey;
     private Session session;
     private AssociationIndexer indexer;
+    private Association association;
 
     public PersistentList(Serializable associationKey, Session session, AssociationIndexer indexer) {
+        this(null, associationKey, session, indexer);
+    }
+
+    /**
+     * Creates a list that is initialized together with the other uninitialized collections of the association
+     * in the session, if the session supports batch fetching
+     *
+     * @param association The association
+     * @param associationKey The key of the owner
+     * @param session The session
+     * @param indexer The indexer of the association
+     */
+    public PersistentList(Association association, Serializable associationKey, Session session, AssociationIndexer indexer) {
+        this.association = association;
         this.associationKey = associationKey;
         this.session = session;
         this.indexer = indexer;
+        LazyCollectionLoader.register(association, associationKey, session, this);
     }
 
     public boolean isInitialized() {
@@ -201,8 +218,19 @@ public class PersistentList extends ArrayList implements PersistentCollection{
     public void initialize() {
         if (!initialized) {
             initialized = true;
-            List results = indexer.query(associationKey);
-            addAll( session.retrieveAll(indexer.getIndexedEntity().getJavaClass(), results) );
+            LazyCollectionLoader.initialize(association, associationKey, session, this);
         }
     }
+
+    public void initialize(List elements) {
+        initialized = true;
+        for (Object o : elements) {
+            // skip index entries whose entity no longer exists
+            if (o != null) add(o);
+        }
+    }
+
+    public AssociationIndexer getIndexer() {
+        return indexer;
+    }
 }
@@ -15,15 +15,29 @@
 
 package org.springframework.datastore.mapping.core;
 
+import java.io.Serializable;
+import java.util.LinkedList;
 import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.springframework.datastore.mapping.transactions.SessionHolder;
 import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.util.Assert;
 
 public abstract class AbstractAttributeStoringSession implements Session{
 
     protected Map<Object, Map<String, Object>> attributes = new ConcurrentHashMap<Object, Map<String, Object>>();
+    private final Queue<AsyncOperation<?>> asyncOperations = new LinkedList<AsyncOperation<?>>();
+    private boolean executingAsyncOperations;
+    private final AtomicInteger pendingAsyncOperations = new AtomicInteger();
+    private volatile Thread asyncOperationsThread;
 
     public void setAttribute(Object entity, String attributeName, Object value) {
         if (entity != null) {
@@ -50,11 +64,154 @@ public abstract class AbstractAttributeStoringSession implements Session{
         return null;
     }
 
+    public <T> Future<T> retrieveAsync(final Class<T> type, final Serializable key) {
+        return executeAsync(new Callable<T>() {
+            public T call() {
+                return retrieve(type, key);
+            }
+        });
+    }
+
+    public Future<Object> flushAsync() {
+        return executeAsync(new Callable<Object>() {
+            public Object call() {
+                flush();
+                return null;
+            }
+        });
+    }
+
+    public <T> Future<T> executeAsync(final Callable<T> callable) {
+        Assert.notNull(callable, "Argument [callable] cannot be null");
+
+        final Datastore datastore = getDatastore();
+        final AsyncOperation<T> operation = new AsyncOperation<T>(new Callable<T>() {
+            public T call() throws Exception {
+                final boolean bind = TransactionSynchronizationManager.getResource(datastore) == null;
+                if (bind) {
+                    TransactionSynchronizationManager.bindResource(datastore, new SessionHolder(AbstractAttributeStoringSession.this));
+                }
+                try {
+                    return callable.call();
+                }
+                finally {
+                    if (bind) {
+                        TransactionSynchronizationManager.unbindResource(datastore);
+                    }
+                }
+            }
+        });
+
+        if (!(datastore instanceof AbstractDatastore)) {
+            // no executor to hand the operation to
+            operation.run();
+            return operation;
+        }
+
+        operation.pending();
+        synchronized (asyncOperations) {
+            asyncOperations.add(operation);
+            if (executingAsyncOperations) {
+                // picked up by the thread executing the earlier operations of this session
+                return operation;
+            }
+            executingAsyncOperations = true;
+        }
+
+        final Executor executor = ((AbstractDatastore) datastore).getAsyncExecutor();
+        try {
+            executor.execute(new Runnable() {
+                public void run() {
+                    executeAsyncOperations();
+                }
+            });
+        }
+        catch (RuntimeException e) {
+            synchronized (asyncOperations) {
+                asyncOperations.remove(operation);
+                executingAsyncOperations = false;
+            }
+            operation.completed();
+            throw e;
+        }
+        return operation;
+    }
+
+    private void executeAsyncOperations() {
+        asyncOperationsThread = Thread.currentThread();
+        while (true) {
+            final AsyncOperation<?> operation;
+            synchronized (asyncOperations) {
+                operation = asyncOperations.poll();
+                if (operation == null) {
+                    asyncOperationsThread = null;
+                    executingAsyncOperations = false;
+                    return;
+                }
+            }
+            // a FutureTask never throws, failures are reported by its future
+            operation.run();
+            // an operation cancelled before it started never completes by itself
+            operation.completed();
+        }
+    }
+
+    /**
+     * Fails fast if the session is used whilst operations submitted with {@link #executeAsync(Callable)} are
+     * pending, unless by the thread executing them. A session is not thread-safe and these operations
+     * would otherwise use it concurrently with the calling thread.
+     *
+     * @throws IllegalStateException If any asynchronous operation of this session has not completed
+     */
+    protected void assertNoPendingAsyncOperations() {
+        if (pendingAsyncOperations.get() > 0 && Thread.currentThread() != asyncOperationsThread) {
+            throw new IllegalStateException("Cannot use session whilst " + pendingAsyncOperations.get() +
+                    " of its asynchronous operations are pending. Wait for their futures to complete first");
+        }
+    }
+
+    /**
+     * An asynchronous operation that counts as pending until its result is set, which is before the
+     * threads waiting for its future are released
+     */
+    private class AsyncOperation<T> extends FutureTask<T> {
+        private final AtomicBoolean pending = new AtomicBoolean();
+
+        AsyncOperation(Callable<T> callable) {
+            super(callable);
+        }
+
+        void pending() {
+            if (pending.compareAndSet(false, true)) {
+                pendingAsyncOperations.incrementAndGet();
+            }
+        }
+
+        void completed() {
+            if (pending.compareAndSet(true, false)) {
+                pendingAsyncOperations.decrementAndGet();
+            }
+        }
+
+        @Override
+        protected void set(T result) {
+            completed();
+            super.set(result);
+        }
+
+        @Override
+        protected void setException(Throwable t) {
+            completed();
+            super.setException(t);
+        }
+    }
+
     /**
      * Performs clear up. Subclasses should always call into this super
      * implementation.
      */
     public void disconnect() {
+        assertNoPendingAsyncOperations();
         clear();
         attributes.clear();
         SessionHolder sessionHolder = (SessionHolder) TransactionSynchronizationManager.getResource(getDatastore());
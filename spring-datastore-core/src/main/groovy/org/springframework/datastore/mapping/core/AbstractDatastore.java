@@ -14,19 +14,34 @@
  */
 package org.springframework.datastore.mapping.core;
 
+import static org.springframework.datastore.mapping.config.utils.ConfigUtils.read;
+
+import java.nio.charset.Charset;
+import java.security.SecureRandom;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.core.convert.converter.ConverterRegistry;
+import org.springframework.datastore.mapping.cache.LocalSecondLevelCache;
+import org.springframework.datastore.mapping.cache.SecondLevelCache;
 import org.springframework.datastore.mapping.config.Property;
 import org.springframework.datastore.mapping.engine.EntityInterceptor;
 import org.springframework.datastore.mapping.engine.EntityInterceptorAware;
+import org.springframework.datastore.mapping.engine.EntityPersistencePlan;
 import org.springframework.datastore.mapping.model.MappingContext;
+import org.springframework.datastore.mapping.model.PersistentEntity;
 import org.springframework.datastore.mapping.model.PersistentProperty;
 import org.springframework.datastore.mapping.model.PropertyMapping;
 import org.springframework.datastore.mapping.model.types.BasicTypeConverterRegistrar;
+import org.springframework.datastore.mapping.query.QueryCache;
 import org.springframework.datastore.mapping.transactions.SessionHolder;
 import org.springframework.datastore.mapping.validation.ValidatingInterceptor;
 import org.springframework.transaction.support.TransactionSynchronizationManager;
@@ -37,11 +52,48 @@ import org.springframework.transaction.support.TransactionSynchronizationManager
  * @author Graeme Rocher
  * @since 1.0
  */
-public abstract class AbstractDatastore implements Datastore, EntityInterceptorAware {
+public abstract class AbstractDatastore implements Datastore, EntityInterceptorAware, DisposableBean {
+
+    /**
+     * Connection detail setting the number of pending operations that triggers a write-behind flush
+     */
+    public static final String CONFIG_MAX_PENDING_OPERATIONS = "maxPendingOperations";
+    /**
+     * Connection detail setting the estimated size in bytes of pending operations that triggers a write-behind flush
+     */
+    public static final String CONFIG_MAX_PENDING_BYTES = "maxPendingBytes";
+    /**
+     * Connection detail setting the number of operations per entity written by a write-behind flush
+     */
+    public static final String CONFIG_FLUSH_BATCH_SIZE = "flushBatchSize";
+    /**
+     * Connection detail setting the number of threads used to flush independent entities concurrently
+     */
+    public static final String CONFIG_FLUSH_THREADS = "flushThreads";
+    /**
+     * Connection detail setting the number of threads executing the asynchronous operations of sessions
+     */
+    public static final String CONFIG_ASYNC_THREADS = "asyncThreads";
+    /**
+     * Connection detail setting the number of lazy associations of the same kind initialized together
+     */
+    public static final String CONFIG_BATCH_FETCH_SIZE = "batchFetchSize";
+    /**
+     * Connection detail setting the secret continuation tokens are signed with. Datastores sharing the secret,
+     * such as the nodes of a cluster, accept each other's tokens. Without it each datastore uses a random key.
+     */
+    public static final String CONFIG_CONTINUATION_TOKEN_SECRET = "continuationTokenSecret";
 
     protected MappingContext mappingContext;
     protected Map<String, String> connectionDetails = Collections.emptyMap();
     protected List<EntityInterceptor> interceptors = new ArrayList<EntityInterceptor>();
+    protected Map<PersistentEntity, EntityPersistencePlan> persistencePlans = new ConcurrentHashMap<PersistentEntity, EntityPersistencePlan>();
+    private ExecutorService flushExecutor;
+    private ExecutorService asyncExecutor;
+    private boolean asyncExecutorCreated;
+    private SecondLevelCache secondLevelCache = new LocalSecondLevelCache();
+    private QueryCache queryCache = new QueryCache();
+    private byte[] continuationTokenKey;
 
     public AbstractDatastore(MappingContext mappingContext) {
         this(mappingContext, null);
@@ -53,6 +105,57 @@ public abstract class AbstractDatastore implements Datastore, EntityInterceptorA
         addEntityInterceptor(new ValidatingInterceptor());
     }
 
+    /**
+     * The cache of native entries shared by all sessions of this datastore. Only entities that enable caching
+     * in their mapping are stored in it.
+     *
+     * @param secondLevelCache The cache or null to disable second level caching
+     */
+    public void setSecondLevelCache(SecondLevelCache secondLevelCache) {
+        this.secondLevelCache = secondLevelCache;
+    }
+
+    public SecondLevelCache getSecondLevelCache() {
+        return secondLevelCache;
+    }
+
+    /**
+     * The cache of results of queries marked as cacheable, shared by all sessions of this datastore.
+     *
+     * @param queryCache The cache or null to disable query caching
+     */
+    public void setQueryCache(QueryCache queryCache) {
+        this.queryCache = queryCache;
+    }
+
+    public QueryCache getQueryCache() {
+        return queryCache;
+    }
+
+    /**
+     * The key the continuation tokens of queries are signed with. Unless the key is set or the
+     * {@link #CONFIG_CONTINUATION_TOKEN_SECRET} connection detail is specified a random key is used.
+     *
+     * @param continuationTokenKey The key
+     */
+    public synchronized void setContinuationTokenKey(byte[] continuationTokenKey) {
+        this.continuationTokenKey = continuationTokenKey;
+    }
+
+    public synchronized byte[] getContinuationTokenKey() {
+        if (continuationTokenKey == null) {
+            final String secret = connectionDetails == null ? null : connectionDetails.get(CONFIG_CONTINUATION_TOKEN_SECRET);
+            if (secret != null && secret.length() > 0) {
+                continuationTokenKey = secret.getBytes(Charset.forName("UTF-8"));
+            }
+            else {
+                continuationTokenKey = new byte[32];
+                new SecureRandom().nextBytes(continuationTokenKey);
+            }
+        }
+        return continuationTokenKey;
+    }
+
     public void setConnectionDetails(Map<String, String> connectionDetails) {
         this.connectionDetails = connectionDetails;
     }
@@ -81,6 +184,7 @@ public abstract class AbstractDatastore implements Datastore, EntityInterceptorA
 
         if (session != null) {
             session.setEntityInterceptors(this.interceptors);
+            configureSession(session, connectionDetails);
             if (sessionHolder != null) {
                 sessionHolder.addSession(session);
             }
@@ -95,6 +199,99 @@ public abstract class AbstractDatastore implements Datastore, EntityInterceptorA
         return session;
     }
 
+    /**
+     * Applies the write-behind and batch fetch settings from the connection details to a newly created session
+     *
+     * @param session The session
+     * @param connectionDetails The connection details
+     */
+    protected void configureSession(Session session, @SuppressWarnings("hiding") Map<String, String> connectionDetails) {
+        if (session instanceof AbstractSession && connectionDetails != null) {
+            AbstractSession abstractSession = (AbstractSession) session;
+            abstractSession.setMaxPendingOperations(read(Integer.class, CONFIG_MAX_PENDING_OPERATIONS, connectionDetails, abstractSession.getMaxPendingOperations()));
+            abstractSession.setMaxPendingBytes(read(Long.class, CONFIG_MAX_PENDING_BYTES, connectionDetails, abstractSession.getMaxPendingBytes()));
+            abstractSession.setFlushBatchSize(read(Integer.class, CONFIG_FLUSH_BATCH_SIZE, connectionDetails, abstractSession.getFlushBatchSize()));
+            abstractSession.getBatchFetchQueue().setBatchSize(read(Integer.class, CONFIG_BATCH_FETCH_SIZE, connectionDetails, abstractSession.getBatchFetchQueue().getBatchSize()));
+            final int flushThreads = read(Integer.class, CONFIG_FLUSH_THREADS, connectionDetails, 0);
+            if (flushThreads > 0) {
+                abstractSession.setFlushExecutor(getFlushExecutor(flushThreads));
+            }
+        }
+    }
+
+    /**
+     * Returns the executor shared by all sessions of this datastore to flush independent entities
+     * concurrently, creating it on first use
+     *
+     * @param threads The maximum number of flush threads
+     * @return The executor
+     */
+    protected synchronized ExecutorService getFlushExecutor(int threads) {
+        if (flushExecutor == null) {
+            flushExecutor = Executors.newFixedThreadPool(threads, createThreadFactory("flush"));
+        }
+        return flushExecutor;
+    }
+
+    /**
+     * The executor of the asynchronous operations of the sessions of this datastore
+     *
+     * @param asyncExecutor The executor
+     * @see Session#executeAsync(java.util.concurrent.Callable)
+     */
+    public synchronized void setAsyncExecutor(ExecutorService asyncExecutor) {
+        this.asyncExecutor = asyncExecutor;
+        asyncExecutorCreated = false;
+    }
+
+    /**
+     * Returns the executor of the asynchronous operations of the sessions of this datastore. Unless one was set,
+     * it is created on first use with the number of threads of the {@link #CONFIG_ASYNC_THREADS} connection
+     * detail or, without it, with a thread per concurrently executing session as the operations wait on I/O.
+     *
+     * @return The executor
+     */
+    public synchronized ExecutorService getAsyncExecutor() {
+        if (asyncExecutor == null) {
+            final int threads = connectionDetails == null ? 0 : read(Integer.class, CONFIG_ASYNC_THREADS, connectionDetails, 0);
+            asyncExecutor = threads > 0 ?
+                    Executors.newFixedThreadPool(threads, createThreadFactory("async")) :
+                    Executors.newCachedThreadPool(createThreadFactory("async"));
+            asyncExecutorCreated = true;
+        }
+        return asyncExecutor;
+    }
+
+    /**
+     * Shuts down the executors created by this datastore, an executor set with
+     * {@link #setAsyncExecutor(ExecutorService)} is left to its owner. Subclasses releasing resources of their
+     * own should call this implementation.
+     */
+    public synchronized void destroy() throws Exception {
+        if (flushExecutor != null) {
+            flushExecutor.shutdown();
+            flushExecutor = null;
+        }
+        if (asyncExecutorCreated) {
+            asyncExecutor.shutdown();
+            asyncExecutor = null;
+            asyncExecutorCreated = false;
+        }
+    }
+
+    private ThreadFactory createThreadFactory(String name) {
+        final String prefix = getClass().getSimpleName() + "-" + name + "-";
+        return new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, prefix + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+    }
+
     /**
      * Creates the native session
      *
@@ -156,6 +353,16 @@ public abstract class AbstractDatastore implements Datastore, EntityInterceptorA
         return mappingContext;
     }
 
+    /**
+     * Obtains the persistence plans built by the persisters of this datastore. Plans depend only on
+     * the mapping so they are shared across sessions.
+     *
+     * @return The persistence plans keyed by entity
+     */
+    public Map<PersistentEntity, EntityPersistencePlan> getPersistencePlans() {
+        return persistencePlans;
+    }
+
     protected void initializeConverters(@SuppressWarnings("hiding") MappingContext mappingContext) {
         final ConverterRegistry conversionService = mappingContext.getConverterRegistry();
         BasicTypeConverterRegistrar registrar = new BasicTypeConverterRegistrar();
@@ -16,37 +16,52 @@ package org.springframework.datastore.mapping.core;
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.persistence.FlushModeType;
 
-import org.springframework.dao.DataAccessResourceFailureException;
 import org.springframework.dao.InvalidDataAccessResourceUsageException;
+import org.springframework.datastore.mapping.cache.SecondLevelCache;
+import org.springframework.datastore.mapping.core.impl.EntityEntry;
+import org.springframework.datastore.mapping.core.impl.FlushGroups;
 import org.springframework.datastore.mapping.core.impl.PendingInsert;
 import org.springframework.datastore.mapping.core.impl.PendingOperation;
 import org.springframework.datastore.mapping.core.impl.PendingOperationExecution;
 import org.springframework.datastore.mapping.core.impl.PendingUpdate;
+import org.springframework.datastore.mapping.engine.BatchFetchQueue;
 import org.springframework.datastore.mapping.engine.EntityInterceptor;
 import org.springframework.datastore.mapping.engine.EntityInterceptorAware;
 import org.springframework.datastore.mapping.engine.EntityPersister;
+import org.springframework.datastore.mapping.engine.NativeEntryEntityPersister;
 import org.springframework.datastore.mapping.engine.NonPersistentTypeException;
 import org.springframework.datastore.mapping.engine.Persister;
 import org.springframework.datastore.mapping.model.MappingContext;
 import org.springframework.datastore.mapping.model.PersistentEntity;
 import org.springframework.datastore.mapping.query.Query;
+import org.springframework.datastore.mapping.query.QueryCache;
+import org.springframework.datastore.mapping.transactions.SessionHolder;
 import org.springframework.datastore.mapping.transactions.Transaction;
 import org.springframework.transaction.NoTransactionException;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import org.springframework.util.Assert;
 
-import com.googlecode.concurrentlinkedhashmap.ConcurrentLinkedHashMap.Builder;
-import com.googlecode.concurrentlinkedhashmap.EvictionListener;
-
 /**
  * Abstract implementation of the {@link org.springframework.datastore.mapping.core.Session} interface that uses
  * a list of {@link org.springframework.datastore.mapping.engine.Persister} instances
@@ -56,16 +71,14 @@ import com.googlecode.concurrentlinkedhashmap.EvictionListener;
  * @since 1.0
  */
 public abstract class AbstractSession<N> extends AbstractAttributeStoringSession implements Session, SessionImplementor {
-    private static final EvictionListener<PersistentEntity, Collection<PendingInsert>> EXCEPTION_THROWING_INSERT_LISTENER = new EvictionListener<PersistentEntity, Collection<PendingInsert>>() {
-        public void onEviction(PersistentEntity key, Collection<PendingInsert> value) {
-            throw new DataAccessResourceFailureException("Maximum number (5000) of insert operations to flush() exceeded. Flush the session periodically to avoid this error for batch operations.");
-        }
-    };
-    private static final EvictionListener<PersistentEntity, Collection<PendingUpdate>> EXCEPTION_THROWING_UPDATE_LISTENER = new EvictionListener<PersistentEntity, Collection<PendingUpdate>>() {
-        public void onEviction(PersistentEntity key, Collection<PendingUpdate> value) {
-            throw new DataAccessResourceFailureException("Maximum number (5000) of update operations to flush() exceeded. Flush the session periodically to avoid this error for batch operations.");
-        }
-    };
+    /**
+     * The default number of queued inserts and updates that triggers a write-behind flush
+     */
+    public static final int DEFAULT_MAX_PENDING_OPERATIONS = 5000;
+    /**
+     * The default number of operations per entity written by each write-behind flush
+     */
+    public static final int DEFAULT_FLUSH_BATCH_SIZE = 1000;
 
     protected Map<Class,Persister> persisters = new ConcurrentHashMap<Class,Persister>();
     private MappingContext mappingContext;
@@ -76,18 +89,29 @@ public abstract class AbstractSession<N> extends AbstractAttributeStoringSession
     private FlushModeType flushMode = FlushModeType.AUTO;
     protected Map<Class, Map<Serializable, Object>> firstLevelCache = new ConcurrentHashMap<Class, Map<Serializable, Object>>();
     protected Map<Class, Map<Serializable, Object>> firstLevelEntryCache = new ConcurrentHashMap<Class, Map<Serializable, Object>>();
-
-    protected Map<Object, Serializable> objectToKey = new ConcurrentHashMap<Object, Serializable>();
-    private Map<PersistentEntity, Collection<PendingInsert>> pendingInserts = new Builder<PersistentEntity, Collection<PendingInsert>>()
-                                                                            .listener(EXCEPTION_THROWING_INSERT_LISTENER)
-                                                                            .maximumWeightedCapacity(5000).build();
-    private Map<PersistentEntity, Collection<PendingUpdate>> pendingUpdates = new Builder<PersistentEntity, Collection<PendingUpdate>>()
-                                                                            .listener(EXCEPTION_THROWING_UPDATE_LISTENER)
-                                                                            .maximumWeightedCapacity(5000).build();
+    protected Map<Class, Map<Serializable, Map<String, Object>>> firstLevelEntrySnapshots = new ConcurrentHashMap<Class, Map<Serializable, Map<String, Object>>>();
+
+    protected Map<Object, EntityEntry> entityEntries = Collections.synchronizedMap(new IdentityHashMap<Object, EntityEntry>());
+    // not cleared by clear() as the instances are not attached to the session in the first place
+    private Map<Object, Set<String>> partialInstances = Collections.synchronizedMap(new IdentityHashMap<Object, Set<String>>());
+    private Map<PersistentEntity, Collection<PendingInsert>> pendingInserts = new ConcurrentHashMap<PersistentEntity, Collection<PendingInsert>>();
+    private Map<PersistentEntity, Collection<PendingUpdate>> pendingUpdates = new ConcurrentHashMap<PersistentEntity, Collection<PendingUpdate>>();
+    private AtomicInteger pendingOperationCount = new AtomicInteger();
+    private AtomicLong pendingBytes = new AtomicLong();
+    private int maxPendingOperations = DEFAULT_MAX_PENDING_OPERATIONS;
+    private long maxPendingBytes = 0;
+    private int flushBatchSize = DEFAULT_FLUSH_BATCH_SIZE;
+    private boolean writingBehind;
+    private volatile boolean flushing;
+    private ExecutorService flushExecutor;
+    protected FlushStatistics flushStatistics = new FlushStatistics();
+    private final BatchFetchQueue batchFetchQueue = new BatchFetchQueue();
 
     protected Collection<Runnable> pendingDeletes = new ConcurrentLinkedQueue<Runnable>();
     protected Collection<Runnable> postFlushOperations = new ConcurrentLinkedQueue<Runnable>();
-    private boolean exceptionOccurred;
+    private volatile boolean exceptionOccurred;
+    private Map<String, Set<Serializable>> committedEvictions = new ConcurrentHashMap<String, Set<Serializable>>();
+    private Map<PersistentEntity, Boolean> committedWrites = new ConcurrentHashMap<PersistentEntity, Boolean>();
 
     public AbstractSession(Datastore datastore,MappingContext mappingContext) {
         this.mappingContext = mappingContext;
@@ -111,6 +135,7 @@ public abstract class AbstractSession<N> extends AbstractAttributeStoringSession
         }
 
         inserts.add(insert);
+        pendingOperationAdded(insert);
     }
 
     public void addPendingUpdate(PendingUpdate update) {
@@ -121,6 +146,207 @@ public abstract class AbstractSession<N> extends AbstractAttributeStoringSession
         }
 
         inserts.add(update);
+        pendingOperationAdded(update);
+    }
+
+    /**
+     * The number of queued inserts and updates at which the oldest operations are written to the
+     * datastore without waiting for flush(). A value of 0 or less disables the threshold.
+     *
+     * @param maxPendingOperations The maximum number of pending operations
+     */
+    public void setMaxPendingOperations(int maxPendingOperations) {
+        this.maxPendingOperations = maxPendingOperations;
+    }
+
+    public int getMaxPendingOperations() {
+        return maxPendingOperations;
+    }
+
+    /**
+     * The estimated size in bytes of the queued inserts and updates at which the oldest operations are
+     * written to the datastore without waiting for flush(). A value of 0 or less disables the threshold.
+     *
+     * @param maxPendingBytes The maximum estimated size of pending operations
+     * @see #estimateSize(PendingOperation)
+     */
+    public void setMaxPendingBytes(long maxPendingBytes) {
+        this.maxPendingBytes = maxPendingBytes;
+    }
+
+    public long getMaxPendingBytes() {
+        return maxPendingBytes;
+    }
+
+    /**
+     * The number of operations per entity written each time a threshold is exceeded. Smaller batches
+     * keep the calling thread blocked for a shorter time, larger batches make better use of bulk writes.
+     *
+     * @param flushBatchSize The batch size
+     */
+    public void setFlushBatchSize(int flushBatchSize) {
+        this.flushBatchSize = flushBatchSize;
+    }
+
+    public int getFlushBatchSize() {
+        return flushBatchSize;
+    }
+
+    /**
+     * Sets the executor used to flush independent groups of entities concurrently. Entities are independent
+     * if they share no inheritance hierarchy and no association path. Only used if the session
+     * supports concurrent flushing, otherwise entities are always flushed one after the other.
+     *
+     * @param flushExecutor The executor or null to flush serially
+     * @see #supportsConcurrentFlush()
+     */
+    public void setFlushExecutor(ExecutorService flushExecutor) {
+        this.flushExecutor = flushExecutor;
+    }
+
+    public ExecutorService getFlushExecutor() {
+        return flushExecutor;
+    }
+
+    /**
+     * @return The lazy associations of this session that are initialized together
+     */
+    public BatchFetchQueue getBatchFetchQueue() {
+        return batchFetchQueue;
+    }
+
+    /**
+     * Whether the pending inserts and updates of different entities can be written from different
+     * threads at the same time. Sessions that hold a single, non thread-safe connection must return false.
+     *
+     * @return True if concurrent flushing is supported
+     */
+    protected boolean supportsConcurrentFlush() {
+        return false;
+    }
+
+    /**
+     * @return The number of operations flushed and the time spent flushing them per entity
+     */
+    public FlushStatistics getFlushStatistics() {
+        return flushStatistics;
+    }
+
+    /**
+     * Estimates the memory held by a pending operation. Used only when a byte threshold is configured.
+     *
+     * @param operation The operation
+     * @return The estimated size in bytes
+     */
+    @SuppressWarnings("rawtypes")
+    protected long estimateSize(PendingOperation operation) {
+        final Object entry = operation.getNativeEntry();
+        if (entry instanceof Map) {
+            long size = 64;
+            for (Object o : ((Map) entry).entrySet()) {
+                Map.Entry e = (Map.Entry) o;
+                size += 32 + 2 * (String.valueOf(e.getKey()).length() + String.valueOf(e.getValue()).length());
+            }
+            return size;
+        }
+        return 512;
+    }
+
+    @SuppressWarnings("rawtypes")
+    private void pendingOperationAdded(PendingOperation operation) {
+        pendingOperationCount.incrementAndGet();
+        if (maxPendingBytes > 0) {
+            pendingBytes.addAndGet(estimateSize(operation));
+        }
+        if (isWriteBehindThresholdExceeded()) {
+            writeBehind();
+        }
+    }
+
+    private boolean isWriteBehindThresholdExceeded() {
+        return (maxPendingOperations > 0 && pendingOperationCount.get() > maxPendingOperations) ||
+               (maxPendingBytes > 0 && pendingBytes.get() > maxPendingBytes);
+    }
+
+    /**
+     * Writes the oldest batch of pending operations of each entity until the session is back under the
+     * configured thresholds. Inserts are written before any updates. The calling thread performs the
+     * writes, which throttles producers that queue operations faster than the datastore accepts them.
+     * Nothing is written while a flush is in progress, the flush writes the operations queued meanwhile.
+     */
+    protected void writeBehind() {
+        if (writingBehind || flushing || exceptionOccurred) return;
+
+        writingBehind = true;
+        try {
+            while (isWriteBehindThresholdExceeded()) {
+                int flushed = 0;
+                for (PersistentEntity entity : pendingInserts.keySet()) {
+                    final List<PendingInsert> batch = pollBatch(pendingInserts.get(entity));
+                    if (!batch.isEmpty()) {
+                        long start = System.nanoTime();
+                        flushPendingInserts(Collections.<PersistentEntity, Collection<PendingInsert>>singletonMap(entity, batch));
+                        operationsFlushed(entity, batch, System.nanoTime() - start);
+                        flushed += batch.size();
+                    }
+                }
+                if (flushed == 0) {
+                    for (PersistentEntity entity : pendingUpdates.keySet()) {
+                        final List<PendingUpdate> batch = pollBatch(pendingUpdates.get(entity));
+                        if (!batch.isEmpty()) {
+                            long start = System.nanoTime();
+                            flushPendingUpdates(Collections.<PersistentEntity, Collection<PendingUpdate>>singletonMap(entity, batch));
+                            operationsFlushed(entity, batch, System.nanoTime() - start);
+                            flushed += batch.size();
+                        }
+                    }
+                }
+                if (flushed == 0) break;
+            }
+            if (!isTransactionActive()) {
+                afterCommit();
+            }
+        }
+        catch (RuntimeException e) {
+            exceptionOccurred = true;
+            throw e;
+        }
+        finally {
+            writingBehind = false;
+        }
+    }
+
+    private <T> List<T> pollBatch(Collection<T> pending) {
+        if (pending == null) return Collections.emptyList();
+
+        final int size = flushBatchSize > 0 ? flushBatchSize : Integer.MAX_VALUE;
+        List<T> batch = new ArrayList<T>();
+        final Iterator<T> i = pending.iterator();
+        while (i.hasNext() && batch.size() < size) {
+            batch.add(i.next());
+            i.remove();
+        }
+        return batch;
+    }
+
+    @SuppressWarnings("rawtypes")
+    private void operationsFlushed(PersistentEntity entity, Collection<? extends PendingOperation> operations, long timeNanos) {
+        flushStatistics.record(entity, operations.size(), timeNanos);
+        invalidateQueryCache(entity);
+        pendingOperationCount.addAndGet(-operations.size());
+        if (maxPendingBytes > 0) {
+            for (PendingOperation operation : operations) {
+                pendingBytes.addAndGet(-estimateSize(operation));
+            }
+        }
+    }
+
+    private void resetPendingCounters() {
+        int count = 0;
+        for (Collection<PendingInsert> inserts : pendingInserts.values()) count += inserts.size();
+        for (Collection<PendingUpdate> updates : pendingUpdates.values()) count += updates.size();
+        pendingOperationCount.set(count);
+        if (count == 0) pendingBytes.set(0);
     }
     public Object getCachedEntry(PersistentEntity entity, Serializable key) {
         if (key != null) {
@@ -134,7 +360,7 @@ public abstract class AbstractSession<N> extends AbstractAttributeStoringSession
 
     public void cacheEntry(PersistentEntity entity, Serializable key, Object entry) {
         if (key != null && entry != null) {
-            Map<Serializable, Object> cache = firstLevelEntryCache.get(entity);
+            Map<Serializable, Object> cache = firstLevelEntryCache.get(entity.getJavaClass());
             if (cache == null) {
                 cache = new ConcurrentHashMap<Serializable,Object>();
                 firstLevelEntryCache.put(entity.getJavaClass(), cache);
@@ -143,6 +369,40 @@ public abstract class AbstractSession<N> extends AbstractAttributeStoringSession
         }
     }
 
+    @SuppressWarnings({ "rawtypes", "unchecked" })
+    public void registerPartialInstance(Object instance, Set propertyNames) {
+        if (instance != null && propertyNames != null) {
+            partialInstances.put(instance, Collections.unmodifiableSet(new HashSet<String>(propertyNames)));
+        }
+    }
+
+    @SuppressWarnings("rawtypes")
+    public Set getPartialProperties(Object instance) {
+        return instance != null ? partialInstances.get(instance) : null;
+    }
+
+    public Map<String, Object> getEntrySnapshot(PersistentEntity entity, Serializable key) {
+        if (key != null) {
+            final Map<Serializable, Map<String, Object>> map = firstLevelEntrySnapshots.get(entity.getJavaClass());
+            if (map != null) {
+                return map.get(key);
+            }
+        }
+        return null;
+    }
+
+    @SuppressWarnings({ "rawtypes", "unchecked" })
+    public void cacheEntrySnapshot(PersistentEntity entity, Serializable key, Map snapshot) {
+        if (key != null && snapshot != null) {
+            Map<Serializable, Map<String, Object>> snapshots = firstLevelEntrySnapshots.get(entity.getJavaClass());
+            if (snapshots == null) {
+                snapshots = new ConcurrentHashMap<Serializable, Map<String, Object>>();
+                firstLevelEntrySnapshots.put(entity.getJavaClass(), snapshots);
+            }
+            snapshots.put(key, snapshot);
+        }
+    }
+
     public Map<PersistentEntity, Collection<PendingInsert>> getPendingInserts() {
         return pendingInserts;
     }
@@ -182,23 +442,150 @@ public abstract class AbstractSession<N> extends AbstractAttributeStoringSession
     }
 
     public void flush() {
-        if (!exceptionOccurred) {
-            boolean hasInserts = hasUpdates();
-            if (hasInserts) {
-                flushPendingInserts(pendingInserts);
-                pendingInserts.clear();
-                flushPendingUpdates(pendingUpdates);
-                pendingUpdates.clear();
-                executePendings(pendingDeletes);
-                executePendings(postFlushOperations);
-                postFlush(hasInserts);
+        assertNoPendingAsyncOperations();
+        if (exceptionOccurred) {
+            throw new InvalidDataAccessResourceUsageException("Do not flush() the Session after an exception occurs");
+        }
+        // an interceptor or cascade may flush while a flush is in progress, the outer flush writes everything
+        if (flushing) return;
+
+        boolean hasInserts = hasUpdates();
+        if (!hasInserts) return;
+
+        flushing = true;
+        try {
+            // operations queued while flushing, by cascades or interceptors, are written by the same flush
+            while (!pendingInserts.isEmpty() || !pendingUpdates.isEmpty()) {
+                Set<PersistentEntity> entities = new HashSet<PersistentEntity>(pendingInserts.keySet());
+                entities.addAll(pendingUpdates.keySet());
+                final List<List<PersistentEntity>> groups = FlushGroups.group(entities);
+                if (groups.size() > 1 && flushExecutor != null && supportsConcurrentFlush()) {
+                    flushGroupsConcurrently(groups);
+                }
+                else {
+                    flushGroups(groups);
+                }
             }
+            resetPendingCounters();
+            executePendings(pendingDeletes);
+            executePendings(postFlushOperations);
         }
-        else {
-            throw new InvalidDataAccessResourceUsageException("Do not flush() the Session after an exception occurs");
+        finally {
+            flushing = false;
+        }
+        postFlush(hasInserts);
+        if (!isTransactionActive()) {
+            afterCommit();
+        }
+    }
+
+    /**
+     * Writes the pending inserts and updates of the given groups of entities one group after the other. Subclasses
+     * can override this method to send all the writes of a flush to the datastore in a single batch.
+     *
+     * @param groups The groups of entities to flush
+     */
+    protected void flushGroups(List<List<PersistentEntity>> groups) {
+        for (List<PersistentEntity> group : groups) {
+            flushGroup(group);
+        }
+    }
+
+    private void flushGroupsConcurrently(List<List<PersistentEntity>> groups) {
+        List<Future<Object>> futures = new ArrayList<Future<Object>>();
+        for (final List<PersistentEntity> group : groups) {
+            futures.add(flushExecutor.submit(new Callable<Object>() {
+                public Object call() {
+                    // make the session available to interceptors and persisters running on the flush thread
+                    final boolean bound = !TransactionSynchronizationManager.hasResource(datastore);
+                    if (bound) {
+                        TransactionSynchronizationManager.bindResource(datastore, new SessionHolder(AbstractSession.this));
+                    }
+                    try {
+                        flushGroupOnFlushThread(group);
+                    }
+                    finally {
+                        if (bound) {
+                            TransactionSynchronizationManager.unbindResource(datastore);
+                        }
+                    }
+                    return null;
+                }
+            }));
+        }
+
+        List<Throwable> failures = new ArrayList<Throwable>();
+        for (Future<Object> future : futures) {
+            try {
+                future.get();
+            } catch (ExecutionException e) {
+                failures.add(e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                failures.add(e);
+            }
+        }
+
+        if (!failures.isEmpty()) {
+            exceptionOccurred = true;
+            final Throwable failure = failures.get(0);
+            if (failures.size() == 1 && failure instanceof RuntimeException) {
+                throw (RuntimeException) failure;
+            }
+            throw new ConcurrentFlushException(failures);
         }
     }
 
+    /**
+     * Writes a group of entities on a thread of the flush executor. Subclasses whose connections are bound
+     * to threads can override this to obtain and release a connection around the writes of the group.
+     *
+     * @param group The entities of the group
+     */
+    protected void flushGroupOnFlushThread(List<PersistentEntity> group) {
+        flushGroup(group);
+    }
+
+    private void flushGroup(List<PersistentEntity> group) {
+        for (PersistentEntity entity : group) {
+            final Collection<PendingInsert> inserts = pendingInserts.remove(entity);
+            if (inserts != null && !inserts.isEmpty()) {
+                long start = System.nanoTime();
+                flushPendingInserts(Collections.singletonMap(entity, inserts));
+                flushStatistics.record(entity, inserts.size(), System.nanoTime() - start);
+                invalidateQueryCache(entity);
+            }
+        }
+        for (PersistentEntity entity : group) {
+            final Collection<PendingUpdate> updates = pendingUpdates.remove(entity);
+            if (updates != null && !updates.isEmpty()) {
+                long start = System.nanoTime();
+                flushPendingUpdates(Collections.singletonMap(entity, updates));
+                flushStatistics.record(entity, updates.size(), System.nanoTime() - start);
+                invalidateQueryCache(entity);
+            }
+        }
+    }
+
+    private void invalidateQueryCache(Persister persister) {
+        if (persister instanceof EntityPersister) {
+            invalidateQueryCache(((EntityPersister) persister).getPersistentEntity());
+        }
+    }
+
+    private void invalidateQueryCache(PersistentEntity entity) {
+        final QueryCache queryCache = getQueryCache();
+        if (queryCache != null) {
+            queryCache.invalidate(entity);
+            // a query of another session may cache the old results until the write is committed
+            committedWrites.put(entity, Boolean.TRUE);
+        }
+    }
+
+    private QueryCache getQueryCache() {
+        return datastore instanceof AbstractDatastore ? ((AbstractDatastore) datastore).getQueryCache() : null;
+    }
+
     /**
      * The default implementation of flushPendingUpdates is to iterate over each update operation and execute them one by one.
      * This may be suboptimal for stores that support batch update operations. Subclasses can override this method to implement
@@ -247,6 +634,57 @@ public abstract class AbstractSession<N> extends AbstractAttributeStoringSession
         // do nothing
     }
 
+    // evicting only while flushing leaves a window in which another session can reload the old entry and cache it again
+    public void evictAfterCommit(String family, Serializable key) {
+        if (family == null || key == null) return;
+
+        Set<Serializable> keys = committedEvictions.get(family);
+        if (keys == null) {
+            synchronized (committedEvictions) {
+                keys = committedEvictions.get(family);
+                if (keys == null) {
+                    keys = Collections.synchronizedSet(new HashSet<Serializable>());
+                    committedEvictions.put(family, keys);
+                }
+            }
+        }
+        keys.add(key);
+    }
+
+    /**
+     * Called once the writes of the session are visible to other sessions, after a flush outside of
+     * a transaction or when the transaction completes
+     */
+    protected void afterCommit() {
+        final SecondLevelCache cache = datastore instanceof AbstractDatastore ?
+                ((AbstractDatastore) datastore).getSecondLevelCache() : null;
+        for (Iterator<Map.Entry<String, Set<Serializable>>> i = committedEvictions.entrySet().iterator(); i.hasNext();) {
+            final Map.Entry<String, Set<Serializable>> entry = i.next();
+            i.remove();
+            if (cache == null) continue;
+
+            final Set<Serializable> keys = entry.getValue();
+            synchronized (keys) {
+                for (Serializable key : keys) {
+                    cache.evict(entry.getKey(), key);
+                }
+            }
+        }
+
+        final QueryCache queryCache = getQueryCache();
+        for (Iterator<PersistentEntity> i = committedWrites.keySet().iterator(); i.hasNext();) {
+            final PersistentEntity entity = i.next();
+            i.remove();
+            if (queryCache != null) {
+                queryCache.invalidate(entity);
+            }
+        }
+    }
+
+    private boolean isTransactionActive() {
+        return transaction != null && transaction.isActive();
+    }
+
     private void executePendings(Collection<Runnable> pendings) {
         try {
             for (Runnable pendingInsert : pendings) {
@@ -260,19 +698,32 @@ public abstract class AbstractSession<N> extends AbstractAttributeStoringSession
     }
 
     public void clear() {
+        assertNoPendingAsyncOperations();
         for (Map<Serializable, Object> cache : firstLevelCache.values()) {
             cache.clear();
         }
         for (Map<Serializable, Object> cache : firstLevelEntryCache.values()) {
             cache.clear();
         }
+        for (Map<Serializable, Map<String, Object>> snapshots : firstLevelEntrySnapshots.values()) {
+            snapshots.clear();
+        }
+        entityEntries.clear();
         pendingInserts.clear();
         pendingUpdates.clear();
         pendingDeletes.clear();
+        resetPendingCounters();
         attributes.clear();
+        batchFetchQueue.clear();
         exceptionOccurred = false;
     }
 
+    @Override
+    public void disconnect() {
+        super.disconnect();
+        partialInstances.clear();
+    }
+
     public final Persister getPersister(Object o) {
         if (o == null) return null;
         Class cls;
@@ -287,13 +738,21 @@ public abstract class AbstractSession<N> extends AbstractAttributeStoringSession
         }
         Persister p = persisters.get(cls);
         if (p == null) {
-            p = createPersister(cls, getMappingContext());
-            firstLevelCache.put(cls, new ConcurrentHashMap<Serializable, Object>());
-            if (p instanceof EntityInterceptorAware) {
-                ((EntityInterceptorAware)p).setEntityInterceptors(interceptors);
+            // flush threads look up persisters concurrently
+            synchronized (persisters) {
+                p = persisters.get(cls);
+                if (p == null) {
+                    p = createPersister(cls, getMappingContext());
+                    if (!firstLevelCache.containsKey(cls)) {
+                        firstLevelCache.put(cls, new ConcurrentHashMap<Serializable, Object>());
+                    }
+                    if (p instanceof EntityInterceptorAware) {
+                        ((EntityInterceptorAware)p).setEntityInterceptors(interceptors);
+                    }
+                    if (p != null)
+                        persisters.put(cls, p);
+                }
             }
-            if (p != null)
-                persisters.put(cls, p);
         }
         return p;
     }
@@ -302,24 +761,32 @@ public abstract class AbstractSession<N> extends AbstractAttributeStoringSession
     protected abstract Persister createPersister(Class cls, MappingContext mappingContext);
 
     public boolean contains(Object o) {
-        if (o != null) {
-            final Map<Serializable, Object> cache = firstLevelCache.get(o.getClass());
-            if (cache != null && cache.containsValue(o)) {
-                return true;
-            }
-        }
-        return false;
+        return o != null && entityEntries.containsKey(o);
+    }
+
+    /**
+     * Returns the state the session holds for the given instance
+     *
+     * @param o The instance
+     * @return The entry or null if the instance is not managed by this session
+     */
+    public EntityEntry getEntityEntry(Object o) {
+        return o == null ? null : entityEntries.get(o);
     }
 
     public void clear(Object o) {
         if (o != null) {
-            final Map<Serializable, Object> cache = firstLevelCache.get(o.getClass());
-            if (cache != null) {
-
-                Serializable key = objectToKey.get(o);
-                if (key != null) {
+            final EntityEntry entry = entityEntries.remove(o);
+            if (entry != null) {
+                final Serializable key = entry.getKey();
+                final Map<Serializable, Object> cache = firstLevelCache.get(o.getClass());
+                // only evict the key if it still maps to this very instance
+                if (cache != null && cache.get(key) == o) {
                     cache.remove(key);
-                    objectToKey.remove(o);
+                }
+                final Map<Serializable, Map<String, Object>> snapshots = firstLevelEntrySnapshots.get(o.getClass());
+                if (snapshots != null) {
+                    snapshots.remove(key);
                 }
             }
 
@@ -328,6 +795,7 @@ public abstract class AbstractSession<N> extends AbstractAttributeStoringSession
     }
 
     public void attach(Object o) {
+        assertNoPendingAsyncOperations();
         if (o != null) {
             EntityPersister p = (EntityPersister) getPersister(o);
 
@@ -341,29 +809,41 @@ public abstract class AbstractSession<N> extends AbstractAttributeStoringSession
     }
 
     protected void cacheObject(Serializable identifier, Object o) {
+        cacheObject(identifier, o, EntityEntry.Status.LOADED);
+    }
+
+    private void cacheObject(Serializable identifier, Object o, EntityEntry.Status status) {
         if (identifier != null && o != null) {
             Map<Serializable, Object> cache = firstLevelCache.get(o.getClass());
             if (cache == null) {
                 cache = new ConcurrentHashMap<Serializable, Object>();
                 firstLevelCache.put(o.getClass(), cache);
             }
-            objectToKey.put(o, identifier);
+            final EntityEntry entry = entityEntries.get(o);
+            if (entry == null) {
+                entityEntries.put(o, new EntityEntry(getMappingContext().getPersistentEntity(o.getClass().getName()), identifier, status));
+            }
+            else {
+                entry.setKey(identifier);
+            }
             cache.put(identifier, o);
         }
     }
 
     public Serializable persist(Object o) {
+        assertNoPendingAsyncOperations();
         Assert.notNull(o, "Cannot persist null object");
         Persister persister = getPersister(o);
         if (persister != null) {
             final Serializable key = persister.persist(o);
-            cacheObject(key, o);
+            cacheObject(key, o, EntityEntry.Status.PERSISTED);
             return key;
         }
         throw new NonPersistentTypeException("Object ["+o+"] cannot be persisted. It is not a known persistent type.");
     }
 
     public void refresh(Object o) {
+        assertNoPendingAsyncOperations();
         Assert.notNull(o, "Cannot persist null object");
         Persister persister = getPersister(o);
         if (persister != null) {
@@ -374,6 +854,7 @@ public abstract class AbstractSession<N> extends AbstractAttributeStoringSession
     }
 
     public Object retrieve(Class type, Serializable key) {
+        assertNoPendingAsyncOperations();
         if (key == null || type == null) return null;
         Persister persister = getPersister(type);
         if (persister != null) {
@@ -395,7 +876,37 @@ public abstract class AbstractSession<N> extends AbstractAttributeStoringSession
         throw new NonPersistentTypeException("Cannot retrieve object with key ["+key+"]. The class ["+type+"] is not a known persistent type.");
     }
 
+    public Object retrieve(Class type, Serializable key, String... propertyNames) {
+        assertNoPendingAsyncOperations();
+        if (propertyNames == null || propertyNames.length == 0) return retrieve(type, key);
+        if (key == null || type == null) return null;
+
+        Persister persister = getPersister(type);
+        if (persister == null) {
+            throw new NonPersistentTypeException("Cannot retrieve object with key ["+key+"]. The class ["+type+"] is not a known persistent type.");
+        }
+
+        final PersistentEntity entity = getMappingContext().getPersistentEntity(type.getName());
+        for (String propertyName : propertyNames) {
+            if (!entity.isIdentityName(propertyName) && entity.getPropertyByName(propertyName) == null) {
+                throw new InvalidDataAccessResourceUsageException("Cannot select non-existent property: " + propertyName);
+            }
+        }
+        key = (Serializable) getMappingContext().getConversionService().convert(key, entity.getIdentity().getType());
+
+        final Map<Serializable, Object> cache = firstLevelCache.get(type);
+        final Object cached = cache != null ? cache.get(key) : null;
+        if (cached != null || !(persister instanceof NativeEntryEntityPersister)) {
+            return cached != null ? cached : retrieve(type, key);
+        }
+
+        final List<Object> results = ((NativeEntryEntityPersister) persister).retrievePartialEntities(
+                entity, Collections.singletonList(key), Arrays.asList(propertyNames));
+        return results.isEmpty() ? null : results.get(0);
+    }
+
     public Object proxy(Class type, Serializable key) {
+        assertNoPendingAsyncOperations();
         if (key == null || type == null) return null;
         Persister persister = getPersister(type);
         if (persister != null) {
@@ -419,12 +930,14 @@ public abstract class AbstractSession<N> extends AbstractAttributeStoringSession
     }
 
     public void delete(final Object obj) {
+        assertNoPendingAsyncOperations();
         if (obj != null) {
             getPendingDeletes().add(new Runnable() {
                 public void run() {
                     Persister p = getPersister(obj);
                     if (p != null) {
                         p.delete(obj);
+                        invalidateQueryCache(p);
                         clear(obj);
 
                     }
@@ -434,6 +947,7 @@ public abstract class AbstractSession<N> extends AbstractAttributeStoringSession
     }
 
     public void delete(final Iterable objects) {
+        assertNoPendingAsyncOperations();
         if (objects == null) {
             return;
         }
@@ -450,6 +964,7 @@ public abstract class AbstractSession<N> extends AbstractAttributeStoringSession
             pendingDeletes.add(new Runnable() {
                 public void run() {
                     p.delete(objects);
+                    invalidateQueryCache(p);
                     for (Object o : objects) {
                         clear(o);
                     }
@@ -459,6 +974,7 @@ public abstract class AbstractSession<N> extends AbstractAttributeStoringSession
     }
 
     public List<Serializable> persist(Iterable objects) {
+        assertNoPendingAsyncOperations();
         if (objects != null) {
 
             final Iterator i = objects.iterator();
@@ -477,36 +993,79 @@ public abstract class AbstractSession<N> extends AbstractAttributeStoringSession
     }
 
     public List retrieveAll(Class type, Iterable keys) {
+        assertNoPendingAsyncOperations();
         Persister p = getPersister(type);
 
         if (p != null) {
-            return p.retrieveAll(keys);
+            List<Serializable> keyList = new ArrayList<Serializable>();
+            if (keys != null) {
+                for (Object key : keys) {
+                    keyList.add((Serializable) key);
+                }
+            }
+            return retrieveAll(p, type, keyList);
         }
         throw new NonPersistentTypeException("Cannot retrieve objects with keys ["+keys+"]. The class ["+type+"] is not a known persistent type.");
     }
 
     public List retrieveAll(Class type, Serializable... keys) {
+        assertNoPendingAsyncOperations();
         Persister p = getPersister(type);
 
         if (p != null) {
-            List retrieved = new ArrayList(keys.length);
-            final Map<Serializable, Object> cache = firstLevelCache.get(type);
-            for (int i = 0; i < keys.length; i++) {
-                Serializable key = keys[i];
-                Object cached = cache.get(key);
-                if (cached != null) {
-                    retrieved.add(i, cached);
+            return retrieveAll(p, type, Arrays.asList(keys));
+        }
+        throw new NonPersistentTypeException("Cannot retrieve objects with keys ["+keys+"]. The class ["+type+"] is not a known persistent type.");
+    }
+
+    /**
+     * Returns the instances from the first level cache and retrieves the remaining ones with a single call
+     * to the persister. The result has the same order as the keys and contains null for keys that do not exist.
+     */
+    private List retrieveAll(Persister p, Class type, List<Serializable> keys) {
+        final PersistentEntity entity = getMappingContext().getPersistentEntity(type.getName());
+        final Map<Serializable, Object> cache = firstLevelCache.get(type);
+
+        List<Object> retrieved = new ArrayList<Object>(keys.size());
+        List<Serializable> misses = new ArrayList<Serializable>();
+        Map<Serializable, List<Integer>> missIndices = new HashMap<Serializable, List<Integer>>();
+        for (int i = 0; i < keys.size(); i++) {
+            Serializable key = keys.get(i);
+            if (key != null && entity != null) {
+                key = (Serializable) getMappingContext().getConversionService().convert(key, entity.getIdentity().getType());
+            }
+
+            final Object cached = key != null && cache != null ? cache.get(key) : null;
+            retrieved.add(cached);
+            if (cached == null && key != null) {
+                List<Integer> indices = missIndices.get(key);
+                if (indices == null) {
+                    indices = new ArrayList<Integer>();
+                    missIndices.put(key, indices);
+                    misses.add(key);
                 }
-                else {
-                    retrieved.add(i, retrieve(type, key));
+                indices.add(i);
+            }
+        }
+
+        if (!misses.isEmpty()) {
+            final List<Object> loaded = p.retrieveAll(misses);
+            for (int i = 0; i < misses.size() && i < loaded.size(); i++) {
+                final Object o = loaded.get(i);
+                if (o == null) continue;
+
+                final Serializable key = misses.get(i);
+                cacheObject(key, o);
+                for (Integer index : missIndices.get(key)) {
+                    retrieved.set(index, o);
                 }
             }
-            return retrieved;
         }
-        throw new NonPersistentTypeException("Cannot retrieve objects with keys ["+keys+"]. The class ["+type+"] is not a known persistent type.");
+        return retrieved;
     }
 
     public Query createQuery(Class type) {
+        assertNoPendingAsyncOperations();
         Persister p = getPersister(type);
         if (p!= null) {
             return p.createQuery();
@@ -515,7 +1074,8 @@ public abstract class AbstractSession<N> extends AbstractAttributeStoringSession
     }
 
     public final Transaction beginTransaction() {
-        transaction = beginTransactionInternal();
+        assertNoPendingAsyncOperations();
+        transaction = new CompletionAwareTransaction(beginTransactionInternal());
         return transaction;
     }
 
@@ -525,4 +1085,46 @@ public abstract class AbstractSession<N> extends AbstractAttributeStoringSession
         if (transaction == null) throw new NoTransactionException("Transaction not started. Call beginTransaction() first");
         return transaction;
     }
+
+    /**
+     * Notifies the session once the transaction commits or rolls back
+     */
+    @SuppressWarnings({ "rawtypes", "unchecked" })
+    private class CompletionAwareTransaction implements Transaction {
+        private final Transaction transaction;
+
+        CompletionAwareTransaction(Transaction transaction) {
+            this.transaction = transaction;
+        }
+
+        public void commit() {
+            try {
+                transaction.commit();
+            }
+            finally {
+                afterCommit();
+            }
+        }
+
+        public void rollback() {
+            try {
+                transaction.rollback();
+            }
+            finally {
+                afterCommit();
+            }
+        }
+
+        public Object getNativeTransaction() {
+            return transaction.getNativeTransaction();
+        }
+
+        public boolean isActive() {
+            return transaction.isActive();
+        }
+
+        public void setTimeout(int timeout) {
+            transaction.setTimeout(timeout);
+        }
+    }
 }
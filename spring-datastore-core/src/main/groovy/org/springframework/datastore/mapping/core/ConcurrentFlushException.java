@@ -0,0 +1,47 @@
+/* Copyright (C) 2010 SpringSource
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.datastore.mapping.core;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.springframework.dao.DataAccessResourceFailureException;
+
+/**
+ * Thrown when more than one group of entities fails to flush concurrently. The failures are
+ * ordered in the same way as the groups were flushed so the reported cause is deterministic.
+ *
+ * @author Graeme Rocher
+ * @since 1.0
+ */
+public class ConcurrentFlushException extends DataAccessResourceFailureException {
+
+    private static final long serialVersionUID = 1;
+
+    private final List<Throwable> failures;
+
+    public ConcurrentFlushException(List<Throwable> failures) {
+        super("Flush failed for " + failures.size() + " entity groups. First failure: " + failures.get(0).getMessage(), failures.get(0));
+        this.failures = Collections.unmodifiableList(new ArrayList<Throwable>(failures));
+    }
+
+    /**
+     * @return The failures of each failed group, in flush order
+     */
+    public List<Throwable> getFailures() {
+        return failures;
+    }
+}
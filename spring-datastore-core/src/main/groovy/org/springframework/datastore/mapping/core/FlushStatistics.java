@@ -0,0 +1,131 @@
+/* Copyright (C) 2010 SpringSource
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.datastore.mapping.core;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.datastore.mapping.model.PersistentEntity;
+
+/**
+ * Collects the number of operations flushed and the time spent flushing them for each entity
+ * written by a {@link Session}
+ *
+ * @author Graeme Rocher
+ * @since 1.0
+ */
+public class FlushStatistics {
+
+    private Map<PersistentEntity, EntityStatistics> statistics = new ConcurrentHashMap<PersistentEntity, EntityStatistics>();
+
+    /**
+     * Records a flush of operations for the given entity
+     *
+     * @param entity The entity
+     * @param operations The number of operations flushed
+     * @param timeNanos The time taken in nanoseconds
+     */
+    public void record(PersistentEntity entity, int operations, long timeNanos) {
+        EntityStatistics entityStatistics = statistics.get(entity);
+        if (entityStatistics == null) {
+            synchronized (statistics) {
+                entityStatistics = statistics.get(entity);
+                if (entityStatistics == null) {
+                    entityStatistics = new EntityStatistics();
+                    statistics.put(entity, entityStatistics);
+                }
+            }
+        }
+        entityStatistics.record(operations, timeNanos);
+    }
+
+    /**
+     * @param entity The entity
+     * @return The statistics for the given entity or null if it was never flushed
+     */
+    public EntityStatistics getStatistics(PersistentEntity entity) {
+        return statistics.get(entity);
+    }
+
+    /**
+     * @return The statistics of all flushed entities
+     */
+    public Map<PersistentEntity, EntityStatistics> getAllStatistics() {
+        return Collections.unmodifiableMap(statistics);
+    }
+
+    public void clear() {
+        statistics.clear();
+    }
+
+    /**
+     * Flush counters for a single entity
+     */
+    public static class EntityStatistics {
+        private long flushCount;
+        private long operationCount;
+        private long totalTimeNanos;
+        private long maxTimeNanos;
+        private long lastTimeNanos;
+
+        synchronized void record(int operations, long timeNanos) {
+            flushCount++;
+            operationCount += operations;
+            totalTimeNanos += timeNanos;
+            lastTimeNanos = timeNanos;
+            if (timeNanos > maxTimeNanos) maxTimeNanos = timeNanos;
+        }
+
+        /**
+         * @return The number of batches flushed
+         */
+        public synchronized long getFlushCount() {
+            return flushCount;
+        }
+
+        /**
+         * @return The number of operations flushed across all batches
+         */
+        public synchronized long getOperationCount() {
+            return operationCount;
+        }
+
+        public synchronized long getTotalTimeNanos() {
+            return totalTimeNanos;
+        }
+
+        public synchronized long getMaxTimeNanos() {
+            return maxTimeNanos;
+        }
+
+        public synchronized long getLastTimeNanos() {
+            return lastTimeNanos;
+        }
+
+        /**
+         * @return The average time taken per batch in milliseconds
+         */
+        public synchronized double getAverageTimeMillis() {
+            return flushCount == 0 ? 0 : (totalTimeNanos / (double) flushCount) / 1000000d;
+        }
+
+        @Override
+        public synchronized String toString() {
+            return "flushes=" + flushCount + ", operations=" + operationCount +
+                   ", avg=" + getAverageTimeMillis() + "ms, max=" + (maxTimeNanos / 1000000d) + "ms";
+        }
+    }
+}
@@ -16,6 +16,8 @@ package org.springframework.datastore.mapping.core;
 
 import java.io.Serializable;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
 
 import javax.persistence.FlushModeType;
 
@@ -166,6 +168,48 @@ public interface Session extends EntityInterceptorAware {
      */
     <T> T retrieve(Class<T> type, Serializable key);
 
+    /**
+     * Retrieves an individual object loading only the given properties. Datastores that support partial loading
+     * fetch only the identifier and the given properties and return a read-only instance which is not associated
+     * with the session, hence changes to it are never persisted. An instance already associated with the session
+     * and the instances of other datastores are returned fully initialized.
+     *
+     * @param type The type
+     * @param key The key
+     * @param propertyNames The names of the properties to load, all properties are loaded if none are given
+     * @return The object
+     * @see org.springframework.datastore.mapping.query.Query#select(String...)
+     */
+    <T> T retrieve(Class<T> type, Serializable key, String... propertyNames);
+
+    /**
+     * Retrieves an individual object without blocking the calling thread
+     * @param type The type
+     * @param key The key
+     * @return A future holding the object
+     * @see #executeAsync(java.util.concurrent.Callable)
+     */
+    <T> Future<T> retrieveAsync(Class<T> type, Serializable key);
+
+    /**
+     * Flushes any pending changes to the datastore without blocking the calling thread
+     * @return A future which completes once the changes are flushed
+     * @see #executeAsync(java.util.concurrent.Callable)
+     */
+    Future<Object> flushAsync();
+
+    /**
+     * Executes an operation against this session on the asynchronous executor of the datastore. A session is
+     * not thread-safe, hence the operations of one session are executed one at a time in the order they were
+     * submitted, whilst the operations of different sessions run concurrently. The session is bound to the
+     * executing thread for the duration of the operation. Until the futures of the submitted operations have
+     * completed, using the session from any other thread fails with an {@link IllegalStateException}.
+     *
+     * @param callable The operation
+     * @return A future holding the result of the operation
+     */
+    <T> Future<T> executeAsync(Callable<T> callable);
+
     /**
      * Retrieves a proxy for the given key
      *
@@ -201,7 +245,7 @@ public interface Session extends EntityInterceptorAware {
      * Retrieves several objects for the specified keys
      * @param type The type
      * @param keys The keys
-     * @return A list of objects
+     * @return A list of objects in the same order as the keys, with null for keys that do not exist
      */
     List retrieveAll(Class type, Iterable keys);
 
@@ -209,7 +253,7 @@ public interface Session extends EntityInterceptorAware {
      * Retrieves several objects for the specified keys
      * @param type The type
      * @param keys The keys
-     * @return A list of objects
+     * @return A list of objects in the same order as the keys, with null for keys that do not exist
      */
     List retrieveAll(Class type, Serializable...keys);
 
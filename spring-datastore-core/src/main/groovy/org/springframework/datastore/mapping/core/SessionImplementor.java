@@ -17,6 +17,7 @@ package org.springframework.datastore.mapping.core;
 import java.io.Serializable;
 import java.util.Collection;
 import java.util.Map;
+import java.util.Set;
 
 import org.springframework.datastore.mapping.core.impl.PendingInsert;
 import org.springframework.datastore.mapping.core.impl.PendingUpdate;
@@ -44,5 +45,47 @@ public interface SessionImplementor<T> {
 
     T getCachedEntry(PersistentEntity entity, Serializable key);
 
+    /**
+     * Caches a snapshot of the values of a native entry as last read from or written to the datastore
+     *
+     * @param entity The entity
+     * @param key The key
+     * @param snapshot The values keyed by native property key
+     */
+    void cacheEntrySnapshot(PersistentEntity entity, Serializable key, Map<String, Object> snapshot);
+
+    /**
+     * Obtains the snapshot of a native entry used to compute which properties changed
+     *
+     * @param entity The entity
+     * @param key The key
+     * @return The snapshot or null if the entry was not loaded by this session
+     */
+    Map<String, Object> getEntrySnapshot(PersistentEntity entity, Serializable key);
+
+    /**
+     * Records that an instance was only populated with the given properties, so that saving it does not
+     * overwrite the properties that were not loaded
+     *
+     * @param instance The instance
+     * @param propertyNames The names of the loaded properties
+     */
+    void registerPartialInstance(Object instance, Set<String> propertyNames);
+
+    /**
+     * @param instance An instance
+     * @return The names of the properties the instance was populated with or null if it was fully loaded
+     */
+    Set<String> getPartialProperties(Object instance);
+
     void addPostFlushOperation(Runnable runnable);
+
+    /**
+     * Evicts an entry from the second level cache once the writes of the current flush, or of the current
+     * transaction if one is active, have been committed
+     *
+     * @param family The region of the cache, the name of the root entity
+     * @param key The identifier
+     */
+    void evictAfterCommit(String family, Serializable key);
 }
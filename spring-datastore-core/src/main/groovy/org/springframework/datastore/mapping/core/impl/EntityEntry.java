@@ -0,0 +1,72 @@
+/* Copyright (C) 2010 SpringSource
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.datastore.mapping.core.impl;
+
+import java.io.Serializable;
+
+import org.springframework.datastore.mapping.model.PersistentEntity;
+
+/**
+ * Holds the state a session keeps for each instance it manages. Entries are looked up by
+ * object identity so that entities overriding equals() and hashCode() are tracked correctly.
+ *
+ * @author Graeme Rocher
+ * @since 1.0
+ */
+public class EntityEntry {
+
+    /**
+     * How an instance became associated with the session
+     */
+    public static enum Status {
+        /** Read from the datastore or attached to the session */
+        LOADED,
+        /** Saved through the session */
+        PERSISTED
+    }
+
+    private final PersistentEntity persistentEntity;
+    private volatile Serializable key;
+    private volatile Status status;
+
+    public EntityEntry(PersistentEntity persistentEntity, Serializable key, Status status) {
+        this.persistentEntity = persistentEntity;
+        this.key = key;
+        this.status = status;
+    }
+
+    /**
+     * @return The entity of the instance or null if the instance's class is not mapped
+     */
+    public PersistentEntity getPersistentEntity() {
+        return persistentEntity;
+    }
+
+    public Serializable getKey() {
+        return key;
+    }
+
+    public void setKey(Serializable key) {
+        this.key = key;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public void setStatus(Status status) {
+        this.status = status;
+    }
+}
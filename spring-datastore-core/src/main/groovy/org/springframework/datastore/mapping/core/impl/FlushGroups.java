@@ -0,0 +1,138 @@
+/* Copyright (C) 2010 SpringSource
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.datastore.mapping.core.impl;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.springframework.datastore.mapping.model.PersistentEntity;
+import org.springframework.datastore.mapping.model.types.Association;
+
+/**
+ * Partitions the entities with pending operations into groups that can be flushed independently
+ * of each other. Two entities end up in the same group if they share an inheritance hierarchy or
+ * are connected by an association in either direction, directly or through other entities.
+ *
+ * Within a group entities are ordered so that associated entities are flushed before the entities
+ * that reference them. Groups are ordered by the name of their first entity so that repeated flushes
+ * of the same entities behave identically.
+ *
+ * @author Graeme Rocher
+ * @since 1.0
+ */
+public class FlushGroups {
+
+    private static final Comparator<PersistentEntity> BY_NAME = new Comparator<PersistentEntity>() {
+        public int compare(PersistentEntity e1, PersistentEntity e2) {
+            return e1.getName().compareTo(e2.getName());
+        }
+    };
+
+    private Map<PersistentEntity, PersistentEntity> parents = new HashMap<PersistentEntity, PersistentEntity>();
+
+    private FlushGroups() {
+    }
+
+    /**
+     * Groups the given entities
+     *
+     * @param entities The entities with pending operations
+     * @return The independent groups, each in flush order
+     */
+    public static List<List<PersistentEntity>> group(Collection<PersistentEntity> entities) {
+        List<PersistentEntity> sorted = new ArrayList<PersistentEntity>(entities);
+        Collections.sort(sorted, BY_NAME);
+
+        FlushGroups groups = new FlushGroups();
+        for (PersistentEntity entity : sorted) {
+            groups.union(entity, entity.getRootEntity());
+            for (Association association : entity.getAssociations()) {
+                groups.union(entity, association.getAssociatedEntity());
+            }
+        }
+
+        Map<PersistentEntity, List<PersistentEntity>> components = new LinkedHashMap<PersistentEntity, List<PersistentEntity>>();
+        for (PersistentEntity entity : sorted) {
+            final PersistentEntity root = groups.find(entity);
+            List<PersistentEntity> component = components.get(root);
+            if (component == null) {
+                component = new ArrayList<PersistentEntity>();
+                components.put(root, component);
+            }
+            component.add(entity);
+        }
+
+        List<List<PersistentEntity>> result = new ArrayList<List<PersistentEntity>>();
+        for (List<PersistentEntity> component : components.values()) {
+            result.add(orderByDependency(component));
+        }
+        return result;
+    }
+
+    private static List<PersistentEntity> orderByDependency(List<PersistentEntity> component) {
+        if (component.size() == 1) return component;
+
+        Set<PersistentEntity> members = new HashSet<PersistentEntity>(component);
+        Set<PersistentEntity> visited = new HashSet<PersistentEntity>();
+        List<PersistentEntity> ordered = new ArrayList<PersistentEntity>();
+        for (PersistentEntity entity : component) {
+            visit(entity, members, visited, ordered);
+        }
+        return ordered;
+    }
+
+    private static void visit(PersistentEntity entity, Set<PersistentEntity> members, Set<PersistentEntity> visited, List<PersistentEntity> ordered) {
+        if (!visited.add(entity)) return;
+
+        for (Association association : entity.getAssociations()) {
+            final PersistentEntity associated = association.getAssociatedEntity();
+            if (associated != null && members.contains(associated)) {
+                visit(associated, members, visited, ordered);
+            }
+        }
+        ordered.add(entity);
+    }
+
+    private PersistentEntity find(PersistentEntity entity) {
+        PersistentEntity parent = parents.get(entity);
+        if (parent == null) {
+            parents.put(entity, entity);
+            return entity;
+        }
+        if (parent != entity) {
+            parent = find(parent);
+            parents.put(entity, parent);
+        }
+        return parent;
+    }
+
+    private void union(PersistentEntity e1, PersistentEntity e2) {
+        if (e2 == null) return;
+
+        final PersistentEntity r1 = find(e1);
+        final PersistentEntity r2 = find(e2);
+        if (r1 != r2) {
+            parents.put(r2, r1);
+        }
+    }
+}
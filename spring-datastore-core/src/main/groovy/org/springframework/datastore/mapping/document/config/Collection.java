@@ -15,14 +15,18 @@
 
 package org.springframework.datastore.mapping.document.config;
 
+import org.springframework.datastore.mapping.cache.CacheSettings;
+import org.springframework.datastore.mapping.cache.CacheableMapping;
+
 /**
  * Configures how an entity is mapped onto a Document collection
  *
  * @author Graeme Rocher
  */
-public class Collection {
+public class Collection implements CacheableMapping {
 
     private String name;
+    private CacheSettings cache;
 
     /**
      * The name of the collection
@@ -39,4 +43,17 @@ public class Collection {
     public void setCollection(String name) {
         this.name = name;
     }
+
+    public CacheSettings getCache() {
+        return cache;
+    }
+
+    /**
+     * Enables second level caching of the entity
+     *
+     * @param cache Either true or a Map of {@link CacheSettings}
+     */
+    public void setCache(Object cache) {
+        this.cache = CacheSettings.valueOf(cache);
+    }
 }
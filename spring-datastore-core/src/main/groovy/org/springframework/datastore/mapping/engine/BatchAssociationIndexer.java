@@ -0,0 +1,37 @@
+/* Copyright (C) 2010 SpringSource
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.datastore.mapping.engine;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An {@link AssociationIndexer} that can query the foreign keys of several owners of the association at once
+ *
+ * @author Graeme Rocher
+ * @since 1.0
+ */
+public interface BatchAssociationIndexer<K, T> extends AssociationIndexer<K, T> {
+
+    /**
+     * Queries the given primary keys in a single round trip. Unlike {@link #query(Object)} the keys may belong
+     * to any owner of the association, not only to the owner the indexer was obtained for.
+     *
+     * @param primaryKeys The primary keys
+     * @return The foreign keys by primary key
+     */
+    Map<K, List<T>> queryAll(Collection<K> primaryKeys);
+}
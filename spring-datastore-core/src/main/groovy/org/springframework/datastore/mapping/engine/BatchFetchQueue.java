@@ -0,0 +1,111 @@
+/* Copyright (C) 2010 SpringSource
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.datastore.mapping.engine;
+
+import java.io.Serializable;
+import java.lang.ref.WeakReference;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Keeps track of the lazy associations of a session that have not been initialized yet. When one of them is
+ * initialized the pending associations of the same kind are initialized with it in a single batch, which
+ * avoids a round trip per association when iterating over the owners of lazy associations.
+ *
+ * <p>Associations are grouped by a batch key, the association of lazy collections or the type of proxies, and
+ * are identified by a key, the owner of a collection or the identifier of a proxy. The associations themselves
+ * are only weakly referenced, so associations that are no longer reachable are never fetched.</p>
+ *
+ * @author Graeme Rocher
+ * @since 1.0
+ */
+public class BatchFetchQueue {
+
+    public static final int DEFAULT_BATCH_SIZE = 25;
+
+    private int batchSize = DEFAULT_BATCH_SIZE;
+    private final Map<Object, Map<Serializable, WeakReference<Object>>> pending = new HashMap<Object, Map<Serializable, WeakReference<Object>>>();
+
+    /**
+     * The maximum number of associations initialized together
+     *
+     * @param batchSize The batch size, 1 or less to initialize associations one at a time
+     */
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * Registers an association that has not been initialized yet
+     *
+     * @param batchKey The kind of association
+     * @param key The key of the association
+     * @param association The association
+     */
+    public synchronized void add(Object batchKey, Serializable key, Object association) {
+        if (batchSize <= 1 || batchKey == null || key == null) return;
+
+        Map<Serializable, WeakReference<Object>> associations = pending.get(batchKey);
+        if (associations == null) {
+            associations = new LinkedHashMap<Serializable, WeakReference<Object>>();
+            pending.put(batchKey, associations);
+        }
+        associations.put(key, new WeakReference<Object>(association));
+    }
+
+    /**
+     * Removes the association that is being initialized together with up to batch size - 1 pending associations
+     * of the same kind, in the order they were registered
+     *
+     * @param batchKey The kind of association
+     * @param key The key of the association being initialized
+     * @param association The association being initialized
+     * @return The associations to initialize by their keys, starting with the given association
+     */
+    public synchronized Map<Serializable, Object> next(Object batchKey, Serializable key, Object association) {
+        Map<Serializable, Object> batch = new LinkedHashMap<Serializable, Object>();
+        batch.put(key, association);
+
+        final Map<Serializable, WeakReference<Object>> associations = batchKey == null ? null : pending.get(batchKey);
+        if (associations == null) return batch;
+
+        associations.remove(key);
+        for (Iterator<Map.Entry<Serializable, WeakReference<Object>>> i = associations.entrySet().iterator(); i.hasNext() && batch.size() < batchSize;) {
+            final Map.Entry<Serializable, WeakReference<Object>> entry = i.next();
+            i.remove();
+            final Object other = entry.getValue().get();
+            if (other != null) {
+                batch.put(entry.getKey(), other);
+            }
+        }
+        if (associations.isEmpty()) {
+            pending.remove(batchKey);
+        }
+        return batch;
+    }
+
+    /**
+     * Removes all pending associations
+     */
+    public synchronized void clear() {
+        pending.clear();
+    }
+}
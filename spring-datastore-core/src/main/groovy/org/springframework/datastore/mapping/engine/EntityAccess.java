@@ -26,6 +26,8 @@ import org.springframework.core.convert.ConversionService;
 import org.springframework.datastore.mapping.model.ClassMapping;
 import org.springframework.datastore.mapping.model.IdentityMapping;
 import org.springframework.datastore.mapping.model.PersistentEntity;
+import org.springframework.datastore.mapping.reflect.EntityReflector;
+import org.springframework.util.ClassUtils;
 import org.springframework.util.ReflectionUtils;
 
 /**
@@ -42,11 +44,15 @@ public class EntityAccess {
     protected Object entity;
     private BeanWrapper beanWrapper;
     private PersistentEntity persistentEntity;
+    private EntityReflector reflector;
+    private ConversionService conversionService;
+    private String identifierName;
+    private boolean identifierNameResolved;
 
     public EntityAccess(PersistentEntity persistentEntity, Object entity) {
         this.entity = entity;
         this.persistentEntity = persistentEntity;
-        beanWrapper = new BeanWrapperImpl(entity);
+        this.reflector = persistentEntity != null ? persistentEntity.getReflector() : null;
     }
 
     public Object getEntity() {
@@ -54,19 +60,32 @@ public class EntityAccess {
     }
 
     public void setConversionService(ConversionService conversionService) {
-        beanWrapper.setConversionService(conversionService);
+        this.conversionService = conversionService;
+        if (beanWrapper != null) {
+            beanWrapper.setConversionService(conversionService);
+        }
     }
 
     public Object getProperty(String name) {
-        return beanWrapper.getPropertyValue(name);
+        final int index = getPropertyIndex(name);
+        if (index > -1) {
+            return reflector.getProperty(entity, index);
+        }
+        return getBeanWrapper().getPropertyValue(name);
     }
 
     public void setProperty(String name, Object value) {
-        beanWrapper.setPropertyValue(name, value);
+        final int index = getPropertyIndex(name);
+        if (index > -1 && ClassUtils.isAssignableValue(reflector.getPropertyType(index), value)) {
+            reflector.setProperty(entity, index, value);
+        }
+        else {
+            getBeanWrapper().setPropertyValue(name, value);
+        }
     }
 
     public Object getIdentifier() {
-        String idName = getIdentifierName(persistentEntity.getMapping());
+        String idName = getIdentifierName();
         if (idName != null) {
             return getProperty(idName);
         }
@@ -74,7 +93,7 @@ public class EntityAccess {
     }
 
     public void setIdentifier(Object id) {
-        String idName = getIdentifierName(persistentEntity.getMapping());
+        String idName = getIdentifierName();
         setProperty(idName, id);
     }
 
@@ -87,15 +106,25 @@ public class EntityAccess {
     }
 
     public String getIdentifierName() {
-        return getIdentifierName(persistentEntity.getMapping());
+        if (!identifierNameResolved) {
+            identifierName = getIdentifierName(persistentEntity.getMapping());
+            identifierNameResolved = true;
+        }
+        return identifierName;
     }
 
     public void setPropertyNoConversion(String name, Object value) {
-        final PropertyDescriptor pd = beanWrapper.getPropertyDescriptor(name);
+        final int index = getPropertyIndex(name);
+        if (index > -1 && ClassUtils.isAssignableValue(reflector.getPropertyType(index), value)) {
+            reflector.setProperty(entity, index, value);
+            return;
+        }
+
+        final PropertyDescriptor pd = getBeanWrapper().getPropertyDescriptor(name);
         if (pd != null) {
             final Method writeMethod = pd.getWriteMethod();
             if (writeMethod!=null) {
-                ReflectionUtils.invokeMethod(writeMethod, beanWrapper.getWrappedInstance(), value);
+                ReflectionUtils.invokeMethod(writeMethod, entity, value);
             }
         }
     }
@@ -104,15 +133,34 @@ public class EntityAccess {
      * Refreshes the object from entity state
      */
     public void refresh() {
-        final PropertyDescriptor[] descriptors = beanWrapper.getPropertyDescriptors();
+        final BeanWrapper bean = getBeanWrapper();
+        final PropertyDescriptor[] descriptors = bean.getPropertyDescriptors();
         for (PropertyDescriptor descriptor : descriptors) {
             final String name = descriptor.getName();
             if (!EXCLUDED_PROPERTIES.contains(name)) {
-                if (beanWrapper.isReadableProperty(name) && beanWrapper.isWritableProperty(name)) {
+                if (bean.isReadableProperty(name) && bean.isWritableProperty(name)) {
                     Object newValue = getProperty(name);
                     setProperty(name, newValue);
                 }
             }
         }
     }
+
+    private int getPropertyIndex(String name) {
+        return reflector == null ? -1 : reflector.getPropertyIndex(name);
+    }
+
+    /**
+     * The BeanWrapper is only needed for nested paths, properties the reflector cannot
+     * access and values requiring conversion, so it is created on first use
+     */
+    private BeanWrapper getBeanWrapper() {
+        if (beanWrapper == null) {
+            beanWrapper = new BeanWrapperImpl(entity);
+            if (conversionService != null) {
+                beanWrapper.setConversionService(conversionService);
+            }
+        }
+        return beanWrapper;
+    }
 }
@@ -0,0 +1,206 @@
+/* Copyright (C) 2010 SpringSource
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.datastore.mapping.engine;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.persistence.CascadeType;
+import javax.persistence.FetchType;
+
+import org.springframework.datastore.mapping.config.Property;
+import org.springframework.datastore.mapping.model.PersistentEntity;
+import org.springframework.datastore.mapping.model.PersistentProperty;
+import org.springframework.datastore.mapping.model.PropertyMapping;
+import org.springframework.datastore.mapping.model.types.Association;
+import org.springframework.datastore.mapping.model.types.Basic;
+import org.springframework.datastore.mapping.model.types.Embedded;
+import org.springframework.datastore.mapping.model.types.OneToMany;
+import org.springframework.datastore.mapping.model.types.Simple;
+import org.springframework.datastore.mapping.model.types.ToOne;
+
+/**
+ * An immutable description of how the properties of a {@link PersistentEntity} are written to and
+ * read from a native entry. Resolving property kinds, native keys and mapping flags is done once
+ * when the plan is built so that {@link NativeEntryEntityPersister} does not repeat the mapping
+ * lookups for every entity it persists or hydrates.
+ *
+ * @author Graeme Rocher
+ * @since 1.0
+ */
+public class EntityPersistencePlan {
+
+    /**
+     * The way a property is stored in the native entry
+     */
+    public static enum Kind { SIMPLE, TO_ONE, EMBEDDED, ONE_TO_MANY }
+
+    private final PersistentEntity entity;
+    private final PropertySlot[] slots;
+    private final boolean hasIndexedProperties;
+    private final boolean hasOneToMany;
+    private final boolean hasInverseCollections;
+
+    public EntityPersistencePlan(PersistentEntity entity, NativeEntryEntityPersister persister) {
+        this.entity = entity;
+
+        List<PropertySlot> planned = new ArrayList<PropertySlot>();
+        boolean indexed = false;
+        boolean oneToMany = false;
+        boolean inverseCollections = false;
+        for (PersistentProperty prop : entity.getPersistentProperties()) {
+            Kind kind;
+            if ((prop instanceof Simple) || (prop instanceof Basic)) {
+                kind = Kind.SIMPLE;
+            }
+            else if (prop instanceof Embedded) {
+                kind = Kind.EMBEDDED;
+            }
+            else if (prop instanceof ToOne) {
+                kind = Kind.TO_ONE;
+            }
+            else if (prop instanceof OneToMany) {
+                kind = Kind.ONE_TO_MANY;
+            }
+            else {
+                continue;
+            }
+
+            PropertySlot slot = new PropertySlot(prop, kind, persister.getNativePropertyKey(prop));
+            indexed = indexed || slot.isIndexed();
+            oneToMany = oneToMany || kind == Kind.ONE_TO_MANY;
+            inverseCollections = inverseCollections || slot.getInverseCollection() != null;
+            planned.add(slot);
+        }
+
+        slots = planned.toArray(new PropertySlot[planned.size()]);
+        hasIndexedProperties = indexed;
+        hasOneToMany = oneToMany;
+        hasInverseCollections = inverseCollections;
+    }
+
+    public PersistentEntity getEntity() {
+        return entity;
+    }
+
+    /**
+     * @return The property slots in the order the properties are declared by the entity
+     */
+    public PropertySlot[] getSlots() {
+        return slots;
+    }
+
+    public boolean hasIndexedProperties() {
+        return hasIndexedProperties;
+    }
+
+    public boolean hasOneToMany() {
+        return hasOneToMany;
+    }
+
+    /**
+     * @return Whether any to-one association has a one-to-many collection on the inverse side
+     */
+    public boolean hasInverseCollections() {
+        return hasInverseCollections;
+    }
+
+    /**
+     * The resolved mapping of a single property
+     */
+    public static class PropertySlot {
+        private final PersistentProperty property;
+        private final String name;
+        private final Kind kind;
+        private final String nativeKey;
+        private final boolean indexed;
+        private final boolean lazy;
+        private final boolean cascadePersist;
+        private final Class associationKeyType;
+        private final OneToMany inverseCollection;
+
+        PropertySlot(PersistentProperty property, Kind kind, String nativeKey) {
+            this.property = property;
+            this.name = property.getName();
+            this.kind = kind;
+            this.nativeKey = nativeKey;
+
+            PropertyMapping<Property> pm = property.getMapping();
+            final Property mappedProperty = pm != null ? pm.getMappedForm() : null;
+            this.indexed = mappedProperty != null && mappedProperty.isIndex();
+            this.lazy = mappedProperty == null || mappedProperty.getFetchStrategy() == FetchType.LAZY;
+
+            if (property instanceof Association) {
+                Association association = (Association) property;
+                this.cascadePersist = association.doesCascade(CascadeType.PERSIST);
+                Association inverse = association.isBidirectional() ? association.getInverseSide() : null;
+                this.inverseCollection = kind == Kind.TO_ONE && inverse instanceof OneToMany ? (OneToMany) inverse : null;
+            }
+            else {
+                this.cascadePersist = false;
+                this.inverseCollection = null;
+            }
+            this.associationKeyType = kind == Kind.TO_ONE ? property.getOwner().getIdentity().getType() : null;
+        }
+
+        public PersistentProperty getProperty() {
+            return property;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public Kind getKind() {
+            return kind;
+        }
+
+        /**
+         * @return The key the property is stored under in the native entry
+         */
+        public String getNativeKey() {
+            return nativeKey;
+        }
+
+        public boolean isIndexed() {
+            return indexed;
+        }
+
+        /**
+         * @return Whether the association is fetched lazily
+         */
+        public boolean isLazy() {
+            return lazy;
+        }
+
+        public boolean isCascadePersist() {
+            return cascadePersist;
+        }
+
+        /**
+         * @return The type stored association keys are converted to when read back
+         */
+        public Class getAssociationKeyType() {
+            return associationKeyType;
+        }
+
+        /**
+         * @return The one-to-many collection on the inverse side of a bidirectional to-one, if any
+         */
+        public OneToMany getInverseCollection() {
+            return inverseCollection;
+        }
+    }
+}
@@ -15,21 +15,37 @@
 package org.springframework.datastore.mapping.engine;
 
 import java.io.Serializable;
+import java.lang.reflect.Array;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
 
 import javax.persistence.CascadeType;
-import javax.persistence.FetchType;
 
 import org.springframework.dao.CannotAcquireLockException;
 import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.datastore.mapping.cache.CacheSettings;
+import org.springframework.datastore.mapping.cache.CacheableMapping;
+import org.springframework.datastore.mapping.cache.SecondLevelCache;
 import org.springframework.datastore.mapping.collection.PersistentList;
 import org.springframework.datastore.mapping.collection.PersistentSet;
 import org.springframework.datastore.mapping.config.Property;
+import org.springframework.datastore.mapping.core.AbstractDatastore;
+import org.springframework.datastore.mapping.core.Datastore;
 import org.springframework.datastore.mapping.core.Session;
 import org.springframework.datastore.mapping.core.SessionImplementor;
 import org.springframework.datastore.mapping.core.impl.PendingInsert;
@@ -45,12 +61,11 @@ import org.springframework.datastore.mapping.model.PersistentEntity;
 import org.springframework.datastore.mapping.model.PersistentProperty;
 import org.springframework.datastore.mapping.model.PropertyMapping;
 import org.springframework.datastore.mapping.model.types.Association;
-import org.springframework.datastore.mapping.model.types.Basic;
 import org.springframework.datastore.mapping.model.types.Embedded;
 import org.springframework.datastore.mapping.model.types.OneToMany;
-import org.springframework.datastore.mapping.model.types.Simple;
 import org.springframework.datastore.mapping.model.types.ToOne;
 import org.springframework.datastore.mapping.proxy.ProxyFactory;
+import org.springframework.util.ObjectUtils;
 
 /**
  * Provides an implementation of the {@link org.springframework.datastore.mapping.engine.EntityPersister} class that
@@ -61,6 +76,8 @@ import org.springframework.datastore.mapping.proxy.ProxyFactory;
  */
 public abstract class NativeEntryEntityPersister<T,K> extends LockableEntityPersister{
     protected ClassMapping classMapping;
+    private Map<PersistentEntity, EntityPersistencePlan> localPersistencePlans = new HashMap<PersistentEntity, EntityPersistencePlan>();
+    private boolean reservingIdentifiers;
 
     public NativeEntryEntityPersister(MappingContext mappingContext, PersistentEntity entity, Session session) {
         super(mappingContext, entity, session);
@@ -91,6 +108,7 @@ public abstract class NativeEntryEntityPersister<T,K> extends LockableEntityPers
 
             if (key != null) {
                 deleteEntry(getEntityFamily(), key);
+                evictCommittedEntry(persistentEntity, (Serializable) key);
             }
         }
     }
@@ -126,6 +144,9 @@ public abstract class NativeEntryEntityPersister<T,K> extends LockableEntityPers
 
             if (!keys.isEmpty()) {
                 deleteEntries(getEntityFamily(), keys);
+                for (K key : keys) {
+                    evictCommittedEntry(persistentEntity, (Serializable) key);
+                }
             }
         }
     }
@@ -196,7 +217,7 @@ public abstract class NativeEntryEntityPersister<T,K> extends LockableEntityPers
     protected final Object retrieveEntity(PersistentEntity persistentEntity, Serializable nativeKey) {
 
         final Serializable key = convertToNativeKey(nativeKey);
-        T nativeEntry = retrieveEntry(persistentEntity, getEntityFamily(), key);
+        T nativeEntry = retrieveCachedEntry(persistentEntity, getEntityFamily(), key);
         if (nativeEntry != null) {
             return createObjectFromNativeEntry(persistentEntity, key, nativeEntry);
         }
@@ -220,6 +241,7 @@ public abstract class NativeEntryEntityPersister<T,K> extends LockableEntityPers
 
         Serializable identifier = (Serializable) ea.getIdentifier();
         if (identifier != null) {
+            evictCachedEntry(entity, identifier);
             final T entry = retrieveEntry(entity, getEntityFamily(), identifier);
             refreshObjectStateFromNativeEntry(entity, o, identifier, entry);
             return identifier;
@@ -234,9 +256,250 @@ public abstract class NativeEntryEntityPersister<T,K> extends LockableEntityPers
         cacheNativeEntry(persistentEntity, nativeKey, nativeEntry);
 
         refreshObjectStateFromNativeEntry(persistentEntity, obj, nativeKey, nativeEntry);
+        snapshotEntry(persistentEntity, nativeKey, nativeEntry);
         return obj;
     }
 
+    /**
+     * Records the current values of a native entry in the session so that later updates can be
+     * limited to the properties that changed
+     *
+     * @param persistentEntity The entity
+     * @param nativeKey The key
+     * @param nativeEntry The native entry
+     */
+    public void snapshotEntry(PersistentEntity persistentEntity, Serializable nativeKey, T nativeEntry) {
+        if (nativeKey == null || nativeEntry == null) return;
+
+        Map<String, Object> snapshot = new HashMap<String, Object>();
+        for (EntityPersistencePlan.PropertySlot slot : getPersistencePlan(persistentEntity).getSlots()) {
+            final EntityPersistencePlan.Kind kind = slot.getKind();
+            if (kind == EntityPersistencePlan.Kind.SIMPLE || kind == EntityPersistencePlan.Kind.TO_ONE) {
+                // the entity may share mutable values with the entry, copy them so in-place changes are detected
+                snapshot.put(slot.getNativeKey(), copyEntryValue(getEntryValue(nativeEntry, slot.getNativeKey())));
+            }
+        }
+        ((SessionImplementor<Object>) session).cacheEntrySnapshot(persistentEntity, nativeKey, snapshot);
+    }
+
+    /**
+     * Compares a native entry against the snapshot taken when it was loaded
+     *
+     * @param persistentEntity The entity
+     * @param nativeKey The key
+     * @param nativeEntry The native entry
+     * @return The native keys of the properties that changed or null if no snapshot exists, in which case
+     * the whole entry has to be considered changed
+     */
+    public Set<String> getDirtyKeys(PersistentEntity persistentEntity, Serializable nativeKey, T nativeEntry) {
+        final Map<String, Object> snapshot = ((SessionImplementor<Object>) session).getEntrySnapshot(persistentEntity, nativeKey);
+        if (snapshot == null) return null;
+
+        Set<String> dirtyKeys = new HashSet<String>();
+        for (EntityPersistencePlan.PropertySlot slot : getPersistencePlan(persistentEntity).getSlots()) {
+            final String key = slot.getNativeKey();
+            switch (slot.getKind()) {
+                case SIMPLE:
+                case TO_ONE:
+                    if (!ObjectUtils.nullSafeEquals(snapshot.get(key), getEntryValue(nativeEntry, key))) {
+                        dirtyKeys.add(key);
+                    }
+                    break;
+                case EMBEDDED:
+                    // embedded entries are opaque to the snapshot so they are always written
+                    dirtyKeys.add(key);
+                    break;
+                default:
+                    break;
+            }
+        }
+        return dirtyKeys;
+    }
+
+    /**
+     * @return True if the native entry has changed since it was loaded or cannot be compared
+     */
+    public boolean isDirty(PersistentEntity persistentEntity, Serializable nativeKey, T nativeEntry) {
+        final Set<String> dirtyKeys = getDirtyKeys(persistentEntity, nativeKey, nativeEntry);
+        return dirtyKeys == null || !dirtyKeys.isEmpty();
+    }
+
+    /**
+     * Writes an update for the given entry. Only the properties that changed since the entry was loaded
+     * are written and unchanged entries are not written at all.
+     *
+     * @param persistentEntity The entity
+     * @param key The key
+     * @param nativeEntry The native entry
+     * @return True if anything was written
+     */
+    public boolean executeUpdate(PersistentEntity persistentEntity, K key, T nativeEntry) {
+        final Set<String> dirtyKeys = getDirtyKeys(persistentEntity, (Serializable) key, nativeEntry);
+        if (dirtyKeys == null) {
+            updateEntry(persistentEntity, key, nativeEntry);
+        }
+        else if (dirtyKeys.isEmpty()) {
+            return false;
+        }
+        else {
+            updateEntry(persistentEntity, key, nativeEntry, dirtyKeys);
+        }
+        evictCommittedEntry(persistentEntity, (Serializable) key);
+        snapshotEntry(persistentEntity, (Serializable) key, nativeEntry);
+        return true;
+    }
+
+    /**
+     * Creates a copy of a native entry that is independent of the original, used to store entries in and
+     * return entries from the {@link SecondLevelCache}. The default returns null which means entries of this datastore
+     * are not cached. Subclasses whose entries can be copied cheaply should override this.
+     *
+     * @param nativeEntry The native entry
+     * @return The copy or null if the entry cannot be copied
+     */
+    @SuppressWarnings("unused")
+    protected T copyEntry(T nativeEntry) {
+        return null;
+    }
+
+    /**
+     * Creates a deep copy of a value read from a native entry. Dates, arrays, collections and maps are copied,
+     * other values are assumed to be immutable. Subclasses whose entries hold other mutable types should override.
+     *
+     * @param value The value
+     * @return The copy
+     */
+    @SuppressWarnings({ "rawtypes", "unchecked" })
+    protected Object copyEntryValue(Object value) {
+        if (value instanceof Date) {
+            return ((Date) value).clone();
+        }
+        if (value instanceof Collection) {
+            Collection copy;
+            if (value instanceof SortedSet) {
+                copy = new TreeSet(((SortedSet) value).comparator());
+            }
+            else if (value instanceof Set) {
+                copy = new LinkedHashSet();
+            }
+            else {
+                copy = new ArrayList();
+            }
+            for (Object o : (Collection) value) {
+                copy.add(copyEntryValue(o));
+            }
+            return copy;
+        }
+        if (value instanceof Map) {
+            Map copy = value instanceof SortedMap ? new TreeMap(((SortedMap) value).comparator()) : new LinkedHashMap();
+            for (Object o : ((Map) value).entrySet()) {
+                Map.Entry entry = (Map.Entry) o;
+                copy.put(entry.getKey(), copyEntryValue(entry.getValue()));
+            }
+            return copy;
+        }
+        if (value != null && value.getClass().isArray()) {
+            final int length = Array.getLength(value);
+            Object copy = Array.newInstance(value.getClass().getComponentType(), length);
+            for (int i = 0; i < length; i++) {
+                Array.set(copy, i, copyEntryValue(Array.get(value, i)));
+            }
+            return copy;
+        }
+        return value;
+    }
+
+    private CacheSettings getCacheSettings(PersistentEntity persistentEntity) {
+        final Object mappedForm = persistentEntity.getRootEntity().getMapping().getMappedForm();
+        return mappedForm instanceof CacheableMapping ? ((CacheableMapping) mappedForm).getCache() : null;
+    }
+
+    private SecondLevelCache getSecondLevelCache(PersistentEntity persistentEntity) {
+        if (getCacheSettings(persistentEntity) == null) return null;
+
+        final Datastore datastore = session.getDatastore();
+        return datastore instanceof AbstractDatastore ? ((AbstractDatastore) datastore).getSecondLevelCache() : null;
+    }
+
+    @SuppressWarnings("unchecked")
+    private T retrieveCachedEntry(PersistentEntity persistentEntity, String family, Serializable key) {
+        final SecondLevelCache cache = getSecondLevelCache(persistentEntity);
+        if (cache == null) {
+            return retrieveEntry(persistentEntity, family, key);
+        }
+
+        final String region = persistentEntity.getRootEntity().getName();
+        final T cached = (T) cache.get(region, key);
+        if (cached != null) {
+            return copyEntry(cached);
+        }
+
+        final T entry = retrieveEntry(persistentEntity, family, key);
+        cacheEntry(cache, persistentEntity, key, entry);
+        return entry;
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<T> retrieveCachedEntries(PersistentEntity persistentEntity, String family, List<Serializable> keys) {
+        final SecondLevelCache cache = getSecondLevelCache(persistentEntity);
+        if (cache == null) {
+            return retrieveEntries(persistentEntity, family, keys);
+        }
+
+        final String region = persistentEntity.getRootEntity().getName();
+        List<T> entries = new ArrayList<T>(keys.size());
+        List<Serializable> misses = new ArrayList<Serializable>();
+        List<Integer> missIndices = new ArrayList<Integer>();
+        for (int i = 0; i < keys.size(); i++) {
+            final T cached = (T) cache.get(region, keys.get(i));
+            entries.add(cached != null ? copyEntry(cached) : null);
+            if (cached == null) {
+                misses.add(keys.get(i));
+                missIndices.add(i);
+            }
+        }
+
+        if (!misses.isEmpty()) {
+            final List<T> loaded = retrieveEntries(persistentEntity, family, misses);
+            for (int i = 0; i < misses.size() && i < loaded.size(); i++) {
+                final T entry = loaded.get(i);
+                entries.set(missIndices.get(i), entry);
+                cacheEntry(cache, persistentEntity, misses.get(i), entry);
+            }
+        }
+        return entries;
+    }
+
+    private void cacheEntry(SecondLevelCache cache, PersistentEntity persistentEntity, Serializable key, T entry) {
+        if (entry == null) return;
+
+        final T copy = copyEntry(entry);
+        if (copy != null) {
+            cache.put(persistentEntity.getRootEntity().getName(), key, copy, getCacheSettings(persistentEntity));
+        }
+    }
+
+    private void evictCachedEntry(PersistentEntity persistentEntity, Serializable key) {
+        final SecondLevelCache cache = getSecondLevelCache(persistentEntity);
+        if (cache != null && key != null) {
+            cache.evict(persistentEntity.getRootEntity().getName(), key);
+        }
+    }
+
+    /**
+     * Evicts the entry of a written key now, so that this session does not read it back from the cache, and again
+     * once the write is committed, in case another session cached the old entry in between
+     */
+    @SuppressWarnings("unchecked")
+    private void evictCommittedEntry(PersistentEntity persistentEntity, Serializable key) {
+        final SecondLevelCache cache = getSecondLevelCache(persistentEntity);
+        if (cache != null && key != null) {
+            final String region = persistentEntity.getRootEntity().getName();
+            cache.evict(region, key);
+            ((SessionImplementor<Object>) session).evictAfterCommit(region, key);
+        }
+    }
+
     protected void cacheNativeEntry(PersistentEntity persistentEntity,
             Serializable nativeKey, T nativeEntry) {
         SessionImplementor<Object> si = (SessionImplementor<Object>) session;
@@ -244,76 +507,114 @@ public abstract class NativeEntryEntityPersister<T,K> extends LockableEntityPers
     }
 
     protected void refreshObjectStateFromNativeEntry(PersistentEntity persistentEntity, Object obj, Serializable nativeKey, T nativeEntry) {
+        refreshObjectStateFromNativeEntry(persistentEntity, obj, nativeKey, nativeEntry, null);
+    }
+
+    /**
+     * Populates an object from a native entry
+     *
+     * @param persistentEntity The entity
+     * @param obj The object
+     * @param nativeKey The key
+     * @param nativeEntry The native entry
+     * @param propertyNames The names of the properties to populate or null for all of them
+     */
+    protected void refreshObjectStateFromNativeEntry(PersistentEntity persistentEntity, Object obj, Serializable nativeKey, T nativeEntry, Set<String> propertyNames) {
         EntityAccess ea = createEntityAccess(persistentEntity, obj, nativeEntry);
         ea.setConversionService(getMappingContext().getConversionService());
         String idName = ea.getIdentifierName();
         ea.setProperty(idName, nativeKey);
 
-        final List<PersistentProperty> props = persistentEntity.getPersistentProperties();
-        for (final PersistentProperty prop : props) {
-            String propKey = getNativePropertyKey(prop);
-            if ((prop instanceof Simple) || (prop instanceof Basic)) {
-                ea.setProperty(prop.getName(), getEntryValue(nativeEntry, propKey) );
+        Serializable ownerKey = null;
+        for (final EntityPersistencePlan.PropertySlot slot : getPersistencePlan(persistentEntity).getSlots()) {
+            if (propertyNames != null && !propertyNames.contains(slot.getName())) {
+                continue;
             }
-            else if (prop instanceof ToOne) {
-                if (prop instanceof Embedded) {
+            final PersistentProperty prop = slot.getProperty();
+            final String propKey = slot.getNativeKey();
+            switch (slot.getKind()) {
+                case SIMPLE:
+                    ea.setProperty(slot.getName(), getEntryValue(nativeEntry, propKey) );
+                    break;
+
+                case EMBEDDED:
                     Embedded embedded = (Embedded) prop;
                     T embbeddedEntry = getEmbbeded(nativeEntry, propKey);
 
                     if (embbeddedEntry != null) {
                         Object embeddedInstance = embedded.getAssociatedEntity().newInstance();
-                        createEntityAccess(embedded.getAssociatedEntity(), embeddedInstance);
                         refreshObjectStateFromNativeEntry(embedded.getAssociatedEntity(), embeddedInstance, null, embbeddedEntry);
                         ea.setProperty(propKey, embeddedInstance);
                     }
-                }
-                else {
+                    break;
+
+                case TO_ONE:
                     Serializable tmp = (Serializable) getEntryValue(nativeEntry, propKey);
                     if (tmp != null && !prop.getType().isInstance(tmp)) {
-                        PersistentEntity associatedEntity = prop.getOwner();
-                        final Serializable associationKey = (Serializable) getMappingContext().getConversionService().convert(tmp, associatedEntity.getIdentity().getType());
+                        final Serializable associationKey = (Serializable) getMappingContext().getConversionService().convert(tmp, slot.getAssociationKeyType());
                         if (associationKey != null) {
-
-                            PropertyMapping<Property> associationPropertyMapping = prop.getMapping();
-                            boolean isLazy = isLazyAssociation(associationPropertyMapping);
-
                             final Class propType = prop.getType();
-                            if (isLazy) {
+                            if (slot.isLazy()) {
                                 Object proxy = getProxyFactory().createProxy(session, propType, associationKey);
-                                ea.setProperty(prop.getName(), proxy);
+                                ea.setProperty(slot.getName(), proxy);
                             }
                             else {
-                                ea.setProperty(prop.getName(), session.retrieve(propType, associationKey));
+                                ea.setProperty(slot.getName(), session.retrieve(propType, associationKey));
                             }
                         }
                     }
-                }
-            }
-            else if (prop instanceof OneToMany) {
-                Association association = (Association) prop;
-                PropertyMapping<Property> associationPropertyMapping = association.getMapping();
+                    break;
 
-                boolean isLazy = isLazyAssociation(associationPropertyMapping);
-                AssociationIndexer indexer = getAssociationIndexer(nativeEntry, association);
-                nativeKey = (Serializable) getMappingContext().getConversionService().convert(nativeKey, getPersistentEntity().getIdentity().getType());
-                if (isLazy) {
-                    if (List.class.isAssignableFrom(association.getType())) {
-                        ea.setPropertyNoConversion(association.getName(), new PersistentList(nativeKey, session, indexer));
+                case ONE_TO_MANY:
+                    Association association = (Association) prop;
+                    AssociationIndexer indexer = getAssociationIndexer(nativeEntry, association);
+                    if (ownerKey == null) {
+                        ownerKey = (Serializable) getMappingContext().getConversionService().convert(nativeKey, getPersistentEntity().getIdentity().getType());
                     }
-                    else if (Set.class.isAssignableFrom(association.getType())) {
-                        ea.setPropertyNoConversion(association.getName(), new PersistentSet(nativeKey, session, indexer));
+                    if (slot.isLazy()) {
+                        if (List.class.isAssignableFrom(association.getType())) {
+                            ea.setPropertyNoConversion(association.getName(), new PersistentList(association, ownerKey, session, indexer));
+                        }
+                        else if (Set.class.isAssignableFrom(association.getType())) {
+                            ea.setPropertyNoConversion(association.getName(), new PersistentSet(association, ownerKey, session, indexer));
+                        }
                     }
-                }
-                else {
-                    if (indexer != null) {
-                        List keys = indexer.query(nativeKey);
-                        ea.setProperty( association.getName(), session.retrieveAll(association.getAssociatedEntity().getJavaClass(), keys));
+                    else {
+                        if (indexer != null) {
+                            List keys = indexer.query(ownerKey);
+                            ea.setProperty( association.getName(), session.retrieveAll(association.getAssociatedEntity().getJavaClass(), keys));
+                        }
                     }
-                }
+                    break;
             }
         }
     }
 
+    /**
+     * Obtains the persistence plan for the given entity, building it on first use. Plans are shared
+     * through the datastore so they are only built once per entity rather than once per session.
+     *
+     * @param persistentEntity The entity
+     * @return The plan
+     */
+    protected EntityPersistencePlan getPersistencePlan(PersistentEntity persistentEntity) {
+        Map<PersistentEntity, EntityPersistencePlan> plans = getPersistencePlans();
+        EntityPersistencePlan plan = plans.get(persistentEntity);
+        if (plan == null) {
+            plan = new EntityPersistencePlan(persistentEntity, this);
+            plans.put(persistentEntity, plan);
+        }
+        return plan;
+    }
+
+    private Map<PersistentEntity, EntityPersistencePlan> getPersistencePlans() {
+        final Datastore datastore = session.getDatastore();
+        if (datastore instanceof AbstractDatastore) {
+            return ((AbstractDatastore) datastore).getPersistencePlans();
+        }
+        return localPersistencePlans;
+    }
+
     /**
      * Implementors should override to provide support for embedded objets
      *
@@ -349,16 +650,6 @@ public abstract class NativeEntryEntityPersister<T,K> extends LockableEntityPers
         return persistentEntity;
     }
 
-    private boolean isLazyAssociation(PropertyMapping<Property> associationPropertyMapping) {
-        if (associationPropertyMapping != null) {
-            Property kv = associationPropertyMapping.getMappedForm();
-            if (kv.getFetchStrategy() != FetchType.LAZY) {
-                return false;
-            }
-        }
-        return true;
-    }
-
     @SuppressWarnings({"unchecked", "rawtypes"})
     @Override
     protected final Serializable persistEntity(final PersistentEntity persistentEntity, Object obj) {
@@ -373,6 +664,8 @@ public abstract class NativeEntryEntityPersister<T,K> extends LockableEntityPers
         PendingOperation<T, K> pendingOperation;
 
         SessionImplementor<Object> si = (SessionImplementor<Object>) session;
+        // the properties that were not loaded keep the values of the stored entry
+        final Set<String> partialProperties = isUpdate ? si.getPartialProperties(obj) : null;
         if (!isUpdate) {
             tmp = createNewEntry(family);
             k = generateIdentifier(persistentEntity, tmp);
@@ -392,7 +685,7 @@ public abstract class NativeEntryEntityPersister<T,K> extends LockableEntityPers
         else {
             tmp = (T) si.getCachedEntry(persistentEntity, (Serializable) k);
             if (tmp == null) {
-                tmp = retrieveEntry(persistentEntity, family, (Serializable) k);
+                tmp = retrieveCachedEntry(persistentEntity, family, (Serializable) k);
             }
             if (tmp == null) {
                 tmp = createNewEntry(family);
@@ -401,9 +694,9 @@ public abstract class NativeEntryEntityPersister<T,K> extends LockableEntityPers
             pendingOperation = new PendingUpdateAdapter<T, K>(persistentEntity, k, tmp, entityAccess) {
                 @Override
                 public void run() {
+                    if (!isDirty(persistentEntity, (Serializable) getNativeKey(), getNativeEntry())) return;
                     if (fireBeforeUpdate(persistentEntity, entityAccess)) return;
-                    updateEntry(persistentEntity, getNativeKey(), getNativeEntry());
-
+                    executeUpdate(persistentEntity, getNativeKey(), getNativeEntry());
                 }
             };
         }
@@ -411,72 +704,74 @@ public abstract class NativeEntryEntityPersister<T,K> extends LockableEntityPers
         final T e = tmp;
         entityAccess.setNativeEntry(e);
 
-        final List<PersistentProperty> props = persistentEntity.getPersistentProperties();
-        final Map<OneToMany, List<Serializable>> oneToManyKeys = new HashMap<OneToMany, List<Serializable>>();
-        final Map<OneToMany, Serializable> inverseCollectionUpdates = new HashMap<OneToMany, Serializable>();
-        final Map<PersistentProperty, Object> toIndex = new HashMap<PersistentProperty, Object>();
-        final Map<PersistentProperty, Object> toUnindex = new HashMap<PersistentProperty, Object>();
-        for (PersistentProperty prop : props) {
-            PropertyMapping<Property> pm = prop.getMapping();
-            final Property mappedProperty = pm.getMappedForm();
-            String key = null;
-            if (mappedProperty != null) {
-                key = mappedProperty.getTargetName();
-            }
-            final boolean indexed = mappedProperty != null && mappedProperty.isIndex();
-            if (key == null) key = prop.getName();
-            if ( (prop instanceof Simple) || (prop instanceof Basic)) {
-                Object propValue = entityAccess.getProperty(prop.getName());
-
-                if (indexed) {
-                    if (isUpdate) {
-                        final Object oldValue = getEntryValue(e, key);
-                        if (oldValue != null && !oldValue.equals(propValue))
-                            toUnindex.put(prop, oldValue);
-                    }
+        final EntityPersistencePlan plan = getPersistencePlan(persistentEntity);
+        final boolean requiresIndexing = doesRequirePropertyIndexing();
+        final Map<OneToMany, List<Serializable>> oneToManyKeys = plan.hasOneToMany() ?
+                new HashMap<OneToMany, List<Serializable>>() : Collections.<OneToMany, List<Serializable>>emptyMap();
+        final Map<OneToMany, Serializable> inverseCollectionUpdates = plan.hasInverseCollections() ?
+                new HashMap<OneToMany, Serializable>() : Collections.<OneToMany, Serializable>emptyMap();
+        final Map<PersistentProperty, Object> toIndex = requiresIndexing ?
+                new HashMap<PersistentProperty, Object>() : Collections.<PersistentProperty, Object>emptyMap();
+        final Map<PersistentProperty, Object> toUnindex = requiresIndexing && isUpdate && plan.hasIndexedProperties() ?
+                new HashMap<PersistentProperty, Object>() : Collections.<PersistentProperty, Object>emptyMap();
+        for (EntityPersistencePlan.PropertySlot slot : plan.getSlots()) {
+            final PersistentProperty prop = slot.getProperty();
+            final String key = slot.getNativeKey();
+            final boolean indexed = slot.isIndexed() && requiresIndexing;
+            if (partialProperties != null && !partialProperties.contains(slot.getName())) continue;
+
+            switch (slot.getKind()) {
+                case SIMPLE:
+                    Object propValue = entityAccess.getProperty(slot.getName());
+
+                    if (indexed) {
+                        if (isUpdate) {
+                            final Object oldValue = getEntryValue(e, key);
+                            if (oldValue != null && !oldValue.equals(propValue))
+                                toUnindex.put(prop, oldValue);
+                        }
 
-                    toIndex.put(prop, propValue);
-                }
-                setEntryValue(e, key, propValue);
+                        toIndex.put(prop, propValue);
+                    }
+                    setEntryValue(e, key, propValue);
+                    break;
 
-            }
-            else if (prop instanceof OneToMany) {
-                final OneToMany oneToMany = (OneToMany) prop;
+                case ONE_TO_MANY:
+                    final Object collection = entityAccess.getProperty(slot.getName());
 
-                final Object propValue = entityAccess.getProperty(oneToMany.getName());
+                    if (collection instanceof Collection) {
+                        Collection associatedObjects = (Collection) collection;
+                        List<Serializable> keys = session.persist(associatedObjects);
+                        oneToManyKeys.put((OneToMany) prop, keys);
+                    }
+                    break;
 
-                if (propValue instanceof Collection) {
-                    Collection associatedObjects = (Collection) propValue;
-                    List<Serializable> keys = session.persist(associatedObjects);
-                    oneToManyKeys.put(oneToMany, keys);
-                }
-            }
-            else if (prop instanceof ToOne) {
-                ToOne association = (ToOne) prop;
-                if (prop instanceof Embedded) {
+                case EMBEDDED:
                     // For embedded properties simply set the entry value, the underlying implementation
                     // will have to store the embedded entity in an appropriate way (as a sub-document in a document store for example)
 
-                    Object embeddedInstance = entityAccess.getProperty(prop.getName());
+                    Object embeddedInstance = entityAccess.getProperty(slot.getName());
                     if (embeddedInstance != null) {
                         NativeEntryEntityPersister<T,K> embeddedPersister = (NativeEntryEntityPersister<T,K>) session.getPersister(embeddedInstance);
                         T embeddedEntry = embeddedPersister.createNewEntry(embeddedPersister.getEntityFamily());
 
-                        final PersistentEntity associatedEntity = association.getAssociatedEntity();
-                        final List<PersistentProperty> embeddedProperties = associatedEntity.getPersistentProperties();
+                        final PersistentEntity associatedEntity = ((Embedded) prop).getAssociatedEntity();
                         final EntityAccess embeddedEntityAccess = createEntityAccess(associatedEntity, embeddedInstance);
-                        for (PersistentProperty persistentProperty : embeddedProperties) {
-                            setEntryValue(embeddedEntry, persistentProperty.getName(), embeddedEntityAccess.getProperty(persistentProperty.getName()));
+                        for (EntityPersistencePlan.PropertySlot embeddedSlot : getPersistencePlan(associatedEntity).getSlots()) {
+                            setEntryValue(embeddedEntry, embeddedSlot.getName(), embeddedEntityAccess.getProperty(embeddedSlot.getName()));
                         }
 
                         setEmbedded(e, key, embeddedEntry );
                     }
-                }
-                else if (association.doesCascade(CascadeType.PERSIST)) {
+                    break;
+
+                case TO_ONE:
+                    ToOne association = (ToOne) prop;
+                    if (!slot.isCascadePersist()) break;
 
                     if (!association.isForeignKeyInChild()) {
 
-                        final Object associatedObject = entityAccess.getProperty(prop.getName());
+                        final Object associatedObject = entityAccess.getProperty(slot.getName());
                         if (associatedObject != null) {
                             @SuppressWarnings("hiding")
                             ProxyFactory proxyFactory = getProxyFactory();
@@ -497,7 +792,7 @@ public abstract class NativeEntryEntityPersister<T,K> extends LockableEntityPers
                                 }
 
                                 if (associationId != null) {
-                                    if (indexed && doesRequirePropertyIndexing()) {
+                                    if (indexed) {
                                         toIndex.put(prop, associationId);
                                         if (isUpdate) {
                                             final Object oldValue = getEntryValue(e, key);
@@ -507,15 +802,10 @@ public abstract class NativeEntryEntityPersister<T,K> extends LockableEntityPers
                                     }
                                     setEntryValue(e, key, associationId);
 
-                                    if (association.isBidirectional()) {
-                                        Association inverse = association.getInverseSide();
-                                        if (inverse instanceof OneToMany) {
-                                            inverseCollectionUpdates.put((OneToMany) inverse, associationId);
-                                        }
-                                        else if (inverse instanceof ToOne) {
-                                            // TODO: Implement handling of bidirectional one-to-ones with foreign key in parent
-                                        }
+                                    if (slot.getInverseCollection() != null) {
+                                        inverseCollectionUpdates.put(slot.getInverseCollection(), associationId);
                                     }
+                                    // TODO: Implement handling of bidirectional one-to-ones with foreign key in parent
                                 }
 
                             }
@@ -529,7 +819,7 @@ public abstract class NativeEntryEntityPersister<T,K> extends LockableEntityPers
                     else {
                         // TODO: Implement hasOne inverse association
                     }
-                }
+                    break;
             }
         }
 
@@ -542,7 +832,7 @@ public abstract class NativeEntryEntityPersister<T,K> extends LockableEntityPers
                 @Override
                 public void run() {
                     updateOneToManyIndices(e, updateId, oneToManyKeys);
-                    if (doesRequirePropertyIndexing()) {
+                    if (requiresIndexing) {
                         toIndex.put(persistentEntity.getIdentity(), updateId);
                         updatePropertyIndices(updateId, toIndex, toUnindex);
                     }
@@ -572,7 +862,7 @@ public abstract class NativeEntryEntityPersister<T,K> extends LockableEntityPers
                 @Override
                 public void run() {
                       updateOneToManyIndices(e, updateId, oneToManyKeys);
-                      if (doesRequirePropertyIndexing())
+                      if (requiresIndexing)
                           updatePropertyIndices(updateId, toIndex, toUnindex);
                 }
             };
@@ -675,8 +965,10 @@ public abstract class NativeEntryEntityPersister<T,K> extends LockableEntityPers
     }
 
     /**
-     * This is a rather simplistic and unoptimized implementation. Subclasses can override to provide
-     * batch insert capabilities to optimize the insertion of multiple entities in one go
+     * Persists a batch of entities, typically the contents of a cascaded one-to-many association. Identifiers
+     * for the new instances are reserved in one go and the native entries of existing instances that are not
+     * yet cached are loaded in bulk, so that each instance queues its insert or update without a round trip.
+     * The writes themselves are batched per entity when the session is flushed.
      *
      * @param persistentEntity The persistent entity
      * @param objs The objext to persist
@@ -684,47 +976,214 @@ public abstract class NativeEntryEntityPersister<T,K> extends LockableEntityPers
      */
     @Override
     protected List<Serializable> persistEntities(PersistentEntity persistentEntity, Iterable objs) {
-        List<Serializable> keys = new ArrayList<Serializable>();
+        final Class type = persistentEntity.getJavaClass();
+        final SessionImplementor<Object> si = (SessionImplementor<Object>) session;
+
+        int newInstances = 0;
+        List<Serializable> uncachedKeys = new ArrayList<Serializable>();
+        Map<Object, Boolean> seen = new IdentityHashMap<Object, Boolean>();
         for (Object obj : objs) {
-            keys.add( persist(obj) );
+            if (obj == null || obj.getClass() != type || seen.put(obj, Boolean.TRUE) != null) continue;
+
+            final Serializable key = (Serializable) readObjectIdentifier(createEntityAccess(persistentEntity, obj), persistentEntity.getMapping());
+            if (key == null) {
+                newInstances++;
+            }
+            else if (si.getCachedEntry(persistentEntity, key) == null) {
+                uncachedKeys.add(key);
+            }
+        }
+
+        if (uncachedKeys.size() > 1) {
+            final List<T> entries = retrieveCachedEntries(persistentEntity, getEntityFamily(), uncachedKeys);
+            for (int i = 0; i < uncachedKeys.size() && i < entries.size(); i++) {
+                final T entry = entries.get(i);
+                if (entry != null) {
+                    cacheNativeEntry(persistentEntity, uncachedKeys.get(i), entry);
+                }
+            }
+        }
+
+        // nested batches of the same type (trees for example) draw from the outermost reservation
+        final boolean reserve = newInstances > 1 && !reservingIdentifiers;
+        if (reserve) {
+            reservingIdentifiers = true;
+            reserveIdentifiers(persistentEntity, newInstances);
+        }
+        try {
+            List<Serializable> keys = new ArrayList<Serializable>();
+            Map<Object, Serializable> persisted = new IdentityHashMap<Object, Serializable>();
+            for (Object obj : objs) {
+                Serializable key = persisted.get(obj);
+                if (key == null) {
+                    key = persist(obj);
+                    persisted.put(obj, key);
+                }
+                keys.add(key);
+            }
+            return keys;
+        }
+        finally {
+            if (reserve) {
+                reservingIdentifiers = false;
+                releaseIdentifiers(persistentEntity);
+            }
         }
-        return keys;
     }
 
     /**
-     * Simplistic default implementation of retrieveAllEntities that iterates over each key and retrieves the entities
-     * one-by-one. Data stores that support batch retrieval can optimize this to retrieve all entities in one go.
+     * Called before a batch of new instances is persisted. Subclasses whose identifier generation requires a round trip
+     * can override this to obtain the given number of identifiers at once and hand them out from
+     * {@link #generateIdentifier(PersistentEntity, Object)}.
      *
-     * @param persistentEntity The persist entity
+     * @param persistentEntity The persistent entity
+     * @param count The number of new instances in the batch
+     */
+    @SuppressWarnings("unused")
+    protected void reserveIdentifiers(PersistentEntity persistentEntity, int count) {
+        // do nothing, identifiers are generated one at a time by default
+    }
+
+    /**
+     * Called once a batch of new instances has been persisted to discard any identifiers that were reserved but not used
+     *
+     * @param persistentEntity The persistent entity
+     */
+    @SuppressWarnings("unused")
+    protected void releaseIdentifiers(PersistentEntity persistentEntity) {
+        // do nothing
+    }
+
+    /**
+     * Reads the native entries for the given keys. The default implementation retrieves the entries one by one,
+     * datastores that support bulk reads should override this.
+     *
+     * @param persistentEntity The persistent entity
+     * @param family The family
      * @param keys The keys
-     * @return A list of entities
+     * @return The entries in the same order as the keys, null for keys that do not exist
      */
-    @Override
-    protected List<Object> retrieveAllEntities(PersistentEntity persistentEntity, Iterable<Serializable> keys) {
-        List<Object> results = new ArrayList<Object>();
+    protected List<T> retrieveEntries(PersistentEntity persistentEntity, String family, List<Serializable> keys) {
+        List<T> entries = new ArrayList<T>();
         for (Serializable key : keys) {
-            results.add( retrieveEntity(persistentEntity, key));
+            entries.add(retrieveEntry(persistentEntity, family, key));
+        }
+        return entries;
+    }
+
+    /**
+     * Retrieves the native entries for the given keys containing at least the given native property keys.
+     * Implementations that can fetch part of an entry should override, by default whole entries are retrieved.
+     *
+     * @param persistentEntity The persistent entity
+     * @param family The family
+     * @param keys The keys
+     * @param nativePropertyKeys The native keys of the properties to fetch
+     * @return The entries in the same order as the keys, null for keys that do not exist
+     */
+    protected List<T> retrieveEntries(PersistentEntity persistentEntity, String family, List<Serializable> keys, Set<String> nativePropertyKeys) {
+        return retrieveEntries(persistentEntity, family, keys);
+    }
+
+    /**
+     * Retrieves instances populated only with the identifier and the given properties. The instances are
+     * not associated with the session, hence they are never flushed automatically. Saving one explicitly
+     * only writes the given properties, see {@link #createPartialObjectFromNativeEntry}.
+     *
+     * @param persistentEntity The persistent entity
+     * @param keys The keys
+     * @param propertyNames The names of the properties to load
+     * @return The instances in the same order as the keys, null for keys that do not exist
+     */
+    public List<Object> retrievePartialEntities(PersistentEntity persistentEntity, Iterable<Serializable> keys, Collection<String> propertyNames) {
+        List<Serializable> nativeKeys = new ArrayList<Serializable>();
+        if (keys != null) {
+            for (Serializable key : keys) {
+                nativeKeys.add(convertToNativeKey(key));
+            }
+        }
+        if (nativeKeys.isEmpty()) return Collections.emptyList();
+
+        final Set<String> selected = new HashSet<String>(propertyNames);
+        final List<T> entries = retrieveEntries(persistentEntity, getEntityFamily(), nativeKeys,
+                getNativePropertyKeys(persistentEntity, selected));
+        List<Object> results = new ArrayList<Object>(nativeKeys.size());
+        for (int i = 0; i < nativeKeys.size(); i++) {
+            final T entry = i < entries.size() ? entries.get(i) : null;
+            results.add(entry != null ? createPartialObjectFromNativeEntry(persistentEntity, nativeKeys.get(i), entry, selected) : null);
         }
         return results;
     }
 
     /**
-     * Simplistic default implementation of retrieveAllEntities that iterates over each key and retrieves the entities
-     * one-by-one. Data stores that support batch retrieval can optimize this to retrieve all entities in one go.
+     * Creates an instance populated only with the identifier and the given properties of a native entry,
+     * without associating it with the session. The instance is registered as partial with the session so
+     * that persisting it merges the given properties into the stored entry instead of overwriting the
+     * properties that were not loaded.
+     *
+     * @param persistentEntity The persistent entity
+     * @param nativeKey The key
+     * @param nativeEntry The native entry, which may only contain the given properties
+     * @param propertyNames The names of the properties to populate
+     * @return The instance
+     */
+    public Object createPartialObjectFromNativeEntry(PersistentEntity persistentEntity, Serializable nativeKey, T nativeEntry, Set<String> propertyNames) {
+        persistentEntity = discriminatePersistentEntity(persistentEntity, nativeEntry);
+        Object obj = persistentEntity.newInstance();
+        refreshObjectStateFromNativeEntry(persistentEntity, obj, nativeKey, nativeEntry, propertyNames);
+        ((SessionImplementor<Object>) session).registerPartialInstance(obj, propertyNames);
+        return obj;
+    }
+
+    /**
+     * Obtains the native keys of the given properties
+     *
+     * @param persistentEntity The persistent entity
+     * @param propertyNames The property names
+     * @return The native keys
+     */
+    protected Set<String> getNativePropertyKeys(PersistentEntity persistentEntity, Set<String> propertyNames) {
+        Set<String> nativeKeys = new HashSet<String>();
+        for (EntityPersistencePlan.PropertySlot slot : getPersistencePlan(persistentEntity).getSlots()) {
+            if (propertyNames.contains(slot.getName())) {
+                nativeKeys.add(slot.getNativeKey());
+            }
+        }
+        return nativeKeys;
+    }
+
+    /**
+     * Retrieves the native entries for all keys with a single call to {@link #retrieveEntries(PersistentEntity, String, List)}
+     * and creates the entities from them. Missing entries result in null elements so that the order of the keys is preserved.
      *
      * @param persistentEntity The persist entity
      * @param keys The keys
      * @return A list of entities
      */
     @Override
-    protected List<Object> retrieveAllEntities(PersistentEntity persistentEntity, Serializable[] keys) {
-        List<Object> results = new ArrayList<Object>();
-        for (Serializable key : keys) {
-            results.add( retrieveEntity(persistentEntity, key));
+    protected List<Object> retrieveAllEntities(PersistentEntity persistentEntity, Iterable<Serializable> keys) {
+        List<Serializable> nativeKeys = new ArrayList<Serializable>();
+        if (keys != null) {
+            for (Serializable key : keys) {
+                nativeKeys.add(convertToNativeKey(key));
+            }
+        }
+        if (nativeKeys.isEmpty()) return Collections.emptyList();
+
+        final List<T> entries = retrieveCachedEntries(persistentEntity, getEntityFamily(), nativeKeys);
+        List<Object> results = new ArrayList<Object>(nativeKeys.size());
+        for (int i = 0; i < nativeKeys.size(); i++) {
+            final T entry = i < entries.size() ? entries.get(i) : null;
+            results.add(entry != null ? createObjectFromNativeEntry(persistentEntity, nativeKeys.get(i), entry) : null);
         }
         return results;
     }
 
+    @Override
+    protected List<Object> retrieveAllEntities(PersistentEntity persistentEntity, Serializable[] keys) {
+        return retrieveAllEntities(persistentEntity, Arrays.asList(keys));
+    }
+
     /**
      * Used to establish the native key to use from the identifier defined by the object
      * @param family The family
@@ -791,6 +1250,20 @@ public abstract class NativeEntryEntityPersister<T,K> extends LockableEntityPers
      */
     protected abstract void updateEntry(PersistentEntity persistentEntity, K key, T entry);
 
+    /**
+     * Updates only the given properties of an existing entry. The default implementation writes the
+     * whole entry, subclasses should override to issue partial updates where the datastore supports them.
+     *
+     * @param persistentEntity The PersistentEntity
+     * @param key The key of the object to update
+     * @param entry The entry
+     * @param dirtyKeys The native keys of the properties that changed
+     */
+    @SuppressWarnings("unused")
+    protected void updateEntry(PersistentEntity persistentEntity, K key, T entry, Set<String> dirtyKeys) {
+        updateEntry(persistentEntity, key, entry);
+    }
+
     /**
      * Deletes one or many entries for the given list of Keys
      *
@@ -815,6 +1288,7 @@ public abstract class NativeEntryEntityPersister<T,K> extends LockableEntityPers
         if (fireBeforeInsert(persistentEntity, entityAccess)) return null;
         final K newId = storeEntry(persistentEntity, id, e);
         entityAccess.setIdentifier(newId);
+        snapshotEntry(persistentEntity, (Serializable) newId, e);
         return newId;
     }
 
@@ -14,6 +14,9 @@
  */
 package org.springframework.datastore.mapping.keyvalue.mapping.config;
 
+import org.springframework.datastore.mapping.cache.CacheSettings;
+import org.springframework.datastore.mapping.cache.CacheableMapping;
+
 /**
  * <p>A Family is a grouping of KeyValue pairs and is typically composed
  * of a keyspace and the family name.</p>
@@ -26,10 +29,11 @@ package org.springframework.datastore.mapping.keyvalue.mapping.config;
  * @author Graeme Rocher
  * @since 1.0
  */
-public class Family {
+public class Family implements CacheableMapping {
 
     private String keyspace;
     private String family;
+    private CacheSettings cache;
 
     public Family() {
     }
@@ -54,4 +58,17 @@ public class Family {
     public void setFamily(String family) {
         this.family = family;
     }
+
+    public CacheSettings getCache() {
+        return cache;
+    }
+
+    /**
+     * Enables second level caching of the entity
+     *
+     * @param cache Either true or a Map of {@link CacheSettings}
+     */
+    public void setCache(Object cache) {
+        this.cache = CacheSettings.valueOf(cache);
+    }
 }
@@ -25,6 +25,8 @@ import org.springframework.core.convert.converter.ConverterRegistry;
 import org.springframework.core.convert.support.GenericConversionService;
 import org.springframework.datastore.mapping.proxy.JavassistProxyFactory;
 import org.springframework.datastore.mapping.proxy.ProxyFactory;
+import org.springframework.datastore.mapping.reflect.EntityReflectorFactory;
+import org.springframework.datastore.mapping.reflect.JavassistEntityReflectorFactory;
 import org.springframework.util.Assert;
 import org.springframework.validation.Validator;
 
@@ -43,6 +45,7 @@ public abstract class AbstractMappingContext implements MappingContext {
     protected Collection<Listener> eventListeners = new ConcurrentLinkedQueue<Listener>();
     protected GenericConversionService conversionService = new GenericConversionService();
     protected ProxyFactory proxyFactory;
+    protected EntityReflectorFactory entityReflectorFactory;
 
     public ConversionService getConversionService() {
         return conversionService;
@@ -70,6 +73,25 @@ public abstract class AbstractMappingContext implements MappingContext {
         }
     }
 
+    public EntityReflectorFactory getEntityReflectorFactory() {
+        if (this.entityReflectorFactory == null) {
+            entityReflectorFactory = DefaultEntityReflectorFactoryCreator.create();
+        }
+        return entityReflectorFactory;
+    }
+
+    public void setEntityReflectorFactory(EntityReflectorFactory factory) {
+        if (factory != null) {
+            this.entityReflectorFactory = factory;
+        }
+    }
+
+    private static class DefaultEntityReflectorFactoryCreator {
+        public static EntityReflectorFactory create() {
+            return new JavassistEntityReflectorFactory();
+        }
+    }
+
     private static class DefaultProxyFactoryCreator {
         public static ProxyFactory create() {
             return new JavassistProxyFactory();
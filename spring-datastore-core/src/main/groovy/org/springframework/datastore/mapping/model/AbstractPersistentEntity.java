@@ -28,6 +28,7 @@ import org.springframework.datastore.mapping.core.EntityCreationException;
 import org.springframework.datastore.mapping.model.lifecycle.Initializable;
 import org.springframework.datastore.mapping.model.types.Association;
 import org.springframework.datastore.mapping.model.types.OneToMany;
+import org.springframework.datastore.mapping.reflect.EntityReflector;
 import org.springframework.util.Assert;
 
 /**
@@ -48,6 +49,7 @@ public abstract class AbstractPersistentEntity<T> implements PersistentEntity, I
     protected Set owners;
     private PersistentEntity parentEntity;
     private boolean external;
+    private EntityReflector reflector;
 
     public AbstractPersistentEntity(Class javaClass, MappingContext context) {
         Assert.notNull(javaClass, "The argument [javaClass] cannot be null");
@@ -93,6 +95,11 @@ public abstract class AbstractPersistentEntity<T> implements PersistentEntity, I
         }
 
         getMapping().getMappedForm(); // initialize mapping
+        reflector = context.getEntityReflectorFactory().getReflector(this);
+    }
+
+    public EntityReflector getReflector() {
+        return reflector;
     }
 
     public boolean hasProperty(String name, Class type) {
@@ -20,6 +20,7 @@ import org.springframework.core.convert.ConversionService;
 import org.springframework.core.convert.converter.Converter;
 import org.springframework.core.convert.converter.ConverterRegistry;
 import org.springframework.datastore.mapping.proxy.ProxyFactory;
+import org.springframework.datastore.mapping.reflect.EntityReflectorFactory;
 import org.springframework.validation.Validator;
 
 /**
@@ -154,6 +155,18 @@ public interface MappingContext {
      */
     void setProxyFactory(ProxyFactory factory);
 
+    /**
+     * Factory used for creating the reflectors used to access entity properties
+     * @return The reflector factory
+     */
+    EntityReflectorFactory getEntityReflectorFactory();
+
+    /**
+     * Factory to use for creating entity reflectors
+     * @param factory The reflector factory
+     */
+    void setEntityReflectorFactory(EntityReflectorFactory factory);
+
     /**
      * Adds a new mapping context listener instance
      * @param listener The listener
@@ -4,6 +4,7 @@ import java.util.List;
 
 import org.springframework.datastore.mapping.model.lifecycle.Initializable;
 import org.springframework.datastore.mapping.model.types.Association;
+import org.springframework.datastore.mapping.reflect.EntityReflector;
 
 /**
  * Represents a persistent entity
@@ -154,4 +155,10 @@ public interface PersistentEntity extends Initializable {
      * @return True if it is the identifier
      */
     boolean isIdentityName(String propertyName);
+
+    /**
+     * Obtains the reflector used to read and write the properties of instances of this entity
+     * @return The reflector or null if properties should be accessed via bean reflection
+     */
+    EntityReflector getReflector();
 }
@@ -26,6 +26,7 @@ import javassist.util.proxy.MethodHandler;
 import javassist.util.proxy.ProxyFactory;
 import javassist.util.proxy.ProxyObject;
 
+import org.springframework.datastore.mapping.core.AbstractSession;
 import org.springframework.datastore.mapping.core.Session;
 import org.springframework.datastore.mapping.reflect.ReflectionUtils;
 
@@ -78,11 +79,21 @@ public class JavassistProxyFactory implements org.springframework.datastore.mapp
             }
 
             public void initialize() {
+                if (session instanceof AbstractSession) {
+                    // retrieve the pending proxies of the same type into the session along with this one
+                    final Map<Serializable, Object> batch = ((AbstractSession) session).getBatchFetchQueue().next(cls, id, null);
+                    if (batch.size() > 1) {
+                        session.retrieveAll(cls, batch.keySet());
+                    }
+                }
                 target = session.retrieve(cls, id);
             }
         };
         Object proxy = ReflectionUtils.instantiate(proxyClass);
         ((ProxyObject)proxy).setHandler(mi);
+        if (session instanceof AbstractSession) {
+            ((AbstractSession) session).getBatchFetchQueue().add(cls, id, proxy);
+        }
         return proxy;
     }
 
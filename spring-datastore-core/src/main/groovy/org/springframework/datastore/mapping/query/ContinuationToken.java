@@ -0,0 +1,242 @@
+/* Copyright (C) 2010 SpringSource
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.datastore.mapping.query;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import javax.xml.bind.DatatypeConverter;
+
+import org.springframework.core.convert.ConversionService;
+import org.springframework.dao.InvalidDataAccessResourceUsageException;
+
+/**
+ * Encodes the position of a result as an opaque continuation token. The token holds the entity, the orders
+ * and a type tag and string form for each value of the position, followed by an HMAC of those bytes. Tokens
+ * are typically handed to clients, hence a token is only decoded once its HMAC has been verified and values
+ * are only ever created from their string form, never deserialized.
+ *
+ * @author Graeme Rocher
+ * @since 1.0
+ */
+final class ContinuationToken {
+
+    private static final String ALGORITHM = "HmacSHA256";
+    private static final int VERSION = 1;
+    private static final int MAC_LENGTH = 32;
+    private static final Map<Class<?>, Character> TAGS = new HashMap<Class<?>, Character>();
+    static {
+        TAGS.put(String.class, 's');
+        TAGS.put(Integer.class, 'i');
+        TAGS.put(Long.class, 'l');
+        TAGS.put(Short.class, 'h');
+        TAGS.put(Byte.class, 'y');
+        TAGS.put(Double.class, 'd');
+        TAGS.put(Float.class, 'f');
+        TAGS.put(Boolean.class, 'b');
+        TAGS.put(Character.class, 'c');
+        TAGS.put(BigDecimal.class, 'n');
+        TAGS.put(BigInteger.class, 'g');
+    }
+
+    /**
+     * The key used by datastores that do not provide one, valid for the lifetime of the JVM
+     */
+    static final byte[] DEFAULT_KEY = createKey();
+
+    private ContinuationToken() {
+    }
+
+    /**
+     * @return A new random key
+     */
+    static byte[] createKey() {
+        byte[] key = new byte[MAC_LENGTH];
+        new SecureRandom().nextBytes(key);
+        return key;
+    }
+
+    /**
+     * Creates a token
+     *
+     * @param key The key to sign the token with
+     * @param entityName The name of the entity
+     * @param orders The description of the orders of the query
+     * @param values The values of the ordered properties
+     * @param conversionService Converts values of other types to strings
+     * @return The token
+     */
+    static String encode(byte[] key, String entityName, String orders, List<?> values, ConversionService conversionService) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte(VERSION);
+            out.writeUTF(entityName);
+            out.writeUTF(orders);
+            out.writeShort(values.size());
+            for (Object value : values) {
+                writeValue(out, value, conversionService);
+            }
+            out.close();
+
+            final byte[] payload = bytes.toByteArray();
+            final byte[] mac = sign(key, payload);
+            byte[] token = Arrays.copyOf(payload, payload.length + mac.length);
+            System.arraycopy(mac, 0, token, payload.length, mac.length);
+            return DatatypeConverter.printBase64Binary(token).replace('+', '-').replace('/', '_');
+        }
+        catch (IOException e) {
+            throw new InvalidDataAccessResourceUsageException("Cannot create a continuation token: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Verifies a token and decodes its values
+     *
+     * @param key The key the token has to be signed with
+     * @param token The token
+     * @param entityName The name of the entity the token has to be created for
+     * @param orders The description of the orders the token has to be created for
+     * @param types The types of the ordered properties
+     * @param conversionService Converts the values of other types from their string form
+     * @return The values of the ordered properties
+     */
+    static List<Object> decode(byte[] key, String token, String entityName, String orders, List<Class<?>> types,
+            ConversionService conversionService) {
+        final byte[] bytes;
+        try {
+            bytes = DatatypeConverter.parseBase64Binary(token.replace('-', '+').replace('_', '/'));
+        }
+        catch (IllegalArgumentException e) {
+            throw invalid(token, e);
+        }
+        if (bytes == null || bytes.length <= MAC_LENGTH) {
+            throw invalid(token, null);
+        }
+
+        final byte[] payload = Arrays.copyOf(bytes, bytes.length - MAC_LENGTH);
+        final byte[] mac = Arrays.copyOfRange(bytes, payload.length, bytes.length);
+        if (!MessageDigest.isEqual(mac, sign(key, payload))) {
+            throw invalid(token, null);
+        }
+
+        try {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+            if (in.readUnsignedByte() != VERSION) {
+                throw invalid(token, null);
+            }
+            if (!entityName.equals(in.readUTF()) || !orders.equals(in.readUTF()) || in.readUnsignedShort() != types.size()) {
+                throw new InvalidDataAccessResourceUsageException("Continuation token [" + token +
+                        "] was not created for a query of [" + entityName + "] ordered by " + orders);
+            }
+            List<Object> values = new ArrayList<Object>(types.size());
+            for (Class<?> type : types) {
+                values.add(readValue(in, type, conversionService));
+            }
+            if (in.read() != -1) {
+                throw invalid(token, null);
+            }
+            return values;
+        }
+        catch (IOException e) {
+            throw invalid(token, e);
+        }
+        catch (RuntimeException e) {
+            if (e instanceof InvalidDataAccessResourceUsageException) throw e;
+            throw invalid(token, e);
+        }
+    }
+
+    private static void writeValue(DataOutputStream out, Object value, ConversionService conversionService) throws IOException {
+        final Character tag = value == null ? null : TAGS.get(value.getClass());
+        if (tag != null) {
+            out.writeByte(tag);
+            out.writeUTF(value.toString());
+        }
+        else if (value instanceof Date) {
+            out.writeByte('t');
+            out.writeUTF(String.valueOf(((Date) value).getTime()));
+        }
+        else if (value instanceof Enum) {
+            out.writeByte('e');
+            out.writeUTF(((Enum<?>) value).name());
+        }
+        else if (value != null && conversionService.canConvert(value.getClass(), String.class)) {
+            out.writeByte('v');
+            out.writeUTF(conversionService.convert(value, String.class));
+        }
+        else {
+            throw new IOException("The value [" + value + "] cannot be converted to a string");
+        }
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private static Object readValue(DataInputStream in, Class<?> type, ConversionService conversionService) throws IOException {
+        final char tag = (char) in.readUnsignedByte();
+        final String string = in.readUTF();
+        switch (tag) {
+            case 's': return string;
+            case 'i': return Integer.valueOf(string);
+            case 'l': return Long.valueOf(string);
+            case 'h': return Short.valueOf(string);
+            case 'y': return Byte.valueOf(string);
+            case 'd': return Double.valueOf(string);
+            case 'f': return Float.valueOf(string);
+            case 'b': return Boolean.valueOf(string);
+            case 'c':
+                if (string.length() != 1) throw new IOException("Invalid character [" + string + "]");
+                return string.charAt(0);
+            case 'n': return new BigDecimal(string);
+            case 'g': return new BigInteger(string);
+            case 't': return new Date(Long.parseLong(string));
+            case 'e':
+                if (!type.isEnum()) throw new IOException("Property of type [" + type.getName() + "] is not an enum");
+                return Enum.valueOf((Class) type, string);
+            case 'v': return conversionService.convert(string, type);
+            default: throw new IOException("Unknown type tag [" + tag + "]");
+        }
+    }
+
+    private static byte[] sign(byte[] key, byte[] payload) {
+        try {
+            Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(new SecretKeySpec(key, ALGORITHM));
+            return mac.doFinal(payload);
+        }
+        catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Cannot sign continuation token with " + ALGORITHM, e);
+        }
+    }
+
+    private static InvalidDataAccessResourceUsageException invalid(String token, Exception cause) {
+        return new InvalidDataAccessResourceUsageException("Invalid continuation token: " + token, cause);
+    }
+}
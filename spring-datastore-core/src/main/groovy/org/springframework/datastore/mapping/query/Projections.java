@@ -91,4 +91,14 @@ public class Projections {
     public static Query.AvgProjection avg(String name) {
         return new Query.AvgProjection(name);
     }
+
+    /**
+     * Counts the distinct values of a property
+     *
+     * @param name The name of the property
+     * @return The PropertyProjection instance
+     */
+    public static Query.CountDistinctProjection countDistinct(String name) {
+        return new Query.CountDistinctProjection(name);
+    }
 }
@@ -15,15 +15,19 @@
 package org.springframework.datastore.mapping.query;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
 
 import javax.persistence.FlushModeType;
 
 import org.springframework.dao.InvalidDataAccessResourceUsageException;
 import org.springframework.datastore.mapping.core.AbstractDatastore;
+import org.springframework.datastore.mapping.core.Datastore;
 import org.springframework.datastore.mapping.core.Session;
 import org.springframework.datastore.mapping.engine.EntityAccess;
 import org.springframework.datastore.mapping.engine.EntityPersister;
@@ -41,6 +45,8 @@ import org.springframework.util.Assert;
 @SuppressWarnings("hiding")
 public abstract class Query {
 
+    public static final int DEFAULT_BATCH_SIZE = 100;
+
     protected PersistentEntity entity;
     protected Junction criteria = new Conjunction();
     protected ProjectionList projections = new ProjectionList();
@@ -49,6 +55,9 @@ public abstract class Query {
     protected List<Order> orderBy = new ArrayList<Order>();
     protected Session session;
     protected boolean uniqueResult;
+    protected boolean cache;
+    protected List<String> selectedProperties = Collections.emptyList();
+    protected List<Object> seekPosition = Collections.emptyList();
 
     /**
      * @return The criteria defined by this query
@@ -180,6 +189,51 @@ public abstract class Query {
         return max(max);
     }
 
+    /**
+     * Defines whether the results of the query should be cached. Cached results are invalidated
+     * whenever an entity the query depends on is written
+     *
+     * @param cache True if the results should be cached
+     * @return This query instance
+     */
+    public Query cache(boolean cache) {
+        this.cache = cache;
+        return this;
+    }
+
+    /**
+     * @return Whether the results of the query are cached
+     */
+    public boolean isCache() {
+        return cache;
+    }
+
+    /**
+     * Restricts the properties loaded for the entities returned by the query. Datastores that support partial
+     * loading fetch only the identifier and the given properties and return instances which are not
+     * associated with the session, hence changes to them are not flushed automatically. Persisting such an
+     * instance explicitly only writes the selected properties. Other datastores return fully initialized instances.
+     *
+     * @param propertyNames The names of the properties to load
+     * @return This query instance
+     */
+    public Query select(String... propertyNames) {
+        for (String propertyName : propertyNames) {
+            if (!entity.isIdentityName(propertyName) && entity.getPropertyByName(propertyName) == null) {
+                throw new InvalidDataAccessResourceUsageException("Cannot select non-existent property: " + propertyName);
+            }
+        }
+        selectedProperties = Collections.unmodifiableList(Arrays.asList(propertyNames.clone()));
+        return this;
+    }
+
+    /**
+     * @return The properties to load or an empty list if entities are fully loaded
+     */
+    public List<String> getSelectedProperties() {
+        return selectedProperties;
+    }
+
     /**
      * Defines the offset (the first result index) of the query
      * @param offset The offset
@@ -219,6 +273,214 @@ public abstract class Query {
         return orderBy;
     }
 
+    /**
+     * Restricts the results to those that follow the given position in the order of the query. Unlike an offset,
+     * which has to skip over all the preceding results, the position is translated into a range on the ordered
+     * properties, hence fetching a page far into a large result costs no more than fetching the first one.
+     *
+     * <p>The position consists of the values of the ordered properties and the identifier of the last result of
+     * the previous page. The identifier is added as the last order of the query, unless the query is already
+     * ordered by it, so that results with equal values are returned in a stable order. The orders therefore have
+     * to be specified before calling this method.</p>
+     *
+     * @param orderValues The values of the ordered properties of the last result of the previous page
+     * @param lastId The identifier of the last result of the previous page
+     * @return This query instance
+     */
+    public Query after(List<?> orderValues, Object lastId) {
+        Assert.notNull(lastId, "Argument [lastId] cannot be null");
+        final List<Object> position = new ArrayList<Object>();
+        if (orderValues != null) {
+            position.addAll(orderValues);
+        }
+
+        addIdentityOrder();
+        if (position.size() != orderBy.size() - 1) {
+            throw new InvalidDataAccessResourceUsageException("Cannot page after " + orderValues +
+                    ". Expected a value for each of the orders " + describeOrders() + " except the identifier");
+        }
+        position.add(getIdentityOrderIndex(), lastId);
+        for (int i = 0; i < position.size(); i++) {
+            if (position.get(i) == null) {
+                throw new InvalidDataAccessResourceUsageException("Cannot page after a null value of property [" +
+                        orderBy.get(i).getProperty() + "]");
+            }
+        }
+        seekPosition = Collections.unmodifiableList(position);
+        return this;
+    }
+
+    /**
+     * Restricts the results to those that follow the position encoded by the given continuation token
+     *
+     * @param continuationToken A token obtained from {@link #getContinuationToken(Object)} for a query with the same orders
+     * @return This query instance
+     * @throws InvalidDataAccessResourceUsageException If the token was not issued by this datastore, has been altered
+     * or was created for a query of another entity or with other orders
+     * @see #after(java.util.List, Object)
+     */
+    public Query after(String continuationToken) {
+        Assert.hasText(continuationToken, "Argument [continuationToken] cannot be empty");
+        addIdentityOrder();
+
+        List<Class<?>> types = new ArrayList<Class<?>>(orderBy.size());
+        for (Order order : orderBy) {
+            final String property = order.getProperty();
+            final PersistentProperty persistentProperty = entity.isIdentityName(property) ?
+                    entity.getIdentity() : entity.getPropertyByName(property);
+            types.add(persistentProperty != null ? persistentProperty.getType() : Object.class);
+        }
+        final List<Object> position = ContinuationToken.decode(getContinuationTokenKey(), continuationToken,
+                entity.getName(), describeOrders(orderBy), types, session.getMappingContext().getConversionService());
+        seekPosition = Collections.unmodifiableList(position);
+        return this;
+    }
+
+    /**
+     * Creates an opaque token for the position of the given result in the order of this query, which can be
+     * passed to {@link #after(String)} to fetch the results that follow it. The token is signed with the key
+     * of the datastore, hence it cannot be forged or altered.
+     *
+     * @param lastResult The last result of a page
+     * @return The continuation token
+     */
+    public String getContinuationToken(Object lastResult) {
+        Assert.notNull(lastResult, "Argument [lastResult] cannot be null");
+
+        // the token includes the identifier order that after(String) adds, without changing the orders of this query
+        final List<Order> orders = new ArrayList<Order>(orderBy);
+        if (getIdentityOrderIndex() < 0) {
+            orders.add(createIdentityOrder());
+        }
+
+        final EntityAccess access = new EntityAccess(entity, lastResult);
+        final List<Object> values = new ArrayList<Object>(orders.size());
+        for (Order order : orders) {
+            final String property = order.getProperty();
+            final Object value = entity.isIdentityName(property) ? access.getIdentifier() : access.getProperty(property);
+            if (value == null) {
+                throw new InvalidDataAccessResourceUsageException("Cannot create a continuation token for a null value of property [" + property + "]");
+            }
+            values.add(value);
+        }
+        return ContinuationToken.encode(getContinuationTokenKey(), entity.getName(), describeOrders(orders), values,
+                session.getMappingContext().getConversionService());
+    }
+
+    private byte[] getContinuationTokenKey() {
+        final Datastore datastore = session.getDatastore();
+        return datastore instanceof AbstractDatastore ?
+                ((AbstractDatastore) datastore).getContinuationTokenKey() : ContinuationToken.DEFAULT_KEY;
+    }
+
+    /**
+     * @return The values of the orders of the query which results have to follow or an empty list if the query
+     * is not restricted to a position
+     * @see #after(java.util.List, Object)
+     */
+    public List<Object> getSeekPosition() {
+        return seekPosition;
+    }
+
+    private int getIdentityOrderIndex() {
+        for (int i = 0; i < orderBy.size(); i++) {
+            if (entity.isIdentityName(orderBy.get(i).getProperty())) return i;
+        }
+        return -1;
+    }
+
+    private void addIdentityOrder() {
+        if (getIdentityOrderIndex() < 0) {
+            orderBy.add(createIdentityOrder());
+        }
+    }
+
+    private Order createIdentityOrder() {
+        final Order.Direction direction = orderBy.isEmpty() ? Order.Direction.ASC : orderBy.get(orderBy.size() - 1).getDirection();
+        return new Order(entity.getIdentity().getName(), direction);
+    }
+
+    private String describeOrders() {
+        return describeOrders(orderBy);
+    }
+
+    private static String describeOrders(List<Order> orders) {
+        StringBuilder description = new StringBuilder();
+        for (Order order : orders) {
+            if (description.length() > 0) description.append(',');
+            description.append(order.getProperty()).append(' ').append(order.getDirection());
+        }
+        return "[" + description + "]";
+    }
+
+    /**
+     * Restricts the given criteria to the results that follow the seek position of the query, if any. The default
+     * implementation adds a criterion comparing the ordered properties with the values of the position. Subclasses
+     * that order in memory or can translate the position natively can override this method and return the
+     * criteria unchanged.
+     *
+     * @param criteria The criteria of the query
+     * @return The criteria to execute
+     */
+    protected Junction applySeekPosition(Junction criteria) {
+        if (seekPosition.isEmpty()) {
+            return criteria;
+        }
+
+        Conjunction seekCriteria = new Conjunction();
+        if (criteria instanceof Conjunction) {
+            for (Criterion criterion : criteria.getCriteria()) {
+                seekCriteria.add(criterion);
+            }
+        }
+        else if (!criteria.isEmpty()) {
+            seekCriteria.add(criteria);
+        }
+        seekCriteria.add(createSeekCriterion());
+        return seekCriteria;
+    }
+
+    /**
+     * Creates the criterion matching the results that follow the seek position. For orders o1..on the criterion
+     * is (o1 &gt; v1) or (o1 = v1 and o2 &gt; v2) ... or (o1 = v1 ... and on &gt; vn), using less than for
+     * descending orders.
+     *
+     * @return The criterion
+     */
+    protected Criterion createSeekCriterion() {
+        final List<Object> position = getValidSeekPosition();
+        Disjunction seek = new Disjunction();
+        for (int i = 0; i < position.size(); i++) {
+            final Order order = orderBy.get(i);
+            final Criterion comparison = order.getDirection() == Order.Direction.DESC ?
+                    Restrictions.lt(order.getProperty(), position.get(i)) :
+                    Restrictions.gt(order.getProperty(), position.get(i));
+            if (i == 0) {
+                seek.add(comparison);
+            }
+            else {
+                Conjunction ties = new Conjunction();
+                for (int j = 0; j < i; j++) {
+                    ties.add(Restrictions.eq(orderBy.get(j).getProperty(), position.get(j)));
+                }
+                ties.add(comparison);
+                seek.add(ties);
+            }
+        }
+        return seek.getCriteria().size() == 1 ? seek.getCriteria().get(0) : seek;
+    }
+
+    /**
+     * @return The seek position, validated against the current orders of the query
+     */
+    protected List<Object> getValidSeekPosition() {
+        if (seekPosition.size() != orderBy.size()) {
+            throw new InvalidDataAccessResourceUsageException("Cannot page after " + seekPosition +
+                    ". The query is ordered by " + describeOrders() + ", orders have to be specified before the position");
+        }
+        return seekPosition;
+    }
+
     /**
      * Restricts the results by the given properties value
      *
@@ -473,7 +735,48 @@ public abstract class Query {
         uniqueResult = false;
         flushBeforeQuery();
 
-        return executeQuery(entity, criteria);
+        final Junction original = criteria;
+        criteria = applySeekPosition(original);
+        try {
+            if (cache && session.getDatastore() instanceof AbstractDatastore) {
+                final QueryCache queryCache = ((AbstractDatastore) session.getDatastore()).getQueryCache();
+                if (queryCache != null) {
+                    return queryCache.list(this);
+                }
+            }
+            return executeQuery(entity, criteria);
+        }
+        finally {
+            criteria = original;
+        }
+    }
+
+    /**
+     * Executes the query without blocking the calling thread
+     *
+     * @return A future holding the results
+     * @see Session#executeAsync(java.util.concurrent.Callable)
+     */
+    public Future<List> listAsync() {
+        return session.executeAsync(new Callable<List>() {
+            public List call() {
+                return list();
+            }
+        });
+    }
+
+    /**
+     * Executes the query returning a single result or null without blocking the calling thread
+     *
+     * @return A future holding the result
+     * @see Session#executeAsync(java.util.concurrent.Callable)
+     */
+    public Future<Object> singleResultAsync() {
+        return session.executeAsync(new Callable<Object>() {
+            public Object call() {
+                return singleResult();
+            }
+        });
     }
 
     /**
@@ -497,6 +800,39 @@ public abstract class Query {
         return results.get(0);
     }
 
+    /**
+     * Executes the query returning an iterator that fetches the results lazily in batches of the default size
+     *
+     * @return The iterator
+     * @see #iterate(int)
+     */
+    public QueryResultIterator iterate() {
+        return iterate(DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * Executes the query returning an iterator that fetches the results lazily in batches of the given size.
+     * Entities that were already returned are evicted from the session as the iterator advances, which allows
+     * iterating over more results than fit into memory.
+     *
+     * @param batchSize The number of results fetched at a time
+     * @return The iterator
+     */
+    public QueryResultIterator iterate(int batchSize) {
+        Assert.isTrue(batchSize > 0, "Batch size must be greater than zero");
+        uniqueResult = false;
+        flushBeforeQuery();
+
+        final Junction original = criteria;
+        criteria = applySeekPosition(original);
+        try {
+            return executeIterate(entity, criteria, batchSize);
+        }
+        finally {
+            criteria = original;
+        }
+    }
+
     /**
      * Here purely for compatibility
      *
@@ -508,6 +844,41 @@ public abstract class Query {
         this.uniqueResult = uniqueResult;
     }
 
+    /**
+     * Subclasses can override this method to iterate over the results using a cursor of the datastore or by paging
+     * through them natively. The default implementation executes the query once and hands out the results in
+     * batches, since executing it again for every batch would make datastores that order and page in memory
+     * evaluate all the matches each time. Implementations should capture the state of the query they need when
+     * the iterator is created, so that the query can be changed or executed again while iterating.
+     *
+     * @param entity The entity
+     * @param criteria The criteria
+     * @param batchSize The batch size
+     * @return The iterator
+     */
+    protected QueryResultIterator executeIterate(final PersistentEntity entity, final Junction criteria, final int batchSize) {
+        return QueryResultIterator.forList(session, executeQuery(entity, criteria), batchSize);
+    }
+
+    /**
+     * Retrieves the instances for the given keys, leaving out those that no longer exist in the store. Used by
+     * implementations to resolve the keys matched by an index, which may still reference deleted entries
+     *
+     * @param type The type
+     * @param keys The keys
+     * @return The existing instances in the order of the keys
+     */
+    protected List retrieveExisting(Class type, Iterable keys) {
+        final List retrieved = session.retrieveAll(type, keys);
+        final List results = new ArrayList(retrieved.size());
+        for (Object o : retrieved) {
+            if (o != null) {
+                results.add(o);
+            }
+        }
+        return results;
+    }
+
     /**
      * Subclasses should implement this to provide the concrete implementation
      * of querying
@@ -873,6 +1244,15 @@ public abstract class Query {
         }
     }
 
+    /**
+     * Counts the distinct values of a property
+     */
+    public static class CountDistinctProjection extends PropertyProjection {
+        protected CountDistinctProjection(String propertyName) {
+            super(propertyName);
+        }
+    }
+
     /**
      * A list of projections
      */
@@ -956,5 +1336,16 @@ public abstract class Query {
             add(Projections.avg(name));
             return this;
         }
+
+        /**
+         * Counts the distinct values of a property
+         *
+         * @param name The name of the property
+         * @return The PropertyProjection instance
+         */
+        public ProjectionList countDistinct(String name) {
+            add(Projections.countDistinct(name));
+            return this;
+        }
     }
 }
@@ -0,0 +1,318 @@
+/* Copyright (C) 2010 SpringSource
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.datastore.mapping.query;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.datastore.mapping.core.Session;
+import org.springframework.datastore.mapping.engine.EntityPersister;
+import org.springframework.datastore.mapping.engine.NativeEntryEntityPersister;
+import org.springframework.datastore.mapping.engine.Persister;
+import org.springframework.datastore.mapping.model.PersistentEntity;
+
+/**
+ * Caches the results of queries that are marked as cacheable. Results are keyed by a canonical form of the
+ * criteria, projections, order and pagination of the query. Entity results are stored as identifiers and
+ * resolved through the session, so they benefit from the first and second level caches, whilst projection
+ * results are stored as values.
+ *
+ * Every write of an entity recorded through {@link #invalidate(PersistentEntity)} advances a sequence number. A cached
+ * result is only used if none of the entities the query depends on was written after the result was obtained.
+ * Sessions record their writes when they flush them and again once they are committed, so that results read by
+ * other sessions before the commit are not used either.
+ *
+ * @author Graeme Rocher
+ * @since 1.0
+ */
+public class QueryCache {
+
+    public static final int DEFAULT_MAX_SIZE = 1000;
+
+    private final AtomicLong sequence = new AtomicLong();
+    private final Map<String, Long> lastWrites = new ConcurrentHashMap<String, Long>();
+    private final Map<String, CachedResult> results;
+
+    public QueryCache() {
+        this(DEFAULT_MAX_SIZE);
+    }
+
+    public QueryCache(final int maxSize) {
+        results = Collections.synchronizedMap(new LinkedHashMap<String, CachedResult>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedResult> eldest) {
+                return size() > maxSize;
+            }
+        });
+    }
+
+    /**
+     * Records that instances of the given entity were written so that cached results depending on it are no longer used
+     *
+     * @param entity The entity
+     */
+    public void invalidate(PersistentEntity entity) {
+        if (entity != null) {
+            lastWrites.put(entity.getRootEntity().getName(), sequence.incrementAndGet());
+        }
+    }
+
+    /**
+     * Removes all cached results
+     */
+    public void clear() {
+        results.clear();
+    }
+
+    /**
+     * Executes the query or returns its cached results
+     *
+     * @param query The query
+     * @return The results
+     */
+    List list(Query query) {
+        final String key = createKey(query);
+        if (key == null) {
+            return query.executeQuery(query.entity, query.criteria);
+        }
+
+        final CachedResult cached = results.get(key);
+        if (cached != null && isValid(cached)) {
+            final List resolved = cached.resolve(query.session);
+            if (resolved != null) {
+                return resolved;
+            }
+        }
+
+        // read the sequence before executing so that concurrent writes invalidate the result
+        final long started = sequence.get();
+        final List list = query.executeQuery(query.entity, query.criteria);
+        final CachedResult result = CachedResult.create(query, list, started, getDependencies(query));
+        if (result != null) {
+            results.put(key, result);
+        }
+        return list;
+    }
+
+    private boolean isValid(CachedResult cached) {
+        for (String dependency : cached.dependencies) {
+            final Long lastWrite = lastWrites.get(dependency);
+            if (lastWrite != null && lastWrite > cached.sequence) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private Set<String> getDependencies(Query query) {
+        Set<String> dependencies = new TreeSet<String>();
+        dependencies.add(query.entity.getRootEntity().getName());
+        addAssociationDependencies(query.criteria, dependencies);
+        return dependencies;
+    }
+
+    private void addAssociationDependencies(Query.Junction junction, Set<String> dependencies) {
+        for (Query.Criterion criterion : junction.getCriteria()) {
+            if (criterion instanceof AssociationQuery) {
+                final AssociationQuery associationQuery = (AssociationQuery) criterion;
+                dependencies.add(associationQuery.entity.getRootEntity().getName());
+                addAssociationDependencies(associationQuery.criteria, dependencies);
+            }
+            else if (criterion instanceof Query.Junction) {
+                addAssociationDependencies((Query.Junction) criterion, dependencies);
+            }
+        }
+    }
+
+    /**
+     * Creates the canonical key of a query. Junctions are order independent so their members are sorted.
+     *
+     * @param query The query
+     * @return The key or null if the query contains values that have no stable representation
+     */
+    static String createKey(Query query) {
+        StringBuilder key = new StringBuilder(query.entity.getName());
+        key.append(query.uniqueResult ? "|unique|" : "|");
+        if (!appendJunction(key, "and", query.criteria)) return null;
+
+        key.append("|projections[");
+        for (Query.Projection projection : query.projections.getProjectionList()) {
+            key.append(projection.getClass().getSimpleName());
+            if (projection instanceof Query.PropertyProjection) {
+                key.append('(').append(((Query.PropertyProjection) projection).getPropertyName()).append(')');
+            }
+            key.append(',');
+        }
+        key.append("]|order[");
+        for (Query.Order order : query.orderBy) {
+            key.append(order.getProperty()).append(' ').append(order.getDirection()).append(',');
+        }
+        key.append("]|select").append(query.selectedProperties);
+        key.append("|after[");
+        for (Object value : query.seekPosition) {
+            if (!QueryShape.appendLiteral(key, value)) return null;
+            key.append(',');
+        }
+        key.append(']');
+        key.append("|offset=").append(query.offset).append("|max=").append(query.max);
+        return key.toString();
+    }
+
+    private static boolean appendJunction(StringBuilder key, String type, Query.Junction junction) {
+        List<String> members = new ArrayList<String>();
+        for (Query.Criterion criterion : junction.getCriteria()) {
+            StringBuilder member = new StringBuilder();
+            if (!appendCriterion(member, criterion)) return false;
+            members.add(member.toString());
+        }
+        Collections.sort(members);
+        key.append(type).append(members);
+        return true;
+    }
+
+    private static boolean appendCriterion(StringBuilder key, Query.Criterion criterion) {
+        if (criterion instanceof AssociationQuery) {
+            final AssociationQuery associationQuery = (AssociationQuery) criterion;
+            key.append("association(").append(associationQuery.getAssociation().getName()).append(')');
+            return appendJunction(key, "and", associationQuery.criteria);
+        }
+        if (criterion instanceof Query.Negation) {
+            return appendJunction(key, "not", (Query.Junction) criterion);
+        }
+        if (criterion instanceof Query.Disjunction) {
+            return appendJunction(key, "or", (Query.Junction) criterion);
+        }
+        if (criterion instanceof Query.Junction) {
+            return appendJunction(key, "and", (Query.Junction) criterion);
+        }
+
+        key.append(criterion.getClass().getSimpleName());
+        if (criterion instanceof Query.Between) {
+            final Query.Between between = (Query.Between) criterion;
+            key.append('(').append(between.getProperty()).append(',');
+            if (!QueryShape.appendLiteral(key, between.getFrom())) return false;
+            key.append(',');
+            if (!QueryShape.appendLiteral(key, between.getTo())) return false;
+            key.append(')');
+            return true;
+        }
+        if (criterion instanceof Query.In) {
+            final Query.In in = (Query.In) criterion;
+            List<String> values = new ArrayList<String>();
+            for (Object value : in.getValues()) {
+                StringBuilder v = new StringBuilder();
+                if (!QueryShape.appendLiteral(v, value)) return false;
+                values.add(v.toString());
+            }
+            Collections.sort(values);
+            key.append('(').append(in.getProperty()).append(',').append(values).append(')');
+            return true;
+        }
+        if (criterion instanceof Query.PropertyCriterion) {
+            final Query.PropertyCriterion pc = (Query.PropertyCriterion) criterion;
+            key.append('(').append(pc.getProperty()).append(',');
+            if (!QueryShape.appendLiteral(key, pc.getValue())) return false;
+            key.append(')');
+            return true;
+        }
+        if (criterion instanceof Query.PropertyNameCriterion) {
+            key.append('(').append(((Query.PropertyNameCriterion) criterion).getProperty()).append(')');
+            return true;
+        }
+        return false;
+    }
+
+    private static class CachedResult {
+        final long sequence;
+        final Set<String> dependencies;
+        final Class<?> type;
+        final List<Serializable> identifiers;
+        final List<String> selectedProperties;
+        final List<Object> values;
+
+        private CachedResult(long sequence, Set<String> dependencies, Class<?> type, List<Serializable> identifiers,
+                List<String> selectedProperties, List<Object> values) {
+            this.sequence = sequence;
+            this.dependencies = dependencies;
+            this.type = type;
+            this.identifiers = identifiers;
+            this.selectedProperties = selectedProperties;
+            this.values = values;
+        }
+
+        static CachedResult create(Query query, List<?> list, long sequence, Set<String> dependencies) {
+            if (query.projections.getProjectionList().isEmpty()) {
+                List<Serializable> identifiers = new ArrayList<Serializable>(list.size());
+                for (Object o : list) {
+                    final Persister persister = o != null ? query.session.getPersister(o) : null;
+                    final Serializable id = persister instanceof EntityPersister ? ((EntityPersister) persister).getObjectIdentifier(o) : null;
+                    if (id == null) return null;
+                    identifiers.add(id);
+                }
+                return new CachedResult(sequence, dependencies, query.entity.getJavaClass(), identifiers, query.selectedProperties, null);
+            }
+
+            List<Object> values = new ArrayList<Object>(list.size());
+            for (Object o : list) {
+                if (o instanceof Date) {
+                    values.add(((Date) o).clone());
+                }
+                else if (o == null || QueryShape.isImmutable(o)) {
+                    values.add(o);
+                }
+                else {
+                    return null;
+                }
+            }
+            return new CachedResult(sequence, dependencies, null, null, null, values);
+        }
+
+        /**
+         * @return The results or null if an entity no longer exists
+         */
+        List resolve(Session session) {
+            if (values != null) {
+                List<Object> copy = new ArrayList<Object>(values.size());
+                for (Object value : values) {
+                    copy.add(value instanceof Date ? ((Date) value).clone() : value);
+                }
+                return copy;
+            }
+
+            final List resolved;
+            final Persister persister = session.getPersister(type);
+            if (!selectedProperties.isEmpty() && persister instanceof NativeEntryEntityPersister) {
+                // the results of select() queries are read-only instances holding only the selected properties
+                final NativeEntryEntityPersister partialPersister = (NativeEntryEntityPersister) persister;
+                resolved = partialPersister.retrievePartialEntities(partialPersister.getPersistentEntity(), identifiers, selectedProperties);
+            }
+            else {
+                resolved = session.retrieveAll(type, identifiers);
+            }
+            return resolved.contains(null) ? null : resolved;
+        }
+    }
+}
@@ -0,0 +1,74 @@
+/* Copyright (C) 2010 SpringSource
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.datastore.mapping.query;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Caches the native form of queries compiled by a datastore, keyed by the {@link QueryShape} of the query.
+ * The least recently used plans are discarded once the maximum size is reached.
+ *
+ * @param <T> The type of the compiled query
+ *
+ * @author Graeme Rocher
+ * @since 1.0
+ */
+public class QueryPlanCache<T> {
+
+    public static final int DEFAULT_MAX_SIZE = 500;
+
+    private final Map<String, T> plans;
+
+    public QueryPlanCache() {
+        this(DEFAULT_MAX_SIZE);
+    }
+
+    public QueryPlanCache(final int maxSize) {
+        plans = Collections.synchronizedMap(new LinkedHashMap<String, T>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, T> eldest) {
+                return size() > maxSize;
+            }
+        });
+    }
+
+    /**
+     * @param key The key of the shape
+     * @return The compiled query or null if none was cached
+     */
+    public T get(String key) {
+        return plans.get(key);
+    }
+
+    /**
+     * @param key The key of the shape
+     * @param plan The compiled query
+     */
+    public void put(String key, T plan) {
+        plans.put(key, plan);
+    }
+
+    public int size() {
+        return plans.size();
+    }
+
+    public void clear() {
+        plans.clear();
+    }
+}
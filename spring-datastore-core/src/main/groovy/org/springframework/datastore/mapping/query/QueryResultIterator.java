@@ -0,0 +1,129 @@
+/* Copyright (C) 2010 SpringSource
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.datastore.mapping.query;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import org.springframework.datastore.mapping.core.Session;
+
+/**
+ * An iterator over the results of a {@link Query} that fetches the results lazily in batches. Entities that
+ * were returned by a previous batch are evicted from the session when the next batch is fetched so that only
+ * a single batch is held in memory at any time.
+ *
+ * Iterators should be closed once they are no longer needed in order to release any resources held by the
+ * underlying datastore. They are closed automatically when the last result has been read.
+ *
+ * @author Graeme Rocher
+ * @since 1.0
+ */
+public abstract class QueryResultIterator implements Iterator<Object> {
+
+    private final Session session;
+    private List<?> batch = Collections.emptyList();
+    private int index;
+    private boolean closed;
+
+    protected QueryResultIterator(Session session) {
+        this.session = session;
+    }
+
+    /**
+     * Creates an iterator over results that were already obtained
+     *
+     * @param session The session
+     * @param results The results
+     * @param batchSize The number of results after which consumed entities are evicted
+     * @return The iterator
+     */
+    public static QueryResultIterator forList(Session session, final List<?> results, final int batchSize) {
+        return new QueryResultIterator(session) {
+            private int position;
+
+            @Override
+            protected List<?> nextBatch() {
+                if (position >= results.size()) return null;
+                final int end = Math.min(position + batchSize, results.size());
+                final List<?> next = results.subList(position, end);
+                position = end;
+                return next;
+            }
+        };
+    }
+
+    /**
+     * Fetches the next batch of results
+     *
+     * @return The results or null if there are no more results
+     */
+    protected abstract List<?> nextBatch();
+
+    /**
+     * Releases the resources held by the iterator. Subclasses should override this method to close cursors
+     */
+    protected void closeResources() {
+        // do nothing
+    }
+
+    public boolean hasNext() {
+        while (!closed && index >= batch.size()) {
+            evict(batch);
+            batch = Collections.emptyList();
+            index = 0;
+            final List<?> next = nextBatch();
+            if (next == null) {
+                close();
+            }
+            else {
+                batch = next;
+            }
+        }
+        return !closed;
+    }
+
+    public Object next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return batch.get(index++);
+    }
+
+    public void remove() {
+        throw new UnsupportedOperationException("Cannot remove the results of a query");
+    }
+
+    /**
+     * Closes the iterator releasing any resources held by it
+     */
+    public void close() {
+        if (!closed) {
+            closed = true;
+            batch = Collections.emptyList();
+            closeResources();
+        }
+    }
+
+    private void evict(List<?> consumed) {
+        if (session == null) return;
+        for (Object o : consumed) {
+            if (session.contains(o)) {
+                session.clear(o);
+            }
+        }
+    }
+}
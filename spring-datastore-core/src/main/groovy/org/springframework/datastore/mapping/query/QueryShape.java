@@ -0,0 +1,241 @@
+/* Copyright (C) 2010 SpringSource
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.datastore.mapping.query;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import org.springframework.datastore.mapping.model.PersistentEntity;
+import org.springframework.datastore.mapping.model.PersistentProperty;
+
+/**
+ * The shape of a query: its entity, criteria tree, projections and order with the values of the criteria replaced
+ * by placeholders. Queries that only differ by their values share a shape, which allows datastores to compile
+ * a query once per shape and only bind the values of subsequent queries.
+ *
+ * The parameters are collected depth first in the order the criteria were added. Values of criteria that
+ * a datastore embeds into the native query rather than binding them can be declared as literals, in which case
+ * they become part of the shape.
+ *
+ * @author Graeme Rocher
+ * @since 1.0
+ */
+public class QueryShape {
+
+    private final String key;
+    private final List<Parameter> parameters;
+
+    private QueryShape(String key, List<Parameter> parameters) {
+        this.key = key;
+        this.parameters = Collections.unmodifiableList(parameters);
+    }
+
+    /**
+     * Creates the shape of a query
+     *
+     * @param query The query
+     * @param literalCriteria The criterion types whose values are part of the shape
+     * @return The shape or null if the query contains criteria or literal values that have no stable representation
+     */
+    public static QueryShape create(Query query, Class<?>... literalCriteria) {
+        StringBuilder key = new StringBuilder(query.entity.getName()).append('|');
+        List<Parameter> parameters = new ArrayList<Parameter>();
+        if (!appendJunction(key, query.entity, query.criteria, parameters, literalCriteria)) {
+            return null;
+        }
+
+        key.append("|projections[");
+        for (Query.Projection projection : query.projections.getProjectionList()) {
+            key.append(projection.getClass().getSimpleName());
+            if (projection instanceof Query.PropertyProjection) {
+                key.append('(').append(((Query.PropertyProjection) projection).getPropertyName()).append(')');
+            }
+            key.append(',');
+        }
+        key.append("]|order[");
+        for (Query.Order order : query.orderBy) {
+            key.append(order.getProperty()).append(' ').append(order.getDirection()).append(',');
+        }
+        key.append(']');
+        return new QueryShape(key.toString(), parameters);
+    }
+
+    /**
+     * @return The key identifying the shape
+     */
+    public String getKey() {
+        return key;
+    }
+
+    /**
+     * @return The parameters in the order they appear in the criteria
+     */
+    public List<Parameter> getParameters() {
+        return parameters;
+    }
+
+    /**
+     * @return The values of the parameters in the order they appear in the criteria
+     */
+    public List<Object> getValues() {
+        List<Object> values = new ArrayList<Object>(parameters.size());
+        for (Parameter parameter : parameters) {
+            values.add(parameter.getValue());
+        }
+        return values;
+    }
+
+    /**
+     * Whether the given values are the values of this shape. Datastores can use this to verify that
+     * a native query built from the criteria binds the same values in the same order before caching it.
+     *
+     * @param values The values bound by a native query
+     * @return True if the values are identical to the parameter values
+     */
+    public boolean isBoundBy(List<?> values) {
+        if (values == null || values.size() != parameters.size()) return false;
+        for (int i = 0; i < values.size(); i++) {
+            if (values.get(i) != parameters.get(i).getValue()) return false;
+        }
+        return true;
+    }
+
+    private static boolean appendJunction(StringBuilder key, PersistentEntity entity, Query.Junction junction,
+              List<Parameter> parameters, Class<?>[] literalCriteria) {
+        key.append(junction.getClass().getSimpleName()).append('(');
+        for (Query.Criterion criterion : junction.getCriteria()) {
+            if (!appendCriterion(key, entity, criterion, parameters, literalCriteria)) return false;
+            key.append(',');
+        }
+        key.append(')');
+        return true;
+    }
+
+    private static boolean appendCriterion(StringBuilder key, PersistentEntity entity, Query.Criterion criterion,
+              List<Parameter> parameters, Class<?>[] literalCriteria) {
+        if (criterion instanceof AssociationQuery) {
+            final AssociationQuery associationQuery = (AssociationQuery) criterion;
+            key.append("association:").append(associationQuery.getAssociation().getName());
+            return appendJunction(key, associationQuery.getAssociation().getAssociatedEntity(), associationQuery.criteria, parameters, literalCriteria);
+        }
+        if (criterion instanceof Query.Junction) {
+            return appendJunction(key, entity, (Query.Junction) criterion, parameters, literalCriteria);
+        }
+        if (!(criterion instanceof Query.PropertyNameCriterion)) {
+            return false;
+        }
+
+        final String property = criterion instanceof Query.IdEquals ?
+                entity.getIdentity().getName() : ((Query.PropertyNameCriterion) criterion).getProperty();
+        key.append(criterion.getClass().getName()).append('(').append(property);
+        if (isLiteral(criterion, literalCriteria)) {
+            key.append(',');
+            if (!appendLiteral(key, ((Query.PropertyCriterion) criterion).getValue())) return false;
+        }
+        else if (criterion instanceof Query.Between) {
+            final Query.Between between = (Query.Between) criterion;
+            parameters.add(new Parameter(entity, property, between.getFrom()));
+            parameters.add(new Parameter(entity, property, between.getTo()));
+            key.append(",?,?");
+        }
+        else if (criterion instanceof Query.In) {
+            for (Object value : ((Query.In) criterion).getValues()) {
+                parameters.add(new Parameter(entity, property, value));
+                key.append(",?");
+            }
+        }
+        else if (criterion instanceof Query.PropertyCriterion) {
+            parameters.add(new Parameter(entity, property, ((Query.PropertyCriterion) criterion).getValue()));
+            key.append(",?");
+        }
+        key.append(')');
+        return true;
+    }
+
+    private static boolean isLiteral(Query.Criterion criterion, Class<?>[] literalCriteria) {
+        if (!(criterion instanceof Query.PropertyCriterion)) return false;
+        for (Class<?> literalCriterion : literalCriteria) {
+            if (literalCriterion.isInstance(criterion)) return true;
+        }
+        return false;
+    }
+
+    static boolean appendLiteral(StringBuilder key, Object value) {
+        if (value == null) {
+            key.append("null");
+            return true;
+        }
+        if (value instanceof Date) {
+            key.append("Date:").append(((Date) value).getTime());
+            return true;
+        }
+        if (isImmutable(value)) {
+            key.append(value.getClass().getSimpleName()).append(':').append(value);
+            return true;
+        }
+        return false;
+    }
+
+    static boolean isImmutable(Object value) {
+        return value instanceof String || value instanceof Number || value instanceof Boolean ||
+               value instanceof Character || value instanceof Enum;
+    }
+
+    /**
+     * A value of a query together with the property it restricts
+     */
+    public static class Parameter {
+        private final PersistentEntity entity;
+        private final String property;
+        private final Object value;
+
+        Parameter(PersistentEntity entity, String property, Object value) {
+            this.entity = entity;
+            this.property = property;
+            this.value = value;
+        }
+
+        /**
+         * @return The entity that declares the property
+         */
+        public PersistentEntity getEntity() {
+            return entity;
+        }
+
+        /**
+         * @return The name of the property
+         */
+        public String getProperty() {
+            return property;
+        }
+
+        /**
+         * @return The persistent property or null if the entity has no such property
+         */
+        public PersistentProperty getPersistentProperty() {
+            final PersistentProperty identity = entity.getIdentity();
+            if (identity != null && identity.getName().equals(property)) {
+                return identity;
+            }
+            return entity.getPropertyByName(property);
+        }
+
+        public Object getValue() {
+            return value;
+        }
+    }
+}
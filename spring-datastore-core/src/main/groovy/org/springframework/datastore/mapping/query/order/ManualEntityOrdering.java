@@ -15,19 +15,20 @@
 package org.springframework.datastore.mapping.query.order;
 
 import java.beans.PropertyDescriptor;
+import java.lang.ref.Reference;
+import java.lang.ref.SoftReference;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
-import java.util.ListIterator;
 import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.WeakHashMap;
 import java.util.concurrent.ConcurrentHashMap;
 
-import org.springframework.beans.BeanWrapper;
-import org.springframework.beans.BeanWrapperImpl;
+import org.springframework.beans.BeanUtils;
 import org.springframework.datastore.mapping.model.PersistentEntity;
-import org.springframework.datastore.mapping.model.PersistentProperty;
 import org.springframework.datastore.mapping.query.Query;
 import org.springframework.util.ReflectionUtils;
 
@@ -36,13 +37,21 @@ import org.springframework.util.ReflectionUtils;
  * NoSQL datastores support the SQL equivalent of ORDER BY, hence manual in-memory ordering is the
  * only way to simulate such queries.
  *
+ * <p>All orders are applied in a single stable sort. The values to order by are read once per result
+ * rather than on every comparison and when only a page of the results is required a bounded heap of
+ * offset + max results is kept instead of sorting all results. Null values come first in ascending
+ * order and last in descending order.</p>
+ *
  * @author Graeme Rocher
  * @since 1.0
  */
 public class ManualEntityOrdering {
 
     PersistentEntity entity;
-    private static Map<String, Method> cachedReadMethods = new ConcurrentHashMap<String, Method>();
+    // results may be instances of subclasses, so read methods are cached per class rather than on the entity's reflector.
+    // The weak keys let a class be unloaded, the soft values keep the methods of each class until memory runs low
+    private static Map<Class<?>, Reference<Map<String, Method>>> cachedReadMethods =
+            Collections.synchronizedMap(new WeakHashMap<Class<?>, Reference<Map<String, Method>>>());
 
     public ManualEntityOrdering(PersistentEntity entity) {
         this.entity = entity;
@@ -52,90 +61,214 @@ public class ManualEntityOrdering {
         return entity;
     }
 
+    public List applyOrder(List results, Query.Order order) {
+        return applyOrder(results, Collections.singletonList(order));
+    }
+
     public List applyOrder(List results, List<Query.Order> orderDefinition) {
         if (results == null) return null;
-        if (orderDefinition == null) return results;
-        for (Query.Order order : orderDefinition) {
-            results = applyOrder(results, order);
+        if (orderDefinition == null || orderDefinition.isEmpty()) return results;
+
+        final SortEntryComparator comparator = new SortEntryComparator(orderDefinition);
+        List<SortEntry> entries = decorate(results, orderDefinition);
+        Collections.sort(entries, comparator);
+        return undecorate(entries, 0);
+    }
+
+    /**
+     * Orders the results and returns a page of them
+     *
+     * @param results The results
+     * @param orderDefinition The orders to apply, if any
+     * @param offset The offset of the first result to return
+     * @param max The maximum number of results to return or -1 for all of them
+     * @return The ordered page of results
+     */
+    public List applyOrder(List results, List<Query.Order> orderDefinition, int offset, int max) {
+        if (results == null) return null;
+        if (offset < 0) offset = 0;
+
+        final int total = results.size();
+        if (offset >= total || max == 0) return new ArrayList();
+
+        final boolean lastPage = max < 0 || max >= total - offset;
+        if (orderDefinition == null || orderDefinition.isEmpty()) {
+            return new ArrayList(results.subList(offset, lastPage ? total : offset + max));
         }
-        return results;
+        if (lastPage) {
+            final List ordered = applyOrder(results, orderDefinition);
+            return offset == 0 ? ordered : new ArrayList(ordered.subList(offset, total));
+        }
+
+        final SortEntryComparator comparator = new SortEntryComparator(orderDefinition);
+        return undecorate(firstEntries(results, orderDefinition, comparator, null, offset + max), offset);
     }
 
     /**
-     * Reverses the list.  The result is a new List with the identical contents
-     * in reverse order.
+     * Orders the results and returns those that follow the given position in that order, which implements
+     * keyset pagination for datastores that order in memory
      *
-     * @param list a List
-     * @return a reversed List
+     * @param results The results
+     * @param orderDefinition The orders to apply
+     * @param position The values of the orders of the last result of the previous page
+     * @param offset The offset of the first result to return, counted from the position
+     * @param max The maximum number of results to return or -1 for all of them
+     * @return The ordered results following the position
+     * @see Query#after(java.util.List, Object)
+     */
+    public List applyOrder(List results, List<Query.Order> orderDefinition, List<?> position, int offset, int max) {
+        if (results == null) return null;
+        if (offset < 0) offset = 0;
+        if (max == 0) return new ArrayList();
+
+        final SortEntryComparator comparator = new SortEntryComparator(orderDefinition);
+        // the greatest index sorts the position after a result with equal values, which excludes that result
+        final SortEntry last = new SortEntry(null, position.toArray(), Integer.MAX_VALUE);
+        final int limit = max < 0 || max > Integer.MAX_VALUE - offset ? -1 : offset + max;
+        return undecorate(firstEntries(results, orderDefinition, comparator, last, limit), offset);
+    }
+
+    /**
+     * Returns the first entries of the results that follow the given entry in order. Unless all of them are
+     * required the first limit entries are kept in a heap whose head is the greatest entry kept so far.
      */
-    private static List reverse(List list) {
-        int size = list.size();
-        List answer = new ArrayList(size);
-        ListIterator iter = list.listIterator(size);
-        while (iter.hasPrevious()) {
-            answer.add(iter.previous());
+    private static List<SortEntry> firstEntries(List results, List<Query.Order> orderDefinition,
+            SortEntryComparator comparator, SortEntry after, int limit) {
+        final PriorityQueue<SortEntry> heap = limit < 0 ? null :
+                new PriorityQueue<SortEntry>(Math.max(Math.min(limit, results.size()), 1), Collections.reverseOrder(comparator));
+        List<SortEntry> entries = new ArrayList<SortEntry>();
+        int index = 0;
+        for (Object result : results) {
+            final SortEntry entry = new SortEntry(result, extractKeys(result, orderDefinition), index++);
+            if (after != null && comparator.compare(entry, after) <= 0) {
+                continue;
+            }
+            if (heap == null) {
+                entries.add(entry);
+            }
+            else if (heap.size() < limit) {
+                heap.add(entry);
+            }
+            else if (comparator.compare(entry, heap.peek()) < 0) {
+                heap.poll();
+                heap.add(entry);
+            }
         }
-        return answer;
+
+        if (heap != null) {
+            entries.addAll(heap);
+        }
+        Collections.sort(entries, comparator);
+        return entries;
     }
 
-    public List applyOrder(List results, Query.Order order) {
-       final String name = order.getProperty();
-
-        @SuppressWarnings("hiding") final PersistentEntity entity = getEntity();
-        PersistentProperty property = entity.getPropertyByName(name);
-        if (property == null) {
-            final PersistentProperty identity = entity.getIdentity();
-            if (name.equals(identity.getName())) {
-                property = identity;
+    private static List<SortEntry> decorate(List results, List<Query.Order> orderDefinition) {
+        List<SortEntry> entries = new ArrayList<SortEntry>(results.size());
+        int index = 0;
+        for (Object result : results) {
+            entries.add(new SortEntry(result, extractKeys(result, orderDefinition), index++));
+        }
+        return entries;
+    }
+
+    private static List undecorate(List<SortEntry> entries, int offset) {
+        List results = new ArrayList(Math.max(entries.size() - offset, 0));
+        for (int i = offset; i < entries.size(); i++) {
+            results.add(entries.get(i).value);
+        }
+        return results;
+    }
+
+    private static Object[] extractKeys(Object result, List<Query.Order> orderDefinition) {
+        Object[] keys = new Object[orderDefinition.size()];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = getPropertyValue(result, orderDefinition.get(i).getProperty());
+        }
+        return keys;
+    }
+
+    private static Object getPropertyValue(Object result, String propertyName) {
+        if (result == null) return null;
+        if (result instanceof Map) {
+            return ((Map) result).get(propertyName);
+        }
+
+        final Method readMethod = getReadMethod(result.getClass(), propertyName);
+        return readMethod == null ? null : ReflectionUtils.invokeMethod(readMethod, result);
+    }
+
+    private static Method getReadMethod(Class<?> type, String propertyName) {
+        final Map<String, Method> readMethods = getReadMethods(type);
+        Method readMethod = readMethods.get(propertyName);
+        if (readMethod == null) {
+            final PropertyDescriptor pd = BeanUtils.getPropertyDescriptor(type, propertyName);
+            if (pd == null || pd.getReadMethod() == null) {
+                return null;
+            }
+            readMethod = pd.getReadMethod();
+            ReflectionUtils.makeAccessible(readMethod);
+            readMethods.put(propertyName, readMethod);
+        }
+        return readMethod;
+    }
+
+    private static Map<String, Method> getReadMethods(Class<?> type) {
+        synchronized (cachedReadMethods) {
+            final Reference<Map<String, Method>> reference = cachedReadMethods.get(type);
+            Map<String, Method> readMethods = reference == null ? null : reference.get();
+            if (readMethods == null) {
+                readMethods = new ConcurrentHashMap<String, Method>();
+                cachedReadMethods.put(type, new SoftReference<Map<String, Method>>(readMethods));
             }
+            return readMethods;
+        }
+    }
+
+    private static class SortEntry {
+        final Object value;
+        final Object[] keys;
+        final int index;
+
+        SortEntry(Object value, Object[] keys, int index) {
+            this.value = value;
+            this.keys = keys;
+            this.index = index;
         }
+    }
+
+    private static class SortEntryComparator implements Comparator<SortEntry> {
+        private final boolean[] descending;
 
-        if (property != null) {
-            final PersistentProperty finalProperty = property;
-            Collections.sort(results, new Comparator(){
-
-                public int compare(Object o1, Object o2) {
-
-                    if (entity.isInstance(o1) && entity.isInstance(o2)) {
-                        final String propertyName = finalProperty.getName();
-                        Method readMethod = cachedReadMethods.get(propertyName);
-                        if (readMethod == null) {
-                            BeanWrapper b = new BeanWrapperImpl(o1);
-                            final PropertyDescriptor pd = b.getPropertyDescriptor(propertyName);
-                            if (pd != null) {
-                                readMethod = pd.getReadMethod();
-                                if (readMethod!=null) {
-
-                                    ReflectionUtils.makeAccessible(readMethod);
-                                    cachedReadMethods.put(propertyName, readMethod);
-                                }
-                            }
-                        }
-
-                        if (readMethod != null) {
-                            final Class<?> declaringClass = readMethod.getDeclaringClass();
-                            if (declaringClass.isInstance(o1) && declaringClass.isInstance(o2)) {
-                                Object left = ReflectionUtils.invokeMethod(readMethod, o1);
-                                Object right = ReflectionUtils.invokeMethod(readMethod, o2);
-
-                                if (left == null && right == null) return 0;
-                                if (left != null && right == null) return 1;
-                                if (left == null) return -1;
-                                if ((left instanceof Comparable) && (right instanceof Comparable)) {
-                                    return ((Comparable)left).compareTo(right);
-                                }
-                            }
-                        }
+        SortEntryComparator(List<Query.Order> orderDefinition) {
+            descending = new boolean[orderDefinition.size()];
+            for (int i = 0; i < descending.length; i++) {
+                descending[i] = orderDefinition.get(i).getDirection() == Query.Order.Direction.DESC;
+            }
+        }
+
+        public int compare(SortEntry e1, SortEntry e2) {
+            for (int i = 0; i < descending.length; i++) {
+                final int result = compareValues(e1.keys[i], e2.keys[i]);
+                if (result != 0) {
+                    if (descending[i]) {
+                        return result < 0 ? 1 : -1;
                     }
-                    return 0;
+                    return result;
                 }
-            });
+            }
+            // equal values keep the order in which the results were obtained
+            return e1.index < e2.index ? -1 : (e1.index == e2.index ? 0 : 1);
         }
 
-        if (order.getDirection() == Query.Order.Direction.DESC) {
-            results = reverse(results);
+        @SuppressWarnings("unchecked")
+        private int compareValues(Object left, Object right) {
+            if (left == null && right == null) return 0;
+            if (left == null) return -1;
+            if (right == null) return 1;
+            if ((left instanceof Comparable) && (right instanceof Comparable)) {
+                return ((Comparable) left).compareTo(right);
+            }
+            return 0;
         }
-
-        return results;
     }
 }
@@ -14,28 +14,55 @@
  */
 package org.springframework.datastore.mapping.query.projections;
 
+import java.beans.PropertyDescriptor;
+import java.lang.reflect.Method;
+import java.math.BigDecimal;
+import java.math.BigInteger;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Set;
 
+import org.springframework.beans.BeanUtils;
 import org.springframework.datastore.mapping.engine.EntityAccess;
 import org.springframework.datastore.mapping.model.PersistentEntity;
+import org.springframework.datastore.mapping.query.Projections;
 import org.springframework.datastore.mapping.query.Query;
-import org.springframework.datastore.mapping.query.order.ManualEntityOrdering;
+import org.springframework.datastore.mapping.reflect.EntityReflector;
+import org.springframework.util.ReflectionUtils;
 
 /**
  * Implements common projections in-memory given a set of results. Not all
  * NoSQL datastores support projections like SQL min(..), max(..) etc.
  * This class provides support for those that don't.
+ *
+ * <p>Count, min, max, sum, avg and count distinct projections are calculated together in a single
+ * pass over the results, reading each property once per result.</p>
  */
 public class ManualProjections {
 
     PersistentEntity entity;
-    private ManualEntityOrdering order;
 
     public ManualProjections(PersistentEntity entity) {
         this.entity = entity;
-        this.order = new ManualEntityOrdering(entity);
+    }
+
+    /**
+     * Whether the given projection can be calculated by {@link #calculate(Iterator, List)}
+     *
+     * @param projection The projection
+     * @return True if it can
+     */
+    public static boolean isSupported(Query.Projection projection) {
+        return projection instanceof Query.CountProjection ||
+               projection instanceof Query.MinProjection ||
+               projection instanceof Query.MaxProjection ||
+               projection instanceof Query.SumProjection ||
+               projection instanceof Query.AvgProjection ||
+               projection instanceof Query.CountDistinctProjection;
     }
 
     /**
@@ -46,15 +73,7 @@ public class ManualProjections {
      * @return The minimum value or null if there are no results
      */
     public Object min(Collection results, String property) {
-        if (results != null && results.size()>0) {
-            final List sorted = order.applyOrder(new ArrayList(results), Query.Order.asc(property));
-            final Object o = sorted.get(0);
-            if (entity.isInstance(o)) {
-                return new EntityAccess(entity, o).getProperty(property);
-            }
-            return o;
-        }
-        return null;
+        return calculate(results, Projections.min(property));
     }
 
    /**
@@ -65,15 +84,93 @@ public class ManualProjections {
      * @return The maximum value or null if there are no results
      */
     public Object max(Collection results, String property) {
-        if (results != null && results.size()>0) {
-            final List sorted = order.applyOrder(new ArrayList(results), Query.Order.asc(property));
-            final Object o = sorted.get(results.size()-1);
-            if (entity.isInstance(o)) {
-                return new EntityAccess(entity, o).getProperty(property);
+        return calculate(results, Projections.max(property));
+    }
+
+    /**
+     * Calculates the sum of a property
+     *
+     * @param results The results
+     * @param property The property to calculate
+     * @return The sum or null if there are no numeric values
+     */
+    public Object sum(Collection results, String property) {
+        return calculate(results, Projections.sum(property));
+    }
+
+    /**
+     * Calculates the average value of a property
+     *
+     * @param results The results
+     * @param property The property to calculate
+     * @return The average or null if there are no numeric values
+     */
+    public Object avg(Collection results, String property) {
+        return calculate(results, Projections.avg(property));
+    }
+
+    /**
+     * Counts the distinct non-null values of a property
+     *
+     * @param results The results
+     * @param property The property to calculate
+     * @return The number of distinct values
+     */
+    public Object countDistinct(Collection results, String property) {
+        return calculate(results, Projections.countDistinct(property));
+    }
+
+    private Object calculate(Collection results, Query.Projection projection) {
+        return calculate(results, Collections.singletonList(projection)).get(0);
+    }
+
+    /**
+     * Calculates several projections in a single pass over the results
+     *
+     * @param results The results
+     * @param projections The projections
+     * @return A list with the value of each projection in the order given, projections that are not
+     * {@link #isSupported(Query.Projection) supported} have a null value
+     */
+    public List calculate(Collection results, List<Query.Projection> projections) {
+        return calculate(results == null ? null : results.iterator(), projections);
+    }
+
+    /**
+     * Calculates several projections in a single pass over the results of a cursor
+     *
+     * @param results An iterator over the results
+     * @param projections The projections
+     * @return A list with the value of each projection in the order given, projections that are not
+     * {@link #isSupported(Query.Projection) supported} have a null value
+     */
+    public List calculate(Iterator results, List<Query.Projection> projections) {
+        final List<PropertyReader> readers = new ArrayList<PropertyReader>();
+        final Aggregator[] aggregators = new Aggregator[projections.size()];
+        for (int i = 0; i < aggregators.length; i++) {
+            aggregators[i] = createAggregator(projections.get(i), readers);
+        }
+
+        if (results != null) {
+            final Object[] values = new Object[readers.size()];
+            while (results.hasNext()) {
+                final Object result = results.next();
+                for (int i = 0; i < values.length; i++) {
+                    values[i] = readers.get(i).read(result);
+                }
+                for (Aggregator aggregator : aggregators) {
+                    if (aggregator != null) {
+                        aggregator.add(aggregator.slot < 0 ? result : values[aggregator.slot]);
+                    }
+                }
             }
-            return o;
         }
-        return null;
+
+        List projectedResults = new ArrayList(aggregators.length);
+        for (Aggregator aggregator : aggregators) {
+            projectedResults.add(aggregator == null ? null : aggregator.getResult());
+        }
+        return projectedResults;
     }
 
     /**
@@ -86,10 +183,10 @@ public class ManualProjections {
     public List property(Collection results, String property) {
         List projectedResults = new ArrayList();
         if (results != null && results.size()>0) {
+            final PropertyReader reader = new PropertyReader(property);
             for (Object o : results) {
-                EntityAccess ea = new EntityAccess(entity, o);
                 if (entity.isInstance(o)) {
-                    projectedResults.add(ea.getProperty(property));
+                    projectedResults.add(reader.read(o));
                 }
                 else {
                     projectedResults.add(null);
@@ -98,4 +195,214 @@ public class ManualProjections {
         }
         return projectedResults;
     }
+
+    private Aggregator createAggregator(Query.Projection projection, List<PropertyReader> readers) {
+        if (projection instanceof Query.CountProjection) {
+            return new CountAggregator();
+        }
+        if (!isSupported(projection)) {
+            return null;
+        }
+
+        final String propertyName = ((Query.PropertyProjection) projection).getPropertyName();
+        int slot = -1;
+        for (int i = 0; i < readers.size(); i++) {
+            if (readers.get(i).propertyName.equals(propertyName)) {
+                slot = i;
+                break;
+            }
+        }
+        if (slot < 0) {
+            slot = readers.size();
+            readers.add(new PropertyReader(propertyName));
+        }
+
+        if (projection instanceof Query.MinProjection) return new ComparingAggregator(slot, -1);
+        if (projection instanceof Query.MaxProjection) return new ComparingAggregator(slot, 1);
+        if (projection instanceof Query.SumProjection) return new SumAggregator(slot);
+        if (projection instanceof Query.AvgProjection) return new AvgAggregator(slot);
+        return new CountDistinctAggregator(slot);
+    }
+
+    /**
+     * Reads a property of the results, results that are not instances of the entity are used as the value
+     */
+    private class PropertyReader {
+        final String propertyName;
+        private final EntityReflector reflector;
+        private final int index;
+        private final Method readMethod;
+
+        PropertyReader(String propertyName) {
+            this.propertyName = propertyName;
+            reflector = entity.getReflector();
+            index = reflector == null ? -1 : reflector.getPropertyIndex(propertyName);
+
+            Method method = null;
+            if (index < 0) {
+                final PropertyDescriptor pd = BeanUtils.getPropertyDescriptor(entity.getJavaClass(), propertyName);
+                if (pd != null && pd.getReadMethod() != null) {
+                    method = pd.getReadMethod();
+                    ReflectionUtils.makeAccessible(method);
+                }
+            }
+            readMethod = method;
+        }
+
+        Object read(Object result) {
+            if (!entity.isInstance(result)) {
+                return result;
+            }
+            if (index > -1) {
+                return reflector.getProperty(result, index);
+            }
+            if (readMethod != null) {
+                return ReflectionUtils.invokeMethod(readMethod, result);
+            }
+            return new EntityAccess(entity, result).getProperty(propertyName);
+        }
+    }
+
+    private static abstract class Aggregator {
+        final int slot;
+
+        Aggregator(int slot) {
+            this.slot = slot;
+        }
+
+        abstract void add(Object value);
+
+        abstract Object getResult();
+    }
+
+    private static class CountAggregator extends Aggregator {
+        private int count;
+
+        CountAggregator() {
+            super(-1);
+        }
+
+        @Override
+        void add(Object value) {
+            count++;
+        }
+
+        @Override
+        Object getResult() {
+            return count;
+        }
+    }
+
+    /**
+     * Keeps the minimum (signum -1) or maximum (signum 1) of the non-null values
+     */
+    private static class ComparingAggregator extends Aggregator {
+        private final int signum;
+        private Object result;
+
+        ComparingAggregator(int slot, int signum) {
+            super(slot);
+            this.signum = signum;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        void add(Object value) {
+            if (value == null) return;
+            if (result == null) {
+                result = value;
+            }
+            else if ((value instanceof Comparable) && (result instanceof Comparable)) {
+                final int comparison = ((Comparable) value).compareTo(result);
+                if (comparison != 0 && (comparison < 0 ? -1 : 1) == signum) {
+                    result = value;
+                }
+            }
+        }
+
+        @Override
+        Object getResult() {
+            return result;
+        }
+    }
+
+    /**
+     * Sums numeric values using a long accumulator while all values are integral, falling back to a
+     * double accumulator for floating point values and BigDecimal for arbitrary precision values
+     */
+    private static class SumAggregator extends Aggregator {
+        long longSum;
+        double doubleSum;
+        BigDecimal decimalSum;
+        boolean floatingPoint;
+        int count;
+
+        SumAggregator(int slot) {
+            super(slot);
+        }
+
+        @Override
+        void add(Object value) {
+            if (!(value instanceof Number)) return;
+
+            count++;
+            if (value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte) {
+                longSum += ((Number) value).longValue();
+            }
+            else if (value instanceof BigDecimal || value instanceof BigInteger) {
+                final BigDecimal decimal = value instanceof BigDecimal ? (BigDecimal) value : new BigDecimal((BigInteger) value);
+                decimalSum = decimalSum == null ? decimal : decimalSum.add(decimal);
+            }
+            else {
+                floatingPoint = true;
+                doubleSum += ((Number) value).doubleValue();
+            }
+        }
+
+        @Override
+        Object getResult() {
+            if (count == 0) return null;
+            if (decimalSum != null) {
+                BigDecimal sum = decimalSum.add(BigDecimal.valueOf(longSum));
+                return floatingPoint ? sum.add(new BigDecimal(doubleSum)) : sum;
+            }
+            if (floatingPoint) {
+                return doubleSum + longSum;
+            }
+            return longSum;
+        }
+    }
+
+    private static class AvgAggregator extends SumAggregator {
+
+        AvgAggregator(int slot) {
+            super(slot);
+        }
+
+        @Override
+        Object getResult() {
+            final Number sum = (Number) super.getResult();
+            return sum == null ? null : sum.doubleValue() / count;
+        }
+    }
+
+    private static class CountDistinctAggregator extends Aggregator {
+        private final Set<Object> values = new HashSet<Object>();
+
+        CountDistinctAggregator(int slot) {
+            super(slot);
+        }
+
+        @Override
+        void add(Object value) {
+            if (value != null) {
+                values.add(value);
+            }
+        }
+
+        @Override
+        Object getResult() {
+            return values.size();
+        }
+    }
 }
@@ -0,0 +1,59 @@
+/* Copyright (C) 2010 SpringSource
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.datastore.mapping.reflect;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Base class for generated reflectors. Holds the slot metadata while subclasses
+ * implement the actual reads and writes.
+ *
+ * @author Graeme Rocher
+ * @since 1.0
+ */
+public abstract class AbstractEntityReflector implements EntityReflector {
+
+    private String[] propertyNames = new String[0];
+    private Class[] propertyTypes = new Class[0];
+    private Map<String, Integer> indices = new HashMap<String, Integer>();
+
+    void initialize(String[] names, Class[] types) {
+        propertyNames = names;
+        propertyTypes = types;
+        Map<String, Integer> newIndices = new HashMap<String, Integer>();
+        for (int i = 0; i < names.length; i++) {
+            newIndices.put(names[i], i);
+        }
+        indices = newIndices;
+    }
+
+    public int getPropertyIndex(String name) {
+        final Integer index = indices.get(name);
+        return index == null ? -1 : index;
+    }
+
+    public String[] getPropertyNames() {
+        return propertyNames;
+    }
+
+    public Class getPropertyType(int index) {
+        return propertyTypes[index];
+    }
+
+    protected IllegalArgumentException invalidIndex(int index) {
+        return new IllegalArgumentException("No property at index [" + index + "]");
+    }
+}
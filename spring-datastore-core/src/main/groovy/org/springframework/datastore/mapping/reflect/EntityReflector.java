@@ -0,0 +1,66 @@
+/* Copyright (C) 2010 SpringSource
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.datastore.mapping.reflect;
+
+/**
+ * Reads and writes the properties of an entity through slots resolved once
+ * per class, avoiding the introspection and reflective invocation performed
+ * by a BeanWrapper on every call.
+ *
+ * @author Graeme Rocher
+ * @since 1.0
+ */
+public interface EntityReflector {
+
+    /**
+     * Obtains the slot index of the given property
+     *
+     * @param name The name of the property
+     * @return The index or -1 if the property cannot be accessed by this reflector
+     */
+    int getPropertyIndex(String name);
+
+    /**
+     * @return The names of the properties accessible by this reflector, in slot order
+     */
+    String[] getPropertyNames();
+
+    /**
+     * Obtains the declared type of the property at the given slot
+     *
+     * @param index The slot index
+     * @return The property type
+     */
+    Class getPropertyType(int index);
+
+    /**
+     * Reads the property at the given slot
+     *
+     * @param entity The entity
+     * @param index The slot index
+     * @return The value, primitives are returned boxed
+     */
+    Object getProperty(Object entity, int index);
+
+    /**
+     * Writes the property at the given slot. No conversion is performed so the
+     * value must be assignable to the property type.
+     *
+     * @param entity The entity
+     * @param index The slot index
+     * @param value The value
+     */
+    void setProperty(Object entity, int index, Object value);
+}
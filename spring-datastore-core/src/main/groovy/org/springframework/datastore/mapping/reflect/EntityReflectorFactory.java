@@ -0,0 +1,36 @@
+/* Copyright (C) 2010 SpringSource
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.datastore.mapping.reflect;
+
+import org.springframework.datastore.mapping.model.PersistentEntity;
+
+/**
+ * Strategy used to obtain {@link EntityReflector} instances for persistent entities
+ *
+ * @author Graeme Rocher
+ * @since 1.0
+ */
+public interface EntityReflectorFactory {
+
+    /**
+     * Obtains the reflector for the given entity. Implementations are expected to
+     * cache reflectors as they are requested for every entity access.
+     *
+     * @param entity The persistent entity
+     * @return The reflector or null if the entity cannot be handled, in which case
+     * callers should fall back to regular bean reflection
+     */
+    EntityReflector getReflector(PersistentEntity entity);
+}
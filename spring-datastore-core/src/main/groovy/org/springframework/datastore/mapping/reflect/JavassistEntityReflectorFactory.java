@@ -0,0 +1,187 @@
+/* Copyright (C) 2010 SpringSource
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.datastore.mapping.reflect;
+
+import java.beans.PropertyDescriptor;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javassist.ClassClassPath;
+import javassist.ClassPool;
+import javassist.CtClass;
+import javassist.CtNewConstructor;
+import javassist.CtNewMethod;
+import javassist.LoaderClassPath;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.BeanUtils;
+import org.springframework.datastore.mapping.model.PersistentEntity;
+
+/**
+ * An {@link EntityReflectorFactory} that uses Javassist to generate a reflector class
+ * per entity which invokes the getters and setters directly, so that property access
+ * costs a switch and a plain method call instead of reflective invocation.
+ *
+ * Only properties with public getters and setters declared on public classes are
+ * compiled. If the entity class cannot be enhanced no reflector is returned and
+ * callers fall back to regular bean reflection.
+ *
+ * @author Graeme Rocher
+ * @since 1.0
+ */
+public class JavassistEntityReflectorFactory implements EntityReflectorFactory {
+
+    private static final Log LOG = LogFactory.getLog(JavassistEntityReflectorFactory.class);
+    private static final List EXCLUDED_PROPERTIES = Arrays.asList("class", "metaClass");
+    private static final AtomicInteger CLASS_COUNTER = new AtomicInteger();
+    private static final EntityReflector NO_REFLECTOR = new AbstractEntityReflector() {
+        public Object getProperty(Object entity, int index) { throw invalidIndex(index); }
+        public void setProperty(Object entity, int index, Object value) { throw invalidIndex(index); }
+    };
+
+    private Map<Class, EntityReflector> reflectors = new ConcurrentHashMap<Class, EntityReflector>();
+
+    public EntityReflector getReflector(PersistentEntity entity) {
+        if (entity == null) return null;
+
+        final Class javaClass = entity.getJavaClass();
+        EntityReflector reflector = reflectors.get(javaClass);
+        if (reflector == null) {
+            reflector = createReflector(javaClass);
+            if (reflector == null) reflector = NO_REFLECTOR;
+            reflectors.put(javaClass, reflector);
+        }
+        return reflector == NO_REFLECTOR ? null : reflector;
+    }
+
+    protected EntityReflector createReflector(Class javaClass) {
+        if (!Modifier.isPublic(javaClass.getModifiers()) || javaClass.getClassLoader() == null) {
+            return null;
+        }
+
+        List<PropertyDescriptor> descriptors = new ArrayList<PropertyDescriptor>();
+        for (PropertyDescriptor pd : BeanUtils.getPropertyDescriptors(javaClass)) {
+            if (EXCLUDED_PROPERTIES.contains(pd.getName())) continue;
+            if (isAccessible(pd.getReadMethod()) && isAccessible(pd.getWriteMethod())) {
+                descriptors.add(pd);
+            }
+        }
+        if (descriptors.isEmpty()) {
+            return null;
+        }
+
+        String[] names = new String[descriptors.size()];
+        Class[] types = new Class[descriptors.size()];
+        StringBuilder getter = new StringBuilder();
+        StringBuilder setter = new StringBuilder();
+        final String entityName = getSourceName(javaClass);
+        getter.append("public Object getProperty(Object o, int i) { ")
+              .append(entityName).append(" e = (").append(entityName).append(")$1; switch ($2) { ");
+        setter.append("public void setProperty(Object o, int i, Object v) { ")
+              .append(entityName).append(" e = (").append(entityName).append(")$1; switch ($2) { ");
+
+        for (int i = 0; i < names.length; i++) {
+            PropertyDescriptor pd = descriptors.get(i);
+            final Method readMethod = pd.getReadMethod();
+            final Method writeMethod = pd.getWriteMethod();
+            names[i] = pd.getName();
+            types[i] = writeMethod.getParameterTypes()[0];
+
+            getter.append("case ").append(i).append(": return ")
+                  .append(box(readMethod.getReturnType(), "e." + readMethod.getName() + "()"))
+                  .append("; ");
+            setter.append("case ").append(i).append(": e.").append(writeMethod.getName())
+                  .append("(").append(unbox(types[i], "$3")).append("); return; ");
+        }
+        getter.append("} throw invalidIndex($2); }");
+        setter.append("} throw invalidIndex($2); }");
+
+        try {
+            final ClassLoader loader = javaClass.getClassLoader();
+            ClassPool pool = new ClassPool(true);
+            pool.appendClassPath(new LoaderClassPath(loader));
+            pool.appendClassPath(new ClassClassPath(AbstractEntityReflector.class));
+
+            CtClass cc = pool.makeClass(javaClass.getName() + "$$EntityReflector$$" + CLASS_COUNTER.incrementAndGet());
+            cc.setSuperclass(pool.get(AbstractEntityReflector.class.getName()));
+            cc.addConstructor(CtNewConstructor.defaultConstructor(cc));
+            cc.addMethod(CtNewMethod.make(getter.toString(), cc));
+            cc.addMethod(CtNewMethod.make(setter.toString(), cc));
+
+            Class reflectorClass = cc.toClass(loader, javaClass.getProtectionDomain());
+            cc.detach();
+
+            AbstractEntityReflector reflector = (AbstractEntityReflector) reflectorClass.newInstance();
+            reflector.initialize(names, types);
+            return reflector;
+        }
+        catch (Exception e) {
+            LOG.debug("Unable to generate reflector for class [" + javaClass.getName() + "], falling back to bean reflection: " + e.getMessage());
+            return null;
+        }
+        catch (LinkageError e) {
+            LOG.debug("Unable to generate reflector for class [" + javaClass.getName() + "], falling back to bean reflection: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private boolean isAccessible(Method method) {
+        return method != null &&
+               Modifier.isPublic(method.getModifiers()) &&
+               !Modifier.isStatic(method.getModifiers()) &&
+               Modifier.isPublic(method.getDeclaringClass().getModifiers());
+    }
+
+    private static String getSourceName(Class type) {
+        if (type.isArray()) {
+            return getSourceName(type.getComponentType()) + "[]";
+        }
+        return type.getName();
+    }
+
+    private static String box(Class type, String expression) {
+        if (!type.isPrimitive()) {
+            return expression;
+        }
+        return getWrapperName(type) + ".valueOf(" + expression + ")";
+    }
+
+    private static String unbox(Class type, String expression) {
+        if (!type.isPrimitive()) {
+            return "(" + getSourceName(type) + ")" + expression;
+        }
+        if (type == boolean.class) {
+            return "((java.lang.Boolean)" + expression + ").booleanValue()";
+        }
+        if (type == char.class) {
+            return "((java.lang.Character)" + expression + ").charValue()";
+        }
+        return "((java.lang.Number)" + expression + ")." + type.getName() + "Value()";
+    }
+
+    private static String getWrapperName(Class type) {
+        if (type == int.class) return "java.lang.Integer";
+        if (type == char.class) return "java.lang.Character";
+        String name = type.getName();
+        return "java.lang." + Character.toUpperCase(name.charAt(0)) + name.substring(1);
+    }
+}
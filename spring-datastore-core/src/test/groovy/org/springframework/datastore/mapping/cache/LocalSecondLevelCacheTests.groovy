@@ -0,0 +1,61 @@
+package org.springframework.datastore.mapping.cache
+
+import org.junit.Test
+
+/**
+ * @author Graeme Rocher
+ * @since 1.0
+ */
+class LocalSecondLevelCacheTests {
+
+    @Test
+    void testLeastRecentlyUsedEntryIsEvicted() {
+        def cache = new LocalSecondLevelCache()
+        def settings = CacheSettings.valueOf(maxSize: 2)
+
+        cache.put("Book", 1L, [title: "It"], settings)
+        cache.put("Book", 2L, [title: "Carrie"], settings)
+        assert cache.get("Book", 1L) != null
+        cache.put("Book", 3L, [title: "Misery"], settings)
+
+        assert cache.size("Book") == 2
+        assert cache.get("Book", 1L) != null
+        assert cache.get("Book", 2L) == null
+        assert cache.get("Book", 3L) != null
+    }
+
+    @Test
+    void testLeastFrequentlyUsedEntryIsEvicted() {
+        def cache = new LocalSecondLevelCache()
+        def settings = CacheSettings.valueOf(maxSize: 2, eviction: "lfu")
+
+        cache.put("Book", 1L, [title: "It"], settings)
+        cache.put("Book", 2L, [title: "Carrie"], settings)
+        3.times { cache.get("Book", 1L) }
+        cache.get("Book", 2L)
+        cache.put("Book", 3L, [title: "Misery"], settings)
+
+        assert cache.get("Book", 1L) != null
+        assert cache.get("Book", 2L) == null
+    }
+
+    @Test
+    void testWeightBoundAndExpiry() {
+        def cache = new LocalSecondLevelCache()
+
+        // each entry weighs its number of properties plus one
+        cache.put("Book", 1L, [title: "It", pages: 1138], CacheSettings.valueOf(maxSize: 0, maxWeight: 5))
+        cache.put("Book", 2L, [title: "Carrie", pages: 199], null)
+        cache.put("Book", 2L, [title: "Carrie", pages: 199], CacheSettings.valueOf(maxSize: 0, maxWeight: 5))
+        assert cache.size("Book") == 1
+        assert cache.get("Book", 2L) != null
+
+        cache.put("Author", 1L, [name: "Stephen"], CacheSettings.valueOf(timeToLive: 1))
+        Thread.sleep 20
+        assert cache.get("Author", 1L) == null
+
+        cache.evict("Book", 2L)
+        assert cache.get("Book", 2L) == null
+        assert CacheSettings.valueOf(false) == null
+    }
+}
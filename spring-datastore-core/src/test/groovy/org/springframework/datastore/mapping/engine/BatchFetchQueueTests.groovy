@@ -0,0 +1,46 @@
+package org.springframework.datastore.mapping.engine
+
+import org.junit.Test
+
+/**
+ * @author Graeme Rocher
+ * @since 1.0
+ */
+class BatchFetchQueueTests {
+
+    @Test
+    void testPendingAssociationsAreFetchedInBatches() {
+        def queue = new BatchFetchQueue(batchSize: 3)
+        def associations = (1L..5L).collect { [it] }
+        associations.each { queue.add("books", it[0], it) }
+
+        def batch = queue.next("books", 2L, associations[1])
+        assert batch.keySet().toList() == [2L, 1L, 3L]
+        assert batch[2L].is(associations[1])
+
+        batch = queue.next("books", 4L, associations[3])
+        assert batch.keySet().toList() == [4L, 5L]
+
+        batch = queue.next("books", 1L, associations[0])
+        assert batch.keySet().toList() == [1L]
+    }
+
+    @Test
+    void testBatchesAreSeparatedByBatchKey() {
+        def queue = new BatchFetchQueue()
+        queue.add("books", 1L, "a")
+        queue.add("authors", 2L, "b")
+
+        assert queue.next("books", 1L, "a").keySet().toList() == [1L]
+        assert queue.next("authors", 2L, "b").keySet().toList() == [2L]
+    }
+
+    @Test
+    void testNothingIsQueuedWithoutBatching() {
+        def queue = new BatchFetchQueue(batchSize: 1)
+        queue.add("books", 1L, "a")
+        queue.add("books", 2L, "b")
+
+        assert queue.next("books", 1L, "a").keySet().toList() == [1L]
+    }
+}
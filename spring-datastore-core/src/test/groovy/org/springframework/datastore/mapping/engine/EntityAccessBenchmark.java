@@ -0,0 +1,98 @@
+/* Copyright (C) 2010 SpringSource
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.datastore.mapping.engine;
+
+import org.springframework.beans.BeanWrapper;
+import org.springframework.beans.BeanWrapperImpl;
+import org.springframework.datastore.mapping.model.PersistentEntity;
+import org.springframework.datastore.mapping.model.TestMappingContext;
+
+/**
+ * Compares the cost of reading and writing entity properties through a
+ * BeanWrapper against {@link EntityAccess} backed by a generated reflector.
+ * Run with {@code gradle :spring-datastore-core:benchmark}, or run the main method with an optional
+ * iteration count as the first argument.
+ *
+ * @author Graeme Rocher
+ * @since 1.0
+ */
+public class EntityAccessBenchmark {
+
+    private static final String[] PROPERTIES = { "id", "name", "age", "active" };
+
+    public static void main(String[] args) {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+
+        TestMappingContext context = new TestMappingContext();
+        PersistentEntity entity = context.addPersistentEntity(BenchmarkPerson.class);
+        if (entity.getReflector() == null) {
+            System.out.println("No reflector could be generated for " + BenchmarkPerson.class.getName());
+            return;
+        }
+
+        Object[] values = { 1L, "Bob", 42, Boolean.TRUE };
+
+        // warm up both paths before measuring
+        beanWrapper(iterations / 10, values);
+        entityAccess(entity, iterations / 10, values);
+
+        long beanWrapperTime = beanWrapper(iterations, values);
+        long entityAccessTime = entityAccess(entity, iterations, values);
+
+        System.out.println("BeanWrapper:  " + beanWrapperTime / 1000000 + "ms for " + iterations + " entities");
+        System.out.println("EntityAccess: " + entityAccessTime / 1000000 + "ms for " + iterations + " entities");
+        System.out.println("Speedup:      " + ((double) beanWrapperTime / entityAccessTime) + "x");
+    }
+
+    private static long beanWrapper(int iterations, Object[] values) {
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            BeanWrapper wrapper = new BeanWrapperImpl(new BenchmarkPerson());
+            for (int j = 0; j < PROPERTIES.length; j++) {
+                wrapper.setPropertyValue(PROPERTIES[j], values[j]);
+                wrapper.getPropertyValue(PROPERTIES[j]);
+            }
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static long entityAccess(PersistentEntity entity, int iterations, Object[] values) {
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            EntityAccess access = new EntityAccess(entity, new BenchmarkPerson());
+            for (int j = 0; j < PROPERTIES.length; j++) {
+                access.setProperty(PROPERTIES[j], values[j]);
+                access.getProperty(PROPERTIES[j]);
+            }
+        }
+        return System.nanoTime() - start;
+    }
+
+    public static class BenchmarkPerson {
+        private Long id;
+        private String name;
+        private int age;
+        private boolean active;
+
+        public Long getId() { return id; }
+        public void setId(Long id) { this.id = id; }
+        public String getName() { return name; }
+        public void setName(String name) { this.name = name; }
+        public int getAge() { return age; }
+        public void setAge(int age) { this.age = age; }
+        public boolean isActive() { return active; }
+        public void setActive(boolean active) { this.active = active; }
+    }
+}
@@ -0,0 +1,73 @@
+package org.springframework.datastore.mapping.query
+
+import org.junit.Test
+import org.springframework.datastore.mapping.model.PersistentEntity
+import org.springframework.datastore.mapping.model.TestMappingContext
+
+/**
+ * @author Graeme Rocher
+ * @since 1.0
+ */
+class QueryCacheTests {
+
+    @Test
+    void testKeyIgnoresCriteriaOrder() {
+        def entity = createEntity()
+
+        def q1 = createQuery(entity)
+        q1.criteria.add(Restrictions.eq("name", "Bob"))
+        q1.criteria.add(Restrictions.gt("age", 18))
+        q1.criteria.add(Restrictions.in("name", ["Fred", "Bob"]))
+
+        def q2 = createQuery(entity)
+        q2.criteria.add(Restrictions.in("name", ["Bob", "Fred"]))
+        q2.criteria.add(Restrictions.gt("age", 18))
+        q2.criteria.add(Restrictions.eq("name", "Bob"))
+
+        assert QueryCache.createKey(q1) == QueryCache.createKey(q2)
+    }
+
+    @Test
+    void testKeyDistinguishesValuesAndPagination() {
+        def entity = createEntity()
+
+        def q1 = createQuery(entity)
+        q1.criteria.add(Restrictions.eq("age", 18))
+
+        def q2 = createQuery(entity)
+        q2.criteria.add(Restrictions.eq("age", "18"))
+        assert QueryCache.createKey(q1) != QueryCache.createKey(q2)
+
+        def q3 = createQuery(entity)
+        q3.criteria.add(Restrictions.eq("age", 18))
+        q3.max(10)
+        assert QueryCache.createKey(q1) != QueryCache.createKey(q3)
+    }
+
+    @Test
+    void testQueriesWithMutableValuesAreNotCached() {
+        def entity = createEntity()
+
+        def q = createQuery(entity)
+        q.criteria.add(Restrictions.eq("name", new StringBuilder("Bob")))
+
+        assert QueryCache.createKey(q) == null
+    }
+
+    private PersistentEntity createEntity() {
+        def context = new TestMappingContext()
+        context.addPersistentEntity(Person)
+    }
+
+    private Query createQuery(PersistentEntity entity) {
+        new Query(null, entity) {
+            protected List executeQuery(PersistentEntity e, Query.Junction criteria) { [] }
+        }
+    }
+}
+
+class Person {
+    Long id
+    String name
+    Integer age
+}
@@ -0,0 +1,33 @@
+package org.springframework.datastore.mapping.query
+
+import org.junit.Test
+
+/**
+ * @author Graeme Rocher
+ * @since 1.0
+ */
+class QueryResultIteratorTests {
+
+    @Test
+    void testIterateInBatches() {
+        def batches = [[1, 2], [3], [], [4]]
+        def closed = false
+        def iterator = new QueryResultIterator(null) {
+            protected List nextBatch() { batches ? batches.remove(0) : null }
+            protected void closeResources() { closed = true }
+        }
+
+        assert iterator.collect { it } == [1, 2, 3, 4]
+        assert closed
+        assert !iterator.hasNext()
+    }
+
+    @Test
+    void testForList() {
+        def iterator = QueryResultIterator.forList(null, (1..5).toList(), 2)
+
+        assert iterator.next() == 1
+        iterator.close()
+        assert !iterator.hasNext()
+    }
+}
@@ -0,0 +1,53 @@
+package org.springframework.datastore.mapping.query
+
+import org.junit.Test
+import org.springframework.datastore.mapping.model.PersistentEntity
+import org.springframework.datastore.mapping.model.TestMappingContext
+
+/**
+ * @author Graeme Rocher
+ * @since 1.0
+ */
+class QueryShapeTests {
+
+    @Test
+    void testQueriesWithDifferentValuesShareShape() {
+        def entity = new TestMappingContext().addPersistentEntity(Person)
+
+        def q1 = createQuery(entity)
+        q1.criteria.add(Restrictions.eq("name", "Bob"))
+        q1.criteria.add(Restrictions.between("age", 18, 30))
+
+        def q2 = createQuery(entity)
+        q2.criteria.add(Restrictions.eq("name", "Fred"))
+        q2.criteria.add(Restrictions.between("age", 40, 50))
+
+        def s1 = QueryShape.create(q1)
+        def s2 = QueryShape.create(q2)
+        assert s1.key == s2.key
+        assert s1.values == ["Bob", 18, 30]
+        assert s2.values == ["Fred", 40, 50]
+        assert s2.parameters[0].property == "name"
+    }
+
+    @Test
+    void testLiteralValuesArePartOfShape() {
+        def entity = new TestMappingContext().addPersistentEntity(Person)
+
+        def q1 = createQuery(entity)
+        q1.criteria.add(Restrictions.like("name", "B%"))
+
+        def q2 = createQuery(entity)
+        q2.criteria.add(Restrictions.like("name", "F%"))
+
+        assert QueryShape.create(q1).key == QueryShape.create(q2).key
+        assert QueryShape.create(q1, Query.Like).key != QueryShape.create(q2, Query.Like).key
+        assert QueryShape.create(q1, Query.Like).values.isEmpty()
+    }
+
+    private Query createQuery(PersistentEntity entity) {
+        new Query(null, entity) {
+            protected List executeQuery(PersistentEntity e, Query.Junction criteria) { [] }
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package org.springframework.datastore.mapping.query.order
+
+import org.junit.Test
+import org.springframework.datastore.mapping.query.Query
+
+/**
+ * @author Graeme Rocher
+ * @since 1.0
+ */
+class ManualEntityOrderingTests {
+
+    def ordering = new ManualEntityOrdering(null)
+
+    def results = [
+        new Book(title: "B", pages: 200),
+        new Book(title: "A", pages: 100),
+        new Book(title: null, pages: 300),
+        new Book(title: "C", pages: 100),
+        new Book(title: "A", pages: 50)
+    ]
+
+    @Test
+    void testMultipleOrders() {
+        def sorted = ordering.applyOrder(results, [Query.Order.asc("pages"), Query.Order.desc("title")])
+
+        assert sorted*.title == ["A", "C", "A", "B", null]
+    }
+
+    @Test
+    void testNullOrdering() {
+        assert ordering.applyOrder(results, Query.Order.asc("title"))*.pages == [300, 100, 50, 200, 100]
+        assert ordering.applyOrder(results, Query.Order.desc("title"))*.pages == [100, 200, 100, 50, 300]
+    }
+
+    @Test
+    void testPageOfOrderedResults() {
+        def orders = [Query.Order.desc("pages")]
+
+        assert ordering.applyOrder(results, orders, 1, 2)*.pages == [200, 100]
+        assert ordering.applyOrder(results, orders, 3, 10)*.pages == [100, 50]
+        assert ordering.applyOrder(results, orders, 5, 2) == []
+        assert ordering.applyOrder(results, [], 1, 2)*.title == ["A", null]
+    }
+
+    @Test
+    void testPageAfterPosition() {
+        def orders = [Query.Order.asc("pages"), Query.Order.asc("title")]
+
+        assert ordering.applyOrder(results, orders, [100, "A"], 0, 2)*.title == ["C", "B"]
+        assert ordering.applyOrder(results, orders, [100, "A"], 1, -1)*.pages == [200, 300]
+        assert ordering.applyOrder(results, orders, [300, "Z"], 0, 2) == []
+    }
+
+    @Test
+    void testOrderMaps() {
+        def maps = [[name: "b"], [name: "c"], [name: "a"]]
+
+        assert ordering.applyOrder(maps, [Query.Order.asc("name")], 0, 2)*.name == ["a", "b"]
+    }
+
+    @Test
+    void testClassesWithTheSameNameFromDifferentClassLoaders() {
+        def source = "class ReloadedBook { String title; ReloadedBook(String t) { title = t } }"
+        def first = new GroovyClassLoader().parseClass(source)
+        def second = new GroovyClassLoader().parseClass(source)
+        assert first.name == second.name && first != second
+
+        def mixed = [first.newInstance("b"), second.newInstance("c"), first.newInstance("a")]
+
+        assert ordering.applyOrder(mixed, Query.Order.asc("title"))*.title == ["a", "b", "c"]
+        assert ordering.applyOrder([second.newInstance("z"), second.newInstance("y")], Query.Order.asc("title"))*.title == ["y", "z"]
+    }
+}
+
+class Book {
+    String title
+    Integer pages
+}
@@ -0,0 +1,59 @@
+package org.springframework.datastore.mapping.query.projections
+
+import org.junit.Test
+import org.springframework.datastore.mapping.model.TestMappingContext
+import org.springframework.datastore.mapping.query.Projections
+
+/**
+ * @author Graeme Rocher
+ * @since 1.0
+ */
+class ManualProjectionsTests {
+
+    def results = [
+        new Sale(region: "north", amount: 10, price: 1.5),
+        new Sale(region: "south", amount: 30, price: 2.5),
+        new Sale(region: "north", amount: null, price: 0.5),
+        new Sale(region: null, amount: 20, price: 4.5)
+    ]
+
+    ManualProjections createProjections() {
+        def context = new TestMappingContext()
+        context.addPersistentEntity(Sale)
+        new ManualProjections(context.getPersistentEntity(Sale.name))
+    }
+
+    @Test
+    void testCalculateInSinglePass() {
+        def projections = [
+            Projections.count(),
+            Projections.min("amount"),
+            Projections.max("amount"),
+            Projections.sum("amount"),
+            Projections.avg("amount"),
+            Projections.countDistinct("region"),
+            Projections.sum("price"),
+            Projections.id()
+        ]
+
+        def values = createProjections().calculate(results, projections)
+
+        assert values == [4, 10, 30, 60L, 20.0d, 2, 9.0d, null]
+    }
+
+    @Test
+    void testEmptyResults() {
+        def manualProjections = createProjections()
+
+        assert manualProjections.min([], "amount") == null
+        assert manualProjections.avg([], "amount") == null
+        assert manualProjections.countDistinct([], "region") == 0
+    }
+}
+
+class Sale {
+    Long id
+    String region
+    Integer amount
+    Double price
+}
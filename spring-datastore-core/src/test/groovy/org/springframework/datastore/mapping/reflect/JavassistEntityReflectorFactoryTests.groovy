@@ -0,0 +1,61 @@
+package org.springframework.datastore.mapping.reflect
+
+import org.junit.Test
+import org.springframework.datastore.mapping.engine.EntityAccess
+import org.springframework.datastore.mapping.model.TestMappingContext
+
+/**
+ * @author Graeme Rocher
+ * @since 1.0
+ */
+class JavassistEntityReflectorFactoryTests {
+
+    @Test
+    void testReadAndWriteThroughReflector() {
+        def context = new TestMappingContext()
+        def entity = context.addPersistentEntity(ReflectedBook)
+        def reflector = entity.reflector
+
+        assert reflector != null
+        assert reflector.getPropertyIndex("metaClass") == -1
+        assert reflector.getPropertyIndex("foo") == -1
+
+        def book = new ReflectedBook(title: "The Stand", pages: 500)
+        int title = reflector.getPropertyIndex("title")
+        int pages = reflector.getPropertyIndex("pages")
+
+        assert reflector.getPropertyType(pages) == int
+        assert reflector.getProperty(book, title) == "The Stand"
+        assert reflector.getProperty(book, pages) == 500
+
+        reflector.setProperty(book, title, "It")
+        reflector.setProperty(book, pages, 1138)
+        assert book.title == "It"
+        assert book.pages == 1138
+    }
+
+    @Test
+    void testEntityAccessFallsBackForConversion() {
+        def context = new TestMappingContext()
+        def entity = context.addPersistentEntity(ReflectedBook)
+        def book = new ReflectedBook()
+        def access = new EntityAccess(entity, book)
+        access.conversionService = context.conversionService
+
+        access.setProperty("id", 10L)
+        access.setProperty("pages", "42")
+        access.setProperty("published", null)
+
+        assert access.identifier == 10L
+        assert book.pages == 42
+        assert access.getProperty("pages") == 42
+        assert book.published == null
+    }
+}
+
+class ReflectedBook {
+    Long id
+    String title
+    int pages
+    Date published
+}
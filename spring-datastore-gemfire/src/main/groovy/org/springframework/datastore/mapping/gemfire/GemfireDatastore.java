@@ -270,7 +270,9 @@ public class GemfireDatastore extends AbstractDatastore implements InitializingB
         return new GemfireSession(this, mappingContext);
     }
 
+    @Override
     public void destroy() throws Exception {
+        super.destroy();
         if (gemfireCache != null) {
             gemfireCache.close();
             for (CqQuery continuousQuery : continuousQueries) {
@@ -18,7 +18,6 @@ import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
-import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -127,12 +126,7 @@ public class GemfireEntityPersister extends LockableEntityPersister {
 
     @Override
     protected List<Object> retrieveAllEntities(PersistentEntity persistentEntity, final Serializable[] keys) {
-        final GemfireTemplate template = gemfireDatastore.getTemplate(persistentEntity);
-        return (List<Object>) template.execute(new GemfireCallback() {
-            public Object doInGemfire(Region region) throws GemFireCheckedException, GemFireException {
-                return region.getAll(Arrays.asList(keys));
-            }
-        });
+        return retrieveAllEntities(persistentEntity, Arrays.asList(keys));
     }
 
     @Override
@@ -140,23 +134,24 @@ public class GemfireEntityPersister extends LockableEntityPersister {
         final GemfireTemplate template = gemfireDatastore.getTemplate(persistentEntity);
         return (List<Object>) template.execute(new GemfireCallback() {
             public Object doInGemfire(Region region) throws GemFireCheckedException, GemFireException {
+                Collection keyList;
                 if (keys instanceof Collection) {
-                    final Map all = region.getAll((Collection) keys);
-                    return getListOfValues(all);
+                    keyList = (Collection) keys;
                 }
-                Collection keyList = new ArrayList();
-                for (Serializable key : keys) {
-                    keyList.add(key);
+                else {
+                    keyList = new ArrayList();
+                    for (Serializable key : keys) {
+                        keyList.add(key);
+                    }
                 }
                 final Map all = region.getAll(keyList);
-                return getListOfValues(all);
-            }
 
-            List getListOfValues(final Map all) {
-                if (all != null) {
-                    return new ArrayList(all.values());
+                // getAll() makes no guarantees about ordering so return the values in the order of the keys
+                List values = new ArrayList(keyList.size());
+                for (Object key : keyList) {
+                    values.add(all != null ? all.get(key) : null);
                 }
-                return Collections.emptyList();
+                return values;
             }
         });
     }
@@ -31,6 +31,8 @@ import org.springframework.datastore.mapping.model.PersistentEntity;
 import org.springframework.datastore.mapping.model.PersistentProperty;
 import org.springframework.datastore.mapping.model.types.ToOne;
 import org.springframework.datastore.mapping.query.Query;
+import org.springframework.datastore.mapping.query.QueryPlanCache;
+import org.springframework.datastore.mapping.query.QueryShape;
 import org.springframework.datastore.mapping.query.order.ManualEntityOrdering;
 import org.springframework.datastore.mapping.query.projections.ManualProjections;
 
@@ -68,6 +70,7 @@ public class GemfireQuery extends Query {
     }
 
     private static Map<Class, QueryHandler> queryHandlers = new HashMap<Class, QueryHandler>();
+    private static final QueryPlanCache<String> queryPlans = new QueryPlanCache<String>();
 
     public static final String GREATER_THAN_EQUALS = " >= ";
     public static final String LESS_THAN_EQUALS = " <= ";
@@ -318,24 +321,19 @@ public class GemfireQuery extends Query {
                     }
                     else {
                         List results = new ArrayList();
+                        List aggregates = null;
+                        int projectionIndex = 0;
                         for (Projection projection : projectionList.getProjectionList()) {
+                            final int index = projectionIndex++;
                             Collection values = null;
                             if (projection instanceof CountProjection) {
                                 results.add(region.size());
                             }
-                            else if (projection instanceof MinProjection) {
-                                MinProjection min = (MinProjection) projection;
-                                if (values == null) {
-                                    values = region.values();
-                                }
-                                results.add(manualProjections.min(values, min.getPropertyName()));
-                            }
-                            else if (projection instanceof MaxProjection) {
-                                if (values == null) {
-                                    values = region.values();
+                            else if (ManualProjections.isSupported(projection)) {
+                                if (aggregates == null) {
+                                    aggregates = manualProjections.calculate(region.values(), projectionList.getProjectionList());
                                 }
-                                MaxProjection maxProjection = (MaxProjection) projection;
-                                results.add(manualProjections.max(values,maxProjection.getPropertyName()));
+                                results.add(aggregates.get(index));
                             }
                             else if (projection instanceof IdProjection) {
                                 results.add(region.keySet());
@@ -356,15 +354,14 @@ public class GemfireQuery extends Query {
                         }
                         finalResults = results;
                     }
-                    finalResults = ordering.applyOrder(finalResults, getOrderBy());
-                    return finalResults;
+                    return ordering.applyOrder(finalResults, getOrderBy(), offset, max);
                 }
             });
         }
 
         GemfireTemplate template = gemfireDatastore.getTemplate(entity);
         final List params = new ArrayList();
-        final String queryString = getQueryString(params, true);
+        final String queryString = getCompiledQueryString(params);
 
         return (List) template.execute(new GemfireCallback() {
 
@@ -395,27 +392,7 @@ public class GemfireQuery extends Query {
 
                 }
 
-                finalResults = ordering.applyOrder(finalResults, getOrderBy());
-
-                if (offset > 0 ) {
-
-                    final int resultSize = finalResults.size();
-                    if (offset > resultSize) {
-                        finalResults = Collections.emptyList();
-                    }
-                    else {
-                        int end = resultSize;
-                        if (max > -1) {
-                            end = offset + max;
-                            if (end > resultSize) {
-                                end = resultSize;
-                            }
-                        }
-                        finalResults = finalResults.subList(offset, end);
-                    }
-                }
-
-                return finalResults;
+                return ordering.applyOrder(finalResults, getOrderBy(), offset, max);
             }
         });
     }
@@ -428,6 +405,34 @@ public class GemfireQuery extends Query {
         return getQueryString(null, false);
     }
 
+    /**
+     * Obtains the query string with variables bound as parameters. The query string is compiled once per
+     * shape of the query and the values of subsequent queries of the same shape are only bound.
+     *
+     * @param params The list to add the parameters to
+     * @return The query string
+     */
+    protected String getCompiledQueryString(List params) {
+        // like expressions are embedded into the query string
+        final QueryShape shape = QueryShape.create(this, Like.class);
+        if (shape == null) {
+            return getQueryString(params, true);
+        }
+
+        final String key = regionName + '|' + (isLimitedNatively() ? max : -1) + '|' + shape.getKey();
+        String queryString = queryPlans.get(key);
+        if (queryString != null) {
+            params.addAll(shape.getValues());
+            return queryString;
+        }
+
+        queryString = getQueryString(params, true);
+        if (shape.isBoundBy(params)) {
+            queryPlans.put(key, queryString);
+        }
+        return queryString;
+    }
+
     protected String getQueryString(List params, boolean distinct) {
         ProjectionList projectionList = projections();
         String select = SELECT_CLAUSE;
@@ -477,26 +482,29 @@ public class GemfireQuery extends Query {
             buildWhereClause(entity, criteria, q, 0, params);
         }
 
-        if (max > 0 && offset == 0) {
+        if (isLimitedNatively()) {
             q.append(LIMIT_CLAUSE).append(max);
         }
 
         return q.toString();
     }
 
+    /**
+     * Gemfire only supports LIMIT without an offset and ordering is applied after the query executes, hence
+     * the query is only limited natively if neither is used
+     */
+    private boolean isLimitedNatively() {
+        return max > 0 && offset == 0 && orderBy.isEmpty();
+    }
+
     private List applyProjections(List results, ProjectionList projections) {
         List projectedResults = new ArrayList();
+        final List aggregates = manualProjections.calculate(results, projections.getProjectionList());
+        int projectionIndex = 0;
         for (Projection projection : projections.getProjectionList()) {
-            if (projection instanceof CountProjection) {
-                projectedResults.add(results.size());
-            }
-            else if (projection instanceof MinProjection) {
-                MinProjection min = (MinProjection) projection;
-                projectedResults.add(manualProjections.min(results,min.getPropertyName()));
-            }
-           else if (projection instanceof MaxProjection) {
-                MaxProjection min = (MaxProjection) projection;
-                projectedResults.add(manualProjections.max(results,min.getPropertyName()));
+            final Object aggregate = aggregates.get(projectionIndex++);
+            if (ManualProjections.isSupported(projection)) {
+                projectedResults.add(aggregate);
             }
         }
         if (projectedResults.isEmpty()) {
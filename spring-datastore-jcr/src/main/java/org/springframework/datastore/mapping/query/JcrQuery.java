@@ -82,21 +82,18 @@ public class JcrQuery extends Query {
             } catch (RepositoryException e) {
                 throw new InvalidDataAccessResourceUsageException("Cannot execute query. Entity [" + getEntity() + "] does not exist in the repository");
             }
-            finalResults = getSession().retrieveAll(getEntity().getJavaClass(), uuids);
+            finalResults = retrieveExisting(getEntity().getJavaClass(), uuids);
             if (projectionList.isEmpty()) {
                 return finalResults;
             }
 
             List results = new ArrayList();
+            final List aggregates = manualProjections.calculate(finalResults, projectionList.getProjectionList());
+            int projectionIndex = 0;
             for (Projection projection : projectionList.getProjectionList()) {
-                 if (projection instanceof CountProjection) {
-                    results.add(finalResults.size());
-                } else if (projection instanceof MinProjection) {
-                    MinProjection min = (MinProjection) projection;
-                    results.add(manualProjections.min(finalResults, min.getPropertyName()));
-                } else if (projection instanceof MaxProjection) {
-                    MaxProjection max = (MaxProjection) projection;
-                    results.add(manualProjections.max(finalResults, max.getPropertyName()));
+                final Object aggregate = aggregates.get(projectionIndex++);
+                if (ManualProjections.isSupported(projection)) {
+                    results.add(aggregate);
                 } else if (projection instanceof IdProjection) {
                     results.add(uuids);
                 } else if (projection.getClass() == PropertyProjection.class) {
@@ -119,7 +116,7 @@ public class JcrQuery extends Query {
                     final PersistentEntity associatedEntity = getSession().getMappingContext().getPersistentEntity(type.getName());
                     final boolean isEntityType = associatedEntity != null;
                     if (isEntityType) {
-                        return getSession().retrieveAll(type, values);
+                        return retrieveExisting(type, values);
                     }
                     for (Object value : values) {
                         results.add(typeConverter.convertIfNecessary(value, type));
@@ -144,35 +141,18 @@ public class JcrQuery extends Query {
                 return Collections.emptyList();
             }
 
-            finalResults = getSession().retrieveAll(getEntity().getJavaClass(), uuids);
+            finalResults = retrieveExisting(getEntity().getJavaClass(), uuids);
             IdProjection idProjection = null;
             if (!projectionList.isEmpty()) {
                 List projectionResults = new ArrayList();
+                final List aggregates = manualProjections.calculate(finalResults, projectionList.getProjectionList());
+                int projectionIndex = 0;
                 for (Projection projection : projectionList.getProjectionList()) {
-                    final String projectionType = projection.getClass().getSimpleName();
-                    if (projection instanceof CountProjection) {
-                        projectionResults.add(finalResults.size());
-                    } else if (projection instanceof MaxProjection) {
-                        MaxProjection min = (MaxProjection) projection;
-                        finalResults.add(manualProjections.min(finalResults, min.getPropertyName()));
-                    } else if (projection instanceof MinProjection) {
-                        MinProjection min = (MinProjection) projection;
-                        finalResults.add(manualProjections.min(finalResults, min.getPropertyName()));
-                    } else {
-                        if (projection instanceof SumProjection) {
-                            return unsupportedProjection(projectionType);
-                        }
-                        if (projection instanceof AvgProjection) {
-                            return unsupportedProjection(projectionType);
-                            //} else if (projection instanceof PropertyProjection) {
-                            //  PropertyProjection propertyProjection = (PropertyProjection) projection;
-                            //   final String propName = propertyProjection.getPropertyName();
-                            //   PersistentProperty prop = entityPersister.getPersistentEntity().getPropertyByName(propName);
-                            //   return unsupportedProjection(projectionType);
-                        }
-                        if (projection instanceof IdProjection) {
-                            idProjection = (IdProjection) projection;
-                        }
+                    final Object aggregate = aggregates.get(projectionIndex++);
+                    if (ManualProjections.isSupported(projection)) {
+                        projectionResults.add(aggregate);
+                    } else if (projection instanceof IdProjection) {
+                        idProjection = (IdProjection) projection;
                     }
                 }
                 if (!projectionResults.isEmpty()) {
@@ -202,15 +182,12 @@ public class JcrQuery extends Query {
     @SuppressWarnings("unused")
     private List applyProjections(List results, ProjectionList projections) {
         List projectedResults = new ArrayList();
+        final List aggregates = manualProjections.calculate(results, projections.getProjectionList());
+        int projectionIndex = 0;
         for (Projection projection : projections.getProjectionList()) {
-            if (projection instanceof CountProjection) {
-                projectedResults.add(results.size());
-            } else if (projection instanceof MinProjection) {
-                MinProjection min = (MinProjection) projection;
-                projectedResults.add(manualProjections.min(results, min.getPropertyName()));
-            } else if (projection instanceof MaxProjection) {
-                MaxProjection min = (MaxProjection) projection;
-                projectedResults.add(manualProjections.max(results, min.getPropertyName()));
+            final Object aggregate = aggregates.get(projectionIndex++);
+            if (ManualProjections.isSupported(projection)) {
+                projectedResults.add(aggregate);
             }
         }
         if (projectedResults.isEmpty()) {
@@ -459,8 +436,4 @@ public class JcrQuery extends Query {
             throw new InvalidDataAccessResourceUsageException("Cannot use [" + criterionType.getSimpleName() + "] criterion on non-existent property: " + name);
         }
     }
-
-    private List unsupportedProjection(String projectionType) {
-        throw new InvalidDataAccessResourceUsageException("Cannot use [" + projectionType + "] projection. [" + projectionType + "] projections are not currently supported.");
-    }
 }
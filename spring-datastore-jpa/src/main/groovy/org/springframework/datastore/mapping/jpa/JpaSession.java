@@ -93,6 +93,7 @@ public class JpaSession extends AbstractAttributeStoringSession implements Sessi
     }
 
     public Transaction beginTransaction() {
+        assertNoPendingAsyncOperations();
         final TransactionStatus status = transactionManager.getTransaction(new DefaultTransactionDefinition());
         return new JpaTransaction(transactionManager, status);
     }
@@ -102,6 +103,7 @@ public class JpaSession extends AbstractAttributeStoringSession implements Sessi
     }
 
     public Serializable persist(Object o) {
+        assertNoPendingAsyncOperations();
         if (o != null) {
             final PersistentEntity persistentEntity = getMappingContext().getPersistentEntity(o.getClass().getName());
             if (persistentEntity == null) throw new InvalidDataAccessApiUsageException("Object of class ["+o.getClass()+"] is not a persistent entity");
@@ -113,6 +115,7 @@ public class JpaSession extends AbstractAttributeStoringSession implements Sessi
     }
 
     public Object merge(Object o) {
+        assertNoPendingAsyncOperations();
         if (o != null) {
             final PersistentEntity persistentEntity = getMappingContext().getPersistentEntity(o.getClass().getName());
             if (persistentEntity == null) throw new InvalidDataAccessApiUsageException("Object of class ["+o.getClass()+"] is not a persistent entity");
@@ -135,10 +138,12 @@ public class JpaSession extends AbstractAttributeStoringSession implements Sessi
     }
 
     public void flush() {
+        assertNoPendingAsyncOperations();
         jpaTemplate.flush();
     }
 
     public void clear() {
+        assertNoPendingAsyncOperations();
         jpaTemplate.execute(new JpaCallback<Object>() {
             public Object doInJpa(EntityManager em) throws PersistenceException {
                 em.clear();
@@ -195,6 +200,7 @@ public class JpaSession extends AbstractAttributeStoringSession implements Sessi
     }
 
     public <T> T retrieve(Class<T> type, Serializable key) {
+        assertNoPendingAsyncOperations();
         final PersistentEntity persistentEntity = getPersistentEntity(type);
         if (persistentEntity != null) {
             final ConversionService conversionService = getMappingContext().getConversionService();
@@ -204,6 +210,11 @@ public class JpaSession extends AbstractAttributeStoringSession implements Sessi
         return null;
     }
 
+    public <T> T retrieve(Class<T> type, Serializable key, String... propertyNames) {
+        // JPA loads the properties mapped as lazy when they are first accessed
+        return retrieve(type, key);
+    }
+
     public <T> T proxy(Class<T> type, Serializable key) {
         return jpaTemplate.getReference(type, key);
     }
@@ -215,12 +226,14 @@ public class JpaSession extends AbstractAttributeStoringSession implements Sessi
     }
 
     public void delete(Iterable objects) {
+        assertNoPendingAsyncOperations();
         for (Object object : objects) {
             jpaTemplate.remove(object);
         }
     }
 
     public void delete(Object obj) {
+        assertNoPendingAsyncOperations();
         jpaTemplate.remove(obj);
     }
 
@@ -261,6 +274,7 @@ public class JpaSession extends AbstractAttributeStoringSession implements Sessi
     }
 
     public Query createQuery(Class type) {
+        assertNoPendingAsyncOperations();
         return new JpaQuery(this, getPersistentEntity(type));
     }
 
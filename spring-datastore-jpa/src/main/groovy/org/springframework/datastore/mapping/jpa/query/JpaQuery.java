@@ -37,8 +37,12 @@ import org.springframework.datastore.mapping.model.types.Association;
 import org.springframework.datastore.mapping.model.types.ToOne;
 import org.springframework.datastore.mapping.query.AssociationQuery;
 import org.springframework.datastore.mapping.query.Query;
+import org.springframework.datastore.mapping.query.QueryPlanCache;
+import org.springframework.datastore.mapping.query.QueryResultIterator;
+import org.springframework.datastore.mapping.query.QueryShape;
 import org.springframework.orm.jpa.JpaCallback;
 import org.springframework.orm.jpa.JpaTemplate;
+import org.springframework.util.ObjectUtils;
 
 /**
  * Query implementation for JPA
@@ -67,6 +71,7 @@ public class JpaQuery extends Query {
 
     private static final Log LOG = LogFactory.getLog(org.springframework.datastore.mapping.jpa.query.JpaQuery.class);
     private static final Map<Class, QueryHandler> queryHandlers = new HashMap<Class, QueryHandler>();
+    private static final QueryPlanCache<JpaQueryPlan> queryPlans = new QueryPlanCache<JpaQueryPlan>();
 
     static public int appendCriteriaForOperator(StringBuilder q,
             String logicalName, final String name, int position, String operator) {
@@ -459,6 +464,91 @@ public class JpaQuery extends Query {
 
     Object executeQuery(final PersistentEntity entity, final Junction criteria,
             EntityManager em, boolean singleResult) {
+        final List parameters = new ArrayList();
+        final String queryToString = prepareQuery(entity, criteria, parameters);
+        final javax.persistence.Query q = createQuery(em, queryToString, parameters, offset, max);
+
+        if (!singleResult) {
+            return q.getResultList();
+        }
+        return q.getSingleResult();
+    }
+
+    /**
+     * Pages through the results with the first and max results of the JPA query. The JPQL and its parameters are
+     * built once, so changing the query meanwhile does not affect the iterator.
+     */
+    @Override
+    protected QueryResultIterator executeIterate(final PersistentEntity entity, final Junction criteria, final int batchSize) {
+        final List parameters = new ArrayList();
+        final String queryToString = prepareQuery(entity, criteria, parameters);
+        final int firstResult = offset;
+        final int maxResults = max;
+        final JpaTemplate jpaTemplate = getSession().getJpaTemplate();
+
+        return new QueryResultIterator(getSession()) {
+            private int fetched;
+            private boolean exhausted;
+
+            @Override
+            protected List<?> nextBatch() {
+                int size = batchSize;
+                if (maxResults > -1) {
+                    size = Math.min(size, maxResults - fetched);
+                }
+                if (exhausted || size <= 0) return null;
+
+                final int first = firstResult + fetched;
+                final int count = size;
+                final List results = (List) jpaTemplate.execute(new JpaCallback<Object>() {
+                    public Object doInJpa(EntityManager em) throws PersistenceException {
+                        return createQuery(em, queryToString, parameters, first, count).getResultList();
+                    }
+                });
+                fetched += results.size();
+                exhausted = results.size() < size;
+                return results.isEmpty() ? null : results;
+            }
+        };
+    }
+
+    private String prepareQuery(PersistentEntity entity, Junction criteria, List parameters) {
+        final ConversionService conversionService = getSession().getMappingContext().getConversionService();
+        final QueryShape shape = QueryShape.create(this);
+        final JpaQueryPlan plan = shape == null ? null : queryPlans.get(shape.getKey());
+
+        final String queryToString;
+        if (plan != null) {
+            queryToString = plan.queryString;
+            parameters.addAll(plan.bind(shape, conversionService));
+        }
+        else {
+            queryToString = buildQueryString(entity, criteria, parameters);
+            if (shape != null) {
+                cachePlan(shape, queryToString, parameters, conversionService);
+            }
+        }
+
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Built JPQL to execute: " + queryToString);
+        }
+        return queryToString;
+    }
+
+    private javax.persistence.Query createQuery(EntityManager em, String queryToString, List parameters, int firstResult, int maxResults) {
+        final javax.persistence.Query q = em.createQuery(queryToString);
+
+        for (int i = 0, count = parameters.size(); i < count; i++) {
+            q.setParameter(i + 1, parameters.get(i));
+        }
+        q.setFirstResult(firstResult);
+        if (maxResults > -1) {
+            q.setMaxResults(maxResults);
+        }
+        return q;
+    }
+
+    private String buildQueryString(final PersistentEntity entity, final Junction criteria, List parameters) {
         final String logicalName = entity.getDecapitalizedName();
         StringBuilder queryString = new StringBuilder(SELECT_CLAUSE);
 
@@ -509,6 +599,13 @@ public class JpaQuery extends Query {
                                    .append(pp.getPropertyName())
                                    .append(CLOSE_BRACKET);
                     }
+                    else if (projection instanceof CountDistinctProjection) {
+                        queryString.append("COUNT(DISTINCT ")
+                                   .append(logicalName)
+                                   .append(DOT)
+                                   .append(pp.getPropertyName())
+                                   .append(CLOSE_BRACKET);
+                    }
                     else {
                         queryString.append(logicalName)
                                    .append(DOT)
@@ -527,34 +624,58 @@ public class JpaQuery extends Query {
                    .append(AS_CLAUSE )
                    .append(logicalName);
 
-        List parameters = null;
         StringBuilder whereClause= new StringBuilder();
         if (!criteria.isEmpty()) {
-            parameters = buildWhereClause(entity, criteria, queryString, whereClause,logicalName);
+            parameters.addAll(buildWhereClause(entity, criteria, queryString, whereClause,logicalName));
         }
 
         appendOrder(queryString, logicalName);
-        final String queryToString = queryString.toString();
+        return queryString.toString();
+    }
 
-        if (LOG.isDebugEnabled()) {
-            LOG.debug("Built JPQL to execute: " + queryToString);
+    private void cachePlan(QueryShape shape, String queryString, List parameters, ConversionService conversionService) {
+        final List<QueryShape.Parameter> shapeParameters = shape.getParameters();
+        if (shapeParameters.size() != parameters.size()) {
+            return;
         }
-        final javax.persistence.Query q = em.createQuery(queryToString);
 
-        if (parameters != null) {
-            for (int i = 0, count = parameters.size(); i < count; i++) {
-                q.setParameter(i + 1, parameters.get(i));
+        final List<Class> parameterTypes = new ArrayList<Class>(parameters.size());
+        for (int i = 0; i < parameters.size(); i++) {
+            final QueryShape.Parameter parameter = shapeParameters.get(i);
+            final PersistentProperty property = parameter.getPersistentProperty();
+            if (property == null) {
+                return;
+            }
+            // only cache the plan if binding the values reproduces the parameters of the built query
+            final Object value = conversionService.convert(parameter.getValue(), property.getType());
+            if (!ObjectUtils.nullSafeEquals(value, parameters.get(i))) {
+                return;
             }
+            parameterTypes.add(property.getType());
         }
-        q.setFirstResult(offset);
-        if (max > -1) {
-            q.setMaxResults(max);
+        queryPlans.put(shape.getKey(), new JpaQueryPlan(queryString, parameterTypes));
+    }
+
+    /**
+     * A JPQL query compiled for a shape of query together with the types its parameters are converted to
+     */
+    private static class JpaQueryPlan {
+        final String queryString;
+        final List<Class> parameterTypes;
+
+        JpaQueryPlan(String queryString, List<Class> parameterTypes) {
+            this.queryString = queryString;
+            this.parameterTypes = parameterTypes;
         }
 
-        if (!singleResult) {
-            return q.getResultList();
+        List bind(QueryShape shape, ConversionService conversionService) {
+            final List<Object> values = shape.getValues();
+            List parameters = new ArrayList(values.size());
+            for (int i = 0; i < values.size(); i++) {
+                parameters.add(conversionService.convert(values.get(i), parameterTypes.get(i)));
+            }
+            return parameters;
         }
-        return q.getSingleResult();
     }
 
     static int buildWhereClauseForCriterion(PersistentEntity entity,
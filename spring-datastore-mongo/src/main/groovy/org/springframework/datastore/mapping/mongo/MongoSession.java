@@ -15,6 +15,7 @@
 
 package org.springframework.datastore.mapping.mongo;
 
+import java.io.Serializable;
 import java.util.Collection;
 import java.util.LinkedList;
 import java.util.List;
@@ -53,6 +54,7 @@ public class MongoSession extends AbstractSession<DB> {
     MongoDatastore mongoDatastore;
     private boolean connected = true;
     private WriteConcern writeConcern = WriteConcern.NORMAL;
+    private final ThreadLocal<Boolean> onFlushThread = new ThreadLocal<Boolean>();
 
     public MongoSession(MongoDatastore datastore, MappingContext mappingContext) {
         super(datastore, mappingContext);
@@ -79,6 +81,10 @@ public class MongoSession extends AbstractSession<DB> {
      * @return
      */
     public WriteConcern getWriteConcern() {
+        if (onFlushThread.get() != null && writeConcern.getW() < 1) {
+            // writes from flush threads must be acknowledged before the connection of the session reads them
+            return WriteConcern.SAFE;
+        }
         return writeConcern;
     }
 
@@ -114,6 +120,34 @@ public class MongoSession extends AbstractSession<DB> {
         return connected;
     }
 
+    /**
+     * Independent entities can be written from different threads. Each flush thread writes on a connection
+     * of its own, see {@link #flushGroupOnFlushThread(List)}.
+     */
+    @Override
+    protected boolean supportsConcurrentFlush() {
+        return true;
+    }
+
+    /**
+     * The session reads through the connection pinned by requestStart() in the constructor, so a write made on
+     * another connection with an unacknowledged WriteConcern may not be visible to it yet. Flush threads
+     * therefore pin a connection of their own for the group and wait for each write to be acknowledged.
+     */
+    @Override
+    protected void flushGroupOnFlushThread(List<PersistentEntity> group) {
+        final DB db = getNativeInterface();
+        db.requestStart();
+        onFlushThread.set(Boolean.TRUE);
+        try {
+            super.flushGroupOnFlushThread(group);
+        }
+        finally {
+            onFlushThread.remove();
+            db.requestDone();
+        }
+    }
+
     @Override
     @SuppressWarnings({"rawtypes", "unchecked"})
     protected void flushPendingInserts(final Map<PersistentEntity, Collection<PendingInsert>> inserts) {
@@ -140,10 +174,11 @@ public class MongoSession extends AbstractSession<DB> {
                         }
 
                         dbObjects.add((DBObject) pendingInsert.getNativeEntry());
+                        persister.snapshotEntry(entity, (Serializable) pendingInsert.getNativeKey(), (DBObject) pendingInsert.getNativeEntry());
                         postOperations.addAll(pendingInsert.getCascadeOperations());
                     }
 
-                    collection.insert(dbObjects.toArray(new DBObject[dbObjects.size()]), writeConcern);
+                    collection.insert(dbObjects.toArray(new DBObject[dbObjects.size()]), getWriteConcern());
                     for (PendingOperation pendingOperation : postOperations) {
                         pendingOperation.run();
                     }
@@ -24,8 +24,12 @@ import java.util.Calendar;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Currency;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
 import java.util.TimeZone;
 
 import org.bson.types.ObjectId;
@@ -44,6 +48,7 @@ import org.springframework.datastore.mapping.mongo.MongoSession;
 import org.springframework.datastore.mapping.mongo.query.MongoQuery;
 import org.springframework.datastore.mapping.query.Query;
 
+import com.mongodb.BasicDBList;
 import com.mongodb.BasicDBObject;
 import com.mongodb.CommandResult;
 import com.mongodb.DB;
@@ -102,36 +107,6 @@ public class MongoEntityPersister extends NativeEntryEntityPersister<DBObject, O
         return false;
     }
 
-    @Override
-    @SuppressWarnings({ "unchecked", "rawtypes" })
-    protected List<Object> retrieveAllEntities(PersistentEntity persistentEntity,
-            Iterable<Serializable> keys) {
-
-        Query query = session.createQuery(persistentEntity.getJavaClass());
-
-        if (keys instanceof List) {
-            query.in(persistentEntity.getIdentity().getName(), (List)keys);
-        }
-        else {
-            List<Serializable> keyList = new ArrayList<Serializable>();
-            for (Serializable key : keys) {
-                keyList.add(key);
-            }
-            query.in(persistentEntity.getIdentity().getName(), keyList);
-        }
-
-        return query.list();
-    }
-
-    @Override
-    @SuppressWarnings("unchecked")
-    protected List<Object> retrieveAllEntities(PersistentEntity persistentEntity,
-            Serializable[] keys) {
-        Query query = session.createQuery(persistentEntity.getJavaClass());
-        query.in(persistentEntity.getIdentity().getName(), Arrays.asList(keys));
-        return query.list();
-    }
-
     @Override
     public String getEntityFamily() {
         return mongoTemplate.getDefaultCollectionName();
@@ -226,6 +201,31 @@ public class MongoEntityPersister extends NativeEntryEntityPersister<DBObject, O
         return new MongoAssociationIndexer(nativeEntry, association, (MongoSession) session);
     }
 
+    @Override
+    protected DBObject copyEntry(DBObject nativeEntry) {
+        return (DBObject) copyEntryValue(nativeEntry);
+    }
+
+    @Override
+    protected Object copyEntryValue(Object value) {
+        if (value instanceof BasicDBList) {
+            BasicDBList copy = new BasicDBList();
+            for (Object o : (BasicDBList) value) {
+                copy.add(copyEntryValue(o));
+            }
+            return copy;
+        }
+        if (value instanceof DBObject) {
+            DBObject dbo = (DBObject) value;
+            BasicDBObject copy = new BasicDBObject();
+            for (String key : dbo.keySet()) {
+                copy.put(key, copyEntryValue(dbo.get(key)));
+            }
+            return copy;
+        }
+        return super.copyEntryValue(value);
+    }
+
     @Override
     protected DBObject createNewEntry(String family) {
         return new BasicDBObject();
@@ -294,6 +294,64 @@ public class MongoEntityPersister extends NativeEntryEntityPersister<DBObject, O
         });
     }
 
+    @Override
+    protected List<DBObject> retrieveEntries(final PersistentEntity persistentEntity,
+            String family, final List<Serializable> keys) {
+        return retrieveEntries(persistentEntity, keys, null);
+    }
+
+    @Override
+    protected List<DBObject> retrieveEntries(PersistentEntity persistentEntity,
+            String family, List<Serializable> keys, Set<String> nativePropertyKeys) {
+        return retrieveEntries(persistentEntity, keys, createFieldSelector(nativePropertyKeys));
+    }
+
+    /**
+     * Creates a field selector that fetches the given properties, the identifier and the discriminator
+     *
+     * @param persistentEntity The entity
+     * @param propertyNames The names of the properties
+     * @return The field selector
+     */
+    public DBObject getFieldSelector(PersistentEntity persistentEntity, Collection<String> propertyNames) {
+        return createFieldSelector(getNativePropertyKeys(persistentEntity, new HashSet<String>(propertyNames)));
+    }
+
+    private DBObject createFieldSelector(Set<String> nativePropertyKeys) {
+        DBObject fields = new BasicDBObject(MONGO_CLASS_FIELD, 1);
+        for (String key : nativePropertyKeys) {
+            fields.put(key, 1);
+        }
+        return fields;
+    }
+
+    private List<DBObject> retrieveEntries(final PersistentEntity persistentEntity,
+            final List<Serializable> keys, final DBObject fields) {
+        return mongoTemplate.execute(new DbCallback<List<DBObject>>() {
+            public List<DBObject> doInDB(DB con) throws MongoException, DataAccessException {
+                DBCollection dbCollection = con.getCollection(getCollectionName(persistentEntity));
+                List<Object> ids = new ArrayList<Object>();
+                for (Serializable key : keys) {
+                    ids.add(createDBObjectWithKey(key).get(MONGO_ID_FIELD));
+                }
+
+                Map<Object, DBObject> found = new HashMap<Object, DBObject>();
+                final DBObject query = new BasicDBObject(MONGO_ID_FIELD, new BasicDBObject("$in", ids));
+                final DBCursor cursor = fields == null ? dbCollection.find(query) : dbCollection.find(query, fields);
+                while (cursor.hasNext()) {
+                    final DBObject dbo = cursor.next();
+                    found.put(dbo.get(MONGO_ID_FIELD), dbo);
+                }
+
+                List<DBObject> entries = new ArrayList<DBObject>();
+                for (Object id : ids) {
+                    entries.add(found.get(id));
+                }
+                return entries;
+            }
+        });
+    }
+
     @Override
     protected Object storeEntry(final PersistentEntity persistentEntity,
             final Object storeId, final DBObject nativeEntry) {
@@ -344,6 +402,38 @@ public class MongoEntityPersister extends NativeEntryEntityPersister<DBObject, O
         });
     }
 
+    @Override
+    protected void updateEntry(final PersistentEntity persistentEntity, final Object key,
+            final DBObject entry, final Set<String> dirtyKeys) {
+        mongoTemplate.execute(new DbCallback<Object>() {
+            public Object doInDB(DB con) throws MongoException, DataAccessException {
+                DBObject set = new BasicDBObject();
+                DBObject unset = new BasicDBObject();
+                for (String dirtyKey : dirtyKeys) {
+                    final Object value = entry.get(dirtyKey);
+                    if (value == null) {
+                        unset.put(dirtyKey, 1);
+                    }
+                    else {
+                        set.put(dirtyKey, value);
+                    }
+                }
+
+                DBObject modifier = new BasicDBObject();
+                if (!set.keySet().isEmpty()) modifier.put("$set", set);
+                if (!unset.keySet().isEmpty()) modifier.put("$unset", unset);
+                if (modifier.keySet().isEmpty()) return null;
+
+                String collectionName = getCollectionName(persistentEntity, entry);
+                DBCollection dbCollection = con.getCollection(collectionName);
+                DBObject dbo = createDBObjectWithKey(key);
+                MongoSession mongoSession = (MongoSession) session;
+                dbCollection.update(dbo, modifier, false, false, mongoSession.getWriteConcern());
+                return null;
+            }
+        });
+    }
+
     @Override
     protected void deleteEntries(String family, final List<Object> keys) {
         mongoTemplate.execute(new DbCallback<Object>() {
@@ -16,12 +16,18 @@ package org.springframework.datastore.mapping.mongo.query;
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.regex.Pattern;
 
+import org.springframework.core.convert.ConversionService;
 import org.springframework.dao.DataAccessException;
 import org.springframework.dao.InvalidDataAccessResourceUsageException;
 import org.springframework.data.document.mongodb.DbCallback;
@@ -33,10 +39,14 @@ import org.springframework.datastore.mapping.model.types.ToOne;
 import org.springframework.datastore.mapping.mongo.MongoSession;
 import org.springframework.datastore.mapping.mongo.engine.MongoEntityPersister;
 import org.springframework.datastore.mapping.query.Query;
+import org.springframework.datastore.mapping.query.QueryPlanCache;
+import org.springframework.datastore.mapping.query.QueryResultIterator;
+import org.springframework.datastore.mapping.query.QueryShape;
 import org.springframework.datastore.mapping.query.Restrictions;
 import org.springframework.datastore.mapping.query.projections.ManualProjections;
 import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+import com.mongodb.BasicDBList;
 import com.mongodb.BasicDBObject;
 import com.mongodb.DB;
 import com.mongodb.DBCollection;
@@ -55,6 +65,7 @@ public class MongoQuery extends Query{
 
     private static Map<Class, QueryHandler> queryHandlers = new HashMap<Class, QueryHandler>();
     private static Map<Class, QueryHandler> negatedHandlers = new HashMap<Class, QueryHandler>();
+    private static final QueryPlanCache<DBObject> queryPlans = new QueryPlanCache<DBObject>();
 
     public static final String MONGO_IN_OPERATOR = "$in";
     public static final String MONGO_OR_OPERATOR = "$or";
@@ -302,6 +313,13 @@ public class MongoQuery extends Query{
         });
     }
 
+    private static final Set<Class> NATIVE_NUMBER_TYPES = new HashSet<Class>(Arrays.<Class>asList(
+            Integer.class, int.class, Long.class, long.class, Short.class, short.class,
+            Byte.class, byte.class, Double.class, double.class, Float.class, float.class));
+
+    // integers below this magnitude are represented exactly by a JavaScript number, a double
+    private static final double MAX_EXACT_INTEGER = 9007199254740992d;
+
     private MongoSession mongoSession;
     private MongoEntityPersister mongoEntityPersister;
     private ManualProjections manualProjections;
@@ -327,11 +345,107 @@ public class MongoQuery extends Query{
      * @return The Mongo query
      */
     public DBObject getMongoQuery() {
+        // like expressions are compiled into patterns and therefore part of the shape
+        final QueryShape shape = QueryShape.create(this, Like.class);
+        if (shape != null) {
+            final DBObject template = queryPlans.get(shape.getKey());
+            if (template != null) {
+                return (DBObject) bindTemplate(template, shape.getValues());
+            }
+        }
+
         DBObject query = createQueryObject(entity);
         populateMongoQuery(entity, query,criteria);
+
+        if (shape != null) {
+            final DBObject template = createTemplate(query, shape.getValues());
+            if (template != null) {
+                queryPlans.put(shape.getKey(), template);
+            }
+        }
         return query;
     }
 
+    /**
+     * Creates a copy of the query in which the values are replaced by placeholders. Values are located by identity
+     * so a template is only created if every value is a distinct instance that appears exactly once in the query.
+     */
+    private static DBObject createTemplate(DBObject query, List<Object> values) {
+        Map<Object, Integer> indices = new IdentityHashMap<Object, Integer>();
+        for (int i = 0; i < values.size(); i++) {
+            final Object value = values.get(i);
+            if (value == null || indices.put(value, i) != null) {
+                return null;
+            }
+        }
+
+        Set<Integer> found = new HashSet<Integer>();
+        final Object template = copyWithPlaceholders(query, indices, found);
+        return template != null && found.size() == values.size() ? (DBObject) template : null;
+    }
+
+    private static Object copyWithPlaceholders(Object value, Map<Object, Integer> indices, Set<Integer> found) {
+        final Integer index = indices.get(value);
+        if (index != null) {
+            return found.add(index) ? new Placeholder(index) : null;
+        }
+        if (value instanceof Collection) {
+            BasicDBList list = new BasicDBList();
+            for (Object o : (Collection) value) {
+                final Object copy = copyWithPlaceholders(o, indices, found);
+                if (copy == null && o != null) return null;
+                list.add(copy);
+            }
+            return list;
+        }
+        if (value instanceof DBObject) {
+            final DBObject dbObject = (DBObject) value;
+            DBObject copy = new BasicDBObject();
+            for (String key : dbObject.keySet()) {
+                final Object original = dbObject.get(key);
+                final Object copiedValue = copyWithPlaceholders(original, indices, found);
+                if (copiedValue == null && original != null) return null;
+                copy.put(key, copiedValue);
+            }
+            return copy;
+        }
+        return value;
+    }
+
+    private static Object bindTemplate(Object template, List<Object> values) {
+        if (template instanceof Placeholder) {
+            return values.get(((Placeholder) template).index);
+        }
+        if (template instanceof BasicDBList) {
+            final BasicDBList list = (BasicDBList) template;
+            BasicDBList bound = new BasicDBList();
+            for (Object o : list) {
+                bound.add(bindTemplate(o, values));
+            }
+            return bound;
+        }
+        if (template instanceof DBObject) {
+            final DBObject dbObject = (DBObject) template;
+            DBObject bound = new BasicDBObject();
+            for (String key : dbObject.keySet()) {
+                bound.put(key, bindTemplate(dbObject.get(key), values));
+            }
+            return bound;
+        }
+        return template;
+    }
+
+    /**
+     * Marks the position of a value in a query template
+     */
+    private static class Placeholder {
+        final int index;
+
+        Placeholder(int index) {
+            this.index = index;
+        }
+    }
+
     @SuppressWarnings("hiding")
     @Override
     protected List executeQuery(final PersistentEntity entity, final Junction criteria) {
@@ -343,54 +457,60 @@ public class MongoQuery extends Query{
 
                 final DBCollection collection = db.getCollection(mongoEntityPersister.getCollectionName(entity));
                 if (uniqueResult) {
+                    final DBObject fields = getFieldSelector();
                     final DBObject dbObject;
                     if (criteria.isEmpty()) {
-                        if (entity.isRoot()) {
-                            dbObject = collection.findOne();
-                        }
-                        else {
-                            DBObject query = new BasicDBObject(MongoEntityPersister.MONGO_CLASS_FIELD, entity.getDiscriminator());
-                            dbObject = collection.findOne(query);
+                        DBObject query = new BasicDBObject();
+                        if (!entity.isRoot()) {
+                            query.put(MongoEntityPersister.MONGO_CLASS_FIELD, entity.getDiscriminator());
                         }
+                        dbObject = fields == null ? collection.findOne(query) : collection.findOne(query, fields);
                     }
                     else {
                         DBObject query = getMongoQuery();
 
-                        dbObject = collection.findOne(query);
+                        dbObject = fields == null ? collection.findOne(query) : collection.findOne(query, fields);
                     }
                     final Object object = createObjectFromDBObject(dbObject);
                     return wrapObjectResultInList(object);
                 }
                 DBCursor cursor;
-                DBObject query = createQueryObject(entity);
+                DBObject query = getMongoQuery();
 
                 final List<Projection> projectionList = projections().getProjectionList();
                 if (projectionList.isEmpty()) {
-                    cursor = executeQuery(entity, criteria, collection, query);
-                    return new MongoResultList(cursor, mongoEntityPersister);
+                    cursor = executeQueryAndApplyPagination(collection, query);
+                    return new MongoResultList(cursor, mongoEntityPersister, getSelectedPropertySet());
                 }
 
                 List projectedResults = new ArrayList();
+                List aggregates = null;
+                int projectionIndex = 0;
                 for (Projection projection : projectionList) {
+                    final int index = projectionIndex++;
                     if (projection instanceof CountProjection) {
                         // For some reason the below doesn't return the expected result whilst executing the query and returning the cursor does
                         //projectedResults.add(collection.getCount(query));
-                        cursor = executeQuery(entity, criteria, collection, query);
+                        cursor = executeQueryAndApplyPagination(collection, query);
                         projectedResults.add(cursor.size());
                     }
-                    else if (projection instanceof MinProjection) {
-                        cursor = executeQuery(entity, criteria, collection, query);
-                        MinProjection mp = (MinProjection) projection;
-
-                        MongoResultList results = new MongoResultList(cursor, mongoEntityPersister);
-                        projectedResults.add(manualProjections.min((Collection) results.clone(), mp.getPropertyName()));
-                    }
-                    else if (projection instanceof MaxProjection) {
-                        cursor = executeQuery(entity, criteria, collection, query);
-                        MaxProjection mp = (MaxProjection) projection;
-
-                        MongoResultList results = new MongoResultList(cursor, mongoEntityPersister);
-                        projectedResults.add( manualProjections.max((Collection) results.clone(), mp.getPropertyName()) );
+                    else if (ManualProjections.isSupported(projection)) {
+                        if (aggregates == null) {
+                            if (canAggregateOnServer(entity, projectionList)) {
+                                aggregates = aggregateOnServer(entity, collection, query, projectionList);
+                            }
+                            if (aggregates == null) {
+                                // all manual projections are calculated together in a single pass over the cursor
+                                cursor = executeQueryAndApplyPagination(collection, query);
+                                try {
+                                    aggregates = manualProjections.calculate(createEntityIterator(cursor), projectionList);
+                                }
+                                finally {
+                                    cursor.close();
+                                }
+                            }
+                        }
+                        projectedResults.add(aggregates.get(index));
                     }
                     else if ((projection instanceof PropertyProjection) || (projection instanceof IdProjection)) {
                         final PersistentProperty persistentProperty;
@@ -405,12 +525,11 @@ public class MongoQuery extends Query{
                             propertyName = pp.getPropertyName();
                         }
                         if (persistentProperty != null) {
-                            populateMongoQuery(entity, query, criteria);
                             List propertyResults = collection.distinct(propertyName, query);
 
                             if (persistentProperty instanceof ToOne) {
                                 Association a = (Association) persistentProperty;
-                                propertyResults = session.retrieveAll(a.getAssociatedEntity().getJavaClass(), propertyResults);
+                                propertyResults = retrieveExisting(a.getAssociatedEntity().getJavaClass(), propertyResults);
                             }
 
                             if (projectedResults.size() == 0 && projectionList.size() == 1) {
@@ -426,41 +545,65 @@ public class MongoQuery extends Query{
 
                 return projectedResults;
             }
+        });
+    }
 
-            protected DBCursor executeQuery(final PersistentEntity entity,
-                    final Junction criteria, final DBCollection collection,
-                    DBObject query) {
-                final DBCursor cursor;
-                if (criteria.isEmpty()) {
-                    cursor = executeQueryAndApplyPagination(collection, query);
-                }
-                else {
-                    populateMongoQuery(entity, query, criteria);
-                    cursor = executeQueryAndApplyPagination(collection,query);
-                }
-                return cursor;
+    @Override
+    protected QueryResultIterator executeIterate(final PersistentEntity entity, final Junction criteria, final int batchSize) {
+        if (!projections().isEmpty()) {
+            return super.executeIterate(entity, criteria, batchSize);
+        }
+
+        final DBCursor cursor = mongoSession.getMongoTemplate(entity).execute(new DbCallback<DBCursor>() {
+            public DBCursor doInDB(DB db) throws MongoException, DataAccessException {
+                final DBCollection collection = db.getCollection(mongoEntityPersister.getCollectionName(entity));
+                final DBCursor dbCursor = executeQueryAndApplyPagination(collection, getMongoQuery());
+                dbCursor.batchSize(batchSize);
+                return dbCursor;
             }
+        });
 
-            protected DBCursor executeQueryAndApplyPagination(
-                    final DBCollection collection, DBObject query) {
-                final DBCursor cursor;
-                cursor = collection.find(query);
-                if (offset > 0) {
-                    cursor.skip(offset);
-                }
-                if (max > -1) {
-                    cursor.limit(max);
-                }
+        return new QueryResultIterator(session) {
+            @Override
+            protected List<?> nextBatch() {
+                if (!cursor.hasNext()) return null;
 
-                for (Order order : orderBy) {
-                    DBObject orderObject = new BasicDBObject();
-                    orderObject.put(order.getProperty(), order.getDirection() == Order.Direction.DESC ? -1 : 1);
-                    cursor.sort(orderObject);
+                List<Object> batch = new ArrayList<Object>(batchSize);
+                while (batch.size() < batchSize && cursor.hasNext()) {
+                    batch.add(createObjectFromDBObject(cursor.next()));
                 }
+                return batch;
+            }
 
-                return cursor;
+            @Override
+            protected void closeResources() {
+                cursor.close();
             }
-        });
+        };
+    }
+
+    private DBCursor executeQueryAndApplyPagination(
+            final DBCollection collection, DBObject query) {
+        final DBObject fields = getFieldSelector();
+        final DBCursor cursor = fields == null ? collection.find(query) : collection.find(query, fields);
+        if (offset > 0) {
+            cursor.skip(offset);
+        }
+        if (max > -1) {
+            cursor.limit(max);
+        }
+
+        if (!orderBy.isEmpty()) {
+            // a cursor has a single sort, later calls replace it, hence all orders go into one ordered document
+            DBObject orderObject = new BasicDBObject();
+            for (Order order : orderBy) {
+                final String property = entity.isIdentityName(order.getProperty()) ? MongoEntityPersister.MONGO_ID_FIELD : order.getProperty();
+                orderObject.put(property, order.getDirection() == Order.Direction.DESC ? -1 : 1);
+            }
+            cursor.sort(orderObject);
+        }
+
+        return cursor;
     }
 
     private DBObject createQueryObject(PersistentEntity persistentEntity) {
@@ -507,11 +650,206 @@ public class MongoQuery extends Query{
         return propertyName;
     }
 
+    /**
+     * Aggregations are calculated by the server unless the results are paginated, since neither the group command
+     * nor a sorted find can apply an offset or max to the documents being aggregated. Sums and averages are
+     * only calculated by the server for properties stored as native numbers.
+     */
+    private boolean canAggregateOnServer(PersistentEntity entity, List<Projection> projectionList) {
+        if (offset > 0 || max > -1) {
+            return false;
+        }
+
+        for (Projection projection : projectionList) {
+            if (!ManualProjections.isSupported(projection) || projection instanceof CountProjection) {
+                continue;
+            }
+
+            final PersistentProperty property = getAggregatedProperty(entity, (PropertyProjection) projection);
+            if (property == null || property instanceof Association) {
+                return false;
+            }
+            if ((projection instanceof SumProjection || projection instanceof AvgProjection) &&
+                    !NATIVE_NUMBER_TYPES.contains(property.getType())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private PersistentProperty getAggregatedProperty(PersistentEntity entity, PropertyProjection projection) {
+        final String propertyName = projection.getPropertyName();
+        if (entity.isIdentityName(propertyName)) {
+            return entity.getIdentity();
+        }
+        return entity.getPropertyByName(propertyName);
+    }
+
+    /**
+     * Calculates min and max using a sorted find limited to a single document, which can be satisfied by an index,
+     * count distinct using the distinct command and all sums and averages using a single group command. The group
+     * command adds up doubles, so the sum of an integral property is only used if it is exact.
+     *
+     * @return The value of each projection in the order given, null for projections not aggregated, or null
+     * if a sum could not be calculated exactly by the server
+     */
+    private List aggregateOnServer(PersistentEntity entity, DBCollection collection, DBObject query, List<Projection> projectionList) {
+        List aggregates = new ArrayList();
+        DBObject initial = new BasicDBObject();
+        StringBuilder reduce = new StringBuilder("function(doc, out) {");
+        boolean grouped = false;
+
+        for (int i = 0; i < projectionList.size(); i++) {
+            final Projection projection = projectionList.get(i);
+            Object aggregate = null;
+            if (ManualProjections.isSupported(projection) && !(projection instanceof CountProjection)) {
+                final PersistentProperty property = getAggregatedProperty(entity, (PropertyProjection) projection);
+                final String field = entity.isIdentityName(property.getName()) ? MongoEntityPersister.MONGO_ID_FIELD : property.getName();
+
+                if (projection instanceof MinProjection || projection instanceof MaxProjection) {
+                    aggregate = findBoundary(collection, query, field, projection instanceof MinProjection ? 1 : -1);
+                    aggregate = convertAggregate(aggregate, property.getType());
+                }
+                else if (projection instanceof CountDistinctProjection) {
+                    aggregate = collection.distinct(field, query).size();
+                }
+                else {
+                    initial.put("s" + i, 0);
+                    initial.put("a" + i, 0);
+                    initial.put("c" + i, 0);
+                    // Long values are stored as NumberLong, which is an object rather than a number in JavaScript
+                    reduce.append("var v").append(i).append(" = doc['").append(field).append("']; ")
+                          .append("if (v").append(i).append(" instanceof NumberLong) v").append(i)
+                          .append(" = v").append(i).append(".toNumber(); ")
+                          .append("if (typeof v").append(i).append(" == 'number') { ")
+                          .append("out.s").append(i).append(" += v").append(i).append("; ")
+                          .append("out.a").append(i).append(" += Math.abs(v").append(i).append("); ")
+                          .append("out.c").append(i).append("++; } ");
+                    grouped = true;
+                }
+            }
+            aggregates.add(aggregate);
+        }
+
+        if (grouped) {
+            reduce.append('}');
+            final DBObject groups = collection.group(new BasicDBObject(), query, initial, reduce.toString());
+            final DBObject totals = groups instanceof BasicDBList && !((BasicDBList) groups).isEmpty() ?
+                    (DBObject) ((BasicDBList) groups).get(0) : null;
+
+            for (int i = 0; i < projectionList.size(); i++) {
+                final Projection projection = projectionList.get(i);
+                if (totals == null || !(projection instanceof SumProjection || projection instanceof AvgProjection)) {
+                    continue;
+                }
+
+                final Number count = (Number) totals.get("c" + i);
+                if (count == null || count.longValue() == 0) {
+                    continue;
+                }
+                final Number sum = (Number) totals.get("s" + i);
+                if (projection instanceof AvgProjection) {
+                    aggregates.set(i, sum.doubleValue() / count.longValue());
+                }
+                else {
+                    final Class type = getAggregatedProperty(entity, (PropertyProjection) projection).getType();
+                    final boolean floatingPoint = type == Double.class || type == double.class || type == Float.class || type == float.class;
+                    if (floatingPoint) {
+                        aggregates.set(i, sum.doubleValue());
+                        continue;
+                    }
+                    // every partial sum is exact as long as the sum of the magnitudes is
+                    final Number magnitude = (Number) totals.get("a" + i);
+                    if (magnitude == null || magnitude.doubleValue() >= MAX_EXACT_INTEGER) {
+                        return null;
+                    }
+                    aggregates.set(i, sum.longValue());
+                }
+            }
+        }
+        return aggregates;
+    }
+
+    /**
+     * Finds the lowest (direction 1) or highest (direction -1) non-null value of a field
+     */
+    private Object findBoundary(DBCollection collection, DBObject query, String field, int direction) {
+        DBObject boundaryQuery = new BasicDBObject(query.toMap());
+        final Object condition = boundaryQuery.get(field);
+        if (condition == null) {
+            boundaryQuery.put(field, new BasicDBObject("$ne", null));
+        }
+        else if ((condition instanceof DBObject) && !((DBObject) condition).containsField("$ne")) {
+            DBObject operators = new BasicDBObject(((DBObject) condition).toMap());
+            operators.put("$ne", null);
+            boundaryQuery.put(field, operators);
+        }
+
+        final DBCursor cursor = collection.find(boundaryQuery, new BasicDBObject(field, 1))
+                                          .sort(new BasicDBObject(field, direction))
+                                          .limit(1);
+        try {
+            return cursor.hasNext() ? cursor.next().get(field) : null;
+        }
+        finally {
+            cursor.close();
+        }
+    }
+
+    private Object convertAggregate(Object value, Class type) {
+        if (value == null || type.isInstance(value)) {
+            return value;
+        }
+        final ConversionService conversionService = mongoSession.getMappingContext().getConversionService();
+        if (conversionService.canConvert(value.getClass(), type)) {
+            return conversionService.convert(value, type);
+        }
+        return value;
+    }
+
+    private Iterator createEntityIterator(final DBCursor cursor) {
+        return new Iterator() {
+            public boolean hasNext() {
+                return cursor.hasNext();
+            }
+
+            public Object next() {
+                return createObjectFromDBObject(cursor.next());
+            }
+
+            public void remove() {
+                throw new UnsupportedOperationException("Cannot remove from query results");
+            }
+        };
+    }
+
     private Object createObjectFromDBObject(DBObject dbObject) {
         final Object id = dbObject.get(MongoEntityPersister.MONGO_ID_FIELD);
+        final Set<String> selected = getSelectedPropertySet();
+        if (selected != null) {
+            return mongoEntityPersister.createPartialObjectFromNativeEntry(getEntity(), (Serializable) id, dbObject, selected);
+        }
         return mongoEntityPersister.createObjectFromNativeEntry(getEntity(), (Serializable) id, dbObject);
     }
 
+    /**
+     * @return The selected properties if entities are partially loaded, null otherwise
+     */
+    private Set<String> getSelectedPropertySet() {
+        if (selectedProperties.isEmpty() || !projections().isEmpty()) {
+            return null;
+        }
+        return new HashSet<String>(selectedProperties);
+    }
+
+    /**
+     * @return The field selector of the selected properties or null if entities are fully loaded
+     */
+    private DBObject getFieldSelector() {
+        final Set<String> selected = getSelectedPropertySet();
+        return selected == null ? null : mongoEntityPersister.getFieldSelector(entity, selected);
+    }
+
     @SuppressWarnings("unchecked")
     private List wrapObjectResultInList(Object object) {
         List result = new ArrayList();
@@ -630,11 +968,22 @@ public class MongoQuery extends Query{
     public static class MongoResultList extends ArrayList {
 
         private MongoEntityPersister mongoEntityPersister;
+        private Set<String> selectedProperties;
 
-        @SuppressWarnings("unchecked")
         public MongoResultList(DBCursor cursor, MongoEntityPersister mongoEntityPersister) {
+            this(cursor, mongoEntityPersister, null);
+        }
+
+        /**
+         * @param cursor The cursor
+         * @param mongoEntityPersister The persister
+         * @param selectedProperties The properties contained in the documents if they were partially fetched, null otherwise
+         */
+        @SuppressWarnings("unchecked")
+        public MongoResultList(DBCursor cursor, MongoEntityPersister mongoEntityPersister, Set<String> selectedProperties) {
             super.addAll(cursor.toArray());
             this.mongoEntityPersister = mongoEntityPersister;
+            this.selectedProperties = selectedProperties;
         }
 
         @SuppressWarnings("unchecked")
@@ -653,6 +1002,9 @@ public class MongoQuery extends Query{
         protected Object convertDBObject(Object object) {
             final DBObject dbObject = (DBObject) object;
             Object id = dbObject.get(MongoEntityPersister.MONGO_ID_FIELD);
+            if (selectedProperties != null) {
+                return mongoEntityPersister.createPartialObjectFromNativeEntry(mongoEntityPersister.getPersistentEntity(), (Serializable) id, dbObject, selectedProperties);
+            }
             object = mongoEntityPersister.createObjectFromNativeEntry(mongoEntityPersister.getPersistentEntity(), (Serializable) id, dbObject);
             return object;
         }
@@ -0,0 +1,83 @@
+package org.springframework.datastore.mapping.mongo
+
+import org.junit.After
+import org.junit.Before
+import org.junit.Test
+
+class AggregateProjectionTests {
+
+    MongoSession session
+
+    @Before
+    void setUp() {
+        def md = new MongoDatastore()
+        md.afterPropertiesSet()
+        md.mappingContext.addPersistentEntity(Measurement)
+
+        session = md.connect()
+        session.nativeInterface.dropDatabase()
+    }
+
+    @After
+    void tearDown() {
+        session.disconnect()
+    }
+
+    @Test
+    void testIntegerSumAndAverage() {
+        saveMeasurements()
+
+        def q = session.createQuery(Measurement)
+        q.projections().sum("count").avg("count")
+
+        assert q.list() == [6, 2.0d]
+    }
+
+    @Test
+    void testLongSumAndAverage() {
+        saveMeasurements()
+
+        def q = session.createQuery(Measurement)
+        q.projections().sum("total").avg("total")
+
+        assert q.list() == [3000000030L, 1000000010.0d]
+    }
+
+    @Test
+    void testDoubleSumAndAverage() {
+        saveMeasurements()
+
+        def q = session.createQuery(Measurement)
+        q.projections().sum("ratio").avg("ratio")
+
+        def results = q.list()
+        assert results[0] == 4.0d
+        assert Math.abs(results[1] - 4.0d / 3) < 1e-9
+    }
+
+    @Test
+    void testLongSumBeyondTheExactRangeOfADouble() {
+        session.persist(new Measurement(count:1, total:(1L << 53) + 1, ratio:0))
+        session.persist(new Measurement(count:1, total:1L, ratio:0))
+        session.flush()
+
+        def q = session.createQuery(Measurement)
+        q.projections().sum("total")
+
+        assert q.singleResult() == (1L << 53) + 2
+    }
+
+    private void saveMeasurements() {
+        session.persist(new Measurement(count:1, total:10L, ratio:0.5d))
+        session.persist(new Measurement(count:2, total:20L, ratio:1.5d))
+        session.persist(new Measurement(count:3, total:3000000000L, ratio:2.0d))
+        session.flush()
+    }
+}
+
+class Measurement {
+    Long id
+    int count
+    Long total
+    Double ratio
+}
@@ -0,0 +1,47 @@
+package org.springframework.datastore.mapping.mongo
+
+import java.util.concurrent.Executors
+
+import org.junit.Test
+
+class ConcurrentFlushTests {
+
+    @Test
+    void testWritesOfFlushThreadsAreVisibleToTheSession() {
+        def md = new MongoDatastore()
+        md.afterPropertiesSet()
+        md.mappingContext.addPersistentEntity(MongoFlushedCar)
+        md.mappingContext.addPersistentEntity(MongoFlushedPlane)
+
+        MongoSession session = md.connect()
+        session.nativeInterface.dropDatabase()
+
+        def executor = Executors.newFixedThreadPool(2)
+        session.flushExecutor = executor
+        try {
+            50.times {
+                session.persist(new MongoFlushedCar(name:"car$it"))
+                session.persist(new MongoFlushedPlane(name:"plane$it"))
+            }
+            session.flush()
+
+            // read straight away through the connection pinned by the session
+            assert session.createQuery(MongoFlushedCar).list().size() == 50
+            assert session.createQuery(MongoFlushedPlane).list().size() == 50
+        }
+        finally {
+            executor.shutdown()
+            session.disconnect()
+        }
+    }
+}
+
+class MongoFlushedCar {
+    Long id
+    String name
+}
+
+class MongoFlushedPlane {
+    Long id
+    String name
+}
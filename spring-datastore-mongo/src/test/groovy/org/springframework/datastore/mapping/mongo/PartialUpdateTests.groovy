@@ -0,0 +1,46 @@
+package org.springframework.datastore.mapping.mongo
+
+import org.junit.Test
+
+class PartialUpdateTests {
+
+    @Test
+    void testSavingSelectedInstanceKeepsTheOtherProperties() {
+        def md = new MongoDatastore()
+        md.afterPropertiesSet()
+        md.mappingContext.addPersistentEntity(MongoPartialBook)
+
+        MongoSession session = md.connect()
+        session.nativeInterface.dropDatabase()
+        try {
+            def book = new MongoPartialBook(title:"It", author:"Stephen King", pages:1138)
+            session.persist(book)
+            session.flush()
+            session.clear()
+
+            def partial = session.createQuery(MongoPartialBook).select("title").list()[0]
+            assert partial.title == "It"
+            assert partial.author == null
+
+            partial.title = "It (Revised)"
+            session.persist(partial)
+            session.flush()
+            session.clear()
+
+            def loaded = session.retrieve(MongoPartialBook, book.id)
+            assert loaded.title == "It (Revised)"
+            assert loaded.author == "Stephen King"
+            assert loaded.pages == 1138
+        }
+        finally {
+            session.disconnect()
+        }
+    }
+}
+
+class MongoPartialBook {
+    Long id
+    String title
+    String author
+    int pages
+}
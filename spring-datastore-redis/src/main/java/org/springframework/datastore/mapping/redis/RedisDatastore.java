@@ -20,6 +20,8 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.InitializingBean;
@@ -34,12 +36,12 @@ import org.springframework.datastore.mapping.model.PersistentEntity;
 import org.springframework.datastore.mapping.model.PersistentProperty;
 import org.springframework.datastore.mapping.query.Query;
 import org.springframework.datastore.mapping.redis.engine.RedisEntityPersister;
+import org.springframework.datastore.mapping.redis.engine.RedisEntrySchema;
+import org.springframework.datastore.mapping.redis.util.JedisConnectionPool;
 import org.springframework.datastore.mapping.redis.util.JedisTemplate;
 import org.springframework.datastore.mapping.redis.util.RedisTemplate;
 import org.springframework.util.ClassUtils;
 
-import redis.clients.jedis.JedisPool;
-
 /**
  * A Datastore implementation for the Redis key/value datastore
  *
@@ -58,6 +60,13 @@ public class RedisDatastore extends AbstractDatastore implements InitializingBea
     public static final String CONFIG_PASSWORD = "password";
 
     private static final String CONFIG_POOLED = "pooled";
+    public static final String CONFIG_MIN_IDLE = "minIdle";
+    public static final String CONFIG_MAX_IDLE = "maxIdle";
+    public static final String CONFIG_MAX_WAIT = "maxWait";
+    public static final String CONFIG_TEST_ON_BORROW = "testOnBorrow";
+    public static final String CONFIG_VALIDATE_AFTER_IDLE = "validateAfterIdle";
+    public static final String CONFIG_IDLE_TIMEOUT = "idleTimeout";
+    public static final String CONFIG_COMPACT_ENCODING = "compactEncoding";
 
     public static final String DEFAULT_HOST = "localhost";
     public static final int DEFAULT_PORT = 6379;
@@ -68,7 +77,9 @@ public class RedisDatastore extends AbstractDatastore implements InitializingBea
     private int timeout = 2000;
     private boolean pooled = true;
     private boolean backgroundIndex;
-    private JedisPool pool;
+    private JedisConnectionPool pool;
+    private boolean compactEncoding;
+    private final ConcurrentMap<String, RedisEntrySchema> entrySchemas = new ConcurrentHashMap<String, RedisEntrySchema>();
 
     public RedisDatastore() {
         this(new KeyValueMappingContext(""));
@@ -81,17 +92,18 @@ public class RedisDatastore extends AbstractDatastore implements InitializingBea
     public RedisDatastore(MappingContext mappingContext, Map<String, String> connectionDetails) {
         super(mappingContext, connectionDetails);
 
-        int resourceCount = 10;
+        int resourceCount = JedisConnectionPool.DEFAULT_MAX_ACTIVE;
         if (connectionDetails != null) {
             host = read(String.class, CONFIG_HOST, connectionDetails, DEFAULT_HOST);
             port = read(Integer.class, CONFIG_PORT, connectionDetails, DEFAULT_PORT);
             timeout = read(Integer.class, CONFIG_TIMEOUT, connectionDetails, 2000);
             pooled = read(Boolean.class, CONFIG_POOLED, connectionDetails, false);
             password = read(String.class, CONFIG_PASSWORD, connectionDetails, null);
-            resourceCount = read(Integer.class, CONFIG_RESOURCE_COUNT, connectionDetails, 10);
+            resourceCount = read(Integer.class, CONFIG_RESOURCE_COUNT, connectionDetails, JedisConnectionPool.DEFAULT_MAX_ACTIVE);
+            compactEncoding = read(Boolean.class, CONFIG_COMPACT_ENCODING, connectionDetails, false);
         }
         if (pooled && useJedis()) {
-            this.pool = JedisTemplateFactory.createPool(host, port, timeout, resourceCount);
+            this.pool = JedisTemplateFactory.createPool(host, port, timeout, password, resourceCount, connectionDetails);
         }
 
         initializeConverters(mappingContext);
@@ -101,28 +113,109 @@ public class RedisDatastore extends AbstractDatastore implements InitializingBea
         return jedisClientAvailable;
     }
 
+    @Override
     public void destroy() throws Exception {
+        super.destroy();
         if (pool != null) {
             pool.destroy();
         }
     }
 
+    /**
+     * The pool of connections of this datastore, null unless the "pooled" connection detail is set. The
+     * pool exposes how long sessions wait for connections and whether Redis can be reached.
+     *
+     * @return The connection pool
+     */
+    public JedisConnectionPool getConnectionPool() {
+        return pool;
+    }
+
+    /**
+     * Sets whether entities are stored in hashes whose fields are short numeric ids allocated per family,
+     * see {@link RedisEntrySchema}. Entities stored before are still read, but queries that sort or project on a
+     * property fail until they have been rewritten with {@link #migrateToCompactEncoding()}.
+     *
+     * @param compactEncoding True to store entities in the compact layout
+     */
+    public void setCompactEncoding(boolean compactEncoding) {
+        this.compactEncoding = compactEncoding;
+    }
+
+    public boolean isCompactEncoding() {
+        return compactEncoding;
+    }
+
+    /**
+     * The compact layout of the hashes of the given family
+     *
+     * @param family The family of a root entity
+     * @return The schema or null if the compact layout is disabled
+     */
+    public RedisEntrySchema getEntrySchema(String family) {
+        if (!compactEncoding) return null;
+
+        RedisEntrySchema schema = entrySchemas.get(family);
+        if (schema == null) {
+            schema = new RedisEntrySchema(family);
+            RedisEntrySchema existing = entrySchemas.putIfAbsent(family, schema);
+            if (existing != null) schema = existing;
+        }
+        return schema;
+    }
+
+    /**
+     * Rewrites the entities stored with property names as hash fields into the compact layout
+     *
+     * @return The number of entities rewritten
+     */
+    public int migrateToCompactEncoding() {
+        if (!compactEncoding) {
+            throw new IllegalStateException("Cannot migrate entities, the [" + CONFIG_COMPACT_ENCODING + "] setting is disabled");
+        }
+
+        int migrated = 0;
+        final Session session = connect();
+        try {
+            for (PersistentEntity entity : getMappingContext().getPersistentEntities()) {
+                if (!entity.isRoot()) continue;
+
+                RedisEntityPersister persister = (RedisEntityPersister) session.getPersister(entity.getJavaClass());
+                if (persister != null) {
+                    migrated += persister.migrateEntries();
+                }
+            }
+        }
+        finally {
+            session.disconnect();
+        }
+        return migrated;
+    }
+
     static class JedisTemplateFactory {
-        static JedisPool pool;
 
-        static JedisPool createPool(String host, int port, int timeout, int resources) {
-            pool = new JedisPool(host, port, timeout);
-            pool.setResourcesNumber(resources);
-            pool.setRepairThreadsNumber(1);
+        static JedisConnectionPool createPool(String host, int port, int timeout, String password, int resources, Map<String, String> connectionDetails) {
+            JedisConnectionPool pool = new JedisConnectionPool(host, port, timeout);
+            pool.setPassword(password);
+            pool.setMaxActive(resources);
+            pool.setMaxIdle(resources);
+            if (connectionDetails != null) {
+                pool.setMinIdle(read(Integer.class, CONFIG_MIN_IDLE, connectionDetails, 0));
+                pool.setMaxIdle(read(Integer.class, CONFIG_MAX_IDLE, connectionDetails, resources));
+                pool.setMaxWait(read(Long.class, CONFIG_MAX_WAIT, connectionDetails, (long) timeout));
+                pool.setTestOnBorrow(read(Boolean.class, CONFIG_TEST_ON_BORROW, connectionDetails, false));
+                pool.setValidateAfterIdle(read(Long.class, CONFIG_VALIDATE_AFTER_IDLE, connectionDetails, JedisConnectionPool.DEFAULT_VALIDATE_AFTER_IDLE));
+                pool.setIdleTimeout(read(Long.class, CONFIG_IDLE_TIMEOUT, connectionDetails, JedisConnectionPool.DEFAULT_IDLE_TIMEOUT));
+            }
             pool.init();
             return pool;
         }
 
-        static RedisTemplate create(String host, int port, int timeout, boolean pooled, String password) {
+        static RedisTemplate create(String host, int port, int timeout, JedisConnectionPool pool, String password) {
 
             JedisTemplate template;
 
-            if (pooled) {
+            if (pool != null) {
                 template = new JedisTemplate(pool);
             }
             else {
@@ -148,7 +241,7 @@ public class RedisDatastore extends AbstractDatastore implements InitializingBea
     @Override
     protected Session createSession(Map<String, String> connDetails) {
         if (useJedis()) {
-            return new RedisSession(this, getMappingContext(), JedisTemplateFactory.create(host, port, timeout, pooled,password ));
+            return new RedisSession(this, getMappingContext(), JedisTemplateFactory.create(host, port, timeout, pool, password));
         }
         throw new IllegalStateException("Cannot create RedisSession. No Redis client library found on classpath. Please make sure you have the Jedis library on your classpath");
     }
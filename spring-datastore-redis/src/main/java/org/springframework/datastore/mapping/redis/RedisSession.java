@@ -24,6 +24,7 @@ import java.util.Map;
 import javax.persistence.FlushModeType;
 
 import org.springframework.dao.CannotAcquireLockException;
+import org.springframework.dao.DataAccessResourceFailureException;
 import org.springframework.datastore.mapping.core.AbstractSession;
 import org.springframework.datastore.mapping.core.Datastore;
 import org.springframework.datastore.mapping.core.impl.PendingInsert;
@@ -49,6 +50,7 @@ import org.springframework.transaction.CannotCreateTransactionException;
 public class RedisSession extends AbstractSession<RedisTemplate> {
 
     private RedisTemplate redisTemplate;
+    private boolean pipelining;
 
     public RedisSession(Datastore ds, MappingContext mappingContext, RedisTemplate template) {
         super(ds, mappingContext);
@@ -66,7 +68,7 @@ public class RedisSession extends AbstractSession<RedisTemplate> {
 
             final RedisEntityPersister persister = (RedisEntityPersister) getPersister(entity);
 
-            redisTemplate.pipeline(new RedisCallback<RedisTemplate>() {
+            pipelineWrites(new RedisCallback<RedisTemplate>() {
                 public Object doInRedis(RedisTemplate redis) throws IOException {
                     for (PendingInsert<RedisEntry, Long> pendingInsert : pendingInserts) {
                         final EntityAccess entityAccess = pendingInsert.getEntityAccess();
@@ -78,6 +80,7 @@ public class RedisSession extends AbstractSession<RedisTemplate> {
                         }
 
                         persister.storeEntry(entity, pendingInsert.getNativeKey(), pendingInsert.getNativeEntry());
+                        persister.snapshotEntry(entity, pendingInsert.getNativeKey(), pendingInsert.getNativeEntry());
                         postOperations.addAll(pendingInsert.getCascadeOperations());
                     }
                     for (PendingOperation<RedisEntry, Long> pendingOperation : postOperations) {
@@ -100,10 +103,15 @@ public class RedisSession extends AbstractSession<RedisTemplate> {
 
             final RedisEntityPersister persister = (RedisEntityPersister) getPersister(entity);
 
-            redisTemplate.pipeline(new RedisCallback<RedisTemplate>() {
+            pipelineWrites(new RedisCallback<RedisTemplate>() {
                 public Object doInRedis(RedisTemplate redis) throws IOException {
                     for (PendingUpdate<RedisEntry, Long> pendingInsert : pendingInserts) {
                         final EntityAccess entityAccess = pendingInsert.getEntityAccess();
+                        if (!persister.isDirty(entity, pendingInsert.getNativeKey(), pendingInsert.getNativeEntry())) {
+                            // nothing to write, but collection changes may still need indexing
+                            postOperations.addAll(pendingInsert.getCascadeOperations());
+                            continue;
+                        }
                         if (persister.fireBeforeUpdate(entity, entityAccess)) continue;
 
                         List<PendingOperation<RedisEntry, Long>> preOperations = pendingInsert.getPreOperations();
@@ -111,7 +119,7 @@ public class RedisSession extends AbstractSession<RedisTemplate> {
                             preOperation.run();
                         }
 
-                        persister.updateEntry(entity, pendingInsert.getNativeKey(), pendingInsert.getNativeEntry());
+                        persister.executeUpdate(entity, pendingInsert.getNativeKey(), pendingInsert.getNativeEntry());
                         postOperations.addAll(pendingInsert.getCascadeOperations());
                     }
                     for (PendingOperation<RedisEntry, Long> pendingOperation : postOperations) {
@@ -123,6 +131,41 @@ public class RedisSession extends AbstractSession<RedisTemplate> {
         }
     }
 
+    /**
+     * Sends the writes and index updates of all the entities of a flush in a single pipeline, so that
+     * saving many entities with indexed properties costs one round trip instead of one per entity and index
+     */
+    @Override
+    protected void flushGroups(final List<List<PersistentEntity>> groups) {
+        redisTemplate.pipeline(new RedisCallback<RedisTemplate>() {
+            public Object doInRedis(RedisTemplate redis) throws IOException {
+                pipelining = true;
+                try {
+                    RedisSession.super.flushGroups(groups);
+                }
+                finally {
+                    pipelining = false;
+                }
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Queues the writes in the pipeline of the flush if there is one, as pipelines cannot be nested
+     */
+    private void pipelineWrites(RedisCallback<RedisTemplate> writes) {
+        if (!pipelining) {
+            redisTemplate.pipeline(writes);
+            return;
+        }
+        try {
+            writes.doInRedis(redisTemplate);
+        } catch (IOException e) {
+            throw new DataAccessResourceFailureException("I/O exception thrown connecting to Redis: " + e.getMessage(), e);
+        }
+    }
+
     @Override
     protected Persister createPersister(Class cls, MappingContext mappingContext) {
       PersistentEntity entity = mappingContext.getPersistentEntity(cls.getName());
@@ -15,17 +15,22 @@
 package org.springframework.datastore.mapping.redis.engine;
 
 import org.springframework.core.convert.ConversionService;
-import org.springframework.datastore.mapping.engine.AssociationIndexer;
+import org.springframework.datastore.mapping.engine.BatchAssociationIndexer;
 import org.springframework.datastore.mapping.model.PersistentEntity;
 import org.springframework.datastore.mapping.model.types.Association;
 import org.springframework.datastore.mapping.redis.collection.RedisCollection;
 import org.springframework.datastore.mapping.redis.collection.RedisList;
 import org.springframework.datastore.mapping.redis.collection.RedisSet;
 import org.springframework.datastore.mapping.redis.query.RedisQueryUtils;
+import org.springframework.datastore.mapping.redis.util.RedisCallback;
 import org.springframework.datastore.mapping.redis.util.RedisTemplate;
 
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * An indexer for Redis
@@ -33,7 +38,7 @@ import java.util.List;
  * @author Graeme Rocher
  * @since 1.0
  */
-public class RedisAssociationIndexer implements AssociationIndexer<Long, Long> {
+public class RedisAssociationIndexer implements BatchAssociationIndexer<Long, Long> {
     private RedisTemplate template;
     private ConversionService typeConverter;
     private Association association;
@@ -65,11 +70,46 @@ public class RedisAssociationIndexer implements AssociationIndexer<Long, Long> {
         return queryInternal(redisKey);
     }
 
+    /**
+     * Reads the lists or sets of all the given owners in a single pipeline
+     */
+    @SuppressWarnings("unchecked")
+    public Map<Long, List<Long>> queryAll(Collection<Long> primaryKeys) {
+        final List<Long> owners = new ArrayList<Long>(primaryKeys);
+        final List<Object> results = template.pipeline(new RedisCallback<RedisTemplate>() {
+            public Object doInRedis(RedisTemplate redis) throws IOException {
+                for (Long owner : owners) {
+                    final String redisKey = createRedisKey(owner);
+                    if (association.isList()) {
+                        redis.lrange(redisKey, 0, -1);
+                    }
+                    else {
+                        redis.smembers(redisKey);
+                    }
+                }
+                return null;
+            }
+        });
+
+        Map<Long, List<Long>> foreignKeys = new HashMap<Long, List<Long>>();
+        for (int i = 0; i < owners.size(); i++) {
+            final Object members = results == null || i >= results.size() ? null : results.get(i);
+            final Collection<String> keys = members instanceof Collection ? (Collection<String>) members : new ArrayList<String>();
+            foreignKeys.put(owners.get(i), RedisQueryUtils.transformRedisResults(typeConverter, keys));
+        }
+        return foreignKeys;
+    }
+
     public PersistentEntity getIndexedEntity() {
         return association.getAssociatedEntity();
     }
 
     private List<Long> queryInternal(final String redisKey) {
+        if (association.isList()) {
+            // read the list directly, its members are a set which loses the order of the list
+            final List<String> members = template.lrange(redisKey, 0, -1);
+            return RedisQueryUtils.transformRedisResults(typeConverter, members);
+        }
         RedisCollection col = createRedisCollection(redisKey);
         return queryRedisCollection(col);
     }
@@ -18,15 +18,19 @@ import java.io.IOException;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.TimeUnit;
 
 import org.springframework.core.convert.ConversionService;
 import org.springframework.dao.CannotAcquireLockException;
+import org.springframework.dao.InvalidDataAccessResourceUsageException;
 import org.springframework.datastore.mapping.engine.AssociationIndexer;
+import org.springframework.datastore.mapping.engine.EntityPersistencePlan;
 import org.springframework.datastore.mapping.engine.PropertyValueIndexer;
 import org.springframework.datastore.mapping.keyvalue.engine.AbstractKeyValueEntityPesister;
 import org.springframework.datastore.mapping.model.MappingContext;
@@ -35,6 +39,7 @@ import org.springframework.datastore.mapping.model.PersistentProperty;
 import org.springframework.datastore.mapping.model.types.Association;
 import org.springframework.datastore.mapping.proxy.EntityProxy;
 import org.springframework.datastore.mapping.query.Query;
+import org.springframework.datastore.mapping.redis.RedisDatastore;
 import org.springframework.datastore.mapping.redis.RedisEntry;
 import org.springframework.datastore.mapping.redis.RedisSession;
 import org.springframework.datastore.mapping.redis.collection.RedisCollection;
@@ -52,8 +57,15 @@ import org.springframework.datastore.mapping.redis.util.RedisTemplate;
 public class RedisEntityPersister extends AbstractKeyValueEntityPesister<Map, Long> {
     private RedisTemplate redisTemplate;
     private RedisCollection allEntityIndex;
+    private String reservedFamily;
+    private long nextReservedId;
+    private long lastReservedId;
+    private RedisEntrySchema entrySchema;
+    private boolean entrySchemaResolved;
+    private Map<String, Class> simpleTypes;
 
     public static final String DISCRIMINATOR = "discriminator";
+    private static final int MIGRATION_BATCH_SIZE = 500;
 
     public RedisEntityPersister(MappingContext context, PersistentEntity entity, RedisSession conn, final RedisTemplate template) {
         super(context, entity, conn);
@@ -70,14 +82,35 @@ public class RedisEntityPersister extends AbstractKeyValueEntityPesister<Map, Lo
         return new RedisEntry(family);
     }
 
+    @Override
+    @SuppressWarnings("unchecked")
+    protected Map copyEntry(Map nativeEntry) {
+        // hash values are strings so a shallow copy is independent of the original
+        Map copy = createNewEntry(getFamily());
+        copy.putAll(nativeEntry);
+        return copy;
+    }
+
     @Override
     protected Object getEntryValue(Map nativeEntry, String property) {
-        return nativeEntry.get(property);
+        final Object value = nativeEntry.get(property);
+        if (value == null || getEntrySchema() == null) {
+            return value;
+        }
+        final Class type = getSimpleTypes().get(property);
+        return type != null ? decodeValue(value.toString(), type) : value;
     }
 
     @Override
     protected void setEntryValue(Map nativeEntry, String key, Object value) {
         if (value != null) {
+            if (getEntrySchema() != null) {
+                final String encoded = encodeValue(value);
+                if (encoded != null) {
+                    nativeEntry.put(key, encoded);
+                    return;
+                }
+            }
             if (shouldConvert(value)) {
                 final ConversionService conversionService = getMappingContext().getConversionService();
                 nativeEntry.put(key, conversionService.convert(value, String.class));
@@ -85,6 +118,94 @@ public class RedisEntityPersister extends AbstractKeyValueEntityPesister<Map, Lo
         }
     }
 
+    /**
+     * Encodes numbers, dates and booleans directly instead of through the conversion service. Dates are
+     * stored as milliseconds and numbers in decimal, as before, so the values still sort numerically.
+     */
+    private String encodeValue(Object value) {
+        if (value instanceof String) {
+            return (String) value;
+        }
+        if (value instanceof Number) {
+            return value.toString();
+        }
+        if (value instanceof Date) {
+            return String.valueOf(((Date) value).getTime());
+        }
+        if (value instanceof Boolean) {
+            return ((Boolean) value) ? "1" : "0";
+        }
+        return null;
+    }
+
+    private Object decodeValue(String value, Class type) {
+        try {
+            if (type == Long.class || type == long.class) return Long.valueOf(value);
+            if (type == Integer.class || type == int.class) return Integer.valueOf(value);
+            if (type == Double.class || type == double.class) return Double.valueOf(value);
+            if (type == Float.class || type == float.class) return Float.valueOf(value);
+            if (type == Short.class || type == short.class) return Short.valueOf(value);
+            if (type == Byte.class || type == byte.class) return Byte.valueOf(value);
+            if (type == Boolean.class || type == boolean.class) return "1".equals(value) || "true".equals(value);
+            if (type == Date.class) return new Date(Long.parseLong(value));
+        } catch (NumberFormatException e) {
+            // not written by this encoding, left to the conversion service
+        }
+        return value;
+    }
+
+    /**
+     * The types of the simple properties of the entity that are decoded without the conversion service
+     */
+    private Map<String, Class> getSimpleTypes() {
+        if (simpleTypes == null) {
+            Map<String, Class> types = new HashMap<String, Class>();
+            for (EntityPersistencePlan.PropertySlot slot : getPersistencePlan(getPersistentEntity()).getSlots()) {
+                if (slot.getKind() == EntityPersistencePlan.Kind.SIMPLE) {
+                    types.put(slot.getNativeKey(), slot.getProperty().getType());
+                }
+            }
+            simpleTypes = types;
+        }
+        return simpleTypes;
+    }
+
+    /**
+     * The compact hash layout shared by the entities of the inheritance hierarchy of this entity
+     *
+     * @return The schema or null if the datastore stores property names as hash fields
+     */
+    public RedisEntrySchema getEntrySchema() {
+        if (!entrySchemaResolved) {
+            final RedisDatastore datastore = (RedisDatastore) session.getDatastore();
+            entrySchema = datastore.getEntrySchema(getRootFamily(getPersistentEntity()));
+            entrySchemaResolved = true;
+        }
+        return entrySchema;
+    }
+
+    /**
+     * The hash field that stores the given property in every hash of the family, for SORT BY and GET patterns
+     *
+     * @param key The native key of the property
+     * @return The hash field
+     * @throws InvalidDataAccessResourceUsageException If some hashes of the family may still store the property
+     * under its name
+     */
+    public String getHashField(String key) {
+        final RedisEntrySchema schema = getEntrySchema();
+        if (schema == null) return key;
+
+        if (!schema.isMigrated(redisTemplate)) {
+            throw new InvalidDataAccessResourceUsageException("Cannot sort or project on property [" + key +
+                    "] of [" + getFamily() + "]. Its entities were stored before compact encoding was enabled, call " +
+                    "RedisDatastore.migrateToCompactEncoding() first");
+        }
+        // a property that was never stored has no field, nor has any hash a field of that name
+        final String field = schema.findField(redisTemplate, key);
+        return field != null ? field : key;
+    }
+
     private boolean shouldConvert(Object value) {
         return !getMappingContext().isPersistentEntity(value) && !(value instanceof EntityProxy);
     }
@@ -160,7 +281,7 @@ public class RedisEntityPersister extends AbstractKeyValueEntityPesister<Map, Lo
 
         final Map map = redisTemplate.hgetall(hashKey);
         if (map == null || map.isEmpty()) return null;
-        return map;
+        return decodeEntry(map);
     }
 
     private String getEntryKey(PersistentEntity persistentEntity, String family, Serializable key) {
@@ -176,43 +297,89 @@ public class RedisEntityPersister extends AbstractKeyValueEntityPesister<Map, Lo
     }
 
     @Override
-    protected List<Object> retrieveAllEntities(final PersistentEntity persistentEntity, Iterable<Serializable> keys) {
+    protected List<Map> retrieveEntries(final PersistentEntity persistentEntity, final String family, final List<Serializable> keys) {
+        List<Object> results = redisTemplate.pipeline(new RedisCallback<RedisTemplate>(){
+            public Object doInRedis(RedisTemplate redis) throws IOException {
+                for (Serializable key : keys) {
+                    redis.hgetall(getEntryKey(persistentEntity, family, key));
+                }
+                return null;
+            }
+        });
 
-        List<Object> entityResults = new ArrayList<Object>();
+        List<Map> entries = new ArrayList<Map>(keys.size());
+        for (int i = 0, count = keys.size(); i < count; i++) {
+            Map nativeEntry = i < results.size() ? getNativeEntryFromList(results.get(i)) : null;
+            // a missing hash is returned as an empty one
+            entries.add(nativeEntry == null || nativeEntry.isEmpty() ? null : decodeEntry(nativeEntry));
+        }
+        return entries;
+    }
 
-        if (keys != null) {
-            final List<Serializable> redisKeys;
-            if (keys instanceof List) {
-                redisKeys = (List<Serializable>) keys;
+    /**
+     * Fetches only the given fields of each hash with a pipelined HMGET
+     */
+    @Override
+    protected List<Map> retrieveEntries(final PersistentEntity persistentEntity, final String family, final List<Serializable> keys, Set<String> nativePropertyKeys) {
+        final List<String> keyList = new ArrayList<String>(nativePropertyKeys);
+        keyList.add(DISCRIMINATOR);
+        final RedisEntrySchema schema = getEntrySchema();
+        final List<String> fieldList = new ArrayList<String>();
+        for (String key : keyList) {
+            if (schema != null) {
+                // hashes that have not been migrated yet still store the property under its name
+                final String field = schema.findField(redisTemplate, key);
+                fieldList.add(field != null ? field : key);
             }
-            else {
-                redisKeys = new ArrayList<Serializable>();
+            fieldList.add(key);
+        }
+        final String[] fields = fieldList.toArray(new String[fieldList.size()]);
+
+        List<Object> results = redisTemplate.pipeline(new RedisCallback<RedisTemplate>(){
+            public Object doInRedis(RedisTemplate redis) throws IOException {
                 for (Serializable key : keys) {
-                     redisKeys.add(key);
+                    final String entryKey = getEntryKey(persistentEntity, family, key);
+                    redis.hmget(entryKey, fields);
+                    // HMGET cannot distinguish a missing hash from one without the requested fields
+                    redis.exists(entryKey);
                 }
+                return null;
             }
-
-            if (!redisKeys.isEmpty()) {
-                List<Object> results = redisTemplate.pipeline(new RedisCallback<RedisTemplate>(){
-                    public Object doInRedis(RedisTemplate redis) throws IOException {
-                        for (Serializable key : redisKeys) {
-                            redis.hgetall(getEntryKey(persistentEntity, getFamily(), key));
-                        }
-                        return null;
+        });
+
+        List<Map> entries = new ArrayList<Map>(keys.size());
+        for (int i = 0, count = keys.size(); i < count; i++) {
+            final int position = i * 2;
+            final Collection values = position < results.size() ? (Collection) results.get(position) : null;
+            final Object exists = position + 1 < results.size() ? results.get(position + 1) : null;
+            Map<String, String> nativeEntry = new HashMap<String, String>();
+            if (values != null) {
+                Iterator iterator = values.iterator();
+                final int fieldsPerKey = schema != null ? 2 : 1;
+                for (int j = 0; j < fields.length && iterator.hasNext(); j++) {
+                    final Object value = iterator.next();
+                    final String key = keyList.get(j / fieldsPerKey);
+                    if (value != null && !nativeEntry.containsKey(key)) {
+                        nativeEntry.put(key, value.toString());
                     }
-                });
-
-                for (int i = 0, count = redisKeys.size(); i < count; i++) {
-                    Serializable nativeKey = redisKeys.get(i);
-                    Map nativeEntry = getNativeEntryFromList(results.get(i));
-                    entityResults.add(createObjectFromNativeEntry(getPersistentEntity(), nativeKey, nativeEntry));
                 }
             }
+            if (nativeEntry.isEmpty() && !(exists instanceof Number && ((Number) exists).intValue() > 0)) {
+                nativeEntry = null;
+            }
+            entries.add(nativeEntry);
         }
-        return entityResults;
+        return entries;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map decodeEntry(Map hash) {
+        final RedisEntrySchema schema = getEntrySchema();
+        return schema != null ? schema.decode(redisTemplate, hash) : hash;
     }
 
     private Map getNativeEntryFromList(Object result) {
+        if (result == null) return null;
         Collection flatHash = (Collection) result;
         Map<String, String> hash = new HashMap<String, String>();
         Iterator<String> iterator = flatHash.iterator();
@@ -240,6 +407,26 @@ public class RedisEntityPersister extends AbstractKeyValueEntityPesister<Map, Lo
         }
     }
 
+    @Override
+    protected void updateEntry(PersistentEntity persistentEntity, Long key, Map nativeEntry, Set<String> dirtyKeys) {
+        // only send the changed fields, the remaining fields of the hash are left untouched
+        Map changes = new HashMap();
+        for (String dirtyKey : dirtyKeys) {
+            final Object value = nativeEntry.get(dirtyKey);
+            if (value != null) {
+                changes.put(dirtyKey, value);
+            }
+        }
+        if (changes.isEmpty()) return;
+
+        if (!persistentEntity.isRoot()) {
+            performInsertion(getRootFamily(persistentEntity), key, changes);
+        }
+        else {
+            performInsertion(getFamily(), key, changes);
+        }
+    }
+
     @Override
     public Long storeEntry(PersistentEntity persistentEntity, Long storeId, Map nativeEntry) {
         try {
@@ -282,10 +469,83 @@ public class RedisEntityPersister extends AbstractKeyValueEntityPesister<Map, Lo
 
     private Long performInsertion(final String family, final Long id, final Map nativeEntry) {
         String key = family + ":" + id;
-        redisTemplate.hmset(key,nativeEntry);
+        final RedisEntrySchema schema = getEntrySchema();
+        redisTemplate.hmset(key, schema != null ? schema.encode(redisTemplate, nativeEntry) : nativeEntry);
         return id;
     }
 
+    /**
+     * Moves the fields of this entity's hashes that are still named after properties to their compact fields.
+     * Fields are copied with HSETNX so values written in the compact layout meanwhile are kept. Entities of
+     * subclasses share the hashes of the root entity so only root entities need migrating. Afterwards the family
+     * is marked as migrated, which queries that sort or project on properties require.
+     *
+     * @return The number of hashes rewritten
+     */
+    public int migrateEntries() {
+        final RedisEntrySchema schema = getEntrySchema();
+        if (schema == null) return 0;
+
+        final Set<String> ids = redisTemplate.smembers(getAllEntityIndex().getRedisKey());
+        final List<String> keys = new ArrayList<String>(ids.size());
+        for (String id : ids) {
+            keys.add(getRedisKey(getFamily(), id));
+        }
+
+        int migrated = 0;
+        for (int start = 0; start < keys.size(); start += MIGRATION_BATCH_SIZE) {
+            final List<String> batch = keys.subList(start, Math.min(start + MIGRATION_BATCH_SIZE, keys.size()));
+            final List<Object> results = redisTemplate.pipeline(new RedisCallback<RedisTemplate>() {
+                public Object doInRedis(RedisTemplate redis) throws IOException {
+                    for (String key : batch) {
+                        redis.hgetall(key);
+                    }
+                    return null;
+                }
+            });
+
+            final Map<String, Map<String, String>> legacyFields = new HashMap<String, Map<String, String>>();
+            for (int i = 0; i < batch.size() && i < results.size(); i++) {
+                final Map<String, String> hash = getNativeEntryFromList(results.get(i));
+                if (hash == null) continue;
+
+                Map<String, String> fields = new HashMap<String, String>();
+                for (Map.Entry<String, String> field : hash.entrySet()) {
+                    if (schema.isPropertyName(field.getKey())) {
+                        fields.put(field.getKey(), field.getValue());
+                    }
+                }
+                if (!fields.isEmpty()) {
+                    legacyFields.put(batch.get(i), fields);
+                }
+            }
+            if (legacyFields.isEmpty()) continue;
+
+            for (Map<String, String> fields : legacyFields.values()) {
+                for (String name : fields.keySet()) {
+                    // allocated before pipelining so that allocation does not need a connection of its own
+                    schema.getField(redisTemplate, name);
+                }
+            }
+            redisTemplate.pipeline(new RedisCallback<RedisTemplate>() {
+                public Object doInRedis(RedisTemplate redis) throws IOException {
+                    for (Map.Entry<String, Map<String, String>> entry : legacyFields.entrySet()) {
+                        final String key = entry.getKey();
+                        for (Map.Entry<String, String> field : entry.getValue().entrySet()) {
+                            redis.hsetnx(key, schema.getField(redis, field.getKey()), field.getValue());
+                            redis.hdel(key, field.getKey());
+                        }
+                        redis.hset(key, RedisEntrySchema.SCHEMA_FIELD, RedisEntrySchema.SCHEMA_ID);
+                    }
+                    return null;
+                }
+            });
+            migrated += legacyFields.size();
+        }
+        schema.markMigrated(redisTemplate);
+        return migrated;
+    }
+
     public RedisCollection getAllEntityIndex() {
         return allEntityIndex;
     }
@@ -295,9 +555,25 @@ public class RedisEntityPersister extends AbstractKeyValueEntityPesister<Map, Lo
     }
 
     protected Long generateIdentifier(final String family) {
+        if (family.equals(reservedFamily) && nextReservedId <= lastReservedId) {
+            return nextReservedId++;
+        }
         return (long) redisTemplate.incr(family + ".next_id");
     }
 
+    @Override
+    protected void reserveIdentifiers(PersistentEntity persistentEntity, int count) {
+        // a single INCRBY claims the whole block, unused identifiers simply leave a gap in the sequence
+        reservedFamily = getRootFamily(persistentEntity);
+        lastReservedId = redisTemplate.incrby(reservedFamily + ".next_id", count);
+        nextReservedId = lastReservedId - count + 1;
+    }
+
+    @Override
+    protected void releaseIdentifiers(PersistentEntity persistentEntity) {
+        reservedFamily = null;
+    }
+
     @Override
     protected void deleteEntries(final String family, final List<Long> keys) {
         final List<String> actualKeys = new ArrayList<String>();
@@ -342,8 +618,15 @@ public class RedisEntityPersister extends AbstractKeyValueEntityPesister<Map, Lo
         return getEntityBaseKey() + ":" + property.getName() + ":sorted";
     }
 
-    public String getPropertySortKeyPattern() {
-        return getEntityBaseKey() + ":*:sorted";
+    /**
+     * The key of the set that tracks the keys cached from the sorted index of the given property, so that they
+     * can be invalidated without scanning the key space
+     *
+     * @param property The property
+     * @return The registry key
+     */
+    public String getPropertySortKeyRegistry(PersistentProperty property) {
+        return getPropertySortKey(property) + "~keys";
     }
 
     public String getRedisKey(Serializable key) {
@@ -0,0 +1,297 @@
+/* Copyright (C) 2010 SpringSource
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.datastore.mapping.redis.engine;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.datastore.mapping.redis.util.RedisCallback;
+import org.springframework.datastore.mapping.redis.util.RedisTemplate;
+
+/**
+ * The compact hash layout of the entities stored in a family. Each property is stored in a hash field named
+ * after a short numeric id instead of the property name. The ids are allocated once with HSETNX in the
+ * {@code <family>.schema} hash, so all the clients of a datastore agree on them, and hashes written with this
+ * layout carry the {@link #SCHEMA_FIELD} field holding the {@link #SCHEMA_ID id} of the layout.
+ *
+ * <p>Hashes without that field were written with the property names as fields and are read unchanged. Field
+ * ids start with a digit and property names cannot, so both kinds of fields can coexist in a hash that was
+ * partially updated after the layout was enabled.</p>
+ *
+ * <p>A field id that is not in the loaded schema was allocated by another client and causes the schema to be
+ * reloaded. An id the reload does not resolve is not retried for {@link #RELOAD_INTERVAL} milliseconds, so a
+ * stray field cannot trigger a reload on every read, and is kept in the entry under its raw name.</p>
+ *
+ * <p>SORT BY and GET patterns can only name one hash field, so queries that sort or project on a property
+ * require every hash of the family to use this layout. The {@code <family>.schema.migrated} key records
+ * that, it is set when the first entry of a new family is written and once
+ * {@link org.springframework.datastore.mapping.redis.RedisDatastore#migrateToCompactEncoding()} has rewritten
+ * the existing hashes, see {@link #isMigrated(RedisTemplate)}.</p>
+ *
+ * @author Graeme Rocher
+ * @since 1.0
+ */
+public class RedisEntrySchema {
+
+    public static final String SCHEMA_FIELD = "~";
+    public static final String SCHEMA_ID = "1";
+    public static final long RELOAD_INTERVAL = 10000;
+
+    private final String schemaKey;
+    private final String sequenceKey;
+    private final String migratedKey;
+    private final String allEntitiesKey;
+    private volatile boolean migrated;
+    private volatile boolean migrationChecked;
+    private final ConcurrentMap<String, String> fieldsByKey = new ConcurrentHashMap<String, String>();
+    private final ConcurrentMap<String, String> keysByField = new ConcurrentHashMap<String, String>();
+    private final ConcurrentMap<String, Long> unresolvedFields = new ConcurrentHashMap<String, Long>();
+
+    public RedisEntrySchema(String family) {
+        this.schemaKey = family + ".schema";
+        this.sequenceKey = family + ".schema.next_id";
+        this.migratedKey = family + ".schema.migrated";
+        this.allEntitiesKey = family + ".all";
+    }
+
+    /**
+     * The hash field of a property, allocating it the first time the property is stored
+     *
+     * @param template The template
+     * @param key The native key of the property
+     * @return The hash field
+     */
+    public String getField(RedisTemplate template, String key) {
+        final String field = fieldsByKey.get(key);
+        return field != null ? field : allocateField(template, key);
+    }
+
+    /**
+     * The hash field of a property, without allocating one. The schema is reloaded for properties it does not
+     * know, at most once every {@link #RELOAD_INTERVAL} milliseconds per property.
+     *
+     * @param template The template
+     * @param key The native key of the property
+     * @return The hash field or null if none was allocated for the property
+     */
+    public String findField(RedisTemplate template, String key) {
+        String field = fieldsByKey.get(key);
+        if (field == null && shouldReload(key)) {
+            reload(template);
+            field = fieldsByKey.get(key);
+            if (field == null) {
+                unresolvedFields.put(key, System.currentTimeMillis());
+            }
+            else {
+                unresolvedFields.remove(key);
+            }
+        }
+        return field;
+    }
+
+    /**
+     * Whether all the hashes of the family use this layout. Checked with Redis until it is the case.
+     *
+     * @param template The template
+     * @return True if the family has been migrated or was created with this layout
+     */
+    public boolean isMigrated(RedisTemplate template) {
+        if (!migrated) {
+            migrated = (Boolean) template.executeIsolated(new RedisCallback<RedisTemplate>() {
+                public Object doInRedis(RedisTemplate redis) throws IOException {
+                    return redis.exists(migratedKey);
+                }
+            });
+        }
+        return migrated;
+    }
+
+    /**
+     * Records that all the hashes of the family use this layout
+     *
+     * @param template The template
+     */
+    public void markMigrated(RedisTemplate template) {
+        template.executeIsolated(new RedisCallback<RedisTemplate>() {
+            public Object doInRedis(RedisTemplate redis) throws IOException {
+                redis.set(migratedKey, SCHEMA_ID);
+                return null;
+            }
+        });
+        migrated = true;
+    }
+
+    /**
+     * @param hash A hash read from Redis
+     * @return Whether the hash was written with this layout
+     */
+    public boolean isEncoded(Map hash) {
+        return hash != null && hash.containsKey(SCHEMA_FIELD);
+    }
+
+    /**
+     * Translates an entry keyed by property into the hash to store
+     *
+     * @param template The template
+     * @param entry The entry
+     * @return The hash
+     */
+    public Map<String, String> encode(RedisTemplate template, Map<String, String> entry) {
+        if (!migrationChecked) {
+            checkNewFamily(template);
+        }
+        Map<String, String> hash = new HashMap<String, String>(entry.size() + 1);
+        for (Map.Entry<String, String> property : entry.entrySet()) {
+            final String key = property.getKey();
+            // field ids that decode could not resolve are written back as they were read
+            hash.put(isFieldId(key) ? key : getField(template, key), property.getValue());
+        }
+        hash.put(SCHEMA_FIELD, SCHEMA_ID);
+        return hash;
+    }
+
+    /**
+     * Translates a hash read from Redis back into an entry keyed by property. Fields named after properties,
+     * left over from before the layout was enabled, only provide the properties that have no field id. The
+     * schema is reloaded at most once per call for field ids it does not know.
+     *
+     * @param template The template
+     * @param hash The hash
+     * @return The entry
+     */
+    public Map<String, String> decode(RedisTemplate template, Map<String, String> hash) {
+        if (!isEncoded(hash)) {
+            return hash;
+        }
+
+        Map<String, String> entry = new HashMap<String, String>(hash.size());
+        Map<String, String> propertyFields = null;
+        boolean reloaded = false;
+        for (Map.Entry<String, String> field : hash.entrySet()) {
+            final String name = field.getKey();
+            if (SCHEMA_FIELD.equals(name)) continue;
+
+            if (isPropertyName(name)) {
+                if (propertyFields == null) propertyFields = new HashMap<String, String>();
+                propertyFields.put(name, field.getValue());
+                continue;
+            }
+            String key = keysByField.get(name);
+            if (key == null && !reloaded && shouldReload(name)) {
+                // allocated by another client since the schema was loaded
+                reload(template);
+                reloaded = true;
+                key = keysByField.get(name);
+                if (key == null) {
+                    unresolvedFields.put(name, System.currentTimeMillis());
+                }
+                else {
+                    unresolvedFields.remove(name);
+                }
+            }
+            entry.put(key != null ? key : name, field.getValue());
+        }
+        if (propertyFields != null) {
+            for (Map.Entry<String, String> field : propertyFields.entrySet()) {
+                if (!entry.containsKey(field.getKey())) {
+                    entry.put(field.getKey(), field.getValue());
+                }
+            }
+        }
+        return entry;
+    }
+
+    /**
+     * @param name The name of a hash field
+     * @return Whether the field is named after a property rather than being a compact field
+     */
+    public boolean isPropertyName(String name) {
+        return !SCHEMA_FIELD.equals(name) && !isFieldId(name);
+    }
+
+    /**
+     * A family without entities has no hashes to migrate, so it is marked as migrated before its first entry
+     * is written
+     */
+    private synchronized void checkNewFamily(RedisTemplate template) {
+        if (migrationChecked) return;
+
+        template.executeIsolated(new RedisCallback<RedisTemplate>() {
+            public Object doInRedis(RedisTemplate redis) throws IOException {
+                if (!redis.exists(migratedKey) && redis.scard(allEntitiesKey) == 0) {
+                    redis.set(migratedKey, SCHEMA_ID);
+                }
+                return null;
+            }
+        });
+        migrationChecked = true;
+    }
+
+    private boolean shouldReload(String field) {
+        final Long attempted = unresolvedFields.get(field);
+        return attempted == null || System.currentTimeMillis() - attempted >= RELOAD_INTERVAL;
+    }
+
+    private boolean isFieldId(String name) {
+        return name.length() > 0 && Character.isDigit(name.charAt(0));
+    }
+
+    private synchronized String allocateField(RedisTemplate template, final String key) {
+        String field = fieldsByKey.get(key);
+        if (field != null) return field;
+
+        // the schema is read and written on a connection of its own in case a pipeline or transaction is in progress
+        template.executeIsolated(new RedisCallback<RedisTemplate>() {
+            public Object doInRedis(RedisTemplate redis) throws IOException {
+                load(redis);
+                if (!fieldsByKey.containsKey(key)) {
+                    redis.hsetnx(schemaKey, key, String.valueOf(redis.incr(sequenceKey)));
+                    // another client may have allocated a field for the property first
+                    load(redis);
+                }
+                return null;
+            }
+        });
+
+        field = fieldsByKey.get(key);
+        if (field == null) {
+            throw new DataAccessResourceFailureException("Cannot allocate hash field for property [" + key + "] in [" + schemaKey + "]");
+        }
+        return field;
+    }
+
+    private synchronized void reload(RedisTemplate template) {
+        template.executeIsolated(new RedisCallback<RedisTemplate>() {
+            public Object doInRedis(RedisTemplate redis) throws IOException {
+                load(redis);
+                return null;
+            }
+        });
+    }
+
+    private void load(RedisTemplate redis) {
+        final Map<String, String> fields = redis.hgetall(schemaKey);
+        if (fields == null) return;
+
+        for (Map.Entry<String, String> field : fields.entrySet()) {
+            fieldsByKey.put(field.getKey(), field.getValue());
+            keysByField.put(field.getValue(), field.getKey());
+        }
+    }
+}
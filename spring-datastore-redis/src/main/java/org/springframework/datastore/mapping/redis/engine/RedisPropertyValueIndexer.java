@@ -14,11 +14,13 @@
  */
 package org.springframework.datastore.mapping.redis.engine;
 
+import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.net.URLEncoder;
 import java.util.Collection;
 import java.util.Date;
 import java.util.List;
+import java.util.Set;
 
 import org.springframework.dao.DataAccessException;
 import org.springframework.datastore.mapping.core.SessionImplementor;
@@ -28,6 +30,7 @@ import org.springframework.datastore.mapping.model.PersistentEntity;
 import org.springframework.datastore.mapping.model.PersistentProperty;
 import org.springframework.datastore.mapping.redis.collection.RedisSet;
 import org.springframework.datastore.mapping.redis.query.RedisQueryUtils;
+import org.springframework.datastore.mapping.redis.util.RedisCallback;
 import org.springframework.datastore.mapping.redis.util.RedisTemplate;
 
 /**
@@ -60,7 +63,6 @@ public class RedisPropertyValueIndexer implements PropertyValueIndexer<Long> {
     public void index(final Object value, final Long primaryKey) {
         if (value != null) {
             String propSortKey = entityPersister.getPropertySortKey(property);
-            clearCachedIndices(entityPersister.getPropertySortKeyPattern());
             final String primaryIndex = createRedisKey(value);
             template.sadd(primaryIndex, primaryKey);
             // for numbers and dates we also create a list index in order to support range queries
@@ -68,51 +70,64 @@ public class RedisPropertyValueIndexer implements PropertyValueIndexer<Long> {
             if (value instanceof Number) {
                 Number n = (Number) value;
                 template.zadd(propSortKey,n.doubleValue(),primaryKey);
+                clearCachedIndices();
             }
             else if (value instanceof Date) {
                 Date d = (Date) value;
                 Long time = d.getTime();
                 template.zadd(propSortKey,time.doubleValue(),primaryKey);
+                clearCachedIndices();
             }
         }
     }
 
-    private void clearCachedIndices(final String propSortKey) {
+    /**
+     * Removes the keys cached from the sorted index of the property once the session is flushed. Queries record
+     * these keys in a registry set, so invalidation costs one operation per cached key instead of a KEYS scan
+     */
+    private void clearCachedIndices() {
         final SessionImplementor session = (SessionImplementor) entityPersister.getSession();
-        final String keyPattern = propSortKey + "~*";
-        session.addPostFlushOperation(new KeyPatternRunnable(keyPattern) {
+        final String registryKey = entityPersister.getPropertySortKeyRegistry(property);
+        session.addPostFlushOperation(new RegistryRunnable(registryKey) {
             public void run() {
-                deleteKeys(template.keys(keyPattern));
+                final Set<String> cachedKeys = template.smembers(registryKey);
+                if (cachedKeys == null || cachedKeys.isEmpty()) return;
+
+                template.pipeline(new RedisCallback<RedisTemplate>() {
+                    public Object doInRedis(RedisTemplate redis) throws IOException {
+                        redis.del(cachedKeys.toArray(new String[cachedKeys.size()]));
+                        // keys registered in the meantime stay in the registry
+                        for (String cachedKey : cachedKeys) {
+                            redis.srem(registryKey, cachedKey);
+                        }
+                        return null;
+                    }
+                });
             }
         });
     }
 
-    private abstract class KeyPatternRunnable implements Runnable {
-        private String keyPattern;
+    private abstract class RegistryRunnable implements Runnable {
+        private String registryKey;
 
-        public KeyPatternRunnable(String keyPattern) {
-            this.keyPattern = keyPattern;
+        public RegistryRunnable(String registryKey) {
+            this.registryKey = registryKey;
         }
 
         @Override
         public boolean equals(Object obj) {
-            if (obj instanceof KeyPatternRunnable) {
-                return keyPattern.equals(((KeyPatternRunnable)obj).keyPattern);
+            if (obj instanceof RegistryRunnable) {
+                return registryKey.equals(((RegistryRunnable)obj).registryKey);
             }
             return super.equals(obj);
         }
 
         @Override
         public int hashCode() {
-            return keyPattern.hashCode();
+            return registryKey.hashCode();
         }
     }
 
-    private void deleteKeys(List<String> toDelete) {
-        if (toDelete != null && !toDelete.isEmpty())
-            template.del(toDelete.toArray(new String[toDelete.size()]));
-    }
-
     private String createRedisKey(Object value) {
         return getIndexRoot() + urlEncode(value);
     }
@@ -15,15 +15,18 @@
 package org.springframework.datastore.mapping.redis.query;
 
 import java.io.IOException;
+import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.UUID;
 
 import org.springframework.core.convert.ConversionService;
 import org.springframework.dao.DataRetrievalFailureException;
@@ -34,6 +37,7 @@ import org.springframework.datastore.mapping.model.PersistentEntity;
 import org.springframework.datastore.mapping.model.PersistentProperty;
 import org.springframework.datastore.mapping.model.types.Identity;
 import org.springframework.datastore.mapping.query.Query;
+import org.springframework.datastore.mapping.query.QueryResultIterator;
 import org.springframework.datastore.mapping.query.Restrictions;
 import org.springframework.datastore.mapping.redis.RedisSession;
 import org.springframework.datastore.mapping.redis.engine.RedisEntityPersister;
@@ -41,6 +45,7 @@ import org.springframework.datastore.mapping.redis.engine.RedisPropertyValueInde
 import org.springframework.datastore.mapping.redis.util.RedisCallback;
 import org.springframework.datastore.mapping.redis.util.RedisTemplate;
 import org.springframework.datastore.mapping.redis.util.SortParams;
+import org.springframework.util.ClassUtils;
 
 /**
  * A Query implementation for Redis
@@ -50,6 +55,23 @@ import org.springframework.datastore.mapping.redis.util.SortParams;
  */
 @SuppressWarnings("hiding")
 public class RedisQuery extends Query {
+
+    /**
+     * The cardinality of the most selective index of a conjunction up to which range criteria are evaluated
+     * by probing its members rather than materializing the range
+     */
+    public static final int PROBE_THRESHOLD = 1000;
+
+    /**
+     * The number of ids read at a time from the sorted set of a property when evaluating a range criterion
+     */
+    public static final int RANGE_BATCH_SIZE = 1000;
+
+    /**
+     * The number of seconds after which the keys holding the ids matched by range criteria expire
+     */
+    public static final int SCRATCH_KEY_TIMEOUT = 60;
+
     private RedisEntityPersister entityPersister;
     private RedisTemplate template;
     private ConversionService conversionService;
@@ -64,24 +86,7 @@ public class RedisQuery extends Query {
     @Override
     protected List executeQuery(PersistentEntity entity, Junction criteria) {
         final ProjectionList projectionList = projections();
-        String finalKey;
-        if (criteria.isEmpty())  {
-            finalKey = entityPersister.getAllEntityIndex().getRedisKey();
-        }
-        else {
-            List<Criterion> criteriaList = criteria.getCriteria();
-            finalKey = executeSubQuery(criteria, criteriaList);
-        }
-
-        if (!getEntity().isRoot()) {
-            // if the entity is not a root entity then apply a conjunction to trim
-            // any enities not of this type
-
-            final String childEntityResultsKey = finalKey + "-" + getEntity().getDecapitalizedName();
-            template.sinterstore(childEntityResultsKey, finalKey,
-                                 entityPersister.getAllEntityIndex().getRedisKey());
-            finalKey = childEntityResultsKey;
-        }
+        String finalKey = restrictToSeekPosition(getResultsKey(criteria));
 
         Collection<String> results;
         IdProjection idProjection = null;
@@ -98,16 +103,16 @@ public class RedisQuery extends Query {
                 }
                 else if (projection instanceof MaxProjection) {
                     MaxProjection max = (MaxProjection) projection;
-                    final String sortKey = getValidSortKey(max);
+                    final PersistentProperty prop = getValidProperty(max);
                     if (!shouldSortOrPaginate()) {
-                        projectionResults.add(getMaxValueFromSortedSet(sortKey));
+                        projectionResults.add(getMaxValueFromSortedSet(prop));
                     }
                 }
                 else if (projection instanceof MinProjection) {
                     MinProjection min = (MinProjection) projection;
-                    final String sortKey = getValidSortKey(min);
+                    final PersistentProperty prop = getValidProperty(min);
                     if (!shouldSortOrPaginate()) {
-                        projectionResults.add(getMinValueFromSortedSet(sortKey));
+                        projectionResults.add(getMinValueFromSortedSet(prop));
                     }
                 }
                 else {
@@ -115,7 +120,7 @@ public class RedisQuery extends Query {
                     if (projection instanceof SumProjection) {
                         return unsupportedProjection(projectionType);
                     }
-                    else if (projection instanceof AvgProjection) {
+                    else if (projection instanceof AvgProjection || projection instanceof CountDistinctProjection) {
                         return unsupportedProjection(projectionType);
                     }
                     else if (projection instanceof PropertyProjection) {
@@ -124,13 +129,13 @@ public class RedisQuery extends Query {
                         if (postSortAndPaginationKey == null) postSortAndPaginationKey = storeSortedKey(finalKey);
 
                         String entityKey = entityPersister.getEntityBaseKey();
-                        final List<String> values = template.sort(postSortAndPaginationKey, template.sortParams().get(entityKey + ":*->" + validProperty.getName()));
+                        final List<String> values = template.sort(postSortAndPaginationKey, template.sortParams().get(entityKey + ":*->" + entityPersister.getHashField(validProperty.getName())));
                         List resultList = new ArrayList();
                         Class type = validProperty.getType();
                         final PersistentEntity associatedEntity = getSession().getMappingContext().getPersistentEntity(type.getName());
                         final boolean isEntityType = associatedEntity != null;
                         if (isEntityType) {
-                             return getSession().retrieveAll(type, values);
+                             return retrieveExisting(type, values);
                         }
                         for (String value : values) {
                             resultList.add(conversionService.convert(value, type));
@@ -152,18 +157,249 @@ public class RedisQuery extends Query {
             if (idProjection != null) {
                 return RedisQueryUtils.transformRedisResults(conversionService, results);
             }
-            return getSession().retrieveAll(getEntity().getJavaClass(), results );
+            return retrieveResults(results);
         }
         return Collections.emptyList();
     }
 
-    private List unsupportedProjection(String projectionType) {
-        throw new InvalidDataAccessResourceUsageException("Cannot use ["+ projectionType +"] projection. ["+projectionType+"] projections are not currently supported." );
+    @Override
+    protected QueryResultIterator executeIterate(PersistentEntity entity, Junction criteria, final int batchSize) {
+        if (!projections().isEmpty()) {
+            return super.executeIterate(entity, criteria, batchSize);
+        }
+
+        final String finalKey = restrictToSeekPosition(getResultsKey(criteria));
+        final int firstResult = offset;
+        final int maxResults = max;
+        return new QueryResultIterator(getSession()) {
+            private int fetched;
+            private boolean exhausted;
+
+            @Override
+            protected List<?> nextBatch() {
+                int size = batchSize;
+                if (maxResults > -1) {
+                    size = Math.min(size, maxResults - fetched);
+                }
+                if (exhausted || size <= 0) return null;
+
+                // page through the sorted ids with SORT ... LIMIT rather than loading them all
+                final List<String> ids = template.sort(finalKey, getSortParams().limit(firstResult + fetched, size));
+                fetched += ids.size();
+                exhausted = ids.size() < size;
+                if (ids.isEmpty()) return null;
+
+                return retrieveResults(ids);
+            }
+        };
+    }
+
+    /**
+     * Retrieves the entities for the given ids, fetching only the selected fields of each hash if any are selected
+     */
+    private List retrieveResults(Collection<String> ids) {
+        if (selectedProperties.isEmpty()) {
+            return retrieveExisting(getEntity().getJavaClass(), ids);
+        }
+        final List partial = entityPersister.retrievePartialEntities(getEntity(), new ArrayList<Serializable>(ids), selectedProperties);
+        partial.removeAll(Collections.singleton(null));
+        return partial;
+    }
+
+    private String getResultsKey(Junction criteria) {
+        String finalKey;
+        if (criteria.isEmpty())  {
+            finalKey = entityPersister.getAllEntityIndex().getRedisKey();
+        }
+        else {
+            List<Criterion> criteriaList = criteria.getCriteria();
+            finalKey = executeSubQuery(criteria, criteriaList);
+        }
+
+        if (!getEntity().isRoot()) {
+            // if the entity is not a root entity then apply a conjunction to trim
+            // any enities not of this type
+
+            final String childEntityResultsKey = finalKey + "-" + getEntity().getDecapitalizedName();
+            template.sinterstore(childEntityResultsKey, finalKey,
+                                 entityPersister.getAllEntityIndex().getRedisKey());
+            template.expire(childEntityResultsKey, SCRATCH_KEY_TIMEOUT);
+            finalKey = childEntityResultsKey;
+        }
+        return finalKey;
     }
 
-    private String getValidSortKey(PropertyProjection projection) {
-        PersistentProperty prop = getValidProperty(projection);
-        return entityPersister.getPropertySortKey(prop);
+    /**
+     * The seek position is translated into a range of the sorted set index of the ordered property by
+     * {@link #restrictToSeekPosition(String)} rather than into criteria
+     */
+    @Override
+    protected Junction applySeekPosition(Junction criteria) {
+        return criteria;
+    }
+
+    /**
+     * Stores the results that follow the seek position, if any, in a new set. Redis only sorts by the first order,
+     * results with equal values are sorted by their identifiers as strings, hence these are the results past the
+     * score of the position in the sorted set of the ordered property plus those with the same score and a
+     * greater identifier. Without an order the identifiers are sorted numerically.
+     *
+     * The sorted set, or for the identity the results sorted into a list, is read in chunks of
+     * {@link #RANGE_BATCH_SIZE} from the position onwards and only as many results as the page needs are kept.
+     */
+    private String restrictToSeekPosition(String resultsKey) {
+        if (seekPosition.isEmpty()) {
+            return resultsKey;
+        }
+
+        final List<Object> position = getValidSeekPosition();
+        final Order order = orderBy.get(0);
+        final boolean descending = order.getDirection() == Order.Direction.DESC;
+        final int needed = max > -1 ? offset + max : Integer.MAX_VALUE;
+        final List<String> following;
+        if (getEntity().isIdentityName(order.getProperty())) {
+            following = seekIdentity(resultsKey, conversionService.convert(position.get(0), Long.class), descending, needed);
+        }
+        else {
+            PersistentProperty prop = getEntity().getPropertyByName(order.getProperty());
+            assertIndexed(order.getProperty(), prop);
+            if (!hasSortedIndex(prop)) {
+                throw new InvalidDataAccessResourceUsageException("Cannot page after " + position +
+                        ". Keyset pagination requires a numeric or date order property, [" + order.getProperty() +
+                        "] is of type [" + prop.getType().getName() + "]");
+            }
+            final String sortKey = entityPersister.getPropertySortKey(prop);
+            final double score = toScore(position.get(0));
+            final String lastId = position.get(orderBy.size() - 1).toString();
+            following = descending ?
+                    seekDescending(resultsKey, sortKey, score, lastId, needed) :
+                    seekAscending(resultsKey, sortKey, score, lastId, needed);
+        }
+
+        final String seekKey = '~' + resultsKey + "-after-" + order.getProperty() + '-' + order.getDirection() + '-' + position;
+        return storeResults(seekKey, following);
+    }
+
+    /**
+     * Reads the ties of the position and then the greater scores of the sorted set in chunks
+     */
+    private List<String> seekAscending(String resultsKey, String sortKey, double score, String lastId, int needed) {
+        final List<String> following = new ArrayList<String>();
+        for (int chunkOffset = 0; following.size() < needed; chunkOffset += RANGE_BATCH_SIZE) {
+            final Set<String> ties = template.zrangebyscore(sortKey, score, score, chunkOffset, RANGE_BATCH_SIZE);
+            final List<String> greater = new ArrayList<String>();
+            for (String id : ties) {
+                if (id.compareTo(lastId) > 0) greater.add(id);
+            }
+            addMembers(resultsKey, greater, following, needed);
+            if (ties.size() < RANGE_BATCH_SIZE) break;
+        }
+        final double from = Math.nextUp(score);
+        for (int chunkOffset = 0; following.size() < needed; chunkOffset += RANGE_BATCH_SIZE) {
+            final Set<String> chunk = template.zrangebyscore(sortKey, from, Double.MAX_VALUE, chunkOffset, RANGE_BATCH_SIZE);
+            addMembers(resultsKey, chunk, following, needed);
+            if (chunk.size() < RANGE_BATCH_SIZE) break;
+        }
+        return following;
+    }
+
+    /**
+     * Works out the rank the position would have in the sorted set and reads the ranks below it in chunks,
+     * from the highest down
+     */
+    private List<String> seekDescending(String resultsKey, String sortKey, double score, String lastId, int needed) {
+        int end;
+        final Set<String> first = template.zrangebyscore(sortKey, score, Double.MAX_VALUE, 0, 1);
+        if (first.isEmpty()) {
+            final Set<String> last = template.zrange(sortKey, -1, -1);
+            end = last.isEmpty() ? 0 : template.zrank(sortKey, last.iterator().next()) + 1;
+        }
+        else {
+            end = template.zrank(sortKey, first.iterator().next());
+        }
+        boolean tiesRemaining = true;
+        for (int chunkOffset = 0; tiesRemaining; chunkOffset += RANGE_BATCH_SIZE) {
+            final Set<String> ties = template.zrangebyscore(sortKey, score, score, chunkOffset, RANGE_BATCH_SIZE);
+            for (String id : ties) {
+                if (id.compareTo(lastId) >= 0) {
+                    tiesRemaining = false;
+                    break;
+                }
+                end++;
+            }
+            tiesRemaining &= ties.size() == RANGE_BATCH_SIZE;
+        }
+
+        final List<String> following = new ArrayList<String>();
+        while (end > 0 && following.size() < needed) {
+            final int start = Math.max(0, end - RANGE_BATCH_SIZE);
+            final List<String> chunk = new ArrayList<String>(template.zrange(sortKey, start, end - 1));
+            Collections.reverse(chunk);
+            addMembers(resultsKey, chunk, following, needed);
+            end = start;
+        }
+        return following;
+    }
+
+    /**
+     * Sorts the results numerically into a list on the server, finds the first identifier past the position with a
+     * binary search over LINDEX and reads the page from there in chunks
+     */
+    private List<String> seekIdentity(String resultsKey, long lastId, boolean descending, int needed) {
+        final String sortedKey = '~' + resultsKey + "-sorted-" + (descending ? "DESC" : "ASC");
+        final SortParams params = template.sortParams();
+        template.sortstore(resultsKey, sortedKey, descending ? params.desc() : params.asc());
+        template.expire(sortedKey, SCRATCH_KEY_TIMEOUT);
+
+        int low = 0;
+        int high = template.llen(sortedKey);
+        while (low < high) {
+            final int middle = (low + high) >>> 1;
+            final String id = template.lindex(sortedKey, middle);
+            final long current = id == null ? lastId : Long.parseLong(id);
+            if (id != null && (descending ? current < lastId : current > lastId)) {
+                high = middle;
+            }
+            else {
+                low = middle + 1;
+            }
+        }
+
+        final List<String> following = new ArrayList<String>();
+        for (int start = low; following.size() < needed; start += RANGE_BATCH_SIZE) {
+            final List<String> chunk = template.lrange(sortedKey, start, start + RANGE_BATCH_SIZE - 1);
+            for (int i = 0; i < chunk.size() && following.size() < needed; i++) {
+                following.add(chunk.get(i));
+            }
+            if (chunk.size() < RANGE_BATCH_SIZE) break;
+        }
+        return following;
+    }
+
+    /**
+     * Adds the candidates that are members of the results, in order, checking membership with a single pipeline
+     */
+    private void addMembers(final String resultsKey, Collection<String> candidates, List<String> members, int needed) {
+        if (candidates.isEmpty()) return;
+        final List<String> ids = new ArrayList<String>(candidates);
+        final List<Object> replies = template.pipeline(new RedisCallback<RedisTemplate>() {
+            public Object doInRedis(RedisTemplate redis) throws IOException {
+                for (String id : ids) {
+                    redis.sismember(resultsKey, id);
+                }
+                return null;
+            }
+        });
+        for (int i = 0; i < ids.size() && members.size() < needed; i++) {
+            final Object reply = i < replies.size() ? replies.get(i) : null;
+            if (reply instanceof Number && ((Number) reply).intValue() > 0) {
+                members.add(ids.get(i));
+            }
+        }
+    }
+
+    private List unsupportedProjection(String projectionType) {
+        throw new InvalidDataAccessResourceUsageException("Cannot use ["+ projectionType +"] projection. ["+projectionType+"] projections are not currently supported." );
     }
 
     private PersistentProperty getValidProperty(PropertyProjection projection) {
@@ -198,6 +434,7 @@ public class RedisQuery extends Query {
 
            String sortKey = builder.toString();
            template.sortstore(finalKey, sortKey, getSortAndPaginationParams());
+           template.expire(sortKey, SCRATCH_KEY_TIMEOUT);
            return sortKey;
         }
         return finalKey;
@@ -205,6 +442,9 @@ public class RedisQuery extends Query {
 
     private String executeSubQuery(Junction junction,
              @SuppressWarnings("unused") List<Criterion> criteria) {
+        if (junction instanceof Conjunction) {
+            return executeConjunction(junction);
+        }
         List<String> indices = getIndexNames(junction, entityPersister);
 
         if (indices.isEmpty()) {
@@ -214,21 +454,287 @@ public class RedisQuery extends Query {
             return indices.get(0);
         }
         final String[] keyArray = indices.toArray(new String[indices.size()]);
-        String finalKey;
-        if (junction instanceof Conjunction) {
-            finalKey = formulateConjunctionKey(indices);
-            template.sinterstore(finalKey, keyArray);
+        final String finalKey = formulateDisjunctionKey(indices);
+        template.sunionstore(finalKey, keyArray);
+
+        //  since the keys used for queries are temporary we set Redis to kill them after a while
+        template.expire(finalKey, SCRATCH_KEY_TIMEOUT);
+        return finalKey;
+    }
+
+    /**
+     * Evaluates a conjunction starting from its most selective index. The cardinality of each index is obtained
+     * in a single round trip so that a conjunction with an empty index is short-circuited. If the most selective
+     * index is small, its members are probed against the remaining indices with SISMEMBER and against range
+     * criteria with ZSCORE. Otherwise the first range criterion, if any, is streamed from its sorted set and
+     * probed the same way, so range sets are never materialized and intersected.
+     */
+    private String executeConjunction(Junction conjunction) {
+        List<String> indices = new ArrayList<String>();
+        List<PropertyCriterion> ranges = new ArrayList<PropertyCriterion>();
+        for (Criterion criterion : conjunction.getCriteria()) {
+            if (isRangeCriterion(criterion)) {
+                getAndValidateProperty(entityPersister, ((PropertyCriterion) criterion).getProperty());
+                ranges.add((PropertyCriterion) criterion);
+                continue;
+            }
+            CriterionHandler handler = criterionHandlers.get(criterion.getClass());
+            if (handler != null) {
+                handler.handle(entityPersister, indices, criterion);
+            }
         }
-        else {
-            finalKey = formulateDisjunctionKey(indices);
-            template.sunionstore(finalKey, keyArray);
+
+        if (indices.isEmpty()) {
+            if (ranges.isEmpty()) {
+                throw new DataRetrievalFailureException("Unsupported Redis query");
+            }
+            return scan(indices, ranges);
         }
 
-        //  since the keys used for queries are temporary we set Redis to kill them after a while
-//        template.expire(finalKey, 1000);
+        final Map<String, Long> cardinalities = getCardinalities(indices);
+        if (cardinalities == null) {
+            // one of the indices is empty so the conjunction matches nothing
+            return emptyResults(indices);
+        }
+
+        List<String> ordered = new ArrayList<String>(indices);
+        Collections.sort(ordered, new Comparator<String>() {
+            public int compare(String o1, String o2) {
+                return cardinalities.get(o1).compareTo(cardinalities.get(o2));
+            }
+        });
+
+        if (!ranges.isEmpty()) {
+            if (cardinalities.get(ordered.get(0)) <= PROBE_THRESHOLD) {
+                return probe(ordered, ranges);
+            }
+            return scan(ordered, ranges);
+        }
+        return intersect(ordered);
+    }
+
+    private String emptyResults(List<String> indices) {
+        final String emptyKey = formulateConjunctionKey(indices);
+        template.del(emptyKey);
+        return emptyKey;
+    }
+
+    private String intersect(List<String> indices) {
+        if (indices.isEmpty()) {
+            throw new DataRetrievalFailureException("Unsupported Redis query");
+        }
+        if (indices.size() == 1) {
+            return indices.get(0);
+        }
+        final String finalKey = formulateConjunctionKey(indices);
+        template.sinterstore(finalKey, indices.toArray(new String[indices.size()]));
+        template.expire(finalKey, SCRATCH_KEY_TIMEOUT);
         return finalKey;
     }
 
+    /**
+     * @return The cardinality of each index or null if any of them is empty
+     */
+    private Map<String, Long> getCardinalities(final List<String> indices) {
+        final List<Object> results = template.pipeline(new RedisCallback<RedisTemplate>() {
+            public Object doInRedis(RedisTemplate redis) throws IOException {
+                for (String index : indices) {
+                    redis.scard(index);
+                }
+                return null;
+            }
+        });
+
+        Map<String, Long> cardinalities = new HashMap<String, Long>();
+        for (int i = 0; i < indices.size(); i++) {
+            final Object result = i < results.size() ? results.get(i) : null;
+            final long cardinality = result instanceof Number ? ((Number) result).longValue() : 0;
+            if (cardinality == 0) {
+                return null;
+            }
+            cardinalities.put(indices.get(i), cardinality);
+        }
+        return cardinalities;
+    }
+
+    private String probe(final List<String> indices, final List<PropertyCriterion> ranges) {
+        final String finalKey = formulateRangeKey(indices, ranges);
+        final List<String> candidates = new ArrayList<String>(template.smembers(indices.get(0)));
+        if (candidates.isEmpty()) {
+            return emptyResults(indices);
+        }
+
+        return storeResults(finalKey, filter(candidates, indices.subList(1, indices.size()), ranges));
+    }
+
+    /**
+     * Reads the ids matched by the first range criterion from the sorted set of its property in batches of
+     * {@link #RANGE_BATCH_SIZE} and probes each batch against the indices and the remaining range criteria
+     */
+    private String scan(final List<String> indices, final List<PropertyCriterion> ranges) {
+        final String finalKey = formulateRangeKey(indices, ranges);
+        final PropertyCriterion range = ranges.get(0);
+        final PersistentProperty prop = getAndValidateProperty(entityPersister, range.getProperty());
+        final String sortKey = entityPersister.getPropertySortKey(prop);
+        final double[] bound = getScoreRange(range);
+        final List<PropertyCriterion> otherRanges = ranges.subList(1, ranges.size());
+
+        final List<String> matches = new ArrayList<String>();
+        for (int start = 0; ; start += RANGE_BATCH_SIZE) {
+            final Set<String> batch = template.zrangebyscore(sortKey, bound[0], bound[1], start, RANGE_BATCH_SIZE);
+            matches.addAll(filter(new ArrayList<String>(batch), indices, otherRanges));
+            if (batch.size() < RANGE_BATCH_SIZE) break;
+        }
+        return storeResults(finalKey, matches);
+    }
+
+    /**
+     * Checks the candidates against the given indices with SISMEMBER and range criteria with ZSCORE in a
+     * single round trip
+     *
+     * @return The candidates that are members of all the indices and match all the range criteria
+     */
+    private List<String> filter(final List<String> candidates, final List<String> indices, final List<PropertyCriterion> ranges) {
+        if (candidates.isEmpty() || (indices.isEmpty() && ranges.isEmpty())) {
+            return candidates;
+        }
+
+        final List<String> sortKeys = new ArrayList<String>(ranges.size());
+        final List<double[]> bounds = new ArrayList<double[]>(ranges.size());
+        for (PropertyCriterion range : ranges) {
+            final PersistentProperty prop = getAndValidateProperty(entityPersister, range.getProperty());
+            sortKeys.add(entityPersister.getPropertySortKey(prop));
+            bounds.add(getScoreRange(range));
+        }
+
+        final List<Object> results = template.pipeline(new RedisCallback<RedisTemplate>() {
+            public Object doInRedis(RedisTemplate redis) throws IOException {
+                for (String candidate : candidates) {
+                    for (String index : indices) {
+                        redis.sismember(index, candidate);
+                    }
+                    for (String sortKey : sortKeys) {
+                        redis.zscore(sortKey, candidate);
+                    }
+                }
+                return null;
+            }
+        });
+
+        final List<String> matches = new ArrayList<String>();
+        int position = 0;
+        for (String candidate : candidates) {
+            boolean matched = true;
+            for (int i = 0; i < indices.size(); i++) {
+                final Object result = position < results.size() ? results.get(position) : null;
+                position++;
+                matched &= result instanceof Number && ((Number) result).intValue() > 0;
+            }
+            for (double[] bound : bounds) {
+                final Object result = position < results.size() ? results.get(position) : null;
+                position++;
+                if (result == null) {
+                    matched = false;
+                    continue;
+                }
+                final double score = Double.parseDouble(result.toString());
+                matched &= score >= bound[0] && score <= bound[1];
+            }
+            if (matched) {
+                matches.add(candidate);
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * Replaces the contents of the given key with the given ids and lets the key expire after
+     * {@link #SCRATCH_KEY_TIMEOUT} seconds. The ids are added to a key of their own which is renamed into
+     * place, so that queries reading the key concurrently never see it partially written.
+     */
+    private String storeResults(final String key, final Collection<String> ids) {
+        if (ids.isEmpty()) {
+            template.del(key);
+            return key;
+        }
+
+        final String buildKey = createBuildKey(key);
+        template.pipeline(new RedisCallback<RedisTemplate>() {
+            public Object doInRedis(RedisTemplate redis) throws IOException {
+                for (String id : ids) {
+                    redis.sadd(buildKey, id);
+                }
+                redis.rename(buildKey, key);
+                redis.expire(key, SCRATCH_KEY_TIMEOUT);
+                return null;
+            }
+        });
+        return key;
+    }
+
+    /**
+     * @return A key, unique to this query, in which the contents of the given key can be built
+     */
+    private String createBuildKey(String key) {
+        return key + "~build-" + UUID.randomUUID();
+    }
+
+    private String formulateRangeKey(List<String> indices, List<PropertyCriterion> ranges) {
+        StringBuilder keyBuilder = new StringBuilder(formulateConjunctionKey(indices));
+        for (PropertyCriterion range : ranges) {
+            final PersistentProperty prop = getAndValidateProperty(entityPersister, range.getProperty());
+            final double[] bound = getScoreRange(range);
+            keyBuilder.append('~').append(entityPersister.getPropertySortKey(prop))
+                      .append('-').append(bound[0]).append('-').append(bound[1]);
+        }
+        return keyBuilder.toString();
+    }
+
+    private boolean isRangeCriterion(Criterion criterion) {
+        return criterion instanceof Between || criterion instanceof GreaterThan || criterion instanceof GreaterThanEquals ||
+               criterion instanceof LessThan || criterion instanceof LessThanEquals;
+    }
+
+    /**
+     * The inclusive bounds of the scores matched by a range criterion. Strict comparisons exclude the score of
+     * the value itself by moving to the adjacent double.
+     */
+    private double[] getScoreRange(PropertyCriterion criterion) {
+        if (criterion instanceof Between) {
+            final Between between = (Between) criterion;
+            return new double[] { toScore(between.getFrom()), toScore(between.getTo()) };
+        }
+        final double score = toScore(criterion.getValue());
+        if (criterion instanceof GreaterThan) {
+            return new double[] { Math.nextUp(score), Double.MAX_VALUE };
+        }
+        if (criterion instanceof GreaterThanEquals) {
+            return new double[] { score, Double.MAX_VALUE };
+        }
+        if (criterion instanceof LessThan) {
+            return new double[] { -Double.MAX_VALUE, -Math.nextUp(-score) };
+        }
+        return new double[] { -Double.MAX_VALUE, score };
+    }
+
+    /**
+     * Only numbers and dates are added to the sorted set of a property, see {@link RedisPropertyValueIndexer}
+     */
+    private boolean hasSortedIndex(PersistentProperty prop) {
+        final Class type = ClassUtils.resolvePrimitiveIfNecessary(prop.getType());
+        return Number.class.isAssignableFrom(type) || Date.class.isAssignableFrom(type);
+    }
+
+    private double toScore(Object value) {
+        if (value instanceof Date) {
+            return ((Date) value).getTime();
+        }
+        if (value instanceof Number) {
+            return ((Number) value).doubleValue();
+        }
+        return conversionService.convert(value, Double.class);
+    }
+
     private Collection<String> paginateResults(final String key) {
         final boolean shouldSort = shouldSortOrPaginate();
 
@@ -243,12 +749,23 @@ public class RedisQuery extends Query {
     }
 
     private SortParams getSortAndPaginationParams() {
+        SortParams params = getSortParams();
+        if (offset > 0 || max > -1) {
+            params.limit(offset, max);
+
+        }
+        return params;
+    }
+
+    private SortParams getSortParams() {
         SortParams params = template.sortParams();
         if (!orderBy.isEmpty()) {
             Order o = orderBy.get(0); // Redis doesn't really allow multiple orderings
-            String orderBy = entityPersister.getEntityBaseKey() + ":*->" + o.getProperty();
-
-            params.by(orderBy);
+            if (!getEntity().isIdentityName(o.getProperty())) {
+                // without a pattern the identifiers themselves are sorted
+                String orderBy = entityPersister.getEntityBaseKey() + ":*->" + entityPersister.getHashField(o.getProperty());
+                params.by(orderBy);
+            }
             if (o.getDirection() == Order.Direction.DESC) {
                params.desc();
             }
@@ -256,10 +773,6 @@ public class RedisQuery extends Query {
                params.asc();
             }
         }
-        if (offset > 0 || max > -1) {
-            params.limit(offset, max);
-
-        }
         return params;
     }
 
@@ -383,6 +896,7 @@ public class RedisQuery extends Query {
     private String negateIndex(RedisEntityPersister entityPersister, String indexName) {
         final String negatedIndex = "!" + indexName;
         template.sdiffstore(negatedIndex, entityPersister.getAllEntityIndex().getRedisKey(), indexName);
+        template.expire(negatedIndex, SCRATCH_KEY_TIMEOUT);
         return negatedIndex;
     }
 
@@ -404,24 +918,15 @@ public class RedisQuery extends Query {
     }
 
     protected String executeLessThanEquals(RedisEntityPersister entityPersister, PropertyCriterion criterion) {
-
-        final String property = criterion.getProperty();
-        PersistentProperty prop = getAndValidateProperty(entityPersister, property);
-
-        return executeBetweenInternal(entityPersister, prop, 0, criterion.getValue(), false, true);
+        return executeRange(entityPersister, criterion);
     }
 
     protected String executeGreaterThanEquals(RedisEntityPersister entityPersister, PropertyCriterion criterion) {
-        final String property = criterion.getProperty();
-        PersistentProperty prop = getAndValidateProperty(entityPersister, property);
-
-        String sortKey = entityPersister.getPropertySortKey(prop);
-        Object max = getMaxValueFromSortedSet(sortKey);
-
-        return executeBetweenInternal(entityPersister, prop, criterion.getValue(), max, false, true);
+        return executeRange(entityPersister, criterion);
     }
 
-    private Object getMaxValueFromSortedSet(String sortKey) {
+    private Object getMaxValueFromSortedSet(PersistentProperty prop) {
+        String sortKey = entityPersister.getPropertySortKey(prop);
         String maxKey = sortKey + "~max-score";
 
         Object max = template.get(maxKey);
@@ -433,12 +938,14 @@ public class RedisQuery extends Query {
             else max = -1;
 
             template.setex(maxKey, max, 500);
+            template.sadd(entityPersister.getPropertySortKeyRegistry(prop), maxKey);
         }
 
         return conversionService.convert(max, Double.class);
     }
 
-    private Object getMinValueFromSortedSet(String sortKey) {
+    private Object getMinValueFromSortedSet(PersistentProperty prop) {
+        String sortKey = entityPersister.getPropertySortKey(prop);
         String minKey = sortKey + "~min-score";
 
         Object min = template.get(minKey);
@@ -450,54 +957,53 @@ public class RedisQuery extends Query {
             else min = -1;
 
             template.setex(minKey, min, 500);
+            template.sadd(entityPersister.getPropertySortKeyRegistry(prop), minKey);
         }
         return conversionService.convert(min, Double.class);
     }
 
     protected String executeSubBetween(RedisEntityPersister entityPersister, Between between) {
-        final String property = between.getProperty();
-
-        PersistentProperty prop = getAndValidateProperty(entityPersister, property);
-
-        Object fromObject = between.getFrom();
-        Object toObject = between.getTo();
-
-        return executeBetweenInternal(entityPersister, prop, fromObject, toObject, false, true);
+        return executeRange(entityPersister, between);
     }
 
-    private String executeBetweenInternal(RedisEntityPersister entityPersister,
-            PersistentProperty prop, Object fromObject, Object toObject,
-            @SuppressWarnings("unused") boolean includeFrom,
-            @SuppressWarnings("unused") boolean includeTo) {
-        String sortKey = entityPersister.getPropertySortKey(prop);
-        if (fromObject instanceof Date) {
-            fromObject = ((Date)fromObject).getTime();
-        }
-        if (toObject instanceof Date) {
-            toObject = ((Date)toObject).getTime();
-        }
-
-        if (!(fromObject instanceof Number)) {
-            fromObject = conversionService.convert(fromObject, Double.class);
-        }
-        if (!(toObject instanceof Number)) {
-            toObject = conversionService.convert(toObject, Double.class);
-        }
-
-        final double from = ((Number) fromObject).doubleValue();
-        final double to = ((Number) toObject).doubleValue();
-
-        final String key = sortKey + "~between-" + from + "-" + from;
+    /**
+     * Copies the ids matched by a range criterion from the sorted set of the property into a set, for range
+     * criteria that are combined with SUNIONSTORE or SDIFFSTORE. The ids are copied in batches of
+     * {@link #RANGE_BATCH_SIZE} into a key of their own that is renamed into place once complete. The set is registered with the property so that writes to it invalidate the
+     * set, which expires after {@link #SCRATCH_KEY_TIMEOUT} seconds in any case.
+     */
+    private String executeRange(RedisEntityPersister entityPersister, PropertyCriterion criterion) {
+        final PersistentProperty prop = getAndValidateProperty(entityPersister, criterion.getProperty());
+        final String sortKey = entityPersister.getPropertySortKey(prop);
+        final double[] bound = getScoreRange(criterion);
+
+        final String key = sortKey + "~range-" + bound[0] + "-" + bound[1];
+        final String registryKey = entityPersister.getPropertySortKeyRegistry(prop);
         if (!template.exists(key)) {
-            final Set<String> results = template.zrangebyscore(sortKey, from, to);
-            if (results != null && !results.isEmpty()) {
+            final String buildKey = createBuildKey(key);
+            boolean built = false;
+            for (int start = 0; ; start += RANGE_BATCH_SIZE) {
+                final Set<String> batch = template.zrangebyscore(sortKey, bound[0], bound[1], start, RANGE_BATCH_SIZE);
+                if (!batch.isEmpty()) {
+                    template.pipeline(new RedisCallback<RedisTemplate>() {
+                        public Object doInRedis(RedisTemplate redis) throws IOException {
+                            for (String id : batch) {
+                                redis.sadd(buildKey, id);
+                            }
+                            return null;
+                        }
+                    });
+                    built = true;
+                }
+                if (batch.size() < RANGE_BATCH_SIZE) break;
+            }
+            if (built) {
+                // other queries see either no set or the complete one
                 template.pipeline(new RedisCallback<RedisTemplate>() {
                     public Object doInRedis(RedisTemplate redis) throws IOException {
-                        for (String result : results) {
-                            redis.sadd(key, result);
-                        }
-//                        redis.expire(key, 1000);
-
+                        redis.rename(buildKey, key);
+                        redis.expire(key, SCRATCH_KEY_TIMEOUT);
+                        redis.sadd(registryKey, key);
                         return null;
                     }
                 });
@@ -521,7 +1027,7 @@ public class RedisQuery extends Query {
         final List<String> keys = resolveMatchingIndices(entityPersister, property, pattern);
         final String disjKey = formulateDisjunctionKey(keys);
         template.sunionstore(disjKey, keys.toArray(new String[keys.size()]));
-//        template.expire(disjKey, 1000);
+        template.expire(disjKey, SCRATCH_KEY_TIMEOUT);
         return disjKey;
     }
 
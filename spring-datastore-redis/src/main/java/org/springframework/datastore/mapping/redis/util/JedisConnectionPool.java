@@ -0,0 +1,450 @@
+/* Copyright (C) 2010 SpringSource
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.datastore.mapping.redis.util;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DataAccessResourceFailureException;
+
+import redis.clients.jedis.Jedis;
+
+/**
+ * A pool of Jedis connections. At most {@link #setMaxActive(int) maxActive} connections are borrowed at a time,
+ * callers wait up to {@link #setMaxWait(long) maxWait} milliseconds for one to be returned. Idle connections are
+ * reused most recently returned first and those idle for a while are validated with PING when borrowed. A
+ * background task closes connections that are dead or idle for longer than the
+ * {@link #setIdleTimeout(long) idle timeout} while keeping {@link #setMinIdle(int) minIdle} connections open.
+ *
+ * <p>The pool records how long callers wait for connections, see {@link #getAverageWaitMillis()}.</p>
+ *
+ * @author Graeme Rocher
+ * @since 1.0
+ */
+public class JedisConnectionPool {
+
+    public static final int DEFAULT_MAX_ACTIVE = 10;
+    public static final long DEFAULT_MAX_WAIT = 2000;
+    public static final long DEFAULT_IDLE_TIMEOUT = 60000;
+    public static final long DEFAULT_EVICTION_INTERVAL = 30000;
+    public static final long DEFAULT_VALIDATE_AFTER_IDLE = 5000;
+
+    private final String host;
+    private final int port;
+    private final int timeout;
+    private String password;
+
+    private int maxActive = DEFAULT_MAX_ACTIVE;
+    private int maxIdle = DEFAULT_MAX_ACTIVE;
+    private int minIdle;
+    private long maxWait = DEFAULT_MAX_WAIT;
+    private long idleTimeout = DEFAULT_IDLE_TIMEOUT;
+    private long evictionInterval = DEFAULT_EVICTION_INTERVAL;
+    private boolean testOnBorrow;
+    private long validateAfterIdle = DEFAULT_VALIDATE_AFTER_IDLE;
+
+    private volatile Semaphore permits;
+    private final LinkedBlockingDeque<IdleConnection> idle = new LinkedBlockingDeque<IdleConnection>();
+    private Timer evictor;
+    private volatile boolean destroyed;
+
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicLong borrowCount = new AtomicLong();
+    private final AtomicLong waitNanos = new AtomicLong();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+    private final AtomicLong timeoutCount = new AtomicLong();
+    private final AtomicLong createdCount = new AtomicLong();
+    private final AtomicLong destroyedCount = new AtomicLong();
+    private final AtomicLong validationFailureCount = new AtomicLong();
+
+    public JedisConnectionPool(String host, int port, int timeout) {
+        this.host = host;
+        this.port = port;
+        this.timeout = timeout;
+    }
+
+    public void setPassword(String password) {
+        this.password = password;
+    }
+
+    /**
+     * @param maxActive The maximum number of connections borrowed at the same time
+     */
+    public void setMaxActive(int maxActive) {
+        this.maxActive = maxActive;
+    }
+
+    /**
+     * @param maxIdle The maximum number of idle connections kept open, connections returned beyond it are closed
+     */
+    public void setMaxIdle(int maxIdle) {
+        this.maxIdle = maxIdle;
+    }
+
+    /**
+     * @param minIdle The number of idle connections opened in advance and never closed for being idle
+     */
+    public void setMinIdle(int minIdle) {
+        this.minIdle = minIdle;
+    }
+
+    /**
+     * @param maxWait The number of milliseconds to wait for a connection when all of them are borrowed
+     */
+    public void setMaxWait(long maxWait) {
+        this.maxWait = maxWait;
+    }
+
+    /**
+     * @param idleTimeout The number of milliseconds after which idle connections beyond minIdle are closed
+     */
+    public void setIdleTimeout(long idleTimeout) {
+        this.idleTimeout = idleTimeout;
+    }
+
+    /**
+     * @param evictionInterval The number of milliseconds between checks of the idle connections, 0 or less to disable them
+     */
+    public void setEvictionInterval(long evictionInterval) {
+        this.evictionInterval = evictionInterval;
+    }
+
+    /**
+     * @param testOnBorrow Whether every idle connection is checked with PING before being handed out, rather than
+     * only those idle for longer than {@link #setValidateAfterIdle(long) validateAfterIdle}
+     */
+    public void setTestOnBorrow(boolean testOnBorrow) {
+        this.testOnBorrow = testOnBorrow;
+    }
+
+    /**
+     * @param validateAfterIdle The number of milliseconds a connection may be idle before it is checked with PING
+     * when borrowed, a negative value to never check connections when borrowed
+     */
+    public void setValidateAfterIdle(long validateAfterIdle) {
+        this.validateAfterIdle = validateAfterIdle;
+    }
+
+    /**
+     * Opens the minimum number of idle connections and starts checking the idle connections in the background
+     */
+    public synchronized void init() {
+        if (permits != null) return;
+
+        maxIdle = Math.min(maxIdle, maxActive);
+        minIdle = Math.min(minIdle, maxIdle);
+        permits = new Semaphore(maxActive, true);
+        ensureMinIdle();
+        if (evictionInterval > 0) {
+            evictor = new Timer(getClass().getSimpleName() + "-evictor", true);
+            evictor.schedule(new TimerTask() {
+                @Override
+                public void run() {
+                    evict();
+                }
+            }, evictionInterval, evictionInterval);
+        }
+    }
+
+    /**
+     * Borrows a connection, waiting for one to be returned if the maximum number of connections are in use
+     *
+     * @return An open connection that must be given back with {@link #returnResource(Jedis)} or
+     * {@link #returnBrokenResource(Jedis)}
+     * @throws DataAccessResourceFailureException If no connection becomes available in time or none can be opened
+     */
+    public Jedis getResource() {
+        if (permits == null) {
+            init();
+        }
+        if (destroyed) {
+            throw new DataAccessResourceFailureException("Cannot borrow Redis connection. The connection pool has been destroyed");
+        }
+
+        final long start = System.nanoTime();
+        boolean acquired;
+        try {
+            acquired = permits.tryAcquire(maxWait, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DataAccessResourceFailureException("Interrupted waiting for Redis connection", e);
+        }
+        recordWait(System.nanoTime() - start);
+        if (!acquired) {
+            timeoutCount.incrementAndGet();
+            throw new DataAccessResourceFailureException("Timeout waiting " + maxWait + "ms for Redis connection, all " + maxActive + " connections of the pool are in use");
+        }
+
+        try {
+            IdleConnection connection;
+            while ((connection = idle.pollFirst()) != null) {
+                if (!requiresValidation(connection) || isValid(connection.jedis)) {
+                    active.incrementAndGet();
+                    return connection.jedis;
+                }
+                validationFailureCount.incrementAndGet();
+                close(connection.jedis);
+            }
+            final Jedis jedis = open();
+            active.incrementAndGet();
+            return jedis;
+        }
+        catch (RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    private boolean requiresValidation(IdleConnection connection) {
+        return testOnBorrow ||
+               (validateAfterIdle >= 0 && System.currentTimeMillis() - connection.since > validateAfterIdle);
+    }
+
+    /**
+     * Gives back a borrowed connection that is in a usable state
+     *
+     * @param jedis The connection
+     */
+    public void returnResource(Jedis jedis) {
+        active.decrementAndGet();
+        try {
+            if (destroyed || idle.size() >= maxIdle) {
+                close(jedis);
+            }
+            else {
+                idle.offerFirst(new IdleConnection(jedis));
+            }
+        }
+        finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * Gives back a borrowed connection that failed and closes it
+     *
+     * @param jedis The connection
+     */
+    public void returnBrokenResource(Jedis jedis) {
+        active.decrementAndGet();
+        try {
+            close(jedis);
+        }
+        finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * Whether a connection can be borrowed and answers PING
+     *
+     * @return True if Redis can be reached through the pool
+     */
+    public boolean isHealthy() {
+        final Jedis jedis;
+        try {
+            jedis = getResource();
+        } catch (DataAccessException e) {
+            return false;
+        }
+        if (isValid(jedis)) {
+            returnResource(jedis);
+            return true;
+        }
+        returnBrokenResource(jedis);
+        return false;
+    }
+
+    /**
+     * Stops checking the idle connections and closes them. Borrowed connections are closed when returned.
+     */
+    public synchronized void destroy() {
+        destroyed = true;
+        if (evictor != null) {
+            evictor.cancel();
+            evictor = null;
+        }
+        IdleConnection connection;
+        while ((connection = idle.pollFirst()) != null) {
+            close(connection.jedis);
+        }
+    }
+
+    /**
+     * Closes the idle connections that are dead or have been idle for too long, keeping at least minIdle of
+     * the live ones, then opens connections up to minIdle
+     */
+    protected void evict() {
+        if (destroyed) return;
+
+        final long now = System.currentTimeMillis();
+        List<IdleConnection> checked = new ArrayList<IdleConnection>(idle);
+        int kept = 0;
+        for (IdleConnection connection : checked) {
+            // connections borrowed in the meantime are no longer ours to check
+            if (!idle.remove(connection)) continue;
+
+            if (!isValid(connection.jedis)) {
+                validationFailureCount.incrementAndGet();
+                close(connection.jedis);
+            }
+            else if (kept >= minIdle && now - connection.since > idleTimeout) {
+                close(connection.jedis);
+            }
+            else {
+                kept++;
+                idle.offerLast(connection);
+            }
+        }
+        ensureMinIdle();
+    }
+
+    private void ensureMinIdle() {
+        try {
+            while (!destroyed && idle.size() < minIdle && idle.size() + active.get() < maxActive) {
+                idle.offerLast(new IdleConnection(open()));
+            }
+        } catch (DataAccessException e) {
+            // Redis is unreachable, the next check or borrower tries again
+        }
+    }
+
+    private Jedis open() {
+        final Jedis jedis = new Jedis(host, port, timeout);
+        try {
+            jedis.connect();
+            if (password != null) {
+                jedis.auth(password);
+            }
+        } catch (IOException e) {
+            throw new DataAccessResourceFailureException("Connection failure connecting to Redis: " + e.getMessage(), e);
+        } catch (RuntimeException e) {
+            close(jedis);
+            throw new DataAccessResourceFailureException("Connection failure connecting to Redis: " + e.getMessage(), e);
+        }
+        createdCount.incrementAndGet();
+        return jedis;
+    }
+
+    private boolean isValid(Jedis jedis) {
+        try {
+            return jedis.isConnected() && "PONG".equals(jedis.ping());
+        } catch (RuntimeException e) {
+            return false;
+        }
+    }
+
+    private void close(Jedis jedis) {
+        destroyedCount.incrementAndGet();
+        try {
+            jedis.disconnect();
+        } catch (IOException e) {
+            // the connection is discarded anyway
+        } catch (RuntimeException e) {
+            // the connection is discarded anyway
+        }
+    }
+
+    private void recordWait(long nanos) {
+        borrowCount.incrementAndGet();
+        waitNanos.addAndGet(nanos);
+        long max = maxWaitNanos.get();
+        while (nanos > max && !maxWaitNanos.compareAndSet(max, nanos)) {
+            max = maxWaitNanos.get();
+        }
+    }
+
+    /**
+     * @return The number of connections currently borrowed
+     */
+    public int getActiveCount() {
+        return active.get();
+    }
+
+    /**
+     * @return The number of open connections waiting to be borrowed
+     */
+    public int getIdleCount() {
+        return idle.size();
+    }
+
+    /**
+     * @return The number of attempts to borrow a connection, including those that timed out
+     */
+    public long getBorrowCount() {
+        return borrowCount.get();
+    }
+
+    /**
+     * @return The number of attempts to borrow a connection that timed out
+     */
+    public long getTimeoutCount() {
+        return timeoutCount.get();
+    }
+
+    /**
+     * @return The average number of milliseconds callers waited for a connection
+     */
+    public double getAverageWaitMillis() {
+        final long borrows = borrowCount.get();
+        return borrows == 0 ? 0 : waitNanos.get() / (borrows * 1000000d);
+    }
+
+    /**
+     * @return The longest number of milliseconds a caller waited for a connection
+     */
+    public double getMaxWaitMillis() {
+        return maxWaitNanos.get() / 1000000d;
+    }
+
+    /**
+     * @return The number of connections opened by the pool
+     */
+    public long getCreatedCount() {
+        return createdCount.get();
+    }
+
+    /**
+     * @return The number of connections closed by the pool
+     */
+    public long getDestroyedCount() {
+        return destroyedCount.get();
+    }
+
+    /**
+     * @return The number of idle connections found dead when borrowed or checked
+     */
+    public long getValidationFailureCount() {
+        return validationFailureCount.get();
+    }
+
+    private static class IdleConnection {
+        final Jedis jedis;
+        final long since = System.currentTimeMillis();
+
+        IdleConnection(Jedis jedis) {
+            this.jedis = jedis;
+        }
+    }
+}
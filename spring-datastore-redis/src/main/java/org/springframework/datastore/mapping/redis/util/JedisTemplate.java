@@ -18,21 +18,25 @@ import java.io.IOException;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.TimeoutException;
 
 import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.InvalidDataAccessApiUsageException;
 import org.springframework.transaction.NoTransactionException;
 
 import redis.clients.jedis.Client;
 import redis.clients.jedis.Jedis;
 import redis.clients.jedis.JedisPipeline;
-import redis.clients.jedis.JedisPool;
 import redis.clients.jedis.SortingParams;
 import redis.clients.jedis.Transaction;
 
 /**
  * A Spring-style template for querying Redis and translating
- * Jedis exceptions into Spring exceptions
+ * Jedis exceptions into Spring exceptions.
+ *
+ * <p>With a {@link JedisConnectionPool} a connection is borrowed for each operation and returned straight
+ * after, so a template that is not in use does not hold on to a connection. Transactions, pipelines and
+ * {@link #getRedisClient()} keep the same connection until they end or the template is closed. Commands whose
+ * replies are needed while a transaction or pipeline is in progress borrow a second connection for as long.</p>
  *
  * @author Graeme Rocher
  * @since 1.0
@@ -43,11 +47,13 @@ public class JedisTemplate implements RedisTemplate<Jedis, SortingParams> {
     private boolean authenticated;
     private Jedis redis;
     private Transaction transaction;
-    private JedisPool pool;
+    private JedisConnectionPool pool;
+    private boolean clientPinned;
     public static final String QUEUED = "QUEUED";
     private Client pipeline;
+    private Jedis replyConnection;
     private String host = "localhost";
-    private int port;
+    private int port = 6379;
     private int timeout = 2000;
 
     public JedisTemplate(String host, int port, int timeout) {
@@ -62,42 +68,55 @@ public class JedisTemplate implements RedisTemplate<Jedis, SortingParams> {
     }
 
     public List<Object> pipeline(final RedisCallback<RedisTemplate<Jedis, SortingParams>> pipeline) {
+        if (this.pipeline != null) {
+            // the replies of the nested commands would only be read with those of the enclosing pipeline
+            throw new InvalidDataAccessApiUsageException("Cannot start a pipeline while another pipeline is in progress");
+        }
 
-        return (List<Object>) execute(new RedisCallback<Jedis>() {
-            public Object doInRedis(Jedis redis) throws IOException {
-                return redis.pipelined(new JedisPipeline(){
-                    @Override
-                    public void execute() {
-                        try {
-                            JedisTemplate.this.pipeline = client;
-                            pipeline.doInRedis(JedisTemplate.this);
-                        } catch (IOException e) {
-                            throw new DataAccessResourceFailureException("I/O exception thrown connecting to Redis: " + e.getMessage(), e);
-                        }
-                        finally {
-                            JedisTemplate.this.pipeline = null;
+        pinConnection();
+        try {
+            return (List<Object>) execute(new RedisCallback<Jedis>() {
+                public Object doInRedis(Jedis redis) throws IOException {
+                    return redis.pipelined(new JedisPipeline(){
+                        @Override
+                        public void execute() {
+                            try {
+                                JedisTemplate.this.pipeline = client;
+                                pipeline.doInRedis(JedisTemplate.this);
+                            } catch (IOException e) {
+                                throw new DataAccessResourceFailureException("I/O exception thrown connecting to Redis: " + e.getMessage(), e);
+                            }
+                            finally {
+                                JedisTemplate.this.pipeline = null;
+                            }
                         }
-                    }
-                });
-            }
-        });
+                    });
+                }
+            });
+        }
+        finally {
+            releaseConnection();
+        }
     }
 
-    public JedisTemplate(JedisPool pool) {
+    public JedisTemplate(JedisConnectionPool pool) {
         this.pool = pool;
     }
 
-    public JedisTemplate(JedisPool pool, int timeout) {
+    public JedisTemplate(JedisConnectionPool pool, int timeout) {
         this.timeout = timeout;
         this.pool = pool;
     }
 
     public Object execute(RedisCallback<Jedis> jedisRedisCallback) {
+        if (redis == null && pool != null) {
+            return executeWithPooledConnection(jedisRedisCallback);
+        }
         try {
             if (redis == null) {
                 redis = getNewConnection();
             }
-            if (password != null && !authenticated) {
+            if (password != null && !authenticated && pool == null) {
                 try {
                     redis.auth(password);
                     authenticated = true;
@@ -112,17 +131,123 @@ public class JedisTemplate implements RedisTemplate<Jedis, SortingParams> {
 
     }
 
-    protected Jedis getNewConnection() {
-        Jedis jedis;
-        if (pool == null)
-            jedis = new Jedis(host, port, timeout);
+    /**
+     * Runs the callback on the connection used for replies while a transaction or pipeline is in progress, for
+     * operations whose replies are needed straight away
+     */
+    public Object executeIsolated(RedisCallback<RedisTemplate<Jedis, SortingParams>> callback) {
+        if (transaction == null && pipeline == null) {
+            try {
+                return callback.doInRedis(this);
+            } catch (IOException e) {
+                throw new DataAccessResourceFailureException("I/O exception thrown connecting to Redis: " + e.getMessage(), e);
+            }
+        }
+
+        final JedisTemplate isolated = new JedisTemplate(host, port, timeout);
+        try {
+            isolated.redis = getReplyConnection();
+            isolated.authenticated = true;
+            return callback.doInRedis(isolated);
+        } catch (IOException e) {
+            releaseReplyConnection(true);
+            throw new DataAccessResourceFailureException("I/O exception thrown connecting to Redis: " + e.getMessage(), e);
+        }
+        finally {
+            // the connection stays with this template
+            isolated.redis = null;
+        }
+    }
+
+    /**
+     * Runs a command whose reply is needed straight away. While a transaction or pipeline is in progress its
+     * connection only queues commands, so the command runs on a second connection that does not see the queued
+     * commands. With a pool that connection is borrowed like any other, waiting at most maxWait, and kept until
+     * the transaction or pipeline ends.
+     */
+    private Object executeForReply(RedisCallback<Jedis> callback) {
+        if (pipeline == null && transaction == null) {
+            return execute(callback);
+        }
+
+        try {
+            return callback.doInRedis(getReplyConnection());
+        } catch (IOException e) {
+            releaseReplyConnection(true);
+            throw new DataAccessResourceFailureException("I/O exception thrown connecting to Redis: " + e.getMessage(), e);
+        } catch (RuntimeException e) {
+            releaseReplyConnection(true);
+            throw e;
+        }
+    }
+
+    private Jedis getReplyConnection() throws IOException {
+        if (replyConnection == null) {
+            if (pool != null) {
+                replyConnection = pool.getResource();
+            }
+            else {
+                final Jedis jedis = new Jedis(host, port, timeout);
+                jedis.connect();
+                if (password != null) {
+                    jedis.auth(password);
+                }
+                replyConnection = jedis;
+            }
+        }
+        return replyConnection;
+    }
+
+    /**
+     * Gives back the connection used for replies, closing it if it failed
+     */
+    private void releaseReplyConnection(boolean broken) {
+        if (replyConnection == null) return;
+
+        final Jedis jedis = replyConnection;
+        replyConnection = null;
+        if (pool != null) {
+            if (broken) {
+                pool.returnBrokenResource(jedis);
+            }
+            else {
+                pool.returnResource(jedis);
+            }
+        }
         else {
             try {
-                jedis = pool.getResource(timeout);
-            } catch (TimeoutException e) {
-                throw new DataAccessResourceFailureException("Connection timeout getting Jedis connection from pool: " + e.getMessage(), e);
+                jedis.disconnect();
+            } catch (IOException e) {
+                // the connection is discarded anyway
             }
         }
+    }
+
+    private Object executeWithPooledConnection(RedisCallback<Jedis> jedisRedisCallback) {
+        final Jedis jedis = pool.getResource();
+        boolean broken = true;
+        try {
+            final Object result = jedisRedisCallback.doInRedis(jedis);
+            broken = false;
+            return result;
+        } catch (IOException e) {
+            throw new DataAccessResourceFailureException("I/O exception thrown connecting to Redis: " + e.getMessage(), e);
+        } finally {
+            // a connection that failed may have unread replies, so it is not reused
+            if (broken) {
+                pool.returnBrokenResource(jedis);
+            }
+            else {
+                pool.returnResource(jedis);
+            }
+        }
+    }
+
+    protected Jedis getNewConnection() {
+        if (pool != null) {
+            return pool.getResource();
+        }
+        Jedis jedis = new Jedis(host, port, timeout);
         try {
             jedis.connect();
         } catch (IOException e) {
@@ -131,6 +256,30 @@ public class JedisTemplate implements RedisTemplate<Jedis, SortingParams> {
         return jedis;
     }
 
+    /**
+     * Keeps using the same connection for the operations that follow, until {@link #releaseConnection()}
+     */
+    private void pinConnection() {
+        if (redis == null) {
+            redis = getNewConnection();
+        }
+    }
+
+    /**
+     * Returns a pooled connection once no transaction, pipeline or client needs it any longer, together with
+     * the connection used for replies meanwhile
+     */
+    private void releaseConnection() {
+        if (transaction != null || pipeline != null) return;
+
+        releaseReplyConnection(false);
+        if (pool != null && redis != null && !clientPinned) {
+            final Jedis jedis = redis;
+            redis = null;
+            pool.returnResource(jedis);
+        }
+    }
+
     public SortParams sortParams() {
         return new JedisSortParams();
     }
@@ -204,7 +353,7 @@ public class JedisTemplate implements RedisTemplate<Jedis, SortingParams> {
         return (Integer)execute(new RedisCallback<Jedis>() {
             public Object doInRedis(Jedis redis) {
                 if (pipeline != null) {
-                    redis.scard(redisKey);
+                    pipeline.scard(redisKey);
                     return 0;
                 }
                 return redis.scard(redisKey);
@@ -247,6 +396,10 @@ public class JedisTemplate implements RedisTemplate<Jedis, SortingParams> {
     public Set<String> smembers(final String redisKey) {
         return (Set<String>) execute(new RedisCallback<Jedis>() {
             public Object doInRedis(Jedis redis) {
+                if (pipeline != null) {
+                    pipeline.smembers(redisKey);
+                    return null;
+                }
                 return redis.smembers(redisKey);
             }
         });
@@ -454,6 +607,21 @@ public class JedisTemplate implements RedisTemplate<Jedis, SortingParams> {
         });
     }
 
+    public boolean hsetnx(final String redisKey, final String key, final Object o) {
+        return (Boolean)execute(new RedisCallback<Jedis>() {
+            public Object doInRedis(Jedis redis) {
+                if (transaction != null) {
+                    return transaction.hsetnx(redisKey, key, o.toString()).equals(QUEUED);
+                }
+                if (pipeline != null) {
+                    pipeline.hsetnx(redisKey, key, o.toString());
+                    return false;
+                }
+                return redis.hsetnx(redisKey, key, o.toString()) > 0;
+            }
+        });
+    }
+
     public boolean hdel(final String redisKey, final String entryKey) {
         return (Boolean)execute(new RedisCallback<Jedis>() {
             public Object doInRedis(Jedis redis) {
@@ -514,23 +682,21 @@ public class JedisTemplate implements RedisTemplate<Jedis, SortingParams> {
     }
 
     public int incr(final String key) {
-        return (Integer)execute(new RedisCallback<Jedis>() {
-            public Object doInRedis(Jedis redis) throws IOException {
-                if (transaction != null) {
-                    redis = getNewConnection();
-                    try {
-                        return redis.incr(key);
-                    }
-                    finally {
-                        redis.disconnect();
-                    }
-
-                }
+        return (Integer)executeForReply(new RedisCallback<Jedis>() {
+            public Object doInRedis(Jedis redis) {
                 return redis.incr(key);
             }
         });
     }
 
+    public int incrby(final String key, final int amount) {
+        return (Integer)executeForReply(new RedisCallback<Jedis>() {
+            public Object doInRedis(Jedis redis) {
+                return redis.incrBy(key, amount);
+            }
+        });
+    }
+
     public int del(final String... redisKey) {
         return (Integer)execute(new RedisCallback<Jedis>() {
             public Object doInRedis(Jedis redis) {
@@ -538,13 +704,34 @@ public class JedisTemplate implements RedisTemplate<Jedis, SortingParams> {
                     transaction.del(redisKey);
                     return 0;
                 }
+                if (pipeline != null) {
+                    pipeline.del(redisKey);
+                    return 0;
+                }
                 return redis.del(redisKey);
             }
         });
     }
 
+    public void rename(final String oldKey, final String newKey) {
+        execute(new RedisCallback<Jedis>() {
+            public Object doInRedis(Jedis redis) {
+                if (transaction != null) {
+                    transaction.rename(oldKey, newKey);
+                }
+                else if (pipeline != null) {
+                    pipeline.rename(oldKey, newKey);
+                }
+                else {
+                    redis.rename(oldKey, newKey);
+                }
+                return null;
+            }
+        });
+    }
+
     public Set<String> sinter(final String...keys) {
-        return (Set<String>) execute(new RedisCallback<Jedis>() {
+        return (Set<String>) executeForReply(new RedisCallback<Jedis>() {
             public Object doInRedis(Jedis redis) {
                 return redis.sinter(keys);
             }
@@ -552,7 +739,7 @@ public class JedisTemplate implements RedisTemplate<Jedis, SortingParams> {
     }
 
     public Set<String> sunion(final String... keys) {
-        return (Set<String>) execute(new RedisCallback<Jedis>() {
+        return (Set<String>) executeForReply(new RedisCallback<Jedis>() {
             public Object doInRedis(Jedis redis) {
                 return redis.sunion(keys);
             }
@@ -565,6 +752,9 @@ public class JedisTemplate implements RedisTemplate<Jedis, SortingParams> {
                 if (transaction != null) {
                     transaction.sinterstore(storeKey, keys);
                 }
+                else if (pipeline != null) {
+                    pipeline.sinterstore(storeKey, keys);
+                }
                 else {
                     redis.sinterstore(storeKey, keys);
                 }
@@ -580,6 +770,9 @@ public class JedisTemplate implements RedisTemplate<Jedis, SortingParams> {
                 if (transaction != null) {
                     transaction.sunionstore(storeKey, keys);
                 }
+                else if (pipeline != null) {
+                    pipeline.sunionstore(storeKey, keys);
+                }
                 else {
                     redis.sunionstore(storeKey, keys);
                 }
@@ -595,6 +788,9 @@ public class JedisTemplate implements RedisTemplate<Jedis, SortingParams> {
                 if (transaction != null) {
                     transaction.sdiffstore(storeKey, keys);
                 }
+                else if (pipeline != null) {
+                    pipeline.sdiffstore(storeKey, keys);
+                }
                 else {
                     redis.sdiffstore(storeKey, keys);
                 }
@@ -605,7 +801,7 @@ public class JedisTemplate implements RedisTemplate<Jedis, SortingParams> {
     }
 
     public boolean setnx(final String redisKey, final Object o) {
-        return (Boolean)execute(new RedisCallback<Jedis>() {
+        return (Boolean)executeForReply(new RedisCallback<Jedis>() {
             public Object doInRedis(Jedis redis) {
                 if (transaction != null) {
                     return transaction.setnx(redisKey, o.toString()).equals(QUEUED);
@@ -623,13 +819,17 @@ public class JedisTemplate implements RedisTemplate<Jedis, SortingParams> {
                     String result = transaction.expire(key,timeout);
                     return result != null && result.equals(QUEUED);
                 }
+                if (pipeline != null) {
+                    pipeline.expire(key, timeout);
+                    return false;
+                }
                 return redis.expire(key,timeout) > 0;
             }
         });
     }
 
     public int ttl(final String key) {
-        return (Integer)execute(new RedisCallback<Jedis>() {
+        return (Integer)executeForReply(new RedisCallback<Jedis>() {
             public Object doInRedis(Jedis redis) {
                 return redis.ttl(key);
             }
@@ -637,7 +837,7 @@ public class JedisTemplate implements RedisTemplate<Jedis, SortingParams> {
     }
 
     public String getset(final String redisKey, final Object o) {
-        return (String) execute(new RedisCallback<Jedis>() {
+        return (String) executeForReply(new RedisCallback<Jedis>() {
             public Object doInRedis(Jedis redis) {
                 return redis.getSet(redisKey, o.toString());
             }
@@ -646,36 +846,40 @@ public class JedisTemplate implements RedisTemplate<Jedis, SortingParams> {
     }
 
     public List<String> keys(final String pattern) {
-        return (List<String>) execute(new RedisCallback<Jedis>() {
-            public Object doInRedis(Jedis redis) throws IOException {
-                if (transaction != null) {
-                    redis = getNewConnection();
-                    try {
-                        return redis.keys(pattern);
-                    } finally {
-                        redis.disconnect();
-                    }
-                }
+        return (List<String>) executeForReply(new RedisCallback<Jedis>() {
+            public Object doInRedis(Jedis redis) {
                 return redis.keys(pattern);
             }
         });
     }
 
     public void close() {
-        execute(new RedisCallback<Jedis>() {
-            public Object doInRedis(Jedis redis) throws IOException {
-                if (pool != null) {
-                    pool.returnResource(redis);
-                }
-                else {
-                    redis.disconnect();
-                }
-                return null;
+        releaseReplyConnection(false);
+        if (redis == null) return;
+
+        final Jedis jedis = redis;
+        redis = null;
+        clientPinned = false;
+        if (pool != null) {
+            if (transaction != null) {
+                pool.returnBrokenResource(jedis);
             }
-        });
+            else {
+                pool.returnResource(jedis);
+            }
+        }
+        else {
+            try {
+                jedis.disconnect();
+            } catch (IOException e) {
+                throw new DataAccessResourceFailureException("I/O exception thrown disconnecting from Redis: " + e.getMessage(), e);
+            }
+        }
+        transaction = null;
     }
 
     public Object multi() {
+        pinConnection();
         return execute(new RedisCallback<Jedis>() {
             public Object doInRedis(Jedis redis) {
                 transaction = redis.multi();
@@ -686,19 +890,25 @@ public class JedisTemplate implements RedisTemplate<Jedis, SortingParams> {
     }
 
     public Jedis getRedisClient() {
+        pinConnection();
+        clientPinned = true;
         return redis;
     }
 
     public boolean exists(final String key) {
         return (Boolean)execute(new RedisCallback<Jedis>() {
             public Object doInRedis(Jedis redis) {
+                if (pipeline != null) {
+                    pipeline.exists(key);
+                    return false;
+                }
                 return redis.exists(key) > 0;
             }
         });
     }
 
     public String get(final String key) {
-        return (String) execute(new RedisCallback<Jedis>() {
+        return (String) executeForReply(new RedisCallback<Jedis>() {
             public Object doInRedis(Jedis redis) {
                 return redis.get(key);
             }
@@ -717,6 +927,9 @@ public class JedisTemplate implements RedisTemplate<Jedis, SortingParams> {
                 if (transaction != null) {
                     transaction.mset(keysAndValues);
                 }
+                else if (pipeline != null) {
+                    pipeline.mset(keysAndValues);
+                }
                 else {
                     redis.mset(keysAndValues);
                 }
@@ -727,19 +940,24 @@ public class JedisTemplate implements RedisTemplate<Jedis, SortingParams> {
     }
 
     public Object[] exec() {
-        return (Object[]) execute(new RedisCallback<Jedis>() {
-            public Object doInRedis(Jedis redis) {
-                if (transaction != null) {
-                    List<Object> results = transaction.exec();
-                    try {
-                        return results.toArray(new Object[results.size()]);
-                    } finally {
-                        transaction = null;
+        try {
+            return (Object[]) execute(new RedisCallback<Jedis>() {
+                public Object doInRedis(Jedis redis) {
+                    if (transaction != null) {
+                        List<Object> results = transaction.exec();
+                        try {
+                            return results.toArray(new Object[results.size()]);
+                        } finally {
+                            transaction = null;
+                        }
                     }
+                    throw new NoTransactionException("No transaction started. Call multi() first!");
                 }
-                throw new NoTransactionException("No transaction started. Call multi() first!");
-            }
-        });
+            });
+        }
+        finally {
+            releaseConnection();
+        }
     }
 
     public void discard() {
@@ -748,8 +966,16 @@ public class JedisTemplate implements RedisTemplate<Jedis, SortingParams> {
                 if (transaction != null) {
                     transaction.discard();
                     transaction = null;
-                    redis.disconnect();
-                    JedisTemplate.this.redis = getNewConnection();
+                    releaseReplyConnection(false);
+                    // the connection is not reused, the next operation uses a new one
+                    JedisTemplate.this.redis = null;
+                    clientPinned = false;
+                    if (pool != null) {
+                        pool.returnBrokenResource(redis);
+                    }
+                    else {
+                        redis.disconnect();
+                    }
                 }
 
                 return null;
@@ -773,7 +999,7 @@ public class JedisTemplate implements RedisTemplate<Jedis, SortingParams> {
     }
 
     public int zrank(final String key, final Object member) {
-        return (Integer) execute(new RedisCallback<Jedis>() {
+        return (Integer) executeForReply(new RedisCallback<Jedis>() {
             public Object doInRedis(Jedis redis) {
                 return redis.zrank(key, member.toString());
             }
@@ -781,7 +1007,7 @@ public class JedisTemplate implements RedisTemplate<Jedis, SortingParams> {
     }
 
     public Set<String> zrange(final String key, final int fromIndex, final int toIndex) {
-        return (Set<String>) execute(new RedisCallback<Jedis>() {
+        return (Set<String>) executeForReply(new RedisCallback<Jedis>() {
             public Object doInRedis(Jedis redis) {
                 return redis.zrange(key, fromIndex, toIndex);
             }
@@ -789,19 +1015,30 @@ public class JedisTemplate implements RedisTemplate<Jedis, SortingParams> {
     }
 
     public Set<String> zrangebyscore(final String sortKey, final double rank1, final double rank2) {
-        return (Set<String>) execute(new RedisCallback<Jedis>() {
+        return (Set<String>) executeForReply(new RedisCallback<Jedis>() {
             public Object doInRedis(Jedis redis) {
                 return redis.zrangeByScore(sortKey, rank1, rank2);
             }
         });
     }
 
+    public Set<String> zrangebyscore(final String sortKey, final double rank1, final double rank2, final int offset, final int count) {
+        return (Set<String>) executeForReply(new RedisCallback<Jedis>() {
+            public Object doInRedis(Jedis redis) {
+                return redis.zrangeByScore(sortKey, rank1, rank2, offset, count);
+            }
+        });
+    }
+
     public void set(final String key, final Object value) {
         execute(new RedisCallback<Jedis>() {
             public Object doInRedis(Jedis redis) {
                 if (transaction != null) {
                     transaction.set(key, value.toString());
                 }
+                else if (pipeline != null) {
+                    pipeline.set(key, value.toString());
+                }
                 else {
                     redis.set(key, value.toString());
                 }
@@ -817,6 +1054,9 @@ public class JedisTemplate implements RedisTemplate<Jedis, SortingParams> {
                 if (transaction != null) {
                     transaction.setex(key, timeout, String.valueOf(value));
                 }
+                else if (pipeline != null) {
+                    pipeline.setex(key, timeout, String.valueOf(value));
+                }
                 else {
                     redis.setex(key, timeout, String.valueOf(value));
                 }
@@ -828,13 +1068,17 @@ public class JedisTemplate implements RedisTemplate<Jedis, SortingParams> {
     public Double zscore(final String key, final String member) {
         return (Double) execute(new RedisCallback<Jedis>() {
             public Object doInRedis(Jedis redis) {
+                if (pipeline != null) {
+                    pipeline.zscore(key, member);
+                    return null;
+                }
                 return redis.zscore(key, member);
             }
         });
     }
 
     public Set<String> zrevrange(final String key, final int start, final int end) {
-        return (Set<String>) execute(new RedisCallback<Jedis>() {
+        return (Set<String>) executeForReply(new RedisCallback<Jedis>() {
             public Object doInRedis(Jedis redis) {
                 return redis.zrevrange(key, start, end);
             }
@@ -846,7 +1090,7 @@ public class JedisTemplate implements RedisTemplate<Jedis, SortingParams> {
     }
 
     public String srandmember(final String key) {
-        return (String) execute(new RedisCallback<Jedis>() {
+        return (String) executeForReply(new RedisCallback<Jedis>() {
             public Object doInRedis(Jedis redis) {
                 return redis.srandmember(key);
             }
@@ -854,7 +1098,7 @@ public class JedisTemplate implements RedisTemplate<Jedis, SortingParams> {
     }
 
     public String spop(final String key) {
-        return (String) execute(new RedisCallback<Jedis>() {
+        return (String) executeForReply(new RedisCallback<Jedis>() {
             public Object doInRedis(Jedis redis) {
                 return redis.spop(key);
             }
@@ -862,7 +1106,7 @@ public class JedisTemplate implements RedisTemplate<Jedis, SortingParams> {
     }
 
     public List<String> sort(final String key, final SortParams<SortingParams> params) {
-      return (List<String>) execute(new RedisCallback<Jedis>() {
+      return (List<String>) executeForReply(new RedisCallback<Jedis>() {
             public Object doInRedis(Jedis redis) {
                 return redis.sort(key, params.getParamList().get(0));
             }
@@ -872,7 +1116,12 @@ public class JedisTemplate implements RedisTemplate<Jedis, SortingParams> {
     public void sortstore(final String key, final String destKey, final SortParams<SortingParams> params) {
         execute(new RedisCallback<Jedis>() {
               public Object doInRedis(Jedis redis) {
-                  redis.sort(key, params.getParamList().get(0), destKey);
+                  if (pipeline != null) {
+                      pipeline.sort(key, params.getParamList().get(0), destKey);
+                  }
+                  else {
+                      redis.sort(key, params.getParamList().get(0), destKey);
+                  }
                   return null;
               }
          });
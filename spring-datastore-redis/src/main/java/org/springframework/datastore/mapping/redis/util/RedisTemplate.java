@@ -29,6 +29,8 @@ public interface RedisTemplate<T, S> {
 
     Object execute(RedisCallback<T> callback);
 
+    Object executeIsolated(RedisCallback<RedisTemplate<T,S>> callback);
+
     SortParams sortParams();
 
     void save();
@@ -75,6 +77,8 @@ public interface RedisTemplate<T, S> {
 
     boolean hset(String redisKey, String key, Object o);
 
+    boolean hsetnx(String redisKey, String key, Object o);
+
     boolean hdel(String redisKey, String entryKey);
 
     Map<String, String> hgetall(String redisKey);
@@ -85,8 +89,12 @@ public interface RedisTemplate<T, S> {
 
     int incr(String key);
 
+    int incrby(String key, int amount);
+
     int del(String... redisKey);
 
+    void rename(String oldKey, String newKey);
+
     Set<String> sinter(String...keys);
 
     Set<String> sunion(String... keys);
@@ -129,6 +137,8 @@ public interface RedisTemplate<T, S> {
 
     Set<String> zrangebyscore(String sortKey, double rank1, double rank2);
 
+    Set<String> zrangebyscore(String sortKey, double rank1, double rank2, int offset, int count);
+
     void set(String key, Object value);
 
     void setex(String key, Object value, int timeout);
@@ -0,0 +1,169 @@
+package org.springframework.datastore.mapping.redis
+
+import org.junit.Before
+import org.junit.Test
+
+import org.springframework.dao.InvalidDataAccessResourceUsageException
+import org.springframework.datastore.mapping.query.Query
+import org.springframework.datastore.mapping.redis.engine.RedisEntrySchema
+import org.springframework.datastore.mapping.redis.util.RedisTemplate
+
+/**
+ * Tests storing entities in hashes keyed by compact field ids and migrating hashes keyed by property names
+ */
+class CompactEncodingTests {
+
+  static final String FAMILY = CompactPerson.name
+
+  def ds
+  def session
+  def template
+
+  @Before
+  void setUp() {
+    ds = new RedisDatastore()
+    ds.compactEncoding = true
+    ds.mappingContext.addPersistentEntity(CompactPerson)
+    ds.mappingContext.addPersistentEntity(CompactEmployee)
+    session = ds.connect()
+    template = session.getNativeInterface()
+    template.flushall()
+  }
+
+  @Test
+  void testBooleanAndDateRoundTrip() {
+    def born = new Date(315532800123L)
+    def person = new CompactPerson(name:"Bob", active:true, born:born)
+    session.persist(person)
+    session.persist(new CompactPerson(name:"Fred", active:false))
+    session.flush()
+    session.clear()
+
+    def hash = template.hgetall("$FAMILY:$person.id")
+    assert hash[RedisEntrySchema.SCHEMA_FIELD] == RedisEntrySchema.SCHEMA_ID
+    assert !hash.containsKey("name")
+    assert !hash.containsKey("active")
+
+    person = session.retrieve(CompactPerson, person.id)
+    assert person.name == "Bob"
+    assert person.active == true
+    assert person.born == born
+    assert session.createQuery(CompactPerson).eq("name", "Fred").list()*.active == [false]
+  }
+
+  @Test
+  void testSubclassSharesRootHash() {
+    def employee = new CompactEmployee(name:"Alice", active:true, company:"SpringSource")
+    session.persist(employee)
+    session.flush()
+    session.clear()
+
+    def hash = template.hgetall("$FAMILY:$employee.id")
+    assert hash[RedisEntrySchema.SCHEMA_FIELD] == RedisEntrySchema.SCHEMA_ID
+    assert !hash.containsKey("company")
+    assert template.hgetall("${FAMILY}.schema").containsKey("company")
+    assert template.keys("${CompactEmployee.name}.schema").isEmpty()
+
+    def person = session.retrieve(CompactPerson, employee.id)
+    assert person instanceof CompactEmployee
+    assert person.name == "Alice"
+    assert person.company == "SpringSource"
+    assert person.active == true
+  }
+
+  @Test
+  void testMigrateLegacyAndMixedHashes() {
+    template.hmset("$FAMILY:1", [name:"Legacy", active:"true", age:"30"])
+    template.sadd("${FAMILY}.all", 1L)
+    template.set("${FAMILY}.next_id", "1")
+
+    def compact = new CompactPerson(name:"Compact", active:false, age:20)
+    session.persist(compact)
+    def mixed = new CompactPerson(name:"Mixed", active:true, age:40)
+    session.persist(mixed)
+    session.flush()
+    session.clear()
+
+    // a property left over under its name alongside its compact field
+    template.hset("$FAMILY:$mixed.id", "name", "Stale")
+
+    assert session.retrieve(CompactPerson, 1L).name == "Legacy"
+    assert session.retrieve(CompactPerson, 1L).active == true
+    assert session.retrieve(CompactPerson, mixed.id).name == "Mixed"
+    session.clear()
+
+    try {
+      session.createQuery(CompactPerson).order(Query.Order.asc("age")).list()
+      assert false : "should have required migrating first"
+    }
+    catch (InvalidDataAccessResourceUsageException e) {
+      // expected
+    }
+
+    assert ds.migrateToCompactEncoding() == 2
+
+    def legacyHash = template.hgetall("$FAMILY:1")
+    assert legacyHash[RedisEntrySchema.SCHEMA_FIELD] == RedisEntrySchema.SCHEMA_ID
+    assert !legacyHash.containsKey("name")
+    assert !legacyHash.containsKey("active")
+    assert !template.hgetall("$FAMILY:$mixed.id").containsKey("name")
+
+    assert session.retrieve(CompactPerson, 1L).name == "Legacy"
+    assert session.retrieve(CompactPerson, 1L).active == true
+    assert session.retrieve(CompactPerson, mixed.id).name == "Mixed"
+    assert session.retrieve(CompactPerson, compact.id).name == "Compact"
+    assert session.createQuery(CompactPerson).order(Query.Order.asc("age")).list()*.name == ["Compact", "Legacy", "Mixed"]
+
+    assert ds.migrateToCompactEncoding() == 0
+  }
+
+  @Test
+  void testSortingNewFamilyDoesNotAllocateFields() {
+    session.persist(new CompactPerson(name:"Fred", age:45))
+    session.persist(new CompactPerson(name:"Bob", age:32))
+    session.flush()
+    session.clear()
+
+    assert session.createQuery(CompactPerson).order(Query.Order.desc("age")).list()*.name == ["Fred", "Bob"]
+
+    Query q = session.createQuery(CompactPerson)
+    q.order(Query.Order.asc("born"))
+    assert q.list().size() == 2
+    assert !template.hgetall("${FAMILY}.schema").containsKey("born")
+  }
+
+  @Test
+  void testUnknownFieldReloadsSchemaOnce() {
+    session.persist(new CompactPerson(name:"Bob"))
+    session.flush()
+
+    def schema = ds.getEntrySchema(FAMILY)
+    int reloads = 0
+    def counting = [executeIsolated: { callback ->
+      reloads++
+      template.executeIsolated(callback)
+    }] as RedisTemplate
+
+    def hash = [(RedisEntrySchema.SCHEMA_FIELD):RedisEntrySchema.SCHEMA_ID, "999":"unknown"]
+    assert schema.decode(counting, hash) == ["999":"unknown"]
+    assert schema.decode(counting, hash) == ["999":"unknown"]
+    assert reloads == 1
+  }
+}
+
+class CompactPerson {
+  Long id
+  String name
+  Boolean active
+  Date born
+  int age
+
+  static mapping = {
+    name index:true
+    age index:true
+  }
+}
+
+class CompactEmployee extends CompactPerson {
+  String company
+}
@@ -0,0 +1,103 @@
+package org.springframework.datastore.mapping.redis
+
+import org.junit.Before
+import org.junit.Test
+
+import org.springframework.datastore.mapping.query.Query
+
+/**
+ * Tests conjunctions driven from their most selective index
+ */
+class ConjunctionQueryTests {
+
+  def session
+
+  @Before
+  void setUp() {
+    def ds = new RedisDatastore()
+    ds.mappingContext.addPersistentEntity(IndexedNovel)
+    session = ds.connect()
+    session.getNativeInterface().flushall()
+
+    session.persist(new IndexedNovel(title:"It", genre:"horror", pages:1138))
+    session.persist(new IndexedNovel(title:"Carrie", genre:"horror", pages:199))
+    session.persist(new IndexedNovel(title:"Misery", genre:"horror", pages:310))
+    session.persist(new IndexedNovel(title:"The Gunslinger", genre:"fantasy", pages:224))
+    session.persist(new IndexedNovel(title:"The Talisman", genre:"fantasy", pages:921))
+    session.flush()
+  }
+
+  @Test
+  void testConjunctionOfIndices() {
+    Query q = session.createQuery(IndexedNovel)
+    q.eq("genre", "horror").eq("title", "Misery")
+
+    def results = q.list()
+
+    assert results*.title == ["Misery"]
+  }
+
+  @Test
+  void testConjunctionWithAnEmptyIndexMatchesNothing() {
+    Query q = session.createQuery(IndexedNovel)
+    q.eq("genre", "horror").eq("title", "The Shining")
+
+    assert q.list().isEmpty()
+
+    q = session.createQuery(IndexedNovel)
+    q.eq("genre", "romance").between("pages", 100, 2000)
+
+    assert q.list().isEmpty()
+  }
+
+  @Test
+  void testRangesAreProbedAgainstTheMostSelectiveIndex() {
+    Query q = session.createQuery(IndexedNovel)
+    q.eq("genre", "horror").between("pages", 200, 1000)
+
+    assert q.list()*.title == ["Misery"]
+
+    q = session.createQuery(IndexedNovel)
+    q.eq("genre", "fantasy").gt("pages", 200).lt("pages", 500)
+
+    assert q.list()*.title == ["The Gunslinger"]
+  }
+
+  @Test
+  void testProbedRangeMatchingNothing() {
+    Query q = session.createQuery(IndexedNovel)
+    q.eq("genre", "fantasy").gt("pages", 1000)
+
+    assert q.list().isEmpty()
+  }
+
+  @Test
+  void testRangesWithoutAnIndexAreMaterialized() {
+    Query q = session.createQuery(IndexedNovel)
+    q.between("pages", 200, 1000)
+
+    assert q.list()*.title.sort() == ["Misery", "The Gunslinger", "The Talisman"]
+  }
+
+  @Test
+  void testProbedResultsAreCounted() {
+    Query q = session.createQuery(IndexedNovel)
+    q.eq("genre", "horror").gte("pages", 199)
+    q.projections().count()
+
+    assert 3 == q.singleResult()
+  }
+}
+
+class IndexedNovel {
+  Long id
+  String title
+  String genre
+  int pages
+
+  static mapping = {
+    title index:true
+    genre index:true
+    pages index:true
+  }
+}
@@ -0,0 +1,140 @@
+package org.springframework.datastore.mapping.redis
+
+import org.junit.After
+import org.junit.Test
+
+import org.springframework.dao.DataAccessResourceFailureException
+import org.springframework.datastore.mapping.redis.util.JedisConnectionPool
+import org.springframework.datastore.mapping.redis.util.JedisTemplate
+import org.springframework.datastore.mapping.redis.util.RedisCallback
+
+/**
+ * Tests borrowing, validating and returning pooled Redis connections
+ */
+class ConnectionPoolTests {
+
+  def pool
+
+  @After
+  void tearDown() {
+    pool?.destroy()
+  }
+
+  @Test
+  void testExhaustedPoolTimesOut() {
+    pool = createPool(1)
+    pool.maxWait = 100
+    def jedis = pool.getResource()
+
+    try {
+      pool.getResource()
+      assert false : "should have timed out"
+    }
+    catch (DataAccessResourceFailureException e) {
+      // expected
+    }
+    assert pool.timeoutCount == 1
+
+    pool.returnResource(jedis)
+    pool.returnResource(pool.getResource())
+    assert pool.activeCount == 0
+  }
+
+  @Test
+  void testDeadIdleConnectionsAreReplacedWhenValidated() {
+    pool = createPool(2)
+    pool.testOnBorrow = true
+    def jedis = pool.getResource()
+    pool.returnResource(jedis)
+    jedis.disconnect()
+
+    def borrowed = pool.getResource()
+    assert !borrowed.is(jedis)
+    assert borrowed.ping() == "PONG"
+    assert pool.validationFailureCount == 1
+    pool.returnResource(borrowed)
+  }
+
+  @Test
+  void testRecentlyReturnedConnectionsAreNotValidatedByDefault() {
+    pool = createPool(2)
+    def jedis = pool.getResource()
+    pool.returnResource(jedis)
+
+    assert pool.getResource().is(jedis)
+    assert pool.validationFailureCount == 0
+    pool.returnResource(jedis)
+  }
+
+  @Test
+  void testConnectionIsReturnedWhenCommandFails() {
+    pool = createPool(1)
+    def template = new JedisTemplate(pool)
+
+    try {
+      template.execute({ redis -> throw new IOException("failed") } as RedisCallback)
+      assert false : "should have failed"
+    }
+    catch (DataAccessResourceFailureException e) {
+      // expected
+    }
+    assert pool.activeCount == 0
+
+    template.set("key", "value")
+    assert template.get("key") == "value"
+    assert pool.activeCount == 0
+  }
+
+  @Test
+  void testTransactionBorrowsReplyConnectionFromThePool() {
+    pool = createPool(2)
+    pool.maxWait = 100
+    def template = new JedisTemplate(pool)
+    template.del("counter")
+
+    3.times {
+      template.multi()
+      template.set("key", "value")
+      assert template.incr("counter") == it + 1
+      assert template.keys("counter") == ["counter"]
+      assert pool.activeCount == 2
+      template.exec()
+      assert pool.activeCount == 0
+    }
+
+    assert template.get("key") == "value"
+    assert pool.timeoutCount == 0
+    // the reply connection is reused instead of being opened for every transaction
+    assert pool.createdCount == 2
+    assert pool.destroyedCount == 0
+  }
+
+  @Test
+  void testReplyConnectionWaitIsBounded() {
+    pool = createPool(1)
+    pool.maxWait = 100
+    def template = new JedisTemplate(pool)
+
+    template.multi()
+    try {
+      template.incr("counter")
+      assert false : "should have timed out"
+    }
+    catch (DataAccessResourceFailureException e) {
+      // expected
+    }
+    template.discard()
+
+    assert pool.timeoutCount == 1
+    assert pool.activeCount == 0
+    assert pool.createdCount - pool.destroyedCount == pool.idleCount
+  }
+
+  private createPool(int maxActive) {
+    def pool = new JedisConnectionPool("localhost", 6379, 2000)
+    pool.maxActive = maxActive
+    pool.evictionInterval = 0
+    pool.init()
+    pool
+  }
+}
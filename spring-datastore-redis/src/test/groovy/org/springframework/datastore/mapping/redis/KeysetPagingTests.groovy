@@ -0,0 +1,117 @@
+package org.springframework.datastore.mapping.redis
+
+import org.junit.Before
+import org.junit.Test
+
+import org.springframework.dao.InvalidDataAccessResourceUsageException
+import org.springframework.datastore.mapping.query.Query
+
+/**
+ * Tests paging after a position with continuation tokens
+ */
+class KeysetPagingTests {
+
+  def ds
+  def session
+  def scores = [5, 3, 5, 1, 8, 3, 5, 2, 8, 1, 4, 5]
+
+  @Before
+  void setUp() {
+    ds = new RedisDatastore()
+    ds.mappingContext.addPersistentEntity(RankedPlayer)
+    session = ds.connect()
+    session.getNativeInterface().flushall()
+
+    scores.eachWithIndex { score, i ->
+      session.persist(new RankedPlayer(name:"player$i", score:score, active:i % 3 != 0))
+    }
+    session.flush()
+    session.clear()
+  }
+
+  @Test
+  void testPagesAscendingWithTies() {
+    def players = pageThrough { it.order(Query.Order.asc("score")) }
+
+    assert players*.score == scores.sort(false)
+    assert players*.id == players.sort(false) { a, b -> a.score <=> b.score ?: a.id.toString() <=> b.id.toString() }*.id
+  }
+
+  @Test
+  void testPagesDescendingWithTies() {
+    def players = pageThrough { it.order(Query.Order.desc("score")) }
+
+    assert players*.score == scores.sort(false).reverse()
+    assert players*.id == players.sort(false) { a, b -> b.score <=> a.score ?: b.id.toString() <=> a.id.toString() }*.id
+  }
+
+  @Test
+  void testPagesByIdentity() {
+    def ascending = pageThrough { it.order(Query.Order.asc("id")) }
+    def descending = pageThrough { it.order(Query.Order.desc("id")) }
+
+    assert ascending*.id == (1..scores.size()).collect { it.toLong() }
+    assert descending*.id == ascending*.id.reverse()
+  }
+
+  @Test
+  void testPagesOnlyTheMatchingResults() {
+    def players = pageThrough { it.eq("active", true).order(Query.Order.asc("score")) }
+
+    assert players.every { it.active }
+    assert players.size() == scores.size() - 4
+    assert players*.score == players*.score.sort(false)
+  }
+
+  @Test
+  void testPagesAfterExplicitPosition() {
+    Query q = session.createQuery(RankedPlayer)
+    def players = q.order(Query.Order.asc("score")).after([5], 0L).list()
+
+    assert players*.score == [5, 5, 5, 5, 8, 8]
+  }
+
+  @Test
+  void testPagingByStringPropertyIsRejected() {
+    Query q = session.createQuery(RankedPlayer)
+    q.order(Query.Order.asc("name")).after(["player3"], 4L)
+
+    try {
+      q.list()
+      assert false : "should have rejected the order property"
+    }
+    catch (InvalidDataAccessResourceUsageException e) {
+      assert e.message.contains("numeric or date order property")
+    }
+  }
+
+  private List pageThrough(Closure criteria) {
+    def all = []
+    String token = null
+    while (true) {
+      Query q = session.createQuery(RankedPlayer)
+      criteria(q)
+      q.max(5)
+      if (token != null) q.after(token)
+
+      def page = q.list()
+      all.addAll(page)
+      if (page.size() < 5) break
+      token = q.getContinuationToken(page[-1])
+    }
+    return all
+  }
+}
+
+class RankedPlayer {
+  Long id
+  String name
+  int score
+  boolean active
+
+  static mapping = {
+    name index:true
+    score index:true
+    active index:true
+  }
+}
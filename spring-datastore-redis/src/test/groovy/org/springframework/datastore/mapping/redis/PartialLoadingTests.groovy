@@ -0,0 +1,125 @@
+package org.springframework.datastore.mapping.redis
+
+import org.junit.Before
+import org.junit.Test
+
+import org.springframework.datastore.mapping.query.Query
+
+/**
+ * Tests loading only the selected properties of entities
+ */
+class PartialLoadingTests {
+
+  def ds
+  def session
+  def novel
+  def carrie
+
+  @Before
+  void setUp() {
+    ds = new RedisDatastore()
+    ds.mappingContext.addPersistentEntity(PartialBook)
+    session = ds.connect()
+    session.getNativeInterface().flushall()
+
+    novel = new PartialBook(title:"It", blurb:"A very long blurb", pages:1138)
+    carrie = new PartialBook(title:"Carrie", pages:199)
+    session.persist(novel)
+    session.persist(carrie)
+    session.flush()
+    session.clear()
+  }
+
+  @Test
+  void testSelectLoadsOnlyTheSelectedProperties() {
+    Query q = session.createQuery(PartialBook)
+    q.select("title")
+
+    def results = q.list()
+
+    assert results*.id.sort() == [novel.id, carrie.id].sort()
+    assert results*.title.sort() == ["Carrie", "It"]
+    assert results*.blurb == [null, null]
+    assert results*.pages == [0, 0]
+    assert results.every { !session.contains(it) }
+  }
+
+  @Test
+  void testChangesToPartialInstancesAreNotPersisted() {
+    Query q = session.createQuery(PartialBook)
+    q.select("title").eq("title", "It")
+
+    def book = q.list()[0]
+    book.title = "Changed"
+    session.flush()
+    session.clear()
+
+    def loaded = session.retrieve(PartialBook, novel.id)
+    assert loaded.title == "It"
+    assert loaded.blurb == "A very long blurb"
+  }
+
+  @Test
+  void testSavingPartialInstanceKeepsTheOtherProperties() {
+    Query q = session.createQuery(PartialBook)
+    q.select("title").eq("title", "It")
+
+    def book = q.list()[0]
+    book.title = "It (Revised)"
+    session.persist(book)
+    session.flush()
+    session.clear()
+
+    def loaded = session.retrieve(PartialBook, novel.id)
+    assert loaded.title == "It (Revised)"
+    assert loaded.blurb == "A very long blurb"
+    assert loaded.pages == 1138
+    assert session.createQuery(PartialBook).eq("title", "It (Revised)").list()*.id == [novel.id]
+  }
+
+  @Test
+  void testRetrieveSelectedProperties() {
+    def book = session.retrieve(PartialBook, carrie.id, "blurb")
+
+    // the hash exists even though none of the selected fields are stored
+    assert book != null
+    assert book.id == carrie.id
+    assert book.blurb == null
+    assert book.title == null
+    assert !session.contains(book)
+
+    assert session.retrieve(PartialBook, carrie.id + 100, "title") == null
+  }
+
+  @Test
+  void testRetrieveReturnsTheManagedInstance() {
+    def managed = session.retrieve(PartialBook, novel.id)
+
+    assert session.retrieve(PartialBook, novel.id, "title").is(managed)
+  }
+
+  @Test
+  void testCachedSelectQueryReturnsPartialInstances() {
+    2.times {
+      Query q = session.createQuery(PartialBook)
+      q.select("title").eq("title", "It").cache(true)
+
+      def results = q.list()
+
+      assert results*.title == ["It"]
+      assert results[0].blurb == null
+      assert !session.contains(results[0])
+    }
+  }
+}
+
+class PartialBook {
+  Long id
+  String title
+  String blurb
+  int pages
+
+  static mapping = {
+    title index:true
+  }
+}
@@ -0,0 +1,87 @@
+package org.springframework.datastore.mapping.redis
+
+import org.junit.Before
+import org.junit.Test
+
+import org.springframework.dao.InvalidDataAccessApiUsageException
+import org.springframework.datastore.mapping.query.Query
+import org.springframework.datastore.mapping.redis.util.RedisCallback
+
+/**
+ * Tests flushing the writes of a session in a single pipeline
+ */
+class PipelinedFlushTests {
+
+  def session
+  def template
+
+  @Before
+  void setUp() {
+    def ds = new RedisDatastore()
+    ds.mappingContext.addPersistentEntity(PipelinedTrack)
+    session = ds.connect()
+    template = session.getNativeInterface()
+    template.flushall()
+  }
+
+  @Test
+  void testFlushWritesEntitiesAndIndices() {
+    100.times { session.persist(new PipelinedTrack(title:"Track $it", plays:it)) }
+    session.flush()
+
+    def track = session.retrieve(PipelinedTrack, 1L)
+    track.plays = 1000
+    session.persist(new PipelinedTrack(title:"Bonus", plays:500))
+    session.flush()
+    session.clear()
+
+    assert session.createQuery(PipelinedTrack).list().size() == 101
+    assert session.createQuery(PipelinedTrack).eq("title", "Track 42").list()*.plays == [42]
+    assert session.createQuery(PipelinedTrack).gt("plays", 99).list()*.title.sort() == ["Bonus", "Track 0"]
+    assert session.retrieve(PipelinedTrack, 1L).plays == 1000
+  }
+
+  @Test
+  void testCommandsNeedingRepliesDoNotReadPipelinedReplies() {
+    template.set("existing", "value")
+
+    def replies = template.pipeline({ redis ->
+      redis.sadd("pipelined", "a")
+      assert redis.get("existing") == "value"
+      assert redis.incr("counter") == 1
+      redis.scard("pipelined")
+      return null
+    } as RedisCallback)
+
+    assert replies.size() == 2
+    assert replies[1] == 1
+    assert template.get("counter") == "1"
+  }
+
+  @Test
+  void testNestedPipelinesAreRejected() {
+    try {
+      template.pipeline({ redis ->
+        redis.pipeline({ nested -> nested.sadd("nested", "a") } as RedisCallback)
+      } as RedisCallback)
+      assert false : "should have rejected the nested pipeline"
+    }
+    catch (InvalidDataAccessApiUsageException e) {
+      // expected
+    }
+
+    assert !template.exists("nested")
+    assert template.get("missing") == null
+  }
+}
+
+class PipelinedTrack {
+  Long id
+  String title
+  int plays
+
+  static mapping = {
+    title index:true
+    plays index:true
+  }
+}
@@ -0,0 +1,133 @@
+package org.springframework.datastore.mapping.redis
+
+import org.junit.Before
+import org.junit.Test
+
+import org.springframework.dao.DataRetrievalFailureException
+import org.springframework.datastore.mapping.query.Query
+import org.springframework.datastore.mapping.query.Restrictions
+import org.springframework.datastore.mapping.redis.query.RedisQuery
+
+/**
+ * Tests that the keys queries store their intermediate results in are complete and expire
+ */
+class ScratchKeyTests {
+
+  def session
+  def template
+
+  @Before
+  void setUp() {
+    def ds = new RedisDatastore()
+    ds.mappingContext.addPersistentEntity(ScratchBook)
+    session = ds.connect()
+    template = session.getNativeInterface()
+    template.flushall()
+
+    session.persist(new ScratchBook(title:"It", genre:"horror", pages:1138))
+    session.persist(new ScratchBook(title:"Carrie", genre:"horror", pages:199))
+    session.persist(new ScratchBook(title:"Cujo", genre:"horror", pages:319))
+    session.persist(new ScratchBook(title:"The Gunslinger", genre:"fantasy", pages:224))
+    session.flush()
+  }
+
+  @Test
+  void testDisjunctionKeysExpire() {
+    Query q = session.createQuery(ScratchBook)
+    q.disjunction().add(Restrictions.eq("title", "It")).add(Restrictions.eq("title", "Carrie"))
+
+    assert q.list()*.title.sort() == ["Carrie", "It"]
+    assertScratchKeysExpire("~!*")
+  }
+
+  @Test
+  void testNegationKeysExpire() {
+    Query q = session.createQuery(ScratchBook)
+    q.eq("genre", "horror")
+    q.negation().add(Restrictions.eq("title", "It"))
+
+    assert q.list()*.title.sort() == ["Carrie", "Cujo"]
+    assertScratchKeysExpire("!*")
+  }
+
+  @Test
+  void testLikeKeysExpire() {
+    Query q = session.createQuery(ScratchBook)
+    q.like("title", "C%")
+
+    assert q.list()*.title.sort() == ["Carrie", "Cujo"]
+    assertScratchKeysExpire("~!*")
+  }
+
+  @Test
+  void testRangeResultsAreReplacedCompletely() {
+    assert horrorLongerThan(300) == ["Cujo", "It"]
+
+    def carrie = session.createQuery(ScratchBook).eq("title", "Carrie").singleResult()
+    carrie.pages = 400
+    def cujo = session.createQuery(ScratchBook).eq("title", "Cujo").singleResult()
+    cujo.pages = 250
+    session.flush()
+
+    assert horrorLongerThan(300) == ["Carrie", "It"]
+    // the results of probing the genre index against the range
+    assertScratchKeysExpire("*:pages:sorted-*")
+    assert template.keys("*~build-*").isEmpty()
+  }
+
+  @Test
+  void testRangeKeysExpire() {
+    Query q = session.createQuery(ScratchBook)
+    q.disjunction().add(Restrictions.gt("pages", 1000)).add(Restrictions.eq("title", "Carrie"))
+
+    assert q.list()*.title.sort() == ["Carrie", "It"]
+    assertScratchKeysExpire("*~range-*")
+    assert template.keys("*~build-*").isEmpty()
+  }
+
+  @Test
+  void testPaginatedProjectionKeysExpire() {
+    Query q = session.createQuery(ScratchBook)
+    q.eq("genre", "horror").order(Query.Order.asc("pages")).max(2)
+    q.projections().count()
+
+    assert q.singleResult() == 2
+    assertScratchKeysExpire("~*-0-2-pages-ASC")
+  }
+
+  @Test(expected=DataRetrievalFailureException)
+  void testConjunctionOfUnsupportedCriteria() {
+    Query q = session.createQuery(ScratchBook)
+    q.isNull("title")
+
+    q.list()
+  }
+
+  private List horrorLongerThan(int pages) {
+    Query q = session.createQuery(ScratchBook)
+    q.eq("genre", "horror").gt("pages", pages)
+    q.list()*.title.sort()
+  }
+
+  private void assertScratchKeysExpire(String pattern) {
+    def keys = template.keys(pattern)
+    assert !keys.isEmpty()
+    keys.each { key ->
+      def ttl = template.ttl(key)
+      assert ttl > 0 && ttl <= RedisQuery.SCRATCH_KEY_TIMEOUT : "$key does not expire"
+    }
+  }
+}
+
+class ScratchBook {
+  Long id
+  String title
+  String genre
+  int pages
+
+  static mapping = {
+    title index:true
+    genre index:true
+    pages index:true
+  }
+}
@@ -0,0 +1,107 @@
+package org.springframework.datastore.mapping.redis
+
+import org.junit.Before
+import org.junit.Test
+
+import org.springframework.datastore.mapping.query.Query
+import org.springframework.datastore.mapping.query.Restrictions
+
+/**
+ * Tests the invalidation of the keys cached from the sorted indices of properties
+ */
+class SortKeyRegistryTests {
+
+  def session
+  def template
+  def persister
+
+  @Before
+  void setUp() {
+    def ds = new RedisDatastore()
+    ds.mappingContext.addPersistentEntity(RegisteredBook)
+    session = ds.connect()
+    template = session.getNativeInterface()
+    template.flushall()
+    persister = session.getPersister(RegisteredBook)
+
+    session.persist(new RegisteredBook(title:"It", pages:1138, year:1986))
+    session.persist(new RegisteredBook(title:"Carrie", pages:199, year:1974))
+    session.flush()
+  }
+
+  @Test
+  void testCachedKeysAreRegistered() {
+    assert maxPages() == 1138
+
+    Query q = session.createQuery(RegisteredBook)
+    q.disjunction().add(Restrictions.gt("pages", 1000)).add(Restrictions.eq("title", "Carrie"))
+    assert q.list()*.title.sort() == ["Carrie", "It"]
+
+    def cachedKeys = template.smembers(registryKey("pages"))
+    assert cachedKeys.size() == 2
+    assert cachedKeys.every { template.exists(it) }
+  }
+
+  @Test
+  void testWriteInvalidatesCachedMaxScore() {
+    assert maxPages() == 1138
+
+    session.persist(new RegisteredBook(title:"The Stand", pages:1152, year:1978))
+    session.flush()
+
+    assert template.smembers(registryKey("pages")).isEmpty()
+    assert maxPages() == 1152
+  }
+
+  @Test
+  void testWriteInvalidatesCachedRange() {
+    Query q = session.createQuery(RegisteredBook)
+    q.disjunction().add(Restrictions.gt("pages", 1000)).add(Restrictions.eq("title", "Carrie"))
+    assert q.list()*.title.sort() == ["Carrie", "It"]
+    def cachedKeys = template.smembers(registryKey("pages"))
+
+    session.persist(new RegisteredBook(title:"The Stand", pages:1152, year:1978))
+    session.flush()
+
+    assert cachedKeys.every { !template.exists(it) }
+    q = session.createQuery(RegisteredBook)
+    q.disjunction().add(Restrictions.gt("pages", 1000)).add(Restrictions.eq("title", "Carrie"))
+    assert q.list()*.title.sort() == ["Carrie", "It", "The Stand"]
+  }
+
+  @Test
+  void testWriteOnlyInvalidatesTheIndexedProperties() {
+    assert maxPages() == 1138
+    session.createQuery(RegisteredBook).projections().max("year").singleResult()
+    assert template.smembers(registryKey("year")).size() == 1
+
+    // a null year is not indexed, so the keys cached from the year index remain
+    session.persist(new RegisteredBook(title:"Thinner", pages:309))
+    session.flush()
+
+    assert template.smembers(registryKey("pages")).isEmpty()
+    assert template.smembers(registryKey("year")).size() == 1
+    assert session.createQuery(RegisteredBook).projections().max("year").singleResult() == 1986
+  }
+
+  private maxPages() {
+    session.createQuery(RegisteredBook).projections().max("pages").singleResult()
+  }
+
+  private registryKey(String property) {
+    persister.getPropertySortKeyRegistry(persister.persistentEntity.getPropertyByName(property))
+  }
+}
+
+class RegisteredBook {
+  Long id
+  String title
+  int pages
+  Integer year
+
+  static mapping = {
+    title index:true
+    pages index:true
+    year index:true
+  }
+}
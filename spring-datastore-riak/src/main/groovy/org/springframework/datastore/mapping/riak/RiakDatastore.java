@@ -107,9 +107,6 @@ public class RiakDatastore extends AbstractDatastore implements InitializingBean
         return new RiakSession(this, mappingContext, riak);
     }
 
-    public void destroy() throws Exception {
-    }
-
     public void afterPropertiesSet() throws Exception {
     }
 }
@@ -26,6 +26,7 @@ import org.springframework.data.keyvalue.riak.mapreduce.*
 import org.springframework.datastore.mapping.core.Session
 import org.springframework.datastore.mapping.model.PersistentEntity
 import org.springframework.datastore.mapping.query.Query
+import org.springframework.datastore.mapping.query.order.ManualEntityOrdering
 
 /**
  * A {@link Query} implementation for the Riak Key/Value store.
@@ -80,19 +81,39 @@ class RiakQuery extends Query {
             },
             (Query.GreaterThan): { Query.GreaterThan gt, PersistentEntity entity, buff ->
                 def val = checkForDate(gt.value)
-                buff << "entry.${gt.name} > ${val}"
+                if ("id" == gt.name) {
+                    // Handle object IDs by comparing to Riak's key field.
+                    buff << "parseFloat(v.key) > ${val}"
+                } else {
+                    buff << "entry.${gt.name} > ${val}"
+                }
             },
             (Query.GreaterThanEquals): { Query.GreaterThanEquals gte, PersistentEntity entity, buff ->
                 def val = checkForDate(gte.value)
-                buff << "entry.${gte.name} >= ${val}"
+                if ("id" == gte.name) {
+                    // Handle object IDs by comparing to Riak's key field.
+                    buff << "parseFloat(v.key) >= ${val}"
+                } else {
+                    buff << "entry.${gte.name} >= ${val}"
+                }
             },
             (Query.LessThan): { Query.LessThan lt, PersistentEntity entity, buff ->
                 def val = checkForDate(lt.value)
-                buff << "entry.${lt.name} < ${val}"
+                if ("id" == lt.name) {
+                    // Handle object IDs by comparing to Riak's key field.
+                    buff << "parseFloat(v.key) < ${val}"
+                } else {
+                    buff << "entry.${lt.name} < ${val}"
+                }
             },
             (Query.LessThanEquals): { Query.LessThanEquals lte, PersistentEntity entity, buff ->
                 def val = checkForDate(lte.value)
-                buff << "entry.${lte.name} <= ${val}"
+                if ("id" == lte.name) {
+                    // Handle object IDs by comparing to Riak's key field.
+                    buff << "parseFloat(v.key) <= ${val}"
+                } else {
+                    buff << "entry.${lte.name} <= ${val}"
+                }
             },
             (Query.Between): { Query.Between between, PersistentEntity entity, buff ->
                 def to = checkForDate(between.to)
@@ -263,26 +284,10 @@ class RiakQuery extends Query {
             if (log.debugEnabled) {
                 log.debug("Got results: \n" + results)
             }
-            final total = results.size()
-            if (offset > total) {
+            def finalResult = new ManualEntityOrdering(entity).applyOrder(results, orderBy, offset, max)
+            if (!finalResult) {
                 return Collections.emptyList()
             }
-            def max = this.max // 20
-            def from = offset // 10
-            def to = max == -1 ? -1 : (offset + max) - 1            // 15
-            if (to >= total) {
-                to = -1
-            }
-            def finalResult = results[from..to]
-            if (orderBy) {
-                orderBy.each { Query.Order order ->
-                    def sorted = finalResult.sort {
-                        it."${order.property}"
-                    }
-                    final def os = order.direction.toString()
-                    finalResult = os == "DESC" ? sorted.reverse() : sorted
-                }
-            }
 
             if (projectionList.projections) {
                 // I don't really like checking for projections again...
@@ -335,7 +340,7 @@ class RiakQuery extends Query {
                 }
             } else {
                 // I've got a list of object IDs. Go get all of them...
-                getSession().retrieveAll(getEntity().getJavaClass(), finalResult.collect { it.id?.toLong() })
+                retrieveExisting(getEntity().getJavaClass(), finalResult.collect { it.id?.toLong() })
             }
         } else {
             return Collections.emptyList()
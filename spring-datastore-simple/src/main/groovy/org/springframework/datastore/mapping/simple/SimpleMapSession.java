@@ -73,15 +73,17 @@ public class SimpleMapSession extends AbstractSession<Map> {
     }
 
     private class MockTransaction implements Transaction {
+        private boolean active = true;
+
         public MockTransaction(@SuppressWarnings("unused") SimpleMapSession simpleMapSession) {
         }
 
         public void commit() {
-            // do nothing
+            active = false;
         }
 
         public void rollback() {
-            // do nothing
+            active = false;
         }
 
         public Object getNativeTransaction() {
@@ -89,7 +91,7 @@ public class SimpleMapSession extends AbstractSession<Map> {
         }
 
         public boolean isActive() {
-            return true;
+            return active;
         }
 
         public void setTimeout(int timeout) {
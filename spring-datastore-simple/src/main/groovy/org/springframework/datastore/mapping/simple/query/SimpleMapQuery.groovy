@@ -23,6 +23,7 @@ import org.springframework.datastore.mapping.model.types.ToOne
 import org.springframework.datastore.mapping.query.AssociationQuery
 import org.springframework.datastore.mapping.query.Query
 import org.springframework.datastore.mapping.query.Restrictions
+import org.springframework.datastore.mapping.query.order.ManualEntityOrdering
 import org.springframework.datastore.mapping.simple.SimpleMapSession
 import org.springframework.datastore.mapping.simple.engine.SimpleMapEntityPersister
 
@@ -37,12 +38,14 @@ class SimpleMapQuery extends Query {
     Map<String, Map> datastore
     private String family
     private SimpleMapEntityPersister entityPersister
+    private ManualEntityOrdering ordering
 
     SimpleMapQuery(SimpleMapSession session, PersistentEntity entity, SimpleMapEntityPersister entityPersister) {
         super(session, entity)
         this.datastore = session.getBackingMap()
         family = getFamily(entity)
         this.entityPersister = entityPersister
+        this.ordering = new ManualEntityOrdering(entity)
     }
 
     protected List executeQuery(PersistentEntity entity, Query.Junction criteria) {
@@ -60,6 +63,14 @@ class SimpleMapQuery extends Query {
             }
         }
 
+        if (seekPosition) {
+            if (projections.isEmpty()) {
+                return ordering.applyOrder(entityMap.values() as List, orderBy, getValidSeekPosition(), offset, max)
+            }
+            def following = ordering.applyOrder(entityMap.values() as List, orderBy, getValidSeekPosition(), 0, -1)
+            entityMap = following.inject([:]) { map, e -> map[entityPersister.getObjectIdentifier(e)] = e; map }
+        }
+
         if (projections.isEmpty()) {
             results = entityMap.values() as List
         }
@@ -96,6 +107,9 @@ class SimpleMapQuery extends Query {
                         def average = propertyValues.sum() / propertyValues.size()
                         results.add(average)
                     }
+                    else if (p instanceof Query.CountDistinctProjection) {
+                        results.add(new HashSet(propertyValues.findAll { it != null }).size())
+                    }
                     else {
 
                         PersistentProperty prop = entity.getPropertyByName(p.propertyName)
@@ -120,30 +134,18 @@ class SimpleMapQuery extends Query {
             }
         }
         if (results) {
-            final def total = results.size()
-            if (offset > total) return Collections.emptyList()
-
-            // 0..3
-            // 0..-1
-            // 1..1
-            def max = this.max // 20
-            def from = offset // 10
-            def to = max == -1 ? -1 : (offset + max)-1      // 15
-            if (to >= total) to = -1
-
-            def finalResult = results[from..to]
-            if (orderBy) {
-                orderBy.each { Query.Order order ->
-                    def sorted = finalResult.sort { it."${order.property}"}
-                    final def os = order.direction.toString()
-                    finalResult = os == "DESC" ? sorted.reverse() : sorted
-                }
-            }
-            return finalResult
+            return ordering.applyOrder(results, orderBy, offset, max)
         }
         return Collections.emptyList()
     }
 
+    /**
+     * Entities are ordered in memory, hence the seek position is applied whilst ordering them
+     */
+    protected Query.Junction applySeekPosition(Query.Junction criteria) {
+        return criteria
+    }
+
     def associationQueryHandlers = [
         (Query.Like): { allEntities, Association association, Query.Like like ->
             queryAssociation(allEntities, association) {
@@ -226,7 +228,7 @@ class SimpleMapQuery extends Query {
                 def indexer = entityPersister.getAssociationIndexer(it.value, association)
                 def results = indexer.query(it.key)
                 if (results) {
-                    def associatedEntities = session.retrieveAll(association.associatedEntity.javaClass, results)
+                    def associatedEntities = retrieveExisting(association.associatedEntity.javaClass, results)
                     return associatedEntities.any(callable)
                 }
             }
@@ -340,6 +342,28 @@ class SimpleMapQuery extends Query {
         }
     ]
 
+    /**
+     * Range criteria evaluated against the entry of a single entity, used to filter candidates of a conjunction
+     */
+    def rangeFilters = [
+        (Query.Between): { Query.Between between, Map entry ->
+            def value = entry[between.property]
+            value >= between.from && value <= between.to
+        },
+        (Query.GreaterThan): { Query.GreaterThan gt, Map entry ->
+            entry[gt.property] > gt.value
+        },
+        (Query.GreaterThanEquals): { Query.GreaterThanEquals gt, Map entry ->
+            entry[gt.property] >= gt.value
+        },
+        (Query.LessThan): { Query.LessThan lt, Map entry ->
+            entry[lt.property] < lt.value
+        },
+        (Query.LessThanEquals): { Query.LessThanEquals lte, Map entry ->
+            entry[lte.property] <= lte.value
+        }
+    ]
+
     private ArrayList negateResults(List results) {
         def entityMap = datastore[family]
         def allIds = new ArrayList(entityMap.keySet())
@@ -357,6 +381,10 @@ class SimpleMapQuery extends Query {
     }
 
     protected Collection executeSubQueryInternal(criteria, criteriaList) {
+        if (criteria instanceof Query.Conjunction) {
+            return executeConjunction(criteriaList)
+        }
+
         def resultList = []
         for (Query.Criterion criterion in criteriaList) {
             if (criterion instanceof Query.Junction) {
@@ -373,6 +401,68 @@ class SimpleMapQuery extends Query {
         return applyJunctionToResults(criteria,resultList)
     }
 
+    /**
+     * Evaluates a conjunction starting from the index lookups and stops as soon as one of them matches nothing.
+     * The remaining results are intersected starting from the smallest and range criteria are only checked
+     * against the resulting candidates rather than scanning all entities.
+     */
+    protected Collection executeConjunction(List criteriaList) {
+        def lookups = []
+        def junctions = []
+        def ranges = []
+        for (Query.Criterion criterion in criteriaList) {
+            if (criterion instanceof Query.Junction) {
+                junctions << criterion
+                continue
+            }
+            getValidProperty(criterion)
+            if (rangeFilters[criterion.getClass()]) {
+                ranges << criterion
+            }
+            else {
+                lookups << criterion
+            }
+        }
+
+        List<Collection> resultList = []
+        for (criterion in lookups) {
+            def handler = handlers[criterion.getClass()]
+            def results = handler?.call(criterion, getValidProperty(criterion)) ?: []
+            if (!results) return []
+            resultList << results
+        }
+        for (Query.Junction junction in junctions) {
+            def results = executeSubQueryInternal(junction, junction.criteria)
+            if (!results) return []
+            resultList << results
+        }
+
+        if (!resultList) {
+            if (!ranges) return []
+            // without an index to start from the first range has to scan all entities
+            def range = ranges.remove(0)
+            resultList << handlers[range.getClass()].call(range, getValidProperty(range))
+        }
+
+        resultList.sort { it.size() }
+        Set candidates = new LinkedHashSet(resultList[0])
+        if (resultList.size() > 1) {
+            for (num in 1..<resultList.size()) {
+                if (!candidates) break
+                candidates.retainAll(new HashSet(resultList[num]))
+            }
+        }
+
+        if (candidates && ranges) {
+            def entities = datastore[family]
+            candidates = candidates.findAll { id ->
+                def entry = entities[id]
+                entry != null && ranges.every { rangeFilters[it.getClass()].call(it, entry) }
+            }
+        }
+        return candidates as List
+    }
+
     private List applyJunctionToResults(Query.Junction criteria, List resultList) {
         def finalIdentifiers = []
         if (!resultList.isEmpty()) {
@@ -436,7 +526,11 @@ class SimpleMapQuery extends Query {
 
     protected populateQueryResult(identifiers, Map queryResult) {
         for (id in identifiers) {
-            queryResult.put(id, session.retrieve(entity.javaClass, id))
+            def instance = session.retrieve(entity.javaClass, id)
+            // the index may still reference an entry that has since been removed
+            if (instance != null) {
+                queryResult.put(id, instance)
+            }
         }
     }
 
@@ -0,0 +1,121 @@
+package org.springframework.datastore.mapping.simple
+
+import java.util.concurrent.Callable
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+
+import org.junit.Before
+import org.junit.Test
+
+/**
+ * @author Graeme Rocher
+ * @since 1.0
+ */
+class AsyncSessionTests {
+
+    def datastore
+    def session
+
+    @Before
+    void setUp() {
+        datastore = new SimpleMapDatastore()
+        datastore.mappingContext.addPersistentEntity(AsyncAuthor)
+        session = datastore.connect()
+    }
+
+    @Test
+    void testAsyncOperationsUseTheSession() {
+        def author = new AsyncAuthor(name:"Stephen King")
+        session.persist(author)
+        session.flushAsync().get(5, TimeUnit.SECONDS)
+
+        def results = session.createQuery(AsyncAuthor).eq("name", "Stephen King").listAsync().get(5, TimeUnit.SECONDS)
+        assert results*.name == ["Stephen King"]
+        assert session.retrieveAsync(AsyncAuthor, author.id).get(5, TimeUnit.SECONDS).is(author)
+    }
+
+    @Test
+    void testUsingTheSessionWhilstOperationsArePendingFails() {
+        def started = new CountDownLatch(1)
+        def release = new CountDownLatch(1)
+        def query = session.createQuery(AsyncAuthor)
+        def future = session.executeAsync({
+            started.countDown()
+            release.await(5, TimeUnit.SECONDS)
+            session.persist(new AsyncAuthor(name:"Peter Straub"))
+            session.flush()
+        } as Callable)
+        def results = query.listAsync()
+
+        assert started.await(5, TimeUnit.SECONDS)
+        shouldFail(IllegalStateException) { session.persist(new AsyncAuthor(name:"Clive Barker")) }
+        shouldFail(IllegalStateException) { session.retrieve(AsyncAuthor, 1L) }
+        shouldFail(IllegalStateException) { session.flush() }
+        shouldFail(IllegalStateException) { session.disconnect() }
+
+        release.countDown()
+        future.get(5, TimeUnit.SECONDS)
+        assert results.get(5, TimeUnit.SECONDS)*.name == ["Peter Straub"]
+
+        // usable again once the futures have completed
+        session.persist(new AsyncAuthor(name:"Clive Barker"))
+        session.flush()
+        assert session.createQuery(AsyncAuthor).list().size() == 2
+    }
+
+    @Test
+    void testFailedAndCancelledOperationsDoNotRemainPending() {
+        def release = new CountDownLatch(1)
+        def blocking = session.executeAsync({ release.await(5, TimeUnit.SECONDS) } as Callable)
+        def cancelled = session.executeAsync({ "never run" } as Callable)
+        def failing = session.executeAsync({ throw new IllegalArgumentException("bad") } as Callable)
+
+        assert cancelled.cancel(false)
+        release.countDown()
+        blocking.get(5, TimeUnit.SECONDS)
+        try {
+            failing.get(5, TimeUnit.SECONDS)
+            assert false : "should have failed"
+        }
+        catch (ExecutionException e) {
+            assert e.cause instanceof IllegalArgumentException
+        }
+
+        session.persist(new AsyncAuthor(name:"Dean Koontz"))
+        session.flush()
+    }
+
+    @Test
+    void testDestroyShutsDownOnlyCreatedExecutors() {
+        def created = datastore.asyncExecutor
+        datastore.destroy()
+        assert created.isShutdown()
+
+        def injected = Executors.newSingleThreadExecutor()
+        try {
+            datastore.asyncExecutor = injected
+            datastore.destroy()
+            assert !injected.isShutdown()
+        }
+        finally {
+            injected.shutdown()
+        }
+    }
+
+    private void shouldFail(Class exceptionType, Closure closure) {
+        try {
+            closure.call()
+            assert false : "should have thrown " + exceptionType.name
+        }
+        catch (Throwable e) {
+            assert exceptionType.isInstance(e)
+        }
+    }
+}
+
+class AsyncAuthor {
+    Long id
+    String name
+}
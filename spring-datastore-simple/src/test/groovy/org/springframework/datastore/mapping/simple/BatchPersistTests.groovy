@@ -0,0 +1,92 @@
+package org.springframework.datastore.mapping.simple
+
+import org.junit.Before
+import org.junit.Test
+import org.springframework.datastore.mapping.engine.Persister
+import org.springframework.datastore.mapping.model.MappingContext
+import org.springframework.datastore.mapping.model.PersistentEntity
+import org.springframework.datastore.mapping.simple.engine.SimpleMapEntityPersister
+
+/**
+ * @author Graeme Rocher
+ * @since 1.0
+ */
+class BatchPersistTests {
+
+    def datastore
+    def session
+
+    @Before
+    void setUp() {
+        datastore = new SimpleMapDatastore()
+        datastore.mappingContext.addPersistentEntity(BatchAuthor)
+        def ds = datastore
+        session = new SimpleMapSession(ds, ds.mappingContext) {
+            protected Persister createPersister(Class cls, MappingContext mappingContext) {
+                def entity = mappingContext.getPersistentEntity(cls.name)
+                entity ? new CountingPersister(mappingContext, entity, this, ds) : null
+            }
+        }
+    }
+
+    @Test
+    void testIdentifiersOfCascadedChildrenAreReservedOnce() {
+        def book = new BatchBook(title:"It")
+        def author = new BatchAuthor(name:"Stephen King", books:[new BatchBook(title:"The Stand"), book, new BatchBook(title:"Carrie"), book])
+
+        session.persist(author)
+        session.flush()
+
+        def persister = session.getPersister(BatchBook)
+        assert persister.reservations == [3]
+        assert author.books*.id.every { it != null }
+        assert datastore.backingMap[persister.family].size() == 3
+    }
+
+    @Test
+    void testEntriesOfDetachedInstancesAreLoadedInBulk() {
+        def books = [new BatchBook(title:"The Stand"), new BatchBook(title:"It")]
+        session.persist(books)
+        session.flush()
+        session.clear()
+
+        def persister = session.getPersister(BatchBook)
+        persister.bulkLoads.clear()
+        books*.title = "Changed"
+        session.persist(books)
+        session.flush()
+
+        assert persister.bulkLoads == [books*.id]
+        assert datastore.backingMap[persister.family].values()*.title == ["Changed", "Changed"]
+    }
+}
+
+class CountingPersister extends SimpleMapEntityPersister {
+    List reservations = []
+    List bulkLoads = []
+
+    CountingPersister(MappingContext context, PersistentEntity entity, SimpleMapSession session, SimpleMapDatastore datastore) {
+        super(context, entity, session, datastore)
+    }
+
+    protected void reserveIdentifiers(PersistentEntity persistentEntity, int count) {
+        reservations << count
+    }
+
+    protected List<Map> retrieveEntries(PersistentEntity persistentEntity, String family, List<Serializable> keys) {
+        bulkLoads << new ArrayList(keys)
+        super.retrieveEntries(persistentEntity, family, keys)
+    }
+}
+
+class BatchAuthor {
+    Long id
+    String name
+    List books
+    static hasMany = [books:BatchBook]
+}
+
+class BatchBook {
+    Long id
+    String title
+}
@@ -0,0 +1,79 @@
+package org.springframework.datastore.mapping.simple
+
+import java.util.concurrent.Executors
+
+import org.junit.Test
+
+/**
+ * @author Graeme Rocher
+ * @since 1.0
+ */
+class ConcurrentFlushTests {
+
+    @Test
+    void testIndependentGroupsAreFlushedOnFlushThreads() {
+        def ds = new SimpleMapDatastore()
+        ds.mappingContext.addPersistentEntity(FlushedCar)
+        ds.mappingContext.addPersistentEntity(FlushedPlane)
+
+        def threads = Collections.synchronizedMap([:])
+        def session = new SimpleMapSession(ds, ds.mappingContext) {
+            protected boolean supportsConcurrentFlush() { true }
+
+            protected void flushGroupOnFlushThread(List group) {
+                threads[group*.javaClass] = Thread.currentThread()
+                super.flushGroupOnFlushThread(group)
+            }
+        }
+        def executor = Executors.newFixedThreadPool(2)
+        session.flushExecutor = executor
+        try {
+            10.times {
+                session.persist(new FlushedCar(name:"car$it"))
+                session.persist(new FlushedPlane(name:"plane$it"))
+            }
+            session.flush()
+        }
+        finally {
+            executor.shutdown()
+        }
+
+        assert threads.keySet() == [[FlushedCar], [FlushedPlane]] as Set
+        assert !threads.values().any { it.is(Thread.currentThread()) }
+        assert ds.backingMap[session.getPersister(FlushedCar).family].size() == 10
+        assert ds.backingMap[session.getPersister(FlushedPlane).family].size() == 10
+        assert session.pendingInserts.isEmpty()
+    }
+
+    @Test
+    void testGroupsAreFlushedSeriallyWithoutSupport() {
+        def ds = new SimpleMapDatastore()
+        ds.mappingContext.addPersistentEntity(FlushedCar)
+        ds.mappingContext.addPersistentEntity(FlushedPlane)
+
+        def session = ds.connect()
+        def executor = Executors.newFixedThreadPool(2)
+        session.flushExecutor = executor
+        try {
+            session.persist(new FlushedCar(name:"car"))
+            session.persist(new FlushedPlane(name:"plane"))
+            session.flush()
+        }
+        finally {
+            executor.shutdown()
+        }
+
+        assert ds.backingMap[session.getPersister(FlushedCar).family].size() == 1
+        assert ds.backingMap[session.getPersister(FlushedPlane).family].size() == 1
+    }
+}
+
+class FlushedCar {
+    Long id
+    String name
+}
+
+class FlushedPlane {
+    Long id
+    String name
+}
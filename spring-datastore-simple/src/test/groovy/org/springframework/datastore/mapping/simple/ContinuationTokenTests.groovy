@@ -0,0 +1,134 @@
+package org.springframework.datastore.mapping.simple
+
+import javax.xml.bind.DatatypeConverter
+
+import org.junit.Before
+import org.junit.Test
+import org.springframework.dao.InvalidDataAccessResourceUsageException
+import org.springframework.datastore.mapping.query.Query
+
+/**
+ * @author Graeme Rocher
+ * @since 1.0
+ */
+class ContinuationTokenTests {
+
+    def datastore
+    def session
+
+    @Before
+    void setUp() {
+        datastore = new SimpleMapDatastore()
+        datastore.mappingContext.addPersistentEntity(PagedEvent)
+        session = datastore.connect()
+
+        def start = new Date(1000000L)
+        10.times {
+            session.persist(new PagedEvent(name:"event${it % 3}", happened:new Date(start.time + (it % 5) * 1000)))
+        }
+        session.flush()
+    }
+
+    @Test
+    void testPagesFollowTheContinuationToken() {
+        def all = orderedQuery().list()
+        def q = orderedQuery()
+        q.max(4)
+        def page = q.list()
+        def token = q.getContinuationToken(page[-1])
+
+        assert q.orderBy*.property == ["happened", "name"]
+
+        def next = orderedQuery()
+        next.max(4)
+        next.after(token)
+
+        assert next.list()*.id == all[4..7]*.id
+    }
+
+    @Test
+    void testTamperedTokenIsRejected() {
+        def q = orderedQuery()
+        def token = q.getContinuationToken(q.list()[0])
+
+        def bytes = DatatypeConverter.parseBase64Binary(token.replace('-', '+').replace('_', '/'))
+        bytes[bytes.length - 40] ^= 1
+        def tampered = DatatypeConverter.printBase64Binary(bytes).replace('+', '-').replace('/', '_')
+
+        shouldBeRejected(tampered)
+    }
+
+    @Test
+    void testTokenOfAnotherDatastoreIsRejected() {
+        def other = new SimpleMapDatastore()
+        other.mappingContext.addPersistentEntity(PagedEvent)
+        def otherSession = other.connect()
+        otherSession.persist(new PagedEvent(name:"forged", happened:new Date()))
+        otherSession.flush()
+
+        def q = otherSession.createQuery(PagedEvent)
+        q.order(Query.Order.asc("happened")).order(Query.Order.asc("name"))
+
+        shouldBeRejected(q.getContinuationToken(q.list()[0]))
+    }
+
+    @Test
+    void testSerializedObjectIsRejected() {
+        def bytes = new ByteArrayOutputStream()
+        def out = new ObjectOutputStream(bytes)
+        out.writeObject([PagedEvent.name, "[happened ASC,name ASC,id ASC]", new Date(), "event1", 1L])
+        out.close()
+
+        shouldBeRejected(DatatypeConverter.printBase64Binary(bytes.toByteArray()))
+    }
+
+    @Test
+    void testTokenOfAnotherOrderIsRejected() {
+        def q = session.createQuery(PagedEvent)
+        q.order(Query.Order.desc("name"))
+        def token = q.getContinuationToken(q.list()[0])
+
+        shouldBeRejected(token)
+    }
+
+    @Test
+    void testTokensOfDatastoresSharingASecretAreAccepted() {
+        def secret = [(SimpleMapDatastore.CONFIG_CONTINUATION_TOKEN_SECRET): "s3cret"]
+        datastore.connectionDetails = secret
+        def other = new SimpleMapDatastore()
+        other.connectionDetails = secret
+        other.mappingContext.addPersistentEntity(PagedEvent)
+
+        def q = orderedQuery()
+        def results = q.list()
+        def token = q.getContinuationToken(results[0])
+
+        def next = other.connect().createQuery(PagedEvent)
+        next.order(Query.Order.asc("happened")).order(Query.Order.asc("name"))
+        next.after(token)
+
+        assert next.seekPosition == [results[0].happened, results[0].name, results[0].id]
+    }
+
+    private void shouldBeRejected(String token) {
+        try {
+            orderedQuery().after(token)
+            assert false : "Token [$token] should have been rejected"
+        }
+        catch (InvalidDataAccessResourceUsageException e) {
+            // expected
+        }
+    }
+
+    private Query orderedQuery() {
+        def q = session.createQuery(PagedEvent)
+        q.order(Query.Order.asc("happened")).order(Query.Order.asc("name"))
+        q
+    }
+}
+
+class PagedEvent {
+    Long id
+    String name
+    Date happened
+}
@@ -0,0 +1,85 @@
+package org.springframework.datastore.mapping.simple
+
+import org.junit.Before
+import org.junit.Test
+
+/**
+ * @author Graeme Rocher
+ * @since 1.0
+ */
+class DirtyCheckingTests {
+
+    def datastore
+    def session
+    def persister
+    def entity
+
+    @Before
+    void setUp() {
+        datastore = new SimpleMapDatastore()
+        entity = datastore.mappingContext.addPersistentEntity(DirtyPerson)
+        session = datastore.connect()
+        persister = session.getPersister(DirtyPerson)
+    }
+
+    @Test
+    void testUnchangedEntryIsNotWritten() {
+        def entry = [name:"Bob", tags:["a"], born:new Date(0)]
+        persister.snapshotEntry(entity, 1L, entry)
+
+        assert persister.getDirtyKeys(entity, 1L, entry).isEmpty()
+        assert !persister.executeUpdate(entity, 1L, entry)
+    }
+
+    @Test
+    void testInPlaceCollectionEditIsDirty() {
+        def entry = [name:"Bob", tags:["a"], born:new Date(0)]
+        persister.snapshotEntry(entity, 1L, entry)
+
+        entry.tags << "b"
+
+        assert persister.getDirtyKeys(entity, 1L, entry) == ["tags"] as Set
+        assert persister.executeUpdate(entity, 1L, entry)
+        assert datastore.backingMap[persister.family][1L].tags == ["a", "b"]
+        // the snapshot taken after the update is independent of the entry as well
+        entry.tags << "c"
+        assert persister.getDirtyKeys(entity, 1L, entry) == ["tags"] as Set
+    }
+
+    @Test
+    void testInPlaceDateEditIsDirty() {
+        def entry = [name:"Bob", tags:["a"], born:new Date(0)]
+        persister.snapshotEntry(entity, 1L, entry)
+
+        entry.born.time = 1000
+
+        assert persister.getDirtyKeys(entity, 1L, entry) == ["born"] as Set
+    }
+
+    @Test
+    void testEditOfLoadedEntityIsWritten() {
+        def person = new DirtyPerson(name:"Bob", tags:["a"], born:new Date(0))
+        session.persist(person)
+        session.flush()
+        session.clear()
+
+        person = session.retrieve(DirtyPerson, person.id)
+        person.tags << "b"
+        person.born.time = 1000
+        session.persist(person)
+        session.flush()
+        session.clear()
+
+        person = session.retrieve(DirtyPerson, person.id)
+        assert person.tags == ["a", "b"]
+        assert person.born.time == 1000
+    }
+}
+
+class DirtyPerson {
+    Long id
+    String name
+    List tags
+    Date born
+    static hasMany = [tags:String]
+}
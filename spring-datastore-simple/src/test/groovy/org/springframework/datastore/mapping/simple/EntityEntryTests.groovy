@@ -0,0 +1,105 @@
+package org.springframework.datastore.mapping.simple
+
+import org.junit.Before
+import org.junit.Test
+import org.springframework.datastore.mapping.core.impl.EntityEntry
+
+/**
+ * @author Graeme Rocher
+ * @since 1.0
+ */
+class EntityEntryTests {
+
+    def datastore
+    def session
+
+    @Before
+    void setUp() {
+        datastore = new SimpleMapDatastore()
+        datastore.mappingContext.addPersistentEntity(EqualByName)
+        session = datastore.connect()
+    }
+
+    @Test
+    void testEqualInstancesAreTrackedSeparately() {
+        def first = new EqualByName(name:"Bob")
+        def second = new EqualByName(name:"Bob")
+        assert first == second
+
+        session.persist(first)
+        session.persist(second)
+
+        assert session.contains(first)
+        assert session.contains(second)
+        assert !session.contains(new EqualByName(name:"Bob"))
+        assert session.getEntityEntry(first).key == first.id
+        assert session.getEntityEntry(second).key == second.id
+        assert first.id != second.id
+    }
+
+    @Test
+    void testInstanceIsFoundAfterItsHashCodeChanges() {
+        def bob = new EqualByName(name:"Bob")
+        session.persist(bob)
+        session.flush()
+
+        bob.name = "Robert"
+
+        assert session.contains(bob)
+
+        session.clear(bob)
+
+        assert !session.contains(bob)
+        assert session.getEntityEntry(bob) == null
+        assert !session.firstLevelCache[EqualByName].containsKey(bob.id)
+    }
+
+    @Test
+    void testClearingAStaleInstanceKeepsTheCachedOne() {
+        def stale = new EqualByName(name:"Bob")
+        session.persist(stale)
+        session.flush()
+
+        def current = new EqualByName(id:stale.id, name:"Bob")
+        session.attach(current)
+
+        session.clear(stale)
+
+        assert !session.contains(stale)
+        assert session.contains(current)
+        assert session.retrieve(EqualByName, stale.id).is(current)
+    }
+
+    @Test
+    void testEntryStatusAndClear() {
+        def saved = new EqualByName(name:"Saved")
+        session.persist(saved)
+        session.flush()
+
+        def attached = new EqualByName(id:saved.id + 1, name:"Attached")
+        session.attach(attached)
+
+        assert session.getEntityEntry(saved).status == EntityEntry.Status.PERSISTED
+        assert session.getEntityEntry(saved).persistentEntity.javaClass == EqualByName
+        assert session.getEntityEntry(attached).status == EntityEntry.Status.LOADED
+
+        session.clear()
+
+        assert !session.contains(saved)
+        assert !session.contains(attached)
+        assert session.entityEntries.isEmpty()
+    }
+}
+
+class EqualByName {
+    Long id
+    String name
+
+    boolean equals(Object o) {
+        o instanceof EqualByName && name == o.name
+    }
+
+    int hashCode() {
+        name?.hashCode() ?: 0
+    }
+}
@@ -0,0 +1,68 @@
+package org.springframework.datastore.mapping.simple
+
+import org.junit.Test
+import org.springframework.datastore.mapping.engine.EntityPersistencePlan.Kind
+
+/**
+ * @author Graeme Rocher
+ * @since 1.0
+ */
+class EntityPersistencePlanTests {
+
+    @Test
+    void testSlotsDescribeHowPropertiesAreStored() {
+        def ds = new SimpleMapDatastore()
+        ds.mappingContext.addPersistentEntity(PlanAuthor)
+        def session = ds.connect()
+
+        def persister = session.getPersister(PlanBook)
+        def plan = persister.getPersistencePlan(ds.mappingContext.getPersistentEntity(PlanBook.name))
+        def slots = plan.slots.collectEntries { [it.name, it] }
+
+        assert slots.title.kind == Kind.SIMPLE
+        assert slots.title.nativeKey == "title"
+        assert slots.title.indexed
+        assert !slots.pages.indexed
+        assert slots.author.kind == Kind.TO_ONE
+        assert slots.author.associationKeyType == Long
+        assert slots.author.inverseCollection?.name == "books"
+        assert plan.hasIndexedProperties()
+        assert plan.hasInverseCollections()
+        assert !plan.hasOneToMany()
+
+        def authorPlan = persister.getPersistencePlan(ds.mappingContext.getPersistentEntity(PlanAuthor.name))
+        assert authorPlan.slots.find { it.name == "books" }.kind == Kind.ONE_TO_MANY
+        assert authorPlan.hasOneToMany()
+        assert !authorPlan.hasIndexedProperties()
+    }
+
+    @Test
+    void testPlansAreSharedBetweenSessions() {
+        def ds = new SimpleMapDatastore()
+        ds.mappingContext.addPersistentEntity(PlanAuthor)
+        def entity = ds.mappingContext.getPersistentEntity(PlanBook.name)
+
+        def first = ds.connect().getPersister(PlanBook).getPersistencePlan(entity)
+        def second = ds.connect().getPersister(PlanBook).getPersistencePlan(entity)
+
+        assert first.is(second)
+    }
+}
+
+class PlanAuthor {
+    Long id
+    String name
+    Set books
+    static hasMany = [books:PlanBook]
+}
+
+class PlanBook {
+    Long id
+    String title
+    int pages
+    PlanAuthor author
+    static belongsTo = [author:PlanAuthor]
+    static mapping = {
+        title index:true
+    }
+}
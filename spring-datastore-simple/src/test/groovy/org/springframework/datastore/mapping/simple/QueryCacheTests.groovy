@@ -0,0 +1,69 @@
+package org.springframework.datastore.mapping.simple
+
+import org.junit.Before
+import org.junit.Test
+
+/**
+ * @author Graeme Rocher
+ * @since 1.0
+ */
+class QueryCacheTests {
+
+    def datastore
+
+    @Before
+    void setUp() {
+        datastore = new SimpleMapDatastore()
+        datastore.mappingContext.addPersistentEntity(CachedQueryBook)
+    }
+
+    @Test
+    void testResultsCachedBeforeCommitAreNotUsedAfterCommit() {
+        def session = datastore.connect()
+        def book = new CachedQueryBook(title:"It")
+        session.persist(book)
+        session.flush()
+
+        session = datastore.connect()
+        def tx = session.beginTransaction()
+        book = session.retrieve(CachedQueryBook, book.id)
+        book.title = "Carrie"
+        session.flush()
+
+        // another session caches results while the transaction is still running
+        assert listTitles() == ["Carrie"]
+
+        // written behind the back of the cache, only visible if the query is executed again
+        def family = session.getPersister(CachedQueryBook).family
+        datastore.backingMap[family][book.id + 1] = [title:"Misery"]
+        assert listTitles() == ["Carrie"]
+
+        tx.commit()
+
+        assert listTitles() == ["Carrie", "Misery"]
+    }
+
+    @Test
+    void testResultsAreInvalidatedByAFlushOutsideOfATransaction() {
+        def session = datastore.connect()
+        session.persist(new CachedQueryBook(title:"It"))
+        session.flush()
+        assert listTitles() == ["It"]
+
+        session.persist(new CachedQueryBook(title:"Carrie"))
+        session.flush()
+
+        assert listTitles() == ["Carrie", "It"]
+    }
+
+    private List listTitles() {
+        def q = datastore.connect().createQuery(CachedQueryBook)
+        q.cache(true)
+        q.list()*.title.sort()
+    }
+}
+
+class CachedQueryBook {
+    Long id
+    String title
+}
@@ -0,0 +1,57 @@
+package org.springframework.datastore.mapping.simple
+
+import org.junit.Before
+import org.junit.Test
+
+import org.springframework.datastore.mapping.query.Query
+
+/**
+ * @author Graeme Rocher
+ * @since 1.0
+ */
+class QueryIterationTests {
+
+    def datastore
+    def session
+
+    @Before
+    void setUp() {
+        datastore = new SimpleMapDatastore()
+        datastore.mappingContext.addPersistentEntity(IteratedBook)
+        session = datastore.connect()
+        (1..10).each { session.persist(new IteratedBook(title:"Book $it", pages:it)) }
+        session.flush()
+    }
+
+    @Test
+    void testIterateInBatches() {
+        def query = session.createQuery(IteratedBook).order(Query.Order.asc("pages"))
+
+        assert query.iterate(3).collect { it.pages } == (1..10).toList()
+    }
+
+    @Test
+    void testQueryCanBeChangedWhilstIterating() {
+        Query query = session.createQuery(IteratedBook)
+        query.order(Query.Order.asc("pages")).offset(2).max(6)
+
+        def iterator = query.iterate(2)
+        def pages = [iterator.next().pages, iterator.next().pages]
+
+        query.offset(0).max(1).eq("pages", 10)
+        assert query.list()*.pages == [10]
+
+        iterator.each { pages << it.pages }
+        assert pages == (3..8).toList()
+    }
+}
+
+class IteratedBook {
+    Long id
+    String title
+    int pages
+
+    static mapping = {
+        pages index:true
+    }
+}
@@ -0,0 +1,118 @@
+package org.springframework.datastore.mapping.simple
+
+import org.junit.Before
+import org.junit.Test
+import org.springframework.datastore.mapping.cache.CacheSettings
+import org.springframework.datastore.mapping.engine.Persister
+import org.springframework.datastore.mapping.model.MappingContext
+import org.springframework.datastore.mapping.model.PersistentEntity
+import org.springframework.datastore.mapping.simple.engine.SimpleMapEntityPersister
+
+/**
+ * @author Graeme Rocher
+ * @since 1.0
+ */
+class SecondLevelCacheTests {
+
+    def datastore
+    def cache
+    def region = CachedBook.name
+
+    @Before
+    void setUp() {
+        datastore = new SimpleMapDatastore()
+        datastore.mappingContext.addPersistentEntity(CachedBook)
+        cache = datastore.secondLevelCache
+    }
+
+    @Test
+    void testUpdatedEntryIsEvictedAgainWhenTheTransactionCommits() {
+        def book = saveBook()
+
+        def session = connect()
+        def tx = session.beginTransaction()
+        book = session.retrieve(CachedBook, book.id)
+        assert cache.get(region, book.id) != null
+
+        book.title = "Carrie"
+        session.flush()
+        assert cache.get(region, book.id) == null
+
+        // another session reloads the old entry before the write is committed
+        cache.put(region, book.id, [title:"It"], CacheSettings.valueOf(true))
+        tx.commit()
+
+        assert cache.get(region, book.id) == null
+        assert connect().retrieve(CachedBook, book.id).title == "Carrie"
+    }
+
+    @Test
+    void testDeletedEntryIsEvictedAgainWhenTheTransactionRollsBack() {
+        def book = saveBook()
+
+        def session = connect()
+        def tx = session.beginTransaction()
+        session.delete(session.retrieve(CachedBook, book.id))
+        session.flush()
+
+        cache.put(region, book.id, [title:"It"], CacheSettings.valueOf(true))
+        tx.rollback()
+
+        assert cache.get(region, book.id) == null
+    }
+
+    @Test
+    void testEntryIsEvictedByAFlushOutsideOfATransaction() {
+        def book = saveBook()
+
+        def session = connect()
+        book = session.retrieve(CachedBook, book.id)
+        assert cache.get(region, book.id) != null
+
+        book.title = "Carrie"
+        session.flush()
+
+        assert cache.get(region, book.id) == null
+    }
+
+    private saveBook() {
+        def session = connect()
+        def book = new CachedBook(title:"It")
+        session.persist(book)
+        session.flush()
+        book
+    }
+
+    private connect() {
+        def ds = datastore
+        new SimpleMapSession(ds, ds.mappingContext) {
+            protected Persister createPersister(Class cls, MappingContext mappingContext) {
+                def entity = mappingContext.getPersistentEntity(cls.name)
+                entity ? new CopyingPersister(mappingContext, entity, this, ds) : null
+            }
+        }
+    }
+}
+
+/**
+ * Copies entries so that they can be held by the second level cache
+ */
+class CopyingPersister extends SimpleMapEntityPersister {
+
+    CopyingPersister(MappingContext context, PersistentEntity entity, SimpleMapSession session, SimpleMapDatastore datastore) {
+        super(context, entity, session, datastore)
+    }
+
+    protected Map copyEntry(Map entry) {
+        entry == null ? null : new LinkedHashMap(entry)
+    }
+}
+
+class CachedBook {
+    Long id
+    String title
+
+    static mapping = {
+        cache true
+    }
+}
@@ -0,0 +1,65 @@
+package org.springframework.datastore.mapping.simple
+
+import org.junit.Before
+import org.junit.Test
+
+/**
+ * @author Graeme Rocher
+ * @since 1.0
+ */
+class StaleIndexTests {
+
+    def datastore
+
+    @Before
+    void setUp() {
+        datastore = new SimpleMapDatastore()
+        datastore.mappingContext.addPersistentEntity(IndexedPet)
+    }
+
+    @Test
+    void testQueryLeavesOutEntriesMissingFromTheStore() {
+        def session = datastore.connect()
+        def fido = new IndexedPet(name:"Fido", kind:"dog")
+        def rex = new IndexedPet(name:"Rex", kind:"dog")
+        session.persist(fido)
+        session.persist(rex)
+        session.flush()
+
+        // remove the entry behind the back of the index
+        def family = session.getPersister(IndexedPet).family
+        datastore.backingMap[family].remove(fido.id)
+
+        session = datastore.connect()
+        def q = session.createQuery(IndexedPet)
+        q.eq("kind", "dog")
+        def results = q.list()
+
+        assert results*.name == ["Rex"]
+    }
+
+    @Test
+    void testRetrieveAllStillReturnsNullForMissingIds() {
+        def session = datastore.connect()
+        def rex = new IndexedPet(name:"Rex", kind:"dog")
+        session.persist(rex)
+        session.flush()
+
+        session = datastore.connect()
+        def results = session.retrieveAll(IndexedPet, [rex.id, rex.id + 100])
+
+        assert results.size() == 2
+        assert results[0].name == "Rex"
+        assert results[1] == null
+    }
+}
+
+class IndexedPet {
+    Long id
+    String name
+    String kind
+
+    static mapping = {
+        kind index:true
+    }
+}
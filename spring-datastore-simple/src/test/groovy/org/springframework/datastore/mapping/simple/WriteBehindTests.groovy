@@ -0,0 +1,70 @@
+package org.springframework.datastore.mapping.simple
+
+import org.junit.Before
+import org.junit.Test
+import org.springframework.datastore.mapping.engine.EmptyInterceptor
+import org.springframework.datastore.mapping.engine.EntityAccess
+import org.springframework.datastore.mapping.model.PersistentEntity
+
+/**
+ * @author Graeme Rocher
+ * @since 1.0
+ */
+class WriteBehindTests {
+
+    def datastore
+    def session
+
+    @Before
+    void setUp() {
+        datastore = new SimpleMapDatastore()
+        datastore.mappingContext.addPersistentEntity(QueuedItem)
+        session = datastore.connect()
+    }
+
+    @Test
+    void testOperationsOverTheThresholdAreWrittenBeforeFlush() {
+        session.maxPendingOperations = 2
+        session.flushBatchSize = 1
+
+        5.times { session.persist(new QueuedItem(name:"item$it")) }
+
+        assert storedNames().size() == 3
+
+        session.flush()
+
+        assert storedNames() == ["item0", "item1", "item2", "item3", "item4"]
+    }
+
+    @Test
+    void testFlushFromInterceptorDuringFlushIsNotReentered() {
+        session.maxPendingOperations = 1
+        session.addEntityInterceptor(new EmptyInterceptor() {
+            boolean beforeInsert(PersistentEntity entity, EntityAccess ea) {
+                if (ea.entity.name == "parent") {
+                    // exceeds the threshold and flushes while the outer flush is writing
+                    session.persist(new QueuedItem(name:"child1"))
+                    session.persist(new QueuedItem(name:"child2"))
+                    session.flush()
+                }
+                return true
+            }
+        })
+
+        session.persist(new QueuedItem(name:"parent"))
+        session.flush()
+
+        assert storedNames() == ["child1", "child2", "parent"]
+        assert session.pendingInserts.isEmpty()
+    }
+
+    private List storedNames() {
+        def family = session.getPersister(QueuedItem).family
+        (datastore.backingMap[family]?.values()*.name ?: []).sort()
+    }
+}
+
+class QueuedItem {
+    Long id
+    String name
+}